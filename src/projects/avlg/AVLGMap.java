@@ -0,0 +1,301 @@
+package projects.avlg;
+
+import projects.avlg.AVLGTree.Node;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * <p>{@link AVLGMap} maps keys to values with an AVL-G tree: the same relaxed balance condition as {@link AVLGTree}, and
+ * the very same balancing code, since its entries are {@link AVLGTree} nodes that also carry a value. It is meant for the
+ * cases where an {@link AVLGTree} would hold key-value pairs in a {@link Comparable} wrapper, which costs a wrapper per
+ * pair, and, worse, a probe wrapper per lookup.</p>
+ *
+ * <p>Here, lookups compare the given key against the keys of the entries directly, and allocate nothing.
+ * {@link #put(Comparable, Object)}, {@link #computeIfPresent(Comparable, BiFunction)} and
+ * {@link #merge(Comparable, Object, BiFunction)} update the value of an existing entry in place, without any allocation
+ * or rotation; only a new key costs an entry and a pass of rebalancing.</p>
+ *
+ * <p>Values cannot be <tt>null</tt>, so that <tt>null</tt> always means that a key is not mapped, as in
+ * {@link java.util.concurrent.ConcurrentHashMap}. Mapping and remapping functions that return <tt>null</tt> leave the key
+ * unmapped, as in {@link java.util.Map}.</p>
+ *
+ * @param <K> The {@link java.lang.Comparable} type of the keys.
+ * @param <V> The type of the values.
+ * @see AVLGTree
+ */
+public class AVLGMap<K extends Comparable<K>, V> {
+
+    /* *************************************************************************
+     ************************ PRIVATE METHODS AND FIELDS ***********************
+     ***************************************************************************/
+
+    private static final class Entry<K, V> extends Node<K> {
+        private V value;
+
+        private Entry(K key, V value){
+            super(key);
+            this.value = value;
+        }
+    }
+
+    private Node<K> root;
+    private final int maxImbalance;
+
+    @SuppressWarnings("unchecked")
+    private Entry<K, V> find(K key){
+        Node<K> curr = root;
+        while(curr != null){
+            int cmp = key.compareTo(curr.key);
+            if(cmp == 0)
+                return (Entry<K, V>)curr;
+            curr = (cmp < 0) ? curr.left : curr.right;
+        }
+        return null;
+    }
+
+    /*
+     * Inserts an entry for key, which the subtree rooted at node does not have.
+     */
+    private Node<K> insert(Node<K> node, K key, V value){
+        if(node == null)
+            return new Entry<>(key, value);
+        if(key.compareTo(node.key) < 0)
+            node.left = insert(node.left, key, value);
+        else
+            node.right = insert(node.right, key, value);
+        return AVLGTree.rebalance(node, maxImbalance);
+    }
+
+    /*
+     * Deletes the entry of key, which the subtree rooted at node has.
+     */
+    @SuppressWarnings("unchecked")
+    private Node<K> delete(Node<K> node, K key){
+        int cmp = key.compareTo(node.key);
+        if(cmp < 0){
+            node.left = delete(node.left, key);
+        } else if(cmp > 0){
+            node.right = delete(node.right, key);
+        } else {
+            if(node.left == null)
+                return node.right;
+            if(node.right == null)
+                return node.left;
+            Node<K>[] successor = (Node<K>[])new Node<?>[1];
+            Node<K> right = AVLGTree.detachMin(node.right, successor, maxImbalance);
+            successor[0].left = node.left;
+            successor[0].right = right;
+            node = successor[0];
+        }
+        return AVLGTree.rebalance(node, maxImbalance);
+    }
+
+    /* *********************************************************************
+     ************************* PUBLIC (INTERFACE) METHODS *******************
+     **********************************************************************/
+
+    /**
+     * Creates an empty map with the given maximum imbalance.
+     * @param maxImbalance The maximum imbalance allowed by the underlying tree.
+     * @throws InvalidBalanceException if <tt>maxImbalance</tt> is a value smaller than 1.
+     */
+    public AVLGMap(int maxImbalance) throws InvalidBalanceException {
+        if(maxImbalance < 1)
+            throw new InvalidBalanceException("The maximum imbalance of an AVL-G tree needs to be at least 1; we were given " + maxImbalance + ".");
+        this.maxImbalance = maxImbalance;
+        root = null;
+    }
+
+    /**
+     * Returns the value that <tt>key</tt> maps to. This allocates nothing.
+     * @param key The key to look up.
+     * @return The value of <tt>key</tt>, or <tt>null</tt> if <tt>key</tt> is not mapped.
+     */
+    public V get(K key){
+        Entry<K, V> entry = find(key);
+        return (entry == null) ? null : entry.value;
+    }
+
+    /**
+     * Queries the map for <tt>key</tt>.
+     * @param key The key to look up.
+     * @return <tt>true</tt> if <tt>key</tt> is mapped, <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(K key){
+        return find(key) != null;
+    }
+
+    /**
+     * Maps <tt>key</tt> to <tt>value</tt>. If <tt>key</tt> is already mapped, its value is replaced in place.
+     * @param key The key to map.
+     * @param value The value to map <tt>key</tt> to.
+     * @return The previous value of <tt>key</tt>, or <tt>null</tt> if <tt>key</tt> was not mapped.
+     * @throws NullPointerException if <tt>value</tt> is <tt>null</tt>.
+     */
+    public V put(K key, V value){
+        Objects.requireNonNull(value, "AVLGMap does not accept null values.");
+        Entry<K, V> entry = find(key);
+        if(entry != null){
+            V previous = entry.value;
+            entry.value = value;
+            return previous;
+        }
+        root = insert(root, key, value);
+        return null;
+    }
+
+    /**
+     * Unmaps <tt>key</tt>.
+     * @param key The key to unmap.
+     * @return The value of <tt>key</tt>, or <tt>null</tt> if <tt>key</tt> was not mapped.
+     */
+    public V remove(K key){
+        Entry<K, V> entry = find(key);
+        if(entry == null)
+            return null;
+        root = delete(root, key);
+        return entry.value;
+    }
+
+    /**
+     * Returns the value of <tt>key</tt>, after mapping it to the result of <tt>mappingFunction</tt> if it was not mapped.
+     * @param key The key to look up.
+     * @param mappingFunction Computes the value of <tt>key</tt>, if it is not mapped. If it returns <tt>null</tt>, the key
+     *                        stays unmapped. It should not modify the map.
+     * @return The current value of <tt>key</tt>, or <tt>null</tt> if it is still not mapped.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction){
+        Entry<K, V> entry = find(key);
+        if(entry != null)
+            return entry.value;
+        V value = mappingFunction.apply(key);
+        if(value != null)
+            root = insert(root, key, value);
+        return value;
+    }
+
+    /**
+     * Replaces the value of <tt>key</tt>, if it is mapped, with the result of <tt>remappingFunction</tt>, in place. If the
+     * result is <tt>null</tt>, <tt>key</tt> is unmapped.
+     * @param key The key to look up.
+     * @param remappingFunction Computes the new value of <tt>key</tt> from <tt>key</tt> and its current value. It should
+     *                          not modify the map.
+     * @return The new value of <tt>key</tt>, or <tt>null</tt> if it is not mapped anymore, or was not mapped.
+     */
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction){
+        Entry<K, V> entry = find(key);
+        if(entry == null)
+            return null;
+        V value = remappingFunction.apply(key, entry.value);
+        if(value == null)
+            root = delete(root, key);
+        else
+            entry.value = value;
+        return value;
+    }
+
+    /**
+     * Maps <tt>key</tt> to <tt>value</tt> if it is not mapped, or else combines its current value with <tt>value</tt>
+     * through <tt>remappingFunction</tt>, in place. For example, <tt>merge(word, 1, Integer::sum)</tt> counts words. If
+     * the combined value is <tt>null</tt>, <tt>key</tt> is unmapped.
+     * @param key The key to look up.
+     * @param value The value of <tt>key</tt> if it is not mapped, and the second argument of <tt>remappingFunction</tt>
+     *              otherwise.
+     * @param remappingFunction Combines the current value of <tt>key</tt> with <tt>value</tt>. It should not modify the
+     *                          map.
+     * @return The new value of <tt>key</tt>, or <tt>null</tt> if it is not mapped anymore.
+     * @throws NullPointerException if <tt>value</tt> is <tt>null</tt>.
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction){
+        Objects.requireNonNull(value, "AVLGMap does not accept null values.");
+        Entry<K, V> entry = find(key);
+        if(entry == null){
+            root = insert(root, key, value);
+            return value;
+        }
+        V merged = remappingFunction.apply(entry.value, value);
+        if(merged == null)
+            root = delete(root, key);
+        else
+            entry.value = merged;
+        return merged;
+    }
+
+    /**
+     * Passes every mapping to <tt>action</tt>, in ascending order of keys.
+     * @param action The action to perform on every key and its value.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action){
+        Node<K>[] stack = (Node<K>[])new Node<?>[AVLGTree.heightOf(root) + 1];
+        int top = 0;
+        for(Node<K> node = root; node != null; node = node.left)
+            stack[top++] = node;
+        while(top > 0){
+            Entry<K, V> entry = (Entry<K, V>)stack[--top];
+            action.accept(entry.key, entry.value);
+            for(Node<K> node = entry.right; node != null; node = node.left)
+                stack[top++] = node;
+        }
+    }
+
+    /**
+     * Retrieves the maximum imbalance parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter.
+     */
+    public int getMaxImbalance(){
+        return maxImbalance;
+    }
+
+    /**
+     * Returns the height of the underlying tree.
+     * @return The height of the tree. If the map is empty, returns -1.
+     */
+    public int getHeight(){
+        return AVLGTree.heightOf(root);
+    }
+
+    /**
+     * Returns the number of mappings.
+     * @return The number of keys that are mapped.
+     */
+    public int getCount(){
+        return AVLGTree.sizeOf(root);
+    }
+
+    /**
+     * Queries the map for emptiness.
+     * @return <tt>true</tt> if no key is mapped, <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty(){
+        return root == null;
+    }
+
+    /**
+     * Unmaps all keys.
+     */
+    public void clear(){
+        root = null;
+    }
+
+    /**
+     * Establishes whether the underlying tree satisfies the BST condition.
+     * @return <tt>true</tt> if the tree satisfies the Binary Search Tree property, <tt>false</tt> otherwise.
+     */
+    public boolean isBST(){
+        return AVLGTree.isBST(root, null, null);
+    }
+
+    /**
+     * Establishes whether the underlying tree satisfies the AVL-G condition, and whether its nodes cache their heights
+     * and subtree sizes correctly.
+     * @return <tt>true</tt> if the tree is AVL-G balanced, <tt>false</tt> otherwise.
+     */
+    public boolean isAVLGBalanced(){
+        return AVLGTree.checkBalance(root, maxImbalance) != Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,200 @@
+package projects.avlg;
+
+import java.util.Arrays;
+
+/**
+ * <p>{@link AVLGStatistics} holds the counters that an {@link AVLGTree} keeps once
+ * {@link AVLGTree#enableStatistics(int) statistics are enabled}: how many single and double rotations its insertions and
+ * its deletions cause, how many nodes its searches visit, and how tall it is over time. They are meant to choose the
+ * maximum imbalance G for a workload: a larger G saves rotations on updates, at the cost of longer search paths.</p>
+ *
+ * <p>The height is sampled every {@link #getSamplingPeriod()} calls to {@link AVLGTree#insert(Comparable)} and
+ * {@link AVLGTree#delete(Comparable)}, so the samples cost memory in proportion to the number of updates over the period.
+ * Rotations that other updates cause, such as {@link AVLGTree#join(AVLGTree) joins}, are counted apart.</p>
+ *
+ * @see AVLGTree#enableStatistics(int)
+ */
+public class AVLGStatistics {
+
+    /* ************************************************************************** */
+    /* ************************* PRIVATE FIELDS AND METHODS ********************* */
+    /* ************************************************************************** */
+
+    private static final int OTHER = 0, INSERT = 1, DELETE = 2;
+
+    private final int samplingPeriod;
+    private int operation = OTHER;
+    private long insertions, deletions, searches, searchPathNodes, otherRotations;
+    private final long[] singleRotations = new long[3], doubleRotations = new long[3];
+    private int[] heightSamples = new int[16];
+    private int samples;
+    private long updates;
+
+    AVLGStatistics(int samplingPeriod){
+        if(samplingPeriod < 1)
+            throw new RuntimeException("The sampling period needs to be at least 1; we were given " + samplingPeriod + ".");
+        this.samplingPeriod = samplingPeriod;
+    }
+
+    void beginInsert(){
+        operation = INSERT;
+        insertions++;
+    }
+
+    void beginDelete(){
+        operation = DELETE;
+        deletions++;
+    }
+
+    /*
+     * Ends an insertion or a deletion, after which the tree has the given height.
+     */
+    void endUpdate(int height){
+        operation = OTHER;
+        if(++updates % samplingPeriod == 0){
+            if(samples == heightSamples.length)
+                heightSamples = Arrays.copyOf(heightSamples, 2 * samples);
+            heightSamples[samples++] = height;
+        }
+    }
+
+    void countRotation(boolean isDouble){
+        if(operation == OTHER)
+            otherRotations++;
+        else if(isDouble)
+            doubleRotations[operation]++;
+        else
+            singleRotations[operation]++;
+    }
+
+    void countSearch(int pathNodes){
+        searches++;
+        searchPathNodes += pathNodes;
+    }
+
+    /* ************************************************************************** */
+    /* ************************ PUBLIC (INTERFACE) METHODS ********************** */
+    /* ************************************************************************** */
+
+    /**
+     * Returns the number of calls to {@link AVLGTree#insert(Comparable)}, including those for keys that were already
+     * stored.
+     * @return The number of insertions.
+     */
+    public long getInsertions(){
+        return insertions;
+    }
+
+    /**
+     * Returns the number of calls to {@link AVLGTree#delete(Comparable)}, including those for keys that were not stored.
+     * @return The number of deletions.
+     */
+    public long getDeletions(){
+        return deletions;
+    }
+
+    /**
+     * Returns the number of calls to {@link AVLGTree#search(Comparable)}.
+     * @return The number of searches.
+     */
+    public long getSearches(){
+        return searches;
+    }
+
+    /**
+     * Returns the number of single rotations that insertions caused.
+     * @return The number of single rotations on insertion.
+     */
+    public long getSingleRotationsOnInsert(){
+        return singleRotations[INSERT];
+    }
+
+    /**
+     * Returns the number of double rotations that insertions caused.
+     * @return The number of double rotations on insertion.
+     */
+    public long getDoubleRotationsOnInsert(){
+        return doubleRotations[INSERT];
+    }
+
+    /**
+     * Returns the number of single rotations that deletions caused.
+     * @return The number of single rotations on deletion.
+     */
+    public long getSingleRotationsOnDelete(){
+        return singleRotations[DELETE];
+    }
+
+    /**
+     * Returns the number of double rotations that deletions caused.
+     * @return The number of double rotations on deletion.
+     */
+    public long getDoubleRotationsOnDelete(){
+        return doubleRotations[DELETE];
+    }
+
+    /**
+     * Returns the number of rotations that updates other than insertions and deletions caused, such as joins, splits and
+     * set operations.
+     * @return The number of other rotations, single and double.
+     */
+    public long getOtherRotations(){
+        return otherRotations;
+    }
+
+    /**
+     * Returns the average number of rotations per insertion, where a double rotation counts as one.
+     * @return The average number of rotations per insertion, or 0 if there were none.
+     */
+    public double getRotationsPerInsert(){
+        return (insertions == 0) ? 0 : (double)(singleRotations[INSERT] + doubleRotations[INSERT]) / insertions;
+    }
+
+    /**
+     * Returns the average number of rotations per deletion, where a double rotation counts as one.
+     * @return The average number of rotations per deletion, or 0 if there were none.
+     */
+    public double getRotationsPerDelete(){
+        return (deletions == 0) ? 0 : (double)(singleRotations[DELETE] + doubleRotations[DELETE]) / deletions;
+    }
+
+    /**
+     * Returns the average number of nodes that {@link AVLGTree#search(Comparable)} visited, the node of the key included
+     * when it was found.
+     * @return The average search path length, or {@link Double#NaN} if there were no searches.
+     */
+    public double getAverageSearchPathLength(){
+        return (searches == 0) ? Double.NaN : (double)searchPathNodes / searches;
+    }
+
+    /**
+     * Returns the number of updates between two height samples.
+     * @return The sampling period that statistics were enabled with.
+     */
+    public int getSamplingPeriod(){
+        return samplingPeriod;
+    }
+
+    /**
+     * Returns the height of the tree over time: element <tt>i</tt> is the height after
+     * <tt>(i + 1) * </tt>{@link #getSamplingPeriod()} insertions and deletions.
+     * @return The height samples, oldest first.
+     */
+    public int[] getHeightSamples(){
+        return Arrays.copyOf(heightSamples, samples);
+    }
+
+    /**
+     * Returns a human-readable, one-line summary of these statistics.
+     * @return The summary.
+     */
+    @Override
+    public String toString(){
+        return String.format("%d insertions (%d single, %d double rotations; %.3f per insertion), " +
+                        "%d deletions (%d single, %d double rotations; %.3f per deletion), " +
+                        "%d searches (%.2f nodes per search), %d other rotations, %d height samples.",
+                insertions, singleRotations[INSERT], doubleRotations[INSERT], getRotationsPerInsert(),
+                deletions, singleRotations[DELETE], doubleRotations[DELETE], getRotationsPerDelete(),
+                searches, getAverageSearchPathLength(), otherRotations, samples);
+    }
+}
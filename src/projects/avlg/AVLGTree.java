@@ -14,6 +14,16 @@ package projects.avlg;
 import projects.avlg.exceptions.EmptyTreeException;
 import projects.avlg.exceptions.InvalidBalanceException;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
 /** <p>An <tt>AVL-G Tree</tt> is an AVL Tree with a relaxed balance condition. Its constructor receives a strictly
  * positive parameter which controls the <b>maximum</b> imbalance allowed on any subtree of the tree which
  * it creates. So, for example:</p>
@@ -29,19 +39,751 @@ import projects.avlg.exceptions.InvalidBalanceException;
  *  <p>The idea behind AVL-G trees is that rotations cost time, so maybe we would be willing to
  *  accept bad search performance now and then if it would mean less rotations.</p>
  *
+ *  <p>The tree stores every key at most once: inserting a key that is already stored leaves the tree unchanged. Every
+ *  node also maintains the number of keys in its subtree, through insertions, deletions and every rotation, so that
+ *  the tree answers order-statistic queries ({@link #rank(Comparable)}, {@link #select(int)} and
+ *  {@link #countInRange(Comparable, Comparable)}) in time proportional to its height.</p>
+ *
+ *  <p>The tree is {@link Iterable} in ascending order of keys. Its iterators, including the ones over a
+ *  {@link #iterator(Comparable, Comparable) range of keys}, are lazy and fail-fast: they keep the path to the next key on
+ *  a stack of at most height + 1 nodes, and allocate nothing per key. {@link #spliterator()} splits along subtrees, so
+ *  that parallel streams over the tree work on disjoint subtrees.</p>
+ *
+ *  <p>A tree can also be {@link #buildFromSorted(Comparable[], boolean) built} from keys in ascending order, in linear
+ *  time, instead of one insertion at a time.</p>
+ *
+ *  <p>Finally, trees can be {@link #join(AVLGTree) joined} and {@link #split(Comparable) split} in time proportional to
+ *  their height, and combined with {@link #union(AVLGTree, boolean) union}, {@link #intersection(AVLGTree, boolean)
+ *  intersection} and {@link #difference(AVLGTree, boolean) difference}, which are built on those two primitives and run in
+ *  parallel on request.</p>
+ *
+ *  <p>To choose G for a workload, a tree can {@link #enableStatistics(int) count} the rotations of its insertions and
+ *  deletions, the length of its search paths and its height over time; see {@link AVLGStatistics}. It can also
+ *  {@link #enableAdaptiveImbalance(int, int, int) adapt} G by itself, to the ratio of reads to writes.</p>
+ *
+ *  <p>Workloads whose keys lie close to each other, such as time series, can search and insert through a
+ *  {@link #cursor() Cursor}, which starts from its previous key rather than from the root.</p>
+ *
  * @author <a href="https://github.com/JasonFil">Jason Filippou</a>
  */
-public class AVLGTree<T extends Comparable<T>> {
-
-
-    private static RuntimeException UNIMPL_METHOD = new RuntimeException("Implement this method!");
+public class AVLGTree<T extends Comparable<T>> implements Iterable<T> {
 
     /* *************************************************************************
      ************** PLACE YOUR PRIVATE METHODS AND FIELDS HERE: ****************
      ***************************************************************************/
 
-    
+    /*
+     * Package-private, along with the static helpers that balance it, so that AVLGMap can extend it with a value, and
+     * share those helpers.
+     */
+    static class Node<T> {
+        T key;
+        Node<T> left, right;
+        int height, size; // Height of, and number of keys in, the subtree rooted at this node.
+
+        Node(T key){
+            this.key = key;
+            height = 0;
+            size = 1;
+        }
+    }
+
+    private Node<T> root;
+    private int maxImbalance;
+    private int modCount; // Structural modifications, for fail-fast iterators.
+    private AVLGStatistics statistics; // null unless statistics are enabled, so that they cost a null check otherwise.
+
+    /*
+     * Adaptive imbalance: every window of operations, maxImbalance moves to its upper bound if writes made up at least
+     * half of the window, or to its lower bound if they made up at most a quarter of it.
+     */
+    private static final int REPAIR_BUDGET = 16; // Nodes that every operation repairs, while the tree is repairing.
+    private boolean adaptive;
+    private int minAdaptiveImbalance, maxAdaptiveImbalance, window, windowOps, windowWrites;
+
+    /*
+     * Lowering maxImbalance leaves nodes that only satisfy the former one, so the tree repairs itself lazily, in key
+     * order, a few nodes per operation: every subtree whose keys are all smaller than repairBound satisfies the current
+     * maxImbalance throughout, and so does the whole tree once repairedAll is set. Each step descends from the root to
+     * the first nodes that are not repaired yet; a node is repaired once both of its subtrees are, by joining them again,
+     * which restores the bound at the node itself. Since repairBound is a key, rather than a position in the tree, the
+     * updates in between do not invalidate it.
+     */
+    private boolean repairing, repairedAll;
+    private T repairBound;
+    private int repairBudget;
+
+    /*
+     * An in-order iterator over the keys of a subtree within [lo, hi), where a null bound is no bound. The stack holds
+     * the nodes whose keys, and right subtrees, remain to be visited, with the next key on top. A subtree of height h
+     * never needs more than h + 1 slots.
+     */
+    private final class RangeIterator implements Iterator<T> {
+        private final Node<T>[] stack;
+        private int top;
+        private final T hi;
+        private final int expectedModCount;
+
+        @SuppressWarnings("unchecked")
+        private RangeIterator(Node<T> node, T lo, T hi, int expectedModCount){
+            stack = (Node<T>[])new Node<?>[heightOf(node) + 1];
+            this.hi = hi;
+            this.expectedModCount = expectedModCount;
+            while(node != null){ // Push the path to the smallest key >= lo, skipping the nodes below lo.
+                if(lo != null && node.key.compareTo(lo) < 0){
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            if(expectedModCount != modCount)
+                throw new ConcurrentModificationException("AVLGTree was modified during iteration.");
+            return top > 0 && (hi == null || stack[top - 1].key.compareTo(hi) < 0);
+        }
+
+        @Override
+        public T next(){
+            if(!hasNext())
+                throw new NoSuchElementException("No more keys in range.");
+            Node<T> node = stack[--top];
+            for(Node<T> curr = node.right; curr != null; curr = curr.left)
+                stack[top++] = curr;
+            return node.key;
+        }
+    }
+
+    /*
+     * Covers an optional head key, followed by the keys of a subtree within [lo, hi), where a null bound is no bound.
+     * Splitting at an in-range node hands off the head and its left subtree, and keeps the node's key, as the new head,
+     * and its right subtree. Once traversal starts, the spliterator does not split anymore.
+     */
+    private final class TreeSpliterator implements Spliterator<T> {
+        private T head, lo;
+        private Node<T> node;
+        private final T hi;
+        private RangeIterator iterator;
+        private final int expectedModCount;
+
+        private TreeSpliterator(T head, Node<T> node, T lo, T hi, int expectedModCount){
+            this.head = head;
+            this.node = node;
+            this.lo = lo;
+            this.hi = hi;
+            this.expectedModCount = expectedModCount;
+        }
+
+        @Override
+        public Spliterator<T> trySplit(){
+            if(iterator != null)
+                return null;
+            if(expectedModCount != modCount)
+                throw new ConcurrentModificationException("AVLGTree was modified during iteration.");
+            while(node != null){ // Skip the nodes whose keys are out of range, along with half of their subtrees.
+                if(lo != null && node.key.compareTo(lo) < 0)
+                    node = node.right;
+                else if(hi != null && node.key.compareTo(hi) >= 0)
+                    node = node.left;
+                else
+                    break;
+            }
+            if(node == null)
+                return null;
+            TreeSpliterator prefix = (head == null && node.left == null) ? null :
+                    new TreeSpliterator(head, node.left, lo, null, expectedModCount);
+            head = node.key;
+            node = node.right;
+            lo = null; // The right subtree lies above the old head, hence above lo.
+            return (prefix != null) ? prefix : trySplit();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action){
+            if(iterator == null){
+                iterator = new RangeIterator(node, lo, hi, expectedModCount);
+                if(head != null){
+                    T first = head;
+                    head = null;
+                    action.accept(first);
+                    return true;
+                }
+            }
+            if(!iterator.hasNext())
+                return false;
+            action.accept(iterator.next());
+            return true;
+        }
+
+        @Override
+        public long estimateSize(){
+            return sizeOf(node) + (head != null ? 1 : 0); // Bounds can make this an overestimate.
+        }
+
+        @Override
+        public int characteristics(){
+            return ORDERED | SORTED | DISTINCT | NONNULL;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator(){
+            return null; // Natural ordering.
+        }
+    }
+
+    static int heightOf(Node<?> node){
+        return (node == null) ? -1 : node.height;
+    }
 
+    static int sizeOf(Node<?> node){
+        return (node == null) ? 0 : node.size;
+    }
+
+    static int balanceOf(Node<?> node){
+        return heightOf(node.left) - heightOf(node.right);
+    }
+
+    /*
+     * Recomputes the height and size of node from those of its children.
+     */
+    static void update(Node<?> node){
+        node.height = Math.max(heightOf(node.left), heightOf(node.right)) + 1;
+        node.size = sizeOf(node.left) + sizeOf(node.right) + 1;
+    }
+
+    static <T> Node<T> rotateRight(Node<T> node){
+        Node<T> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    static <T> Node<T> rotateLeft(Node<T> node){
+        Node<T> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    /*
+     * Updates node after one of its subtrees changed, and rotates it if its imbalance now exceeds maxImbalance. A single
+     * rotation is enough when the taller grandchild is on the outside, and a double one otherwise; either restores the
+     * bound, whatever maxImbalance is. Every rotation is counted in statistics, unless it is null.
+     */
+    static <T> Node<T> rebalance(Node<T> node, int maxImbalance, AVLGStatistics statistics){
+        update(node);
+        int balance = balanceOf(node);
+        if(balance > maxImbalance){
+            boolean isDouble = balanceOf(node.left) < 0;
+            if(isDouble)
+                node.left = rotateLeft(node.left);
+            if(statistics != null)
+                statistics.countRotation(isDouble);
+            return rotateRight(node);
+        }
+        if(balance < -maxImbalance){
+            boolean isDouble = balanceOf(node.right) > 0;
+            if(isDouble)
+                node.right = rotateRight(node.right);
+            if(statistics != null)
+                statistics.countRotation(isDouble);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    static <T> Node<T> rebalance(Node<T> node, int maxImbalance){
+        return rebalance(node, maxImbalance, null);
+    }
+
+    /*
+     * While the tree is repairing, a rotation can leave a new left subtree below the node that it returns whose keys are
+     * all repaired, and a deletion can do the same to the node itself; keepRepaired() joins either back into shape, since
+     * the repair never revisits repaired keys.
+     */
+    private Node<T> rebalance(Node<T> node){
+        Node<T> result = rebalance(node, maxImbalance, statistics);
+        if(!repairing)
+            return result;
+        if(result != node){
+            result.left = keepRepaired(result.left);
+            update(result);
+        }
+        return keepRepaired(result);
+    }
+
+    private Node<T> insert(Node<T> node, T key){
+        if(node == null){
+            modCount++;
+            return new Node<>(key);
+        }
+        int cmp = key.compareTo(node.key);
+        if(cmp == 0)
+            return node; // Already stored.
+        if(cmp < 0)
+            node.left = insert(node.left, key);
+        else
+            node.right = insert(node.right, key);
+        return rebalance(node);
+    }
+
+    /*
+     * Detaches the minimum of the subtree rooted at node into min[0], and returns the rest of the subtree.
+     */
+    static <T> Node<T> detachMin(Node<T> node, Node<T>[] min, int maxImbalance){
+        if(node.left == null){
+            min[0] = node;
+            return node.right;
+        }
+        node.left = detachMin(node.left, min, maxImbalance);
+        return rebalance(node, maxImbalance);
+    }
+
+    private Node<T> detachMin(Node<T> node, Node<T>[] min){
+        if(node.left == null){
+            min[0] = node;
+            return node.right;
+        }
+        node.left = detachMin(node.left, min);
+        return rebalance(node);
+    }
+
+    /*
+     * Deletes key from the subtree rooted at node, reporting the stored key in removed[0], if any.
+     */
+    @SuppressWarnings("unchecked")
+    private Node<T> delete(Node<T> node, T key, Object[] removed){
+        if(node == null)
+            return null;
+        int cmp = key.compareTo(node.key);
+        if(cmp < 0){
+            node.left = delete(node.left, key, removed);
+        } else if(cmp > 0){
+            node.right = delete(node.right, key, removed);
+        } else {
+            removed[0] = node.key;
+            modCount++;
+            if(node.left == null)
+                return node.right;
+            if(node.right == null)
+                return node.left;
+            Node<T>[] successor = (Node<T>[])new Node<?>[1];
+            Node<T> right = detachMin(node.right, successor);
+            successor[0].left = node.left;
+            successor[0].right = right;
+            node = successor[0];
+        }
+        return rebalance(node);
+    }
+
+    /*
+     * Builds a perfectly balanced tree over sorted[from, to), with the median at the root. The subtrees of every node
+     * differ in size by at most one, hence in height by at most one, which is within the bound of any AVL-G tree.
+     */
+    private static <T> Node<T> build(T[] sorted, int from, int to){
+        if(from >= to)
+            return null;
+        int mid = (from + to) >>> 1;
+        Node<T> node = new Node<>(sorted[mid]);
+        node.left = build(sorted, from, mid);
+        node.right = build(sorted, mid + 1, to);
+        update(node);
+        return node;
+    }
+
+    /*
+     * Builds the same tree as build(), with the two halves of large ranges built in parallel.
+     */
+    private static final class BuildTask<T> extends RecursiveTask<Node<T>> {
+        private static final long serialVersionUID = 1L;
+        private static final int GRAIN = 1 << 13;
+        private final T[] sorted;
+        private final int from, to;
+
+        private BuildTask(T[] sorted, int from, int to){
+            this.sorted = sorted;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Node<T> compute(){
+            if(to - from <= GRAIN)
+                return build(sorted, from, to);
+            int mid = (from + to) >>> 1;
+            Node<T> node = new Node<>(sorted[mid]);
+            BuildTask<T> left = new BuildTask<>(sorted, from, mid);
+            left.fork();
+            node.right = new BuildTask<>(sorted, mid + 1, to).compute();
+            node.left = left.join();
+            update(node);
+            return node;
+        }
+    }
+
+    /*
+     * Builds the same tree as build() over the next count keys of an iterator, in order, so that every key is consumed
+     * as soon as the left subtree before it is complete. last[0] holds the previous key, to check the order.
+     */
+    private static <T extends Comparable<T>> Node<T> build(Iterator<? extends T> sorted, int count, Object[] last){
+        if(count == 0)
+            return null;
+        Node<T> left = build(sorted, count / 2, last);
+        T key = sorted.next();
+        checkAscending(last[0], key);
+        last[0] = key;
+        Node<T> node = new Node<>(key);
+        node.left = left;
+        node.right = build(sorted, count - 1 - count / 2, last);
+        update(node);
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> void checkAscending(Object previous, T key){
+        if(key == null)
+            throw new RuntimeException("Cannot build an AVLGTree with null keys.");
+        if(previous != null && ((T)previous).compareTo(key) >= 0)
+            throw new RuntimeException("Keys need to be in strictly ascending order to build an AVLGTree, but " + previous +
+                    " is followed by " + key + ".");
+    }
+
+    /*
+     * The outcome of splitting a subtree around a key: the keys below it, the node that held it, if any, and the keys
+     * above it.
+     */
+    private static final class Split<T> {
+        private Node<T> left, middle, right;
+    }
+
+    /*
+     * Joins two subtrees, whose keys all lie below and above middle's, respectively, into a single one with middle in
+     * between. Whichever subtree is taller by more than maxImbalance is descended along its inner spine down to a
+     * subtree whose height is within maxImbalance of the other one, where middle is attached; every node on the way back
+     * up grew by at most one level, which rebalance() fixes with at most one (single or double) rotation. The cost is
+     * O(|h(left) - h(right)| + 1).
+     */
+    private Node<T> join(Node<T> left, Node<T> middle, Node<T> right){
+        if(heightOf(left) > heightOf(right) + maxImbalance){
+            left.right = join(left.right, middle, right);
+            return rebalance(left);
+        }
+        if(heightOf(right) > heightOf(left) + maxImbalance){
+            right.left = join(left, middle, right.left);
+            return rebalance(right);
+        }
+        middle.left = left;
+        middle.right = right;
+        update(middle);
+        return middle;
+    }
+
+    /*
+     * Joins two subtrees whose keys all lie below and above each other's, respectively, with the maximum of the left one
+     * in between.
+     */
+    @SuppressWarnings("unchecked")
+    private Node<T> join(Node<T> left, Node<T> right){
+        if(left == null)
+            return right;
+        if(right == null)
+            return left;
+        Node<T>[] max = (Node<T>[])new Node<?>[1];
+        Node<T> rest = detachMax(left, max);
+        return join(rest, max[0], right);
+    }
+
+    private Node<T> detachMax(Node<T> node, Node<T>[] max){
+        if(node.right == null){
+            max[0] = node;
+            return node.left;
+        }
+        node.right = detachMax(node.right, max);
+        return rebalance(node);
+    }
+
+    /*
+     * Splits the subtree rooted at node around key, reusing every node on the search path as the middle of a join, so
+     * that nothing is allocated besides the result. The cost is O(h(node)), since the joins along the path telescope.
+     */
+    private Split<T> split(Node<T> node, T key){
+        if(node == null)
+            return new Split<>();
+        int cmp = key.compareTo(node.key);
+        Node<T> left = node.left, right = node.right;
+        if(cmp == 0){
+            Split<T> split = new Split<>();
+            split.left = left;
+            split.right = right;
+            split.middle = node;
+            node.left = node.right = null;
+            update(node);
+            return split;
+        }
+        if(cmp < 0){
+            Split<T> split = split(left, key);
+            split.right = join(split.right, node, right);
+            return split;
+        }
+        Split<T> split = split(right, key);
+        split.left = join(left, node, split.left);
+        return split;
+    }
+
+    private enum SetOperation { UNION, INTERSECTION, DIFFERENCE }
+
+    /*
+     * The divide-and-conquer set operations of Blelloch, Ferizovic and Sun ("Just Join for Parallel Ordered Sets"), over
+     * the subtrees a and b, whose nodes they consume: the root of one subtree splits the other one, the two halves are
+     * combined recursively, and the results are joined back, with or without the root. Subtrees with few keys in total
+     * are combined sequentially.
+     */
+    private final class SetOperationTask extends RecursiveTask<Node<T>> {
+        private static final long serialVersionUID = 1L;
+        private static final int GRAIN = 1 << 12;
+        private final SetOperation operation;
+        private final Node<T> a, b;
+        private final boolean parallel;
+
+        private SetOperationTask(SetOperation operation, Node<T> a, Node<T> b, boolean parallel){
+            this.operation = operation;
+            this.a = a;
+            this.b = b;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected Node<T> compute(){
+            if(a == null || b == null){
+                switch(operation){
+                    case UNION:
+                        return (a == null) ? b : a;
+                    case INTERSECTION:
+                        return null;
+                    default:
+                        return a;
+                }
+            }
+            // Union and intersection split b around the root of a; difference splits a around the root of b.
+            Node<T> pivot = (operation == SetOperation.DIFFERENCE) ? b : a, other = (pivot == a) ? b : a;
+            Node<T> pivotLeft = pivot.left, pivotRight = pivot.right;
+            boolean fork = parallel && sizeOf(a) + sizeOf(b) > GRAIN;
+            Split<T> split = split(other, pivot.key);
+            SetOperationTask left, right;
+            if(operation == SetOperation.DIFFERENCE){
+                left = new SetOperationTask(operation, split.left, pivotLeft, parallel);
+                right = new SetOperationTask(operation, split.right, pivotRight, parallel);
+            } else {
+                left = new SetOperationTask(operation, pivotLeft, split.left, parallel);
+                right = new SetOperationTask(operation, pivotRight, split.right, parallel);
+            }
+            Node<T> leftResult, rightResult;
+            if(fork){
+                left.fork();
+                rightResult = right.compute();
+                leftResult = left.join();
+            } else {
+                leftResult = left.compute();
+                rightResult = right.compute();
+            }
+            switch(operation){
+                case UNION:
+                    return AVLGTree.this.join(leftResult, pivot, rightResult);
+                case INTERSECTION:
+                    if(split.middle == null)
+                        return AVLGTree.this.join(leftResult, rightResult);
+                    return AVLGTree.this.join(leftResult, pivot, rightResult);
+                default:
+                    return AVLGTree.this.join(leftResult, rightResult);
+            }
+        }
+    }
+
+    private void combine(SetOperation operation, AVLGTree<T> other, boolean parallel){
+        if(other.maxImbalance > maxImbalance)
+            throw new RuntimeException("Cannot combine an AVL-" + maxImbalance + " tree with a less balanced AVL-" +
+                    other.maxImbalance + " tree.");
+        if(other == this){
+            if(operation == SetOperation.DIFFERENCE)
+                clear();
+            return;
+        }
+        restoreBalance();
+        other.restoreBalance();
+        AVLGStatistics counting = statistics;
+        if(parallel)
+            statistics = null; // Its counters are not thread-safe, so parallel tasks rotate without counting.
+        SetOperationTask task = new SetOperationTask(operation, root, other.root, parallel);
+        try {
+            root = parallel ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+        } finally {
+            statistics = counting;
+        }
+        modCount++;
+        other.clear();
+    }
+
+    /*
+     * A tree that adopts the given root, without checking the imbalance parameter, which comes from a valid tree.
+     */
+    private AVLGTree(Node<T> root, int maxImbalance){
+        this.root = root;
+        this.maxImbalance = maxImbalance;
+    }
+
+    static <T extends Comparable<T>> boolean isBST(Node<T> node, T lo, T hi){
+        if(node == null)
+            return true;
+        if((lo != null && node.key.compareTo(lo) <= 0) || (hi != null && node.key.compareTo(hi) >= 0))
+            return false;
+        return isBST(node.left, lo, node.key) && isBST(node.right, node.key, hi);
+    }
+
+    /*
+     * Returns the actual height of the subtree rooted at node, or Integer.MIN_VALUE if it is not AVL-G balanced, or if
+     * the heights or sizes that it caches are wrong.
+     */
+    static int checkBalance(Node<?> node, int maxImbalance){
+        if(node == null)
+            return -1;
+        int left = checkBalance(node.left, maxImbalance), right = checkBalance(node.right, maxImbalance);
+        if(left == Integer.MIN_VALUE || right == Integer.MIN_VALUE || Math.abs(left - right) > maxImbalance)
+            return Integer.MIN_VALUE;
+        int height = Math.max(left, right) + 1;
+        if(node.height != height || node.size != sizeOf(node.left) + sizeOf(node.right) + 1)
+            return Integer.MIN_VALUE;
+        return height;
+    }
+
+    private boolean repaired(T hi){
+        if(hi == null)
+            return repairedAll;
+        return repairBound != null && repairBound.compareTo(hi) >= 0;
+    }
+
+    /*
+     * Repairs the subtree rooted at node, whose keys lie below hi, where a null hi is no bound, in key order, until
+     * repairBudget runs out.
+     */
+    private Node<T> repair(Node<T> node, T hi){
+        if(node == null){
+            if(hi == null)
+                repairedAll = true;
+            else
+                repairBound = hi;
+            return null;
+        }
+        if(repairBudget <= 0)
+            return node;
+        if(!repaired(node.key))
+            node.left = repair(node.left, node.key);
+        if(repaired(node.key) && repairBudget > 0)
+            node.right = repair(node.right, hi);
+        if(repaired(hi)){
+            repairBudget--;
+            return join(node.left, node, node.right);
+        }
+        update(node);
+        return node;
+    }
+
+    private void repairStep(int budget){
+        repairBudget = budget;
+        root = repair(root, null);
+        modCount++;
+        if(repairedAll)
+            stopRepairing();
+    }
+
+    private void startRepairing(){
+        repairing = true;
+        repairedAll = false;
+        repairBound = null;
+    }
+
+    private void stopRepairing(){
+        repairing = repairedAll = false;
+        repairBound = null;
+    }
+
+    /*
+     * Joins node again if its keys are all repaired, but its imbalance exceeds maxImbalance. Its subtrees are repaired,
+     * as subtrees of repaired keys, so the join restores the bound.
+     */
+    private Node<T> keepRepaired(Node<T> node){
+        if(node == null || Math.abs(balanceOf(node)) <= maxImbalance || repairBound == null)
+            return node;
+        Node<T> max = node;
+        while(max.right != null)
+            max = max.right;
+        if(!repairedAll && max.key.compareTo(repairBound) >= 0)
+            return node;
+        return join(node.left, node, node.right);
+    }
+
+    /*
+     * Counts an operation towards the current window, adapts maxImbalance at the end of the window and repairs a few
+     * nodes, if the tree is repairing.
+     */
+    private void adapt(boolean write){
+        if(write)
+            windowWrites++;
+        if(++windowOps == window){
+            if(2 * windowWrites >= window){
+                maxImbalance = maxAdaptiveImbalance; // Every repaired subtree satisfies the higher bound already.
+            } else if(4 * windowWrites <= window && maxImbalance > minAdaptiveImbalance){
+                maxImbalance = minAdaptiveImbalance;
+                startRepairing();
+            }
+            windowOps = windowWrites = 0;
+        }
+        if(repairing)
+            repairStep(REPAIR_BUDGET);
+    }
+
+    /*
+     * search(), counting the nodes that it visits. Apart from the plain loop, so that the latter stays as tight as it was.
+     */
+    private T countedSearch(T key){
+        int visited = 0;
+        Node<T> curr = root;
+        while(curr != null){
+            visited++;
+            int cmp = key.compareTo(curr.key);
+            if(cmp == 0)
+                break;
+            curr = (cmp < 0) ? curr.left : curr.right;
+        }
+        statistics.countSearch(visited);
+        return (curr == null) ? null : curr.key;
+    }
+
+    /*
+     * The number of keys strictly smaller than key, or at most equal to it if inclusive.
+     */
+    private int countBelow(T key, boolean inclusive){
+        int count = 0;
+        Node<T> curr = root;
+        while(curr != null){
+            int cmp = key.compareTo(curr.key);
+            if(cmp < 0 || (cmp == 0 && !inclusive)){
+                curr = curr.left;
+            } else {
+                count += sizeOf(curr.left) + 1;
+                if(cmp == 0)
+                    break;
+                curr = curr.right;
+            }
+        }
+        return count;
+    }
 
     /* *********************************************************************
      ************************* PUBLIC (INTERFACE) METHODS *******************
@@ -53,15 +795,26 @@ public class AVLGTree<T extends Comparable<T>> {
      * @throws InvalidBalanceException if <tt>maxImbalance</tt> is a value smaller than 1.
      */
     public AVLGTree(int maxImbalance) throws InvalidBalanceException {
-        throw  UNIMPL_METHOD;
+        if(maxImbalance < 1)
+            throw new InvalidBalanceException("The maximum imbalance of an AVL-G tree needs to be at least 1; we were given " + maxImbalance + ".");
+        this.maxImbalance = maxImbalance;
+        root = null;
     }
 
     /**
-     * Insert <tt>key</tt> in the tree.
+     * Insert <tt>key</tt> in the tree. If the tree already stores a key equal to <tt>key</tt>, the tree is left unchanged.
      * @param key The key to insert in the tree.
      */
     public void insert(T key) {
-        throw  UNIMPL_METHOD;
+        if(adaptive)
+            adapt(true);
+        if(statistics == null){
+            root = insert(root, key);
+            return;
+        }
+        statistics.beginInsert();
+        root = insert(root, key);
+        statistics.endUpdate(heightOf(root));
     }
 
     /**
@@ -70,8 +823,21 @@ public class AVLGTree<T extends Comparable<T>> {
      * @return The key that was removed, or <tt>null</tt> if the key was not found.
      * @throws EmptyTreeException if the tree is empty.
      */
+    @SuppressWarnings("unchecked")
     public T delete(T key) throws EmptyTreeException {
-        throw  UNIMPL_METHOD;
+        if(root == null)
+            throw new EmptyTreeException("delete(): Tree is empty.");
+        if(adaptive)
+            adapt(true);
+        Object[] removed = new Object[1];
+        if(statistics == null){
+            root = delete(root, key, removed);
+            return (T)removed[0];
+        }
+        statistics.beginDelete();
+        root = delete(root, key, removed);
+        statistics.endUpdate(heightOf(root));
+        return (T)removed[0];
     }
 
     /**
@@ -82,15 +848,95 @@ public class AVLGTree<T extends Comparable<T>> {
      * @throws EmptyTreeException if the tree is empty.
      */
     public T search(T key) throws EmptyTreeException {
-        throw  UNIMPL_METHOD;
+        if(root == null)
+            throw new EmptyTreeException("search(): Tree is empty.");
+        if(adaptive)
+            adapt(false);
+        if(statistics != null)
+            return countedSearch(key);
+        Node<T> curr = root;
+        while(curr != null){
+            int cmp = key.compareTo(curr.key);
+            if(cmp == 0)
+                return curr.key;
+            curr = (cmp < 0) ? curr.left : curr.right;
+        }
+        return null;
     }
 
     /**
      * Retrieves the maximum imbalance parameter.
-     * @return The maximum imbalance parameter provided as a constructor parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter, or, if the tree has ever
+     * {@link #enableAdaptiveImbalance(int, int, int) adapted} it, its current value.
      */
     public int getMaxImbalance(){
-        throw  UNIMPL_METHOD;
+        return maxImbalance;
+    }
+
+    /**
+     * <p>Lets the tree adapt its maximum imbalance to the ratio of reads ({@link #search(Comparable)}) to writes
+     * ({@link #insert(Comparable)} and {@link #delete(Comparable)}) of its workload. Every <tt>window</tt> such operations,
+     * the maximum imbalance rises to <tt>maxImbalance</tt> if writes made up at least half of them, to save rotations, or
+     * falls to <tt>minImbalance</tt> if they made up at most a quarter of them, to shorten searches. In between, it stays
+     * as it is.</p>
+     *
+     * <p>Raising the maximum imbalance costs nothing, but lowering it leaves nodes that only satisfy the former one. The
+     * tree restores the tighter balance lazily: every operation repairs a few nodes, in key order, until the whole tree is
+     * repaired, so no single operation pays for the whole tree. Meanwhile, searches restructure the tree, so they
+     * invalidate its iterators, and {@link #isAVLGBalanced()} may not hold; {@link #restoreBalance()} finishes the
+     * repair at once.</p>
+     * @param minImbalance The maximum imbalance that the tree falls to, when reads dominate.
+     * @param maxImbalance The maximum imbalance that the tree rises to, when writes dominate.
+     * @param window The number of operations between two adaptations.
+     * @throws InvalidBalanceException if <tt>minImbalance</tt> is smaller than 1, or greater than <tt>maxImbalance</tt>.
+     * @throws RuntimeException if <tt>window</tt> is smaller than 1.
+     * @see #getMaxImbalance()
+     */
+    public void enableAdaptiveImbalance(int minImbalance, int maxImbalance, int window) throws InvalidBalanceException {
+        if(minImbalance < 1 || minImbalance > maxImbalance)
+            throw new InvalidBalanceException("The adaptive imbalance of an AVL-G tree needs to lie within [1, " +
+                    maxImbalance + "]; we were given a lower bound of " + minImbalance + ".");
+        if(window < 1)
+            throw new RuntimeException("The adaptation window needs to be at least 1; we were given " + window + ".");
+        restoreBalance();
+        adaptive = true;
+        minAdaptiveImbalance = minImbalance;
+        maxAdaptiveImbalance = maxImbalance;
+        this.window = window;
+        windowOps = windowWrites = 0;
+        if(this.maxImbalance > maxImbalance){
+            this.maxImbalance = maxImbalance;
+            startRepairing();
+        } else if(this.maxImbalance < minImbalance){
+            this.maxImbalance = minImbalance;
+        }
+    }
+
+    /**
+     * Stops adapting the maximum imbalance, which keeps its current value. If the tree was repairing, it finishes at once.
+     */
+    public void disableAdaptiveImbalance(){
+        restoreBalance();
+        adaptive = false;
+    }
+
+    /**
+     * Queries the tree for pending repairs.
+     * @return <tt>true</tt> if the tree is still restoring a lowered maximum imbalance, <tt>false</tt> otherwise.
+     * @see #enableAdaptiveImbalance(int, int, int)
+     */
+    public boolean isRestoringBalance(){
+        return repairing;
+    }
+
+    /**
+     * Finishes restoring a lowered maximum imbalance at once, in time linear in the number of keys left to repair.
+     * Joins, splits and set operations call this first, since they rely on the bound.
+     * @see #enableAdaptiveImbalance(int, int, int)
+     */
+    public void restoreBalance(){
+        if(repairing)
+            repairStep(Integer.MAX_VALUE);
     }
 
 
@@ -101,7 +947,7 @@ public class AVLGTree<T extends Comparable<T>> {
      * @return The height of the tree. If the tree is empty, returns -1.
      */
     public int getHeight() {
-        throw  UNIMPL_METHOD;
+        return heightOf(root);
     }
 
     /**
@@ -109,7 +955,7 @@ public class AVLGTree<T extends Comparable<T>> {
      * @return <tt>true</tt> if the tree is empty, <tt>false</tt> otherwise.
      */
     public boolean isEmpty() {
-        throw  UNIMPL_METHOD;
+        return root == null;
     }
 
     /**
@@ -118,7 +964,9 @@ public class AVLGTree<T extends Comparable<T>> {
      * @throws  EmptyTreeException if the tree is empty.
      */
     public T getRoot() throws EmptyTreeException{
-        throw  UNIMPL_METHOD;
+        if(root == null)
+            throw new EmptyTreeException("getRoot(): Tree is empty.");
+        return root.key;
     }
 
 
@@ -129,18 +977,47 @@ public class AVLGTree<T extends Comparable<T>> {
      * <tt>false</tt> otherwise.
      */
     public boolean isBST() {
-        throw  UNIMPL_METHOD;
+        return isBST(root, null, null);
     }
 
 
     /**
      * <p>Establishes whether the AVL-G tree <em>globally</em> satisfies the AB condition. This method is
-     * <b>terrifically useful for testing!</b></p>
+     * <b>terrifically useful for testing!</b> It also checks the heights and subtree sizes that the nodes cache.</p>
      * @return <tt>true</tt> if the tree satisfies the Binary Search Tree property,
      * <tt>false</tt> otherwise.
      */
     public boolean isAVLGBalanced() {
-        throw  UNIMPL_METHOD;
+        return checkBalance(root, maxImbalance) != Integer.MIN_VALUE;
+    }
+
+    /**
+     * <p>Starts counting rotations, search path lengths and heights in a fresh {@link AVLGStatistics}, which replaces the
+     * current one, if any. Until statistics are enabled, the tree only pays a <tt>null</tt> check per operation for
+     * them.</p>
+     * @param samplingPeriod The number of insertions and deletions between two samples of the height of the tree.
+     * @return The statistics, which the tree keeps updating until they are disabled or replaced.
+     * @throws RuntimeException if <tt>samplingPeriod</tt> is smaller than 1.
+     * @see AVLGStatistics
+     */
+    public AVLGStatistics enableStatistics(int samplingPeriod){
+        statistics = new AVLGStatistics(samplingPeriod);
+        return statistics;
+    }
+
+    /**
+     * Stops counting statistics. The last statistics keep the counts that they reached.
+     */
+    public void disableStatistics(){
+        statistics = null;
+    }
+
+    /**
+     * Returns the statistics that the tree is counting.
+     * @return The statistics that the tree is counting, or <tt>null</tt> if they are disabled.
+     */
+    public AVLGStatistics getStatistics(){
+        return statistics;
     }
 
     /**
@@ -148,7 +1025,9 @@ public class AVLGTree<T extends Comparable<T>> {
      * tree should have <b>0</b> elements.</p>
      */
     public void clear(){
-        throw  UNIMPL_METHOD;
+        root = null;
+        stopRepairing();
+        modCount++;
     }
 
 
@@ -157,7 +1036,605 @@ public class AVLGTree<T extends Comparable<T>> {
      * @return  The number of elements in the tree.
      */
     public int getCount(){
-        throw UNIMPL_METHOD; /* ERASE THIS LINE AFTER IMPLEMENTING THE METHOD. */
+        return sizeOf(root);
+    }
+
+    /**
+     * <p>Returns the <em>rank</em> of <tt>key</tt>: the number of keys in the tree that are strictly smaller than it. If
+     * <tt>key</tt> is stored, this is its 0-based position in sorted order, so that <tt>select(rank(key))</tt> returns it.
+     * <tt>key</tt> does not need to be stored.</p>
+     * @param key The key to rank.
+     * @return The number of keys smaller than <tt>key</tt>, between 0 and {@link #getCount()}.
+     * @see #select(int)
+     */
+    public int rank(T key){
+        return countBelow(key, false);
+    }
+
+    /**
+     * Returns the key of the given 0-based rank, that is, the <tt>i</tt>-th smallest key, counting from 0.
+     * @param i The rank of the key to return.
+     * @return The key with exactly <tt>i</tt> smaller keys in the tree.
+     * @throws IndexOutOfBoundsException if <tt>i</tt> is negative or not smaller than {@link #getCount()}.
+     * @see #rank(Comparable)
+     */
+    public T select(int i){
+        if(i < 0 || i >= sizeOf(root))
+            throw new IndexOutOfBoundsException("select(): Rank " + i + " is out of bounds for a tree of " + sizeOf(root) + " keys.");
+        Node<T> curr = root;
+        while(true){
+            int leftSize = sizeOf(curr.left);
+            if(i == leftSize)
+                return curr.key;
+            if(i < leftSize){
+                curr = curr.left;
+            } else {
+                i -= leftSize + 1;
+                curr = curr.right;
+            }
+        }
+    }
+
+    /**
+     * Counts the keys between <tt>lo</tt> and <tt>hi</tt>, both <b>inclusive</b>, in two descents of the tree.
+     * @param lo The lower end of the range.
+     * @param hi The upper end of the range.
+     * @return The number of keys <tt>k</tt> with <tt>lo &lt;= k &lt;= hi</tt>, or 0 if <tt>lo</tt> &gt; <tt>hi</tt>.
+     */
+    public int countInRange(T lo, T hi){
+        if(lo.compareTo(hi) > 0)
+            return 0;
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    /**
+     * Returns the greatest key that is less than or equal to <tt>key</tt>.
+     * @param key The key to look up.
+     * @return The greatest stored key <tt>&lt;= key</tt>, or <tt>null</tt> if there is none, including when the tree is
+     * empty.
+     */
+    public T floor(T key){
+        T best = null;
+        for(Node<T> curr = root; curr != null; ){
+            int cmp = key.compareTo(curr.key);
+            if(cmp == 0)
+                return curr.key;
+            if(cmp < 0){
+                curr = curr.left;
+            } else {
+                best = curr.key;
+                curr = curr.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the least key that is greater than or equal to <tt>key</tt>.
+     * @param key The key to look up.
+     * @return The least stored key <tt>&gt;= key</tt>, or <tt>null</tt> if there is none, including when the tree is
+     * empty.
+     */
+    public T ceiling(T key){
+        T best = null;
+        for(Node<T> curr = root; curr != null; ){
+            int cmp = key.compareTo(curr.key);
+            if(cmp == 0)
+                return curr.key;
+            if(cmp > 0){
+                curr = curr.right;
+            } else {
+                best = curr.key;
+                curr = curr.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the least key that is strictly greater than <tt>key</tt>, which does not need to be stored.
+     * @param key The key to look up.
+     * @return The in-order successor of <tt>key</tt>, or <tt>null</tt> if there is none.
+     */
+    public T successor(T key){
+        T best = null;
+        for(Node<T> curr = root; curr != null; ){
+            if(key.compareTo(curr.key) < 0){
+                best = curr.key;
+                curr = curr.left;
+            } else {
+                curr = curr.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the greatest key that is strictly less than <tt>key</tt>, which does not need to be stored.
+     * @param key The key to look up.
+     * @return The in-order predecessor of <tt>key</tt>, or <tt>null</tt> if there is none.
+     */
+    public T predecessor(T key){
+        T best = null;
+        for(Node<T> curr = root; curr != null; ){
+            if(key.compareTo(curr.key) > 0){
+                best = curr.key;
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns a lazy iterator over all the keys of the tree, in ascending order.
+     * @return An {@link Iterator} over the keys of the tree.
+     * @throws ConcurrentModificationException from the iterator's methods, if the tree was structurally modified after
+     * the iterator was created.
+     * @see #iterator(Comparable, Comparable)
+     */
+    @Override
+    public Iterator<T> iterator(){
+        return new RangeIterator(root, null, null, modCount);
+    }
+
+    /**
+     * <p>Returns a lazy iterator over the keys in [<tt>lo</tt>, <tt>hi</tt>), in ascending order. Creating it takes a
+     * single descent to the first key in range, and it stops as soon as it reaches <tt>hi</tt>, so that iterating over
+     * <em>m</em> keys takes O(<em>m</em> + height) time, no matter how many keys lie outside of the range.</p>
+     * @param lo The <b>inclusive</b> lower bound of the range, or <tt>null</tt> for no lower bound.
+     * @param hi The <b>exclusive</b> upper bound of the range, or <tt>null</tt> for no upper bound.
+     * @return An {@link Iterator} over the keys in range.
+     * @throws ConcurrentModificationException from the iterator's methods, if the tree was structurally modified after
+     * the iterator was created.
+     */
+    public Iterator<T> iterator(T lo, T hi){
+        return new RangeIterator(root, lo, hi, modCount);
+    }
+
+    /**
+     * Returns a {@link Spliterator} over all the keys of the tree, in ascending order.
+     * @return A {@link Spliterator} over the keys of the tree.
+     * @see #spliterator(Comparable, Comparable)
+     */
+    @Override
+    public Spliterator<T> spliterator(){
+        return spliterator(null, null);
+    }
+
+    /**
+     * Returns a {@link Spliterator} over the keys in [<tt>lo</tt>, <tt>hi</tt>), in ascending order, for use with
+     * {@link java.util.stream.StreamSupport#stream(Spliterator, boolean)}. It splits along the tree: every split hands off
+     * the left subtree of the topmost node in range, so that splits are balanced as far as the tree is, and cost
+     * O(1) time after skipping the nodes out of range.
+     * @param lo The <b>inclusive</b> lower bound of the range, or <tt>null</tt> for no lower bound.
+     * @param hi The <b>exclusive</b> upper bound of the range, or <tt>null</tt> for no upper bound.
+     * @return A {@link Spliterator} over the keys in range.
+     */
+    public Spliterator<T> spliterator(T lo, T hi){
+        return new TreeSpliterator(null, root, lo, hi, modCount);
+    }
+
+    /**
+     * <p>Replaces the contents of the tree with the provided keys, which need to be in strictly ascending order, in
+     * O(n) time. The tree is built top-down, with the median of every range at the root of its subtree, so that it is
+     * perfectly balanced, and no key is ever compared against another one besides checking the order.</p>
+     *
+     * <p>Large inputs can be built in parallel, on the common {@link ForkJoinPool}: the two halves of every range above
+     * a few thousand keys are built as separate tasks. The resulting tree is the same either way.</p>
+     * @param sorted The keys, in strictly ascending order. The array is not modified, nor referenced by the tree.
+     * @param parallel If <tt>true</tt>, large subtrees are built in parallel.
+     * @throws RuntimeException if the keys are not in strictly ascending order, or if some key is <tt>null</tt>. The
+     * tree is left unchanged in that case.
+     */
+    public void buildFromSorted(T[] sorted, boolean parallel){
+        for(int i = 0; i < sorted.length; i++)
+            checkAscending((i == 0) ? null : sorted[i - 1], sorted[i]);
+        root = parallel ? ForkJoinPool.commonPool().invoke(new BuildTask<>(sorted, 0, sorted.length)) : build(sorted, 0, sorted.length);
+        stopRepairing();
+        modCount++;
+    }
+
+    /**
+     * Replaces the contents of the tree with the provided keys, which need to be in strictly ascending order, in
+     * O(n) time and sequentially.
+     * @param sorted The keys, in strictly ascending order.
+     * @throws RuntimeException if the keys are not in strictly ascending order, or if some key is <tt>null</tt>.
+     * @see #buildFromSorted(Comparable[], boolean)
+     */
+    public void buildFromSorted(T[] sorted){
+        buildFromSorted(sorted, false);
+    }
+
+    /**
+     * Replaces the contents of the tree with the next <tt>count</tt> keys of an iterator, which need to be in strictly
+     * ascending order, in O(n) time. The keys are consumed one at a time, in order, and built into the same perfectly
+     * balanced tree as {@link #buildFromSorted(Comparable[], boolean)}, without ever buffering them.
+     * @param sorted An iterator over at least <tt>count</tt> keys, in strictly ascending order.
+     * @param count The number of keys to consume.
+     * @throws RuntimeException if <tt>count</tt> is negative, if the keys are not in strictly ascending order, or if some
+     * key is <tt>null</tt>. The tree is left unchanged in that case.
+     * @throws NoSuchElementException if the iterator runs out of keys before <tt>count</tt> of them are consumed. The
+     * tree is left unchanged in that case.
+     */
+    public void buildFromSorted(Iterator<? extends T> sorted, int count){
+        if(count < 0)
+            throw new RuntimeException("Cannot build an AVLGTree out of " + count + " keys.");
+        root = build(sorted, count, new Object[1]);
+        stopRepairing();
+        modCount++;
+    }
+
+    /**
+     * <p>Moves all the keys of <tt>other</tt> into <tt>this</tt>, where all the keys of <tt>other</tt> need to be
+     * greater than all the keys of <tt>this</tt>. The trees are concatenated in O(|h<sub>1</sub> - h<sub>2</sub>| + log n)
+     * time, where h<sub>1</sub> and h<sub>2</sub> are their heights, with rotations only along the spine of the taller
+     * tree. <tt>other</tt> is left empty.</p>
+     * @param other The tree to append. Its imbalance parameter cannot exceed that of <tt>this</tt>, so that its subtrees
+     *              are balanced enough for <tt>this</tt>.
+     * @throws RuntimeException if the keys of the two trees are not separated as described, or if <tt>other</tt> is
+     * less balanced than <tt>this</tt>. Neither tree is modified in that case.
+     */
+    public void join(AVLGTree<T> other){
+        if(other.maxImbalance > maxImbalance)
+            throw new RuntimeException("Cannot join an AVL-" + other.maxImbalance + " tree into a more balanced AVL-" +
+                    maxImbalance + " tree.");
+        if(other == this || other.root == null)
+            return;
+        restoreBalance();
+        other.restoreBalance();
+        if(root != null){
+            Node<T> max = root, min = other.root;
+            while(max.right != null)
+                max = max.right;
+            while(min.left != null)
+                min = min.left;
+            if(max.key.compareTo(min.key) >= 0)
+                throw new RuntimeException("Cannot join trees whose keys overlap: " + max.key + " is not smaller than " + min.key + ".");
+        }
+        root = join(root, other.root);
+        modCount++;
+        other.clear();
+    }
+
+    /**
+     * Moves all the keys that are greater than or equal to <tt>key</tt> out of <tt>this</tt> and into a new tree, with
+     * the same imbalance parameter, in O(log n) time. <tt>key</tt> does not need to be stored.
+     * @param key The key to split around.
+     * @return A tree with all the keys <tt>&gt;= key</tt>, while <tt>this</tt> keeps the ones <tt>&lt; key</tt>.
+     */
+    public AVLGTree<T> split(T key){
+        restoreBalance();
+        Split<T> split = split(root, key);
+        root = split.left;
+        modCount++;
+        Node<T> upper = (split.middle == null) ? split.right : join(null, split.middle, split.right);
+        return new AVLGTree<>(upper, maxImbalance);
+    }
+
+    /**
+     * <p>Makes <tt>this</tt> the union of itself and <tt>other</tt>, and empties <tt>other</tt>, whose nodes are moved
+     * into <tt>this</tt> rather than copied. The trees are combined by divide-and-conquer: the root of <tt>this</tt>
+     * splits <tt>other</tt>, the left and right halves are combined recursively, and the results are joined back around
+     * the root. With m and n the sizes of the smaller and the larger tree, this takes O(m log(n / m + 1)) work, which is
+     * optimal for comparison-based merging and much less than O(m + n) when the trees differ a lot in size, and
+     * O(log<sup>2</sup> n) span.</p>
+     * @param other The other tree. Its imbalance parameter cannot exceed that of <tt>this</tt>.
+     * @param parallel If <tt>true</tt>, the two halves of large subproblems are combined in parallel, on the common
+     *                 {@link ForkJoinPool}.
+     * @throws RuntimeException if <tt>other</tt> is less balanced than <tt>this</tt>. Neither tree is modified in that
+     * case.
+     */
+    public void union(AVLGTree<T> other, boolean parallel){
+        combine(SetOperation.UNION, other, parallel);
+    }
+
+    /**
+     * Makes <tt>this</tt> the union of itself and <tt>other</tt>, sequentially, and empties <tt>other</tt>.
+     * @param other The other tree. Its imbalance parameter cannot exceed that of <tt>this</tt>.
+     * @throws RuntimeException if <tt>other</tt> is less balanced than <tt>this</tt>.
+     * @see #union(AVLGTree, boolean)
+     */
+    public void union(AVLGTree<T> other){
+        union(other, false);
+    }
+
+    /**
+     * Keeps only the keys of <tt>this</tt> that <tt>other</tt> also stores, and empties <tt>other</tt>. This is the same
+     * divide-and-conquer as {@link #union(AVLGTree, boolean)}, with the same bounds, except that a root is only joined
+     * back if the other tree held its key too.
+     * @param other The other tree. Its imbalance parameter cannot exceed that of <tt>this</tt>.
+     * @param parallel If <tt>true</tt>, the two halves of large subproblems are combined in parallel, on the common
+     *                 {@link ForkJoinPool}.
+     * @throws RuntimeException if <tt>other</tt> is less balanced than <tt>this</tt>. Neither tree is modified in that
+     * case.
+     */
+    public void intersection(AVLGTree<T> other, boolean parallel){
+        combine(SetOperation.INTERSECTION, other, parallel);
+    }
+
+    /**
+     * Keeps only the keys of <tt>this</tt> that <tt>other</tt> also stores, sequentially, and empties <tt>other</tt>.
+     * @param other The other tree. Its imbalance parameter cannot exceed that of <tt>this</tt>.
+     * @throws RuntimeException if <tt>other</tt> is less balanced than <tt>this</tt>.
+     * @see #intersection(AVLGTree, boolean)
+     */
+    public void intersection(AVLGTree<T> other){
+        intersection(other, false);
+    }
+
+    /**
+     * Removes from <tt>this</tt> all the keys that <tt>other</tt> stores, and empties <tt>other</tt>. This is the same
+     * divide-and-conquer as {@link #union(AVLGTree, boolean)}, with the same bounds, except that the root of
+     * <tt>other</tt> splits <tt>this</tt>, and is never joined back.
+     * @param other The other tree. Its imbalance parameter cannot exceed that of <tt>this</tt>.
+     * @param parallel If <tt>true</tt>, the two halves of large subproblems are combined in parallel, on the common
+     *                 {@link ForkJoinPool}.
+     * @throws RuntimeException if <tt>other</tt> is less balanced than <tt>this</tt>. Neither tree is modified in that
+     * case.
+     */
+    public void difference(AVLGTree<T> other, boolean parallel){
+        combine(SetOperation.DIFFERENCE, other, parallel);
+    }
+
+    /**
+     * Removes from <tt>this</tt> all the keys that <tt>other</tt> stores, sequentially, and empties <tt>other</tt>.
+     * @param other The other tree. Its imbalance parameter cannot exceed that of <tt>this</tt>.
+     * @throws RuntimeException if <tt>other</tt> is less balanced than <tt>this</tt>.
+     * @see #difference(AVLGTree, boolean)
+     */
+    public void difference(AVLGTree<T> other){
+        difference(other, false);
+    }
+
+    /**
+     * Returns a {@link Cursor} on the smallest key of the tree.
+     * @return A cursor on the smallest key, or past the end of the tree if it is empty.
+     * @see Cursor
+     */
+    public Cursor cursor(){
+        return new Cursor();
+    }
+
+    /**
+     * <p>A <tt>Cursor</tt> is a finger into its tree: it remembers the path from the root to its current key, along with
+     * the range of keys that every node on the path covers, so that it can start its next search from there, rather than
+     * from the root. {@link #seek(Comparable)} climbs the path only as far as the first node whose subtree covers the
+     * target, and descends from that node, so a key that lies <em>d</em> keys away usually costs <em>O(log d)</em>
+     * comparisons, instead of <em>O(log n)</em>; it costs as much as a search from the root only when the two keys lie on
+     * either side of a node high up in the tree. Stepping to the {@link #next()} or {@link #previous()} key costs
+     * amortized constant time.</p>
+     *
+     * <p>{@link #insert(Comparable)} locates its key in the same way, and rebalances its way up the remembered path only
+     * until a subtree keeps its height; above it, nodes only count the new key. This suits workloads whose keys lie close
+     * to the previous ones, such as time series.</p>
+     *
+     * <p>A cursor is not fail-fast: if the tree changes through anything other than the cursor itself, the cursor finds
+     * its key again from the root on its next operation, or the smallest key greater than it, if it is not stored
+     * anymore.</p>
+     *
+     * @see #cursor()
+     */
+    public final class Cursor {
+
+        private Node<T>[] path;
+        private Object[] lo, hi; // The open range of keys that path[i] covers, where a null bound is no bound.
+        private int depth; // The cursor is on path[depth - 1], or past the end of the tree if depth is 0.
+        private int expectedModCount;
+
+        @SuppressWarnings("unchecked")
+        private Cursor(){
+            int capacity = heightOf(root) + 2;
+            path = (Node<T>[])new Node<?>[capacity];
+            lo = new Object[capacity];
+            hi = new Object[capacity];
+            expectedModCount = modCount;
+            if(root != null){
+                push(root, null, null);
+                descendLeft();
+            }
+        }
+
+        private void push(Node<T> node, Object low, Object high){
+            if(depth == path.length){
+                path = Arrays.copyOf(path, 2 * depth);
+                lo = Arrays.copyOf(lo, 2 * depth);
+                hi = Arrays.copyOf(hi, 2 * depth);
+            }
+            path[depth] = node;
+            lo[depth] = low;
+            hi[depth++] = high;
+        }
+
+        private void descendLeft(){
+            for(Node<T> node = path[depth - 1].left; node != null; node = node.left)
+                push(node, lo[depth - 1], path[depth - 1].key);
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean covers(int level, T key){
+            return (lo[level] == null || key.compareTo((T)lo[level]) > 0) && (hi[level] == null || key.compareTo((T)hi[level]) < 0);
+        }
+
+        /*
+         * Climbs to the lowest node on the path whose subtree covers key, and descends from there to the node of key,
+         * or to the last node before the empty subtree where key would be. Returns whether key is stored.
+         */
+        private boolean locate(T key){
+            while(depth > 1 && !covers(depth - 1, key))
+                depth--;
+            if(depth == 0){
+                if(root == null)
+                    return false;
+                push(root, null, null);
+            }
+            return descend(key);
+        }
+
+        /*
+         * Descends from path[depth - 1], whose subtree covers key, like locate().
+         */
+        private boolean descend(T key){
+            while(true){
+                Node<T> node = path[depth - 1];
+                int cmp = key.compareTo(node.key);
+                if(cmp == 0)
+                    return true;
+                Node<T> child = (cmp < 0) ? node.left : node.right;
+                if(child == null)
+                    return false;
+                push(child, (cmp < 0) ? lo[depth - 1] : node.key, (cmp < 0) ? node.key : hi[depth - 1]);
+            }
+        }
+
+        /*
+         * Finds the key of the cursor again from the root, or the smallest key greater than it, if the tree changed
+         * behind the cursor's back.
+         */
+        private void revalidate(){
+            if(expectedModCount == modCount)
+                return;
+            expectedModCount = modCount;
+            if(depth == 0)
+                return;
+            T key = path[depth - 1].key;
+            depth = 0;
+            if(!locate(key) && depth > 0 && path[depth - 1].key.compareTo(key) < 0)
+                next();
+        }
+
+        /**
+         * Returns the key that the cursor is on.
+         * @return The current key, or <tt>null</tt> if the cursor is past the end of the tree.
+         */
+        public T get(){
+            revalidate();
+            return (depth == 0) ? null : path[depth - 1].key;
+        }
+
+        /**
+         * Moves the cursor to the smallest key that is at least <tt>key</tt>, starting from the current key.
+         * @param key The key to look for.
+         * @return The key that the cursor is now on, which equals <tt>key</tt> if the tree stores it, or <tt>null</tt> if
+         * every key is smaller than <tt>key</tt>, in which case the cursor is past the end of the tree.
+         */
+        public T seek(T key){
+            if(adaptive)
+                adapt(false);
+            revalidate();
+            if(!locate(key) && depth > 0 && path[depth - 1].key.compareTo(key) < 0)
+                return next();
+            return get();
+        }
+
+        /**
+         * Moves the cursor to the next key, in amortized constant time.
+         * @return The key that the cursor is now on, or <tt>null</tt> if it was on the greatest key, or past the end of
+         * the tree, in which case it is now past the end.
+         */
+        public T next(){
+            revalidate();
+            if(depth == 0)
+                return null;
+            Node<T> node = path[depth - 1];
+            if(node.right != null){
+                push(node.right, node.key, hi[depth - 1]);
+                descendLeft();
+            } else { // Climb up to the first ancestor that we left through its left subtree.
+                do {
+                    depth--;
+                } while(depth > 0 && path[depth - 1].right == path[depth]);
+            }
+            return get();
+        }
+
+        /**
+         * Moves the cursor to the previous key, in amortized constant time.
+         * @return The key that the cursor is now on, or <tt>null</tt> if it was on the smallest key, or past the end of
+         * the tree, in which case it is now past the end.
+         */
+        public T previous(){
+            revalidate();
+            if(depth == 0)
+                return null;
+            Node<T> node = path[depth - 1];
+            if(node.left != null){
+                push(node.left, lo[depth - 1], node.key);
+                for(Node<T> right = node.left.right; right != null; right = right.right)
+                    push(right, path[depth - 1].key, hi[depth - 1]);
+            } else { // Climb up to the first ancestor that we left through its right subtree.
+                do {
+                    depth--;
+                } while(depth > 0 && path[depth - 1].left == path[depth]);
+            }
+            return get();
+        }
+
+        /**
+         * Inserts <tt>key</tt> in the tree, starting the search for its place from the current key, and moves the cursor
+         * to it. If the tree already stores a key equal to <tt>key</tt>, the tree is left unchanged.
+         * @param key The key to insert in the tree.
+         */
+        public void insert(T key){
+            if(adaptive)
+                adapt(true);
+            revalidate();
+            if(statistics != null)
+                statistics.beginInsert();
+            if(!locate(key)){
+                Node<T> node = new Node<>(key);
+                if(depth == 0){
+                    root = node;
+                    push(node, null, null);
+                } else {
+                    Node<T> parent = path[depth - 1];
+                    if(key.compareTo(parent.key) < 0){
+                        parent.left = node;
+                        push(node, lo[depth - 1], parent.key);
+                    } else {
+                        parent.right = node;
+                        push(node, parent.key, hi[depth - 1]);
+                    }
+                    rebalanceUp(key);
+                }
+                modCount++;
+                expectedModCount = modCount;
+            }
+            if(statistics != null)
+                statistics.endUpdate(heightOf(root));
+        }
 
+        /*
+         * Rebalances the ancestors of the new node of key, from its parent up, until one of them keeps its height without
+         * a rotation, and then only counts key in the subtree sizes above it. If rotations changed the path, it is found
+         * again from the highest subtree that they changed.
+         */
+        private void rebalanceUp(T key){
+            int changed = -1;
+            for(int level = depth - 2; level >= 0; level--){
+                Node<T> node = path[level];
+                int height = node.height;
+                Node<T> fixed = rebalance(node);
+                if(fixed != node){
+                    if(level == 0)
+                        root = fixed;
+                    else if(path[level - 1].left == node)
+                        path[level - 1].left = fixed;
+                    else
+                        path[level - 1].right = fixed;
+                    path[level] = fixed;
+                    changed = level;
+                } else if(node.height == height){
+                    for(int above = level - 1; above >= 0; above--)
+                        path[above].size++;
+                    break;
+                }
+            }
+            if(changed >= 0){
+                depth = changed + 1;
+                descend(key);
+            }
+        }
     }
 }
@@ -0,0 +1,304 @@
+package projects.avlg;
+
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * <p>{@link AbstractPooledAVLGTree} is the skeleton of the AVL-G trees that keep their nodes in a pool of parallel
+ * arrays instead of in objects: {@link PooledAVLGTree}, {@link IntAVLGTree} and {@link LongAVLGTree}. A node is an
+ * <tt>int</tt> index into the arrays <tt>left</tt>, <tt>right</tt> and <tt>height</tt>, and into the array of keys that
+ * every subclass keeps, with the type of key that it stores. Index {@link #NIL} is a sentinel of height -1 that plays the
+ * role of <tt>null</tt>, so that reading the height of a missing child needs no branch.</p>
+ *
+ * <p>Deleted nodes go on a free list, threaded through <tt>left</tt>, and are reused by later insertions before the
+ * arrays grow again. The arrays grow by half when they are full, and never shrink.</p>
+ *
+ * <p>Updates do not recurse. Subclasses search for the key themselves, since that is where the key type matters, and
+ * record the path on {@link #path}; this class then fixes the path bottom-up, with the same rotations as
+ * {@link AVLGTree}, and stops as soon as a subtree keeps its height without rotating.</p>
+ */
+abstract class AbstractPooledAVLGTree {
+
+    /* *************************************************************************
+     ************************ PRIVATE METHODS AND FIELDS ***********************
+     ***************************************************************************/
+
+    static final int NIL = 0;
+
+    int[] left, right, height;
+    int root = NIL;
+
+    /**
+     * The path of the current update, from the root down: a node that the search went left from is stored as is, one
+     * that it went right from as its bitwise complement, which is negative.
+     */
+    int[] path = new int[32];
+
+    private int freeHead = NIL, unused = 1; // unused: the smallest index that was never allocated.
+    private int count;
+    private final int maxImbalance;
+
+    AbstractPooledAVLGTree(int maxImbalance, int initialCapacity) throws InvalidBalanceException {
+        if(maxImbalance < 1)
+            throw new InvalidBalanceException("The maximum imbalance of an AVL-G tree needs to be at least 1; we were given " + maxImbalance + ".");
+        this.maxImbalance = maxImbalance;
+        int capacity = Math.max(initialCapacity, 1) + 1; // Plus the sentinel.
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new int[capacity];
+        height[NIL] = -1;
+    }
+
+    /**
+     * Resizes the array of keys to the given capacity, keeping its contents.
+     * @param capacity The new length of the arrays of the pool.
+     */
+    abstract void resizeKeys(int capacity);
+
+    /**
+     * Copies the key of node <tt>from</tt> into node <tt>to</tt>.
+     */
+    abstract void moveKey(int from, int to);
+
+    /**
+     * Forgets the key of a node that goes on the free list. Only keys that are references need this.
+     */
+    abstract void clearKey(int node);
+
+    /**
+     * Compares the keys of two nodes, like {@link Comparable#compareTo(Object)}.
+     */
+    abstract int compareKeys(int a, int b);
+
+    /**
+     * Makes room on {@link #path} for any update; a path is never longer than the height of the tree plus one, and
+     * deletions go one node further, down to the successor.
+     */
+    void ensurePath(){
+        int needed = height[root] + 2;
+        if(path.length < needed)
+            path = Arrays.copyOf(path, 2 * needed);
+    }
+
+    /**
+     * Takes a node off the free list, or off the end of the arrays, which grow if they are full.
+     * @return A node with no children, of height 0.
+     */
+    int allocate(){
+        int node;
+        if(freeHead != NIL){
+            node = freeHead;
+            freeHead = left[node];
+        } else {
+            if(unused == left.length){
+                int capacity = left.length + (left.length >> 1) + 1;
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+                height = Arrays.copyOf(height, capacity);
+                resizeKeys(capacity);
+            }
+            node = unused++;
+        }
+        left[node] = right[node] = NIL;
+        height[node] = 0;
+        count++;
+        return node;
+    }
+
+    private void release(int node){
+        clearKey(node);
+        left[node] = freeHead;
+        freeHead = node;
+        count--;
+    }
+
+    private void update(int node){
+        height[node] = Math.max(height[left[node]], height[right[node]]) + 1;
+    }
+
+    private int rotateRight(int node){
+        int pivot = left[node];
+        left[node] = right[pivot];
+        right[pivot] = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private int rotateLeft(int node){
+        int pivot = right[node];
+        right[node] = left[pivot];
+        left[pivot] = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private int rebalance(int node){
+        update(node);
+        int balance = height[left[node]] - height[right[node]];
+        if(balance > maxImbalance){
+            int l = left[node];
+            if(height[left[l]] < height[right[l]])
+                left[node] = rotateLeft(l);
+            return rotateRight(node);
+        }
+        if(balance < -maxImbalance){
+            int r = right[node];
+            if(height[right[r]] < height[left[r]])
+                right[node] = rotateRight(r);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    /**
+     * Hangs <tt>child</tt> below the last of the first <tt>depth</tt> nodes of {@link #path}, on the side that the path
+     * went, and rebalances the path bottom-up.
+     */
+    void relink(int depth, int child){
+        while(depth > 0){
+            int step = path[--depth], node = (step >= 0) ? step : ~step;
+            if(step >= 0)
+                left[node] = child;
+            else
+                right[node] = child;
+            int before = height[node];
+            child = rebalance(node);
+            if(child == node && height[node] == before)
+                return; // Nothing changes further up.
+        }
+        root = child;
+    }
+
+    /**
+     * Removes <tt>node</tt>, which the first <tt>depth</tt> nodes of {@link #path} lead to. A node with two children
+     * takes the key of its successor, whose node is removed instead.
+     */
+    void removeAt(int depth, int node){
+        if(left[node] != NIL && right[node] != NIL){
+            path[depth++] = ~node;
+            int successor = right[node];
+            while(left[successor] != NIL){
+                path[depth++] = successor;
+                successor = left[successor];
+            }
+            moveKey(successor, node);
+            node = successor;
+        }
+        int child = (left[node] != NIL) ? left[node] : right[node];
+        release(node);
+        relink(depth, child);
+    }
+
+    /**
+     * Visits the nodes of the tree in ascending order of keys.
+     * @param visitor Receives the index of every node.
+     */
+    void inOrder(IntConsumer visitor){
+        int[] stack = new int[height[root] + 1];
+        int top = 0;
+        for(int node = root; node != NIL; node = left[node])
+            stack[top++] = node;
+        while(top > 0){
+            int node = stack[--top];
+            visitor.accept(node);
+            for(int curr = right[node]; curr != NIL; curr = left[curr])
+                stack[top++] = curr;
+        }
+    }
+
+    /*
+     * Returns the actual height of the subtree rooted at node, or Integer.MIN_VALUE if it is not AVL-G balanced, or if
+     * the heights that it caches are wrong.
+     */
+    private int checkBalance(int node){
+        if(node == NIL)
+            return -1;
+        int l = checkBalance(left[node]), r = checkBalance(right[node]);
+        if(l == Integer.MIN_VALUE || r == Integer.MIN_VALUE || Math.abs(l - r) > maxImbalance)
+            return Integer.MIN_VALUE;
+        int h = Math.max(l, r) + 1;
+        return (height[node] == h) ? h : Integer.MIN_VALUE;
+    }
+
+    /* *********************************************************************
+     ************************* PUBLIC (INTERFACE) METHODS *******************
+     **********************************************************************/
+
+    /**
+     * Retrieves the maximum imbalance parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter.
+     */
+    public int getMaxImbalance(){
+        return maxImbalance;
+    }
+
+    /**
+     * Returns the height of the tree.
+     * @return The height of the tree. If the tree is empty, returns -1.
+     */
+    public int getHeight(){
+        return height[root];
+    }
+
+    /**
+     * Returns the number of keys in the tree.
+     * @return The number of keys in the tree.
+     */
+    public int getCount(){
+        return count;
+    }
+
+    /**
+     * Queries the tree for emptiness.
+     * @return <tt>true</tt> if the tree has no keys, <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty(){
+        return count == 0;
+    }
+
+    /**
+     * Returns the number of nodes that the pool can hold before its arrays grow again, free ones included.
+     * @return The capacity of the pool.
+     */
+    public int getCapacity(){
+        return left.length - 1;
+    }
+
+    /**
+     * Empties the tree. The pool keeps its capacity, and the nodes are reused by later insertions.
+     */
+    public void clear(){
+        for(int node = 1; node < unused; node++)
+            clearKey(node);
+        root = freeHead = NIL;
+        unused = 1;
+        count = 0;
+    }
+
+    /**
+     * Establishes whether the tree satisfies the BST condition.
+     * @return <tt>true</tt> if the keys of the tree are in strictly ascending order in-order, <tt>false</tt> otherwise.
+     */
+    public boolean isBST(){
+        int[] previous = {NIL};
+        boolean[] sorted = {true};
+        inOrder(node -> {
+            if(previous[0] != NIL && compareKeys(previous[0], node) >= 0)
+                sorted[0] = false;
+            previous[0] = node;
+        });
+        return sorted[0];
+    }
+
+    /**
+     * Establishes whether the tree satisfies the AVL-G condition, and whether every node caches its height correctly.
+     * @return <tt>true</tt> if the tree is AVL-G balanced, <tt>false</tt> otherwise.
+     */
+    public boolean isAVLGBalanced(){
+        return checkBalance(root) != Integer.MIN_VALUE;
+    }
+}
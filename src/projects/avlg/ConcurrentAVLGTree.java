@@ -0,0 +1,567 @@
+package projects.avlg;
+
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>{@link ConcurrentAVLGTree} is a thread-safe set of keys, organized as an AVL-G tree: the same relaxed balance
+ * condition as {@link AVLGTree}, where the heights of the two subtrees of any node differ by at most
+ * {@link #getMaxImbalance() maxImbalance}. It follows the optimistic concurrency control of Bronson, Casper, Chafi and
+ * Olukotun ("A Practical Concurrent Binary Search Tree"):</p>
+ * <ul>
+ *     <li><b>Lookups take no locks.</b> Every node carries a version number, which a writer bumps whenever the node's
+ *     subtree is about to lose keys: when the node is rotated down, or unlinked. A lookup reads a node's version before
+ *     stepping into it, and checks it again after reading the next child. If it changed, the lookup backs up to the
+ *     parent and retries from there, not from the root. Rotations that only move keys <em>into</em> a subtree do not
+ *     disturb lookups at all.</li>
+ *     <li><b>Writers lock only the nodes they change.</b> They search like lookups, and lock just the node that they link a
+ *     new leaf under, or the node, and its parent, that they delete. Rebalancing then walks back up, locking a parent
+ *     before its child, and at most a parent, a node and two of its descendants at a time, for a single or a double
+ *     rotation.</li>
+ *     <li><b>Deleting a key that has two children does not restructure the tree.</b> The node stays as a <em>routing
+ *     node</em>, which guides searches but holds no key, until it has lost a child and can be unlinked, or a later
+ *     insertion of the same key revives it. This spares deletions the successor swap, which would move a key across the
+ *     paths of concurrent lookups.</li>
+ * </ul>
+ *
+ * <p>Rebalancing is decoupled from the update that damaged the tree, so balance is only guaranteed once the writers are
+ * done, while under contention the tree may briefly be less balanced than it should be. <tt>maxImbalance</tt> directly
+ * controls how much repair work there is: a larger bound tolerates more imbalance before a rotation, and every rotation
+ * locks up to four nodes and sends the lookups that cross it into a retry. Read-mostly workloads on many cores will want
+ * a small bound, write-heavy ones a larger one.</p>
+ *
+ * <p>All operations are linearizable, except for {@link #getCount()}, {@link #getHeight()}, {@link #isBST()} and
+ * {@link #isAVLGBalanced()}, which are only exact while no update is in progress.</p>
+ *
+ * @param <T> The {@link java.lang.Comparable} type held by the data structure.
+ * @see AVLGTree
+ */
+public class ConcurrentAVLGTree<T extends Comparable<T>> {
+
+    /* *************************************************************************
+     ************************ PRIVATE METHODS AND FIELDS ***********************
+     ***************************************************************************/
+
+    private static final class Node<T> {
+        private final T key;
+        private volatile boolean present; // False for routing nodes.
+        private volatile int height;
+        private volatile long version;
+        private volatile Node<T> parent, left, right;
+
+        private Node(T key, Node<T> parent){
+            this.key = key;
+            this.parent = parent;
+            present = (key != null);
+        }
+
+        private Node<T> child(int dir){
+            return (dir < 0) ? left : right;
+        }
+    }
+
+    /*
+     * Version bits: an unlinked node never changes again, a shrinking one is being rotated down by the writer that holds
+     * its lock, and every completed change adds CHANGE.
+     */
+    private static final long UNLINKED = 1, SHRINKING = 2, CHANGE = 4;
+    private static final int SPINS = 100;
+
+    // What a node needs, besides a new height, which nodeCondition() returns as such.
+    private static final int NOTHING_REQUIRED = -2, UNLINK_REQUIRED = -3, REBALANCE_REQUIRED = -4;
+
+    private static final Object RETRY = new Object();
+
+    // The root is the right child of the holder, so that replacing it is a change to a node like any other.
+    private final Node<T> holder = new Node<>(null, null);
+    private final int maxImbalance;
+    private final AtomicInteger count = new AtomicInteger();
+
+    private static int heightOf(Node<?> node){
+        return (node == null) ? -1 : node.height;
+    }
+
+    private static boolean isUnlinked(long version){
+        return (version & UNLINKED) != 0;
+    }
+
+    /*
+     * Waits for a rotation of node, which the caller saw in progress, to complete. Rotations are short, so the caller
+     * spins for a while before blocking on the lock of node, which the rotating writer holds.
+     */
+    private static void waitUntilChangeCompleted(Node<?> node, long version){
+        if((version & SHRINKING) == 0)
+            return;
+        for(int i = 0; i < SPINS; i++)
+            if(node.version != version)
+                return;
+        synchronized(node){
+            // The rotation is over once we own the lock.
+        }
+    }
+
+    /*
+     * The searches below all step from node, whose version they read as nodeVersion, into its child in direction dir,
+     * and return RETRY if node was rotated down or unlinked meanwhile, so that the caller retries the step from its own
+     * node. Whatever they return otherwise was true while node was still valid.
+     */
+
+    private Object attemptSearch(T key, Node<T> node, int dir, long nodeVersion){
+        while(true){
+            Node<T> child = node.child(dir);
+            if(node.version != nodeVersion)
+                return RETRY;
+            if(child == null)
+                return null;
+            int cmp = key.compareTo(child.key);
+            if(cmp == 0)
+                return child.present ? child.key : null;
+            long childVersion = child.version;
+            if((childVersion & (SHRINKING | UNLINKED)) != 0){
+                waitUntilChangeCompleted(child, childVersion);
+            } else if(child == node.child(dir)){
+                if(node.version != nodeVersion)
+                    return RETRY;
+                Object result = attemptSearch(key, child, cmp, childVersion);
+                if(result != RETRY)
+                    return result;
+            }
+        }
+    }
+
+    private Object attemptInsert(T key, Node<T> node, int dir, long nodeVersion){
+        while(true){
+            Node<T> child = node.child(dir);
+            if(node.version != nodeVersion)
+                return RETRY;
+            if(child == null){
+                synchronized(node){
+                    if(node.version != nodeVersion)
+                        return RETRY;
+                    if(node.child(dir) != null)
+                        continue; // Another writer got there first.
+                    Node<T> leaf = new Node<>(key, node);
+                    if(dir < 0)
+                        node.left = leaf;
+                    else
+                        node.right = leaf;
+                }
+                count.incrementAndGet();
+                fixHeightAndRebalance(node);
+                return Boolean.TRUE;
+            }
+            int cmp = key.compareTo(child.key);
+            if(cmp == 0)
+                return revive(child);
+            long childVersion = child.version;
+            if((childVersion & (SHRINKING | UNLINKED)) != 0){
+                waitUntilChangeCompleted(child, childVersion);
+            } else if(child == node.child(dir)){
+                if(node.version != nodeVersion)
+                    return RETRY;
+                Object result = attemptInsert(key, child, cmp, childVersion);
+                if(result != RETRY)
+                    return result;
+            }
+        }
+    }
+
+    /*
+     * Stores the key of node again, if node is a routing node.
+     */
+    private Object revive(Node<T> node){
+        if(node.present)
+            return Boolean.FALSE;
+        synchronized(node){
+            if(isUnlinked(node.version))
+                return RETRY;
+            if(node.present)
+                return Boolean.FALSE;
+            node.present = true;
+        }
+        count.incrementAndGet();
+        return Boolean.TRUE;
+    }
+
+    private Object attemptDelete(T key, Node<T> node, int dir, long nodeVersion){
+        while(true){
+            Node<T> child = node.child(dir);
+            if(node.version != nodeVersion)
+                return RETRY;
+            if(child == null)
+                return null;
+            int cmp = key.compareTo(child.key);
+            if(cmp == 0)
+                return deleteNode(node, child);
+            long childVersion = child.version;
+            if((childVersion & (SHRINKING | UNLINKED)) != 0){
+                waitUntilChangeCompleted(child, childVersion);
+            } else if(child == node.child(dir)){
+                if(node.version != nodeVersion)
+                    return RETRY;
+                Object result = attemptDelete(key, child, cmp, childVersion);
+                if(result != RETRY)
+                    return result;
+            }
+        }
+    }
+
+    /*
+     * Deletes the key of node, a child of parent: by unlinking node if it has at most one child, or by turning it into a
+     * routing node otherwise.
+     */
+    private Object deleteNode(Node<T> parent, Node<T> node){
+        while(true){
+            if(!node.present)
+                return null;
+            if(node.left == null || node.right == null){
+                synchronized(parent){
+                    if(isUnlinked(parent.version) || node.parent != parent)
+                        return RETRY;
+                    synchronized(node){
+                        if(!node.present)
+                            return null;
+                        if(node.left != null && node.right != null)
+                            continue; // Gained a child meanwhile.
+                        node.present = false;
+                        unlink(parent, node);
+                    }
+                }
+                count.decrementAndGet();
+                fixHeightAndRebalance(parent);
+                return node.key;
+            }
+            synchronized(node){
+                if(isUnlinked(node.version))
+                    return RETRY;
+                if(!node.present)
+                    return null;
+                if(node.left == null || node.right == null)
+                    continue; // Lost a child meanwhile, so it can be unlinked after all.
+                node.present = false;
+            }
+            count.decrementAndGet();
+            return node.key;
+        }
+    }
+
+    /*
+     * Replaces node, which has at most one child, by that child, under the locks of parent and node.
+     */
+    private static <T> void unlink(Node<T> parent, Node<T> node){
+        Node<T> splice = (node.left != null) ? node.left : node.right;
+        if(parent.left == node)
+            parent.left = splice;
+        else
+            parent.right = splice;
+        if(splice != null)
+            splice.parent = parent;
+        node.version = UNLINKED;
+    }
+
+    /*
+     * Reads what node needs without locking it: to be unlinked, if it is a routing node with at most one child, to be
+     * rotated, if it is too imbalanced, a new height, or nothing.
+     */
+    private int nodeCondition(Node<T> node){
+        Node<T> left = node.left, right = node.right;
+        if((left == null || right == null) && !node.present)
+            return UNLINK_REQUIRED;
+        int hL = heightOf(left), hR = heightOf(right), balance = hL - hR;
+        if(balance > maxImbalance || balance < -maxImbalance)
+            return REBALANCE_REQUIRED;
+        int height = Math.max(hL, hR) + 1;
+        return (height != node.height) ? height : NOTHING_REQUIRED;
+    }
+
+    /*
+     * Repairs the heights, the balance and the routing nodes from node up, for as long as something needs repairing.
+     * Rotations also leave the nodes that they moved down on a stack, since those may need work of their own, which is
+     * done once the walk up is over.
+     */
+    private void fixHeightAndRebalance(Node<T> node){
+        ArrayDeque<Node<T>> damaged = null;
+        while(true){
+            if(node == null || node.parent == null){ // Done, or reached the holder.
+                if(damaged == null || damaged.isEmpty())
+                    return;
+                node = damaged.pop();
+                continue;
+            }
+            int condition = nodeCondition(node);
+            if(condition == NOTHING_REQUIRED || isUnlinked(node.version)){
+                node = null;
+            } else if(condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED){
+                synchronized(node){
+                    node = isUnlinked(node.version) ? null : fixHeight(node);
+                }
+            } else {
+                if(damaged == null)
+                    damaged = new ArrayDeque<>();
+                Node<T> parent = node.parent;
+                synchronized(parent){
+                    if(!isUnlinked(parent.version) && node.parent == parent){
+                        synchronized(node){
+                            // Unlinked nodes keep their parent link, so that check alone does not rule them out.
+                            node = isUnlinked(node.version) ? null : rebalance(parent, node, damaged);
+                        }
+                    } // Otherwise, node moved meanwhile, so try again with its new parent.
+                }
+            }
+        }
+    }
+
+    /*
+     * Updates the height of node, under its lock, and returns the next node to repair.
+     */
+    private Node<T> fixHeight(Node<T> node){
+        int condition = nodeCondition(node);
+        if(condition == REBALANCE_REQUIRED || condition == UNLINK_REQUIRED)
+            return node;
+        if(condition == NOTHING_REQUIRED)
+            return null;
+        node.height = condition;
+        return node.parent;
+    }
+
+    /*
+     * Unlinks, rotates or updates node, under the locks of parent and node, and returns the next node to repair.
+     */
+    private Node<T> rebalance(Node<T> parent, Node<T> node, ArrayDeque<Node<T>> damaged){
+        Node<T> left = node.left, right = node.right;
+        if((left == null || right == null) && !node.present){
+            unlink(parent, node);
+            return parent;
+        }
+        int hL = heightOf(left), hR = heightOf(right), balance = hL - hR;
+        if(balance > maxImbalance)
+            return rebalanceLeftHeavy(parent, node, left, hR, damaged);
+        if(balance < -maxImbalance)
+            return rebalanceRightHeavy(parent, node, right, hL, damaged);
+        int height = Math.max(hL, hR) + 1;
+        if(height == node.height)
+            return null;
+        node.height = height;
+        return parent;
+    }
+
+    /*
+     * Rotates node, whose left subtree is too tall, right: once, if the taller grandchild is on the outside, or twice,
+     * by way of left's right child, otherwise, as in AVLGTree.rebalance().
+     */
+    private Node<T> rebalanceLeftHeavy(Node<T> parent, Node<T> node, Node<T> left, int hR, ArrayDeque<Node<T>> damaged){
+        synchronized(left){
+            if(heightOf(left) - hR <= maxImbalance)
+                return node; // Changed meanwhile: look at node again.
+            Node<T> inner = left.right;
+            if(heightOf(left.left) < heightOf(inner)){
+                synchronized(inner){
+                    rotateLeft(node, left, inner);
+                    rotateRight(parent, node, inner);
+                }
+                damaged.push(left);
+            } else {
+                rotateRight(parent, node, left);
+            }
+        }
+        damaged.push(node);
+        return parent;
+    }
+
+    private Node<T> rebalanceRightHeavy(Node<T> parent, Node<T> node, Node<T> right, int hL, ArrayDeque<Node<T>> damaged){
+        synchronized(right){
+            if(heightOf(right) - hL <= maxImbalance)
+                return node;
+            Node<T> inner = right.left;
+            if(heightOf(right.right) < heightOf(inner)){
+                synchronized(inner){
+                    rotateRight(node, right, inner);
+                    rotateLeft(parent, node, inner);
+                }
+                damaged.push(right);
+            } else {
+                rotateLeft(parent, node, right);
+            }
+        }
+        damaged.push(node);
+        return parent;
+    }
+
+    /*
+     * Rotates node right, under the locks of parent, node and pivot, its left child. node loses keys, so it is marked as
+     * shrinking for the duration; pivot only gains some.
+     */
+    private static <T> void rotateRight(Node<T> parent, Node<T> node, Node<T> pivot){
+        long version = node.version;
+        node.version = version | SHRINKING;
+        Node<T> inner = pivot.right;
+        node.left = inner;
+        if(inner != null)
+            inner.parent = node;
+        pivot.right = node;
+        node.parent = pivot;
+        if(parent.left == node)
+            parent.left = pivot;
+        else
+            parent.right = pivot;
+        pivot.parent = parent;
+        node.height = Math.max(heightOf(inner), heightOf(node.right)) + 1;
+        pivot.height = Math.max(heightOf(pivot.left), node.height) + 1;
+        node.version = version + CHANGE;
+    }
+
+    private static <T> void rotateLeft(Node<T> parent, Node<T> node, Node<T> pivot){
+        long version = node.version;
+        node.version = version | SHRINKING;
+        Node<T> inner = pivot.left;
+        node.right = inner;
+        if(inner != null)
+            inner.parent = node;
+        pivot.left = node;
+        node.parent = pivot;
+        if(parent.left == node)
+            parent.left = pivot;
+        else
+            parent.right = pivot;
+        pivot.parent = parent;
+        node.height = Math.max(heightOf(node.left), heightOf(inner)) + 1;
+        pivot.height = Math.max(node.height, heightOf(pivot.right)) + 1;
+        node.version = version + CHANGE;
+    }
+
+    private boolean isBST(Node<T> node, Node<T> parent, T lo, T hi){
+        if(node == null)
+            return true;
+        if(node.parent != parent || (lo != null && node.key.compareTo(lo) <= 0) || (hi != null && node.key.compareTo(hi) >= 0))
+            return false;
+        return isBST(node.left, node, lo, node.key) && isBST(node.right, node, node.key, hi);
+    }
+
+    /*
+     * Returns the actual height of the subtree rooted at node, or Integer.MIN_VALUE if it is not AVL-G balanced, if the
+     * heights it caches are wrong, or if it still has a routing node that should have been unlinked.
+     */
+    private int checkBalance(Node<T> node){
+        if(node == null)
+            return -1;
+        int left = checkBalance(node.left), right = checkBalance(node.right);
+        if(left == Integer.MIN_VALUE || right == Integer.MIN_VALUE || Math.abs(left - right) > maxImbalance)
+            return Integer.MIN_VALUE;
+        if(!node.present && (node.left == null || node.right == null))
+            return Integer.MIN_VALUE;
+        int height = Math.max(left, right) + 1;
+        return (node.height == height) ? height : Integer.MIN_VALUE;
+    }
+
+    /* *********************************************************************
+     ************************* PUBLIC (INTERFACE) METHODS *******************
+     **********************************************************************/
+
+    /**
+     * Creates an empty tree with the given maximum imbalance.
+     * @param maxImbalance The maximum imbalance allowed by the tree, once all updates are done.
+     * @throws InvalidBalanceException if <tt>maxImbalance</tt> is a value smaller than 1.
+     */
+    public ConcurrentAVLGTree(int maxImbalance) throws InvalidBalanceException {
+        if(maxImbalance < 1)
+            throw new InvalidBalanceException("The maximum imbalance of an AVL-G tree needs to be at least 1; we were given " + maxImbalance + ".");
+        this.maxImbalance = maxImbalance;
+    }
+
+    /**
+     * Inserts <tt>key</tt> in the tree, unless the tree already stores a key equal to it.
+     * @param key The key to insert in the tree.
+     * @return <tt>true</tt> if <tt>key</tt> was inserted, <tt>false</tt> if it was already stored.
+     */
+    public boolean insert(T key){
+        while(true){
+            Object result = attemptInsert(key, holder, 1, holder.version);
+            if(result != RETRY)
+                return (Boolean)result;
+        }
+    }
+
+    /**
+     * Deletes <tt>key</tt> from the tree and returns the key that was stored. Unlike {@link AVLGTree#delete(Comparable)},
+     * this does not throw when the tree is empty, since emptiness could change at any moment.
+     * @param key The key to delete from the tree.
+     * @return The key that was removed, or <tt>null</tt> if the key was not found.
+     */
+    @SuppressWarnings("unchecked")
+    public T delete(T key){
+        while(true){
+            Object result = attemptDelete(key, holder, 1, holder.version);
+            if(result != RETRY)
+                return (T)result;
+        }
+    }
+
+    /**
+     * Searches for <tt>key</tt> in the tree, without taking any lock. Unlike {@link AVLGTree#search(Comparable)}, this
+     * does not throw when the tree is empty.
+     * @param key The key to search for.
+     * @return The stored key equal to <tt>key</tt>, or <tt>null</tt> if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public T search(T key){
+        while(true){
+            Object result = attemptSearch(key, holder, 1, holder.version);
+            if(result != RETRY)
+                return (T)result;
+        }
+    }
+
+    /**
+     * Retrieves the maximum imbalance parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter.
+     */
+    public int getMaxImbalance(){
+        return maxImbalance;
+    }
+
+    /**
+     * Returns the number of keys in the tree. While updates are in progress, this is only an estimate.
+     * @return The number of keys in the tree.
+     */
+    public int getCount(){
+        return count.get();
+    }
+
+    /**
+     * Queries the tree for emptiness.
+     * @return <tt>true</tt> if {@link #getCount()} is 0, <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty(){
+        return getCount() == 0;
+    }
+
+    /**
+     * Returns the height of the tree, routing nodes included, as the root caches it. While updates are in progress,
+     * this may lag behind the actual height.
+     * @return The height of the tree, or -1 if it has no nodes.
+     */
+    public int getHeight(){
+        return heightOf(holder.right);
+    }
+
+    /**
+     * Establishes whether the tree satisfies the BST condition, routing nodes included, and whether every node's parent
+     * link is correct. Only meaningful while no update is in progress.
+     * @return <tt>true</tt> if the tree is a well-formed binary search tree, <tt>false</tt> otherwise.
+     */
+    public boolean isBST(){
+        return isBST(holder.right, holder, null, null);
+    }
+
+    /**
+     * Establishes whether the tree satisfies the AVL-G condition, whether every node caches its height correctly, and
+     * whether every routing node has two children: that is, whether all the repairs that updates defer are done. Only
+     * meaningful while no update is in progress.
+     * @return <tt>true</tt> if the tree is AVL-G balanced and fully repaired, <tt>false</tt> otherwise.
+     */
+    public boolean isAVLGBalanced(){
+        return checkBalance(holder.right) != Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,150 @@
+package projects.avlg;
+
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>{@link LongAVLGTree} is an AVL-G tree of <tt>long</tt> keys, whose nodes live in a pool of parallel arrays, as
+ * described in {@link AbstractPooledAVLGTree}. A key is never boxed: it is stored in a <tt>long[]</tt> and compared with
+ * <tt>&lt;</tt>. With the child links and the height, a node takes 20 bytes, against around 56 for a node of an
+ * {@link AVLGTree AVLGTree&lt;Long&gt;} and the <tt>Long</tt> that it points to, and the nodes sit next to each other
+ * in memory, which the garbage collector never has to trace one by one.</p>
+ *
+ * <p>Unlike {@link AVLGTree}, the tree does not maintain subtree sizes, which would cost another 4 bytes per node, so it
+ * does not answer order-statistic queries.</p>
+ *
+ * @see IntAVLGTree
+ * @see PooledAVLGTree
+ */
+public class LongAVLGTree extends AbstractPooledAVLGTree {
+
+    /* *************************************************************************
+     ************************ PRIVATE METHODS AND FIELDS ***********************
+     ***************************************************************************/
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+
+    @Override
+    void resizeKeys(int capacity){
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    @Override
+    void moveKey(int from, int to){
+        keys[to] = keys[from];
+    }
+
+    @Override
+    void clearKey(int node){
+        // Nothing to release.
+    }
+
+    @Override
+    int compareKeys(int a, int b){
+        return Long.compare(keys[a], keys[b]);
+    }
+
+    /* *********************************************************************
+     ************************* PUBLIC (INTERFACE) METHODS *******************
+     **********************************************************************/
+
+    /**
+     * Creates an empty tree with the given maximum imbalance.
+     * @param maxImbalance The maximum imbalance allowed by the tree.
+     * @throws InvalidBalanceException if <tt>maxImbalance</tt> is a value smaller than 1.
+     */
+    public LongAVLGTree(int maxImbalance) throws InvalidBalanceException {
+        this(maxImbalance, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty tree with the given maximum imbalance, whose pool can hold <tt>initialCapacity</tt> keys before
+     * it needs to grow.
+     * @param maxImbalance The maximum imbalance allowed by the tree.
+     * @param initialCapacity The number of keys to make room for.
+     * @throws InvalidBalanceException if <tt>maxImbalance</tt> is a value smaller than 1.
+     */
+    public LongAVLGTree(int maxImbalance, int initialCapacity) throws InvalidBalanceException {
+        super(maxImbalance, initialCapacity);
+        keys = new long[left.length];
+    }
+
+    /**
+     * Inserts <tt>key</tt> in the tree, unless it is already stored.
+     * @param key The key to insert.
+     * @return <tt>true</tt> if <tt>key</tt> was inserted, <tt>false</tt> if it was already stored.
+     */
+    public boolean insert(long key){
+        ensurePath();
+        int node = root, depth = 0;
+        while(node != NIL){
+            long nodeKey = keys[node];
+            if(key == nodeKey)
+                return false;
+            if(key < nodeKey){
+                path[depth++] = node;
+                node = left[node];
+            } else {
+                path[depth++] = ~node;
+                node = right[node];
+            }
+        }
+        int leaf = allocate();
+        keys[leaf] = key;
+        relink(depth, leaf);
+        return true;
+    }
+
+    /**
+     * Deletes <tt>key</tt> from the tree, if it is stored.
+     * @param key The key to delete.
+     * @return <tt>true</tt> if <tt>key</tt> was deleted, <tt>false</tt> if it was not stored.
+     */
+    public boolean delete(long key){
+        ensurePath();
+        int node = root, depth = 0;
+        while(node != NIL){
+            long nodeKey = keys[node];
+            if(key == nodeKey){
+                removeAt(depth, node);
+                return true;
+            }
+            if(key < nodeKey){
+                path[depth++] = node;
+                node = left[node];
+            } else {
+                path[depth++] = ~node;
+                node = right[node];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Searches for <tt>key</tt> in the tree.
+     * @param key The key to search for.
+     * @return <tt>true</tt> if <tt>key</tt> is stored, <tt>false</tt> otherwise.
+     */
+    public boolean contains(long key){
+        int node = root;
+        while(node != NIL){
+            long nodeKey = keys[node];
+            if(key == nodeKey)
+                return true;
+            node = (key < nodeKey) ? left[node] : right[node];
+        }
+        return false;
+    }
+
+    /**
+     * Passes every key of the tree to <tt>action</tt>, in ascending order.
+     * @param action The action to perform on every key.
+     */
+    public void forEach(LongConsumer action){
+        inOrder(node -> action.accept(keys[node]));
+    }
+}
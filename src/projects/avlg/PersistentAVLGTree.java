@@ -0,0 +1,332 @@
+package projects.avlg;
+
+import projects.avlg.exceptions.EmptyTreeException;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>{@link PersistentAVLGTree} is an {@link AVLGTree} whose nodes are never modified once they are built. An insertion
+ * or a deletion copies the nodes on the path from the root to the key that it changes, rebalancing the copies with the
+ * same single and double rotations as {@link AVLGTree}, and shares every other subtree with the previous version. That
+ * is O(log n) new nodes per update, and the old root still describes the old version, intact.</p>
+ *
+ * <p>This makes {@link #snapshot()} O(1): a snapshot is a new tree that shares the current root. Readers can then take
+ * as long as they need over a snapshot, from any thread and without any locking, while writers keep updating the
+ * original tree; updates to either tree are never visible in the other one. Old versions need no explicit release:
+ * the nodes that only they reference are reclaimed by the garbage collector once the last snapshot, or iterator, over
+ * them is gone.</p>
+ *
+ * <p>Updates to the same tree are serialized among themselves; reads never block, and always see a complete
+ * version.</p>
+ *
+ * @param <T> The {@link java.lang.Comparable} type held by the data structure.
+ * @see AVLGTree
+ */
+public class PersistentAVLGTree<T extends Comparable<T>> implements Iterable<T> {
+
+    /* *************************************************************************
+     ************************ PRIVATE METHODS AND FIELDS ***********************
+     ***************************************************************************/
+
+    private static final class Node<T> {
+        private final T key;
+        private final Node<T> left, right;
+        private final int height, size;
+
+        private Node(T key, Node<T> left, Node<T> right){
+            this.key = key;
+            this.left = left;
+            this.right = right;
+            height = Math.max(heightOf(left), heightOf(right)) + 1;
+            size = sizeOf(left) + sizeOf(right) + 1;
+        }
+    }
+
+    private volatile Node<T> root;
+    private final int maxImbalance;
+
+    private static int heightOf(Node<?> node){
+        return (node == null) ? -1 : node.height;
+    }
+
+    private static int sizeOf(Node<?> node){
+        return (node == null) ? 0 : node.size;
+    }
+
+    /*
+     * Builds a node with the given key and subtrees, rotating it if its imbalance exceeds maxImbalance, exactly like
+     * AVLGTree.rebalance() does, except that the rotated nodes are new nodes.
+     */
+    private Node<T> balance(T key, Node<T> left, Node<T> right){
+        int balance = heightOf(left) - heightOf(right);
+        if(balance > maxImbalance){
+            if(heightOf(left.left) < heightOf(left.right)){
+                Node<T> inner = left.right;
+                return new Node<>(inner.key, new Node<>(left.key, left.left, inner.left), new Node<>(key, inner.right, right));
+            }
+            return new Node<>(left.key, left.left, new Node<>(key, left.right, right));
+        }
+        if(balance < -maxImbalance){
+            if(heightOf(right.right) < heightOf(right.left)){
+                Node<T> inner = right.left;
+                return new Node<>(inner.key, new Node<>(key, left, inner.left), new Node<>(right.key, inner.right, right.right));
+            }
+            return new Node<>(right.key, new Node<>(key, left, right.left), right.right);
+        }
+        return new Node<>(key, left, right);
+    }
+
+    /*
+     * Returns the root of a version of the subtree with key inserted, which is node itself if key is already stored.
+     */
+    private Node<T> insert(Node<T> node, T key){
+        if(node == null)
+            return new Node<>(key, null, null);
+        int cmp = key.compareTo(node.key);
+        if(cmp == 0)
+            return node;
+        if(cmp < 0){
+            Node<T> left = insert(node.left, key);
+            return (left == node.left) ? node : balance(node.key, left, node.right);
+        }
+        Node<T> right = insert(node.right, key);
+        return (right == node.right) ? node : balance(node.key, node.left, right);
+    }
+
+    /*
+     * Returns a version of the subtree without its minimum, which is reported in min[0].
+     */
+    private Node<T> deleteMin(Node<T> node, Object[] min){
+        if(node.left == null){
+            min[0] = node.key;
+            return node.right;
+        }
+        return balance(node.key, deleteMin(node.left, min), node.right);
+    }
+
+    /*
+     * Returns a version of the subtree without key, which is node itself if key is not stored, and reports the stored key
+     * in removed[0], if any.
+     */
+    @SuppressWarnings("unchecked")
+    private Node<T> delete(Node<T> node, T key, Object[] removed){
+        if(node == null)
+            return null;
+        int cmp = key.compareTo(node.key);
+        if(cmp < 0){
+            Node<T> left = delete(node.left, key, removed);
+            return (left == node.left) ? node : balance(node.key, left, node.right);
+        }
+        if(cmp > 0){
+            Node<T> right = delete(node.right, key, removed);
+            return (right == node.right) ? node : balance(node.key, node.left, right);
+        }
+        removed[0] = node.key;
+        if(node.left == null)
+            return node.right;
+        if(node.right == null)
+            return node.left;
+        Object[] successor = new Object[1];
+        Node<T> right = deleteMin(node.right, successor);
+        return balance((T)successor[0], node.left, right);
+    }
+
+    private boolean isBST(Node<T> node, T lo, T hi){
+        if(node == null)
+            return true;
+        if((lo != null && node.key.compareTo(lo) <= 0) || (hi != null && node.key.compareTo(hi) >= 0))
+            return false;
+        return isBST(node.left, lo, node.key) && isBST(node.right, node.key, hi);
+    }
+
+    /*
+     * Returns the actual height of the subtree rooted at node, or Integer.MIN_VALUE if it is not AVL-G balanced.
+     */
+    private int checkBalance(Node<T> node){
+        if(node == null)
+            return -1;
+        int left = checkBalance(node.left), right = checkBalance(node.right);
+        if(left == Integer.MIN_VALUE || right == Integer.MIN_VALUE || Math.abs(left - right) > maxImbalance)
+            return Integer.MIN_VALUE;
+        return Math.max(left, right) + 1;
+    }
+
+    private PersistentAVLGTree(Node<T> root, int maxImbalance){
+        this.root = root;
+        this.maxImbalance = maxImbalance;
+    }
+
+    /* *********************************************************************
+     ************************* PUBLIC (INTERFACE) METHODS *******************
+     **********************************************************************/
+
+    /**
+     * Creates an empty tree with the given maximum imbalance.
+     * @param maxImbalance The maximum imbalance allowed by the tree.
+     * @throws InvalidBalanceException if <tt>maxImbalance</tt> is a value smaller than 1.
+     */
+    public PersistentAVLGTree(int maxImbalance) throws InvalidBalanceException {
+        if(maxImbalance < 1)
+            throw new InvalidBalanceException("The maximum imbalance of an AVL-G tree needs to be at least 1; we were given " + maxImbalance + ".");
+        this.maxImbalance = maxImbalance;
+        root = null;
+    }
+
+    /**
+     * Returns a snapshot of this tree, in O(1) time and space: a tree with the same keys and imbalance parameter, which
+     * shares all of its nodes with this one. The two trees are independent from then on.
+     * @return A snapshot of this tree.
+     */
+    public PersistentAVLGTree<T> snapshot(){
+        return new PersistentAVLGTree<>(root, maxImbalance);
+    }
+
+    /**
+     * Inserts <tt>key</tt> in the tree, by copying the path to it. If the tree already stores a key equal to <tt>key</tt>,
+     * the tree is left unchanged and nothing is copied.
+     * @param key The key to insert in the tree.
+     */
+    public synchronized void insert(T key){
+        root = insert(root, key);
+    }
+
+    /**
+     * Deletes <tt>key</tt> from the tree, by copying the path to it, and returns it to the caller. If the key is not
+     * stored, nothing is copied.
+     * @param key The key to delete from the tree.
+     * @return The key that was removed, or <tt>null</tt> if the key was not found.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T delete(T key) throws EmptyTreeException {
+        if(root == null)
+            throw new EmptyTreeException("delete(): Tree is empty.");
+        Object[] removed = new Object[1];
+        root = delete(root, key, removed);
+        return (T)removed[0];
+    }
+
+    /**
+     * Searches for <tt>key</tt> in the current version of the tree.
+     * @param key The key to search for.
+     * @return The stored key equal to <tt>key</tt>, or <tt>null</tt> if there is none.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T search(T key) throws EmptyTreeException {
+        Node<T> curr = root;
+        if(curr == null)
+            throw new EmptyTreeException("search(): Tree is empty.");
+        while(curr != null){
+            int cmp = key.compareTo(curr.key);
+            if(cmp == 0)
+                return curr.key;
+            curr = (cmp < 0) ? curr.left : curr.right;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of keys in the current version of the tree that are strictly smaller than <tt>key</tt>.
+     * @param key The key to rank, which does not need to be stored.
+     * @return The number of keys smaller than <tt>key</tt>.
+     * @see AVLGTree#rank(Comparable)
+     */
+    public int rank(T key){
+        int count = 0;
+        Node<T> curr = root;
+        while(curr != null){
+            if(key.compareTo(curr.key) <= 0){
+                curr = curr.left;
+            } else {
+                count += sizeOf(curr.left) + 1;
+                curr = curr.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the maximum imbalance parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter.
+     */
+    public int getMaxImbalance(){
+        return maxImbalance;
+    }
+
+    /**
+     * Returns the height of the current version of the tree.
+     * @return The height of the tree. If the tree is empty, returns -1.
+     */
+    public int getHeight(){
+        return heightOf(root);
+    }
+
+    /**
+     * Returns the number of keys in the current version of the tree.
+     * @return The number of keys in the tree.
+     */
+    public int getCount(){
+        return sizeOf(root);
+    }
+
+    /**
+     * Queries the tree for emptiness.
+     * @return <tt>true</tt> if the tree has no keys, <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty(){
+        return root == null;
+    }
+
+    /**
+     * Establishes whether the current version of the tree satisfies the BST condition.
+     * @return <tt>true</tt> if the tree satisfies the Binary Search Tree property, <tt>false</tt> otherwise.
+     */
+    public boolean isBST(){
+        return isBST(root, null, null);
+    }
+
+    /**
+     * Establishes whether the current version of the tree satisfies the AVL-G condition.
+     * @return <tt>true</tt> if the tree is AVL-G balanced, <tt>false</tt> otherwise.
+     */
+    public boolean isAVLGBalanced(){
+        return checkBalance(root) != Integer.MIN_VALUE;
+    }
+
+    /**
+     * Returns an iterator over the keys of the version of the tree at the time of the call, in ascending order. Later
+     * updates never affect it, so, unlike the iterators of {@link AVLGTree}, it is not fail-fast: it does not need to be.
+     * @return An iterator over the keys of the tree.
+     */
+    @Override
+    public Iterator<T> iterator(){
+        Node<T> top = root;
+        @SuppressWarnings("unchecked")
+        Node<T>[] stack = (Node<T>[])new Node<?>[heightOf(top) + 1];
+        return new Iterator<T>() {
+            private int size = push(top, 0);
+
+            private int push(Node<T> node, int size){
+                for(; node != null; node = node.left)
+                    stack[size++] = node;
+                return size;
+            }
+
+            @Override
+            public boolean hasNext(){
+                return size > 0;
+            }
+
+            @Override
+            public T next(){
+                if(size == 0)
+                    throw new NoSuchElementException("No more keys in the snapshot.");
+                Node<T> node = stack[--size];
+                size = push(node.right, size);
+                return node.key;
+            }
+        };
+    }
+}
@@ -0,0 +1,160 @@
+package projects.avlg;
+
+import projects.avlg.exceptions.EmptyTreeException;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * <p>{@link PooledAVLGTree} is an AVL-G tree with the same interface as {@link AVLGTree} for insertions, deletions and
+ * searches, whose nodes live in a pool of parallel arrays, as described in {@link AbstractPooledAVLGTree}, instead of in
+ * objects of their own. A node takes 16 bytes (a reference to its key, its child links and its height), against 32 for
+ * a node of {@link AVLGTree}, and there are no node objects for the garbage collector to trace. The keys themselves are
+ * still objects; {@link IntAVLGTree} and {@link LongAVLGTree} do away with those too, for primitive keys.</p>
+ *
+ * <p>Unlike {@link AVLGTree}, the tree does not maintain subtree sizes, so it does not answer order-statistic
+ * queries.</p>
+ *
+ * @param <T> The {@link java.lang.Comparable} type held by the data structure.
+ */
+public class PooledAVLGTree<T extends Comparable<T>> extends AbstractPooledAVLGTree {
+
+    /* *************************************************************************
+     ************************ PRIVATE METHODS AND FIELDS ***********************
+     ***************************************************************************/
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Object[] keys;
+
+    @SuppressWarnings("unchecked")
+    private T keyOf(int node){
+        return (T)keys[node];
+    }
+
+    @Override
+    void resizeKeys(int capacity){
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    @Override
+    void moveKey(int from, int to){
+        keys[to] = keys[from];
+    }
+
+    @Override
+    void clearKey(int node){
+        keys[node] = null;
+    }
+
+    @Override
+    int compareKeys(int a, int b){
+        return keyOf(a).compareTo(keyOf(b));
+    }
+
+    /* *********************************************************************
+     ************************* PUBLIC (INTERFACE) METHODS *******************
+     **********************************************************************/
+
+    /**
+     * Creates an empty tree with the given maximum imbalance.
+     * @param maxImbalance The maximum imbalance allowed by the tree.
+     * @throws InvalidBalanceException if <tt>maxImbalance</tt> is a value smaller than 1.
+     */
+    public PooledAVLGTree(int maxImbalance) throws InvalidBalanceException {
+        this(maxImbalance, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty tree with the given maximum imbalance, whose pool can hold <tt>initialCapacity</tt> keys before
+     * it needs to grow.
+     * @param maxImbalance The maximum imbalance allowed by the tree.
+     * @param initialCapacity The number of keys to make room for.
+     * @throws InvalidBalanceException if <tt>maxImbalance</tt> is a value smaller than 1.
+     */
+    public PooledAVLGTree(int maxImbalance, int initialCapacity) throws InvalidBalanceException {
+        super(maxImbalance, initialCapacity);
+        keys = new Object[left.length];
+    }
+
+    /**
+     * Insert <tt>key</tt> in the tree. If the tree already stores a key equal to <tt>key</tt>, the tree is left unchanged.
+     * @param key The key to insert in the tree.
+     */
+    public void insert(T key){
+        ensurePath();
+        int node = root, depth = 0;
+        while(node != NIL){
+            int cmp = key.compareTo(keyOf(node));
+            if(cmp == 0)
+                return;
+            if(cmp < 0){
+                path[depth++] = node;
+                node = left[node];
+            } else {
+                path[depth++] = ~node;
+                node = right[node];
+            }
+        }
+        int leaf = allocate();
+        keys[leaf] = key;
+        relink(depth, leaf);
+    }
+
+    /**
+     * Delete the key from the data structure and return it to the caller.
+     * @param key The key to delete from the structure.
+     * @return The key that was removed, or <tt>null</tt> if the key was not found.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T delete(T key) throws EmptyTreeException {
+        if(root == NIL)
+            throw new EmptyTreeException("delete(): Tree is empty.");
+        ensurePath();
+        int node = root, depth = 0;
+        while(node != NIL){
+            T nodeKey = keyOf(node);
+            int cmp = key.compareTo(nodeKey);
+            if(cmp == 0){
+                removeAt(depth, node);
+                return nodeKey;
+            }
+            if(cmp < 0){
+                path[depth++] = node;
+                node = left[node];
+            } else {
+                path[depth++] = ~node;
+                node = right[node];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Search for <tt>key</tt> in the tree.
+     * @param key The key to search for.
+     * @return The stored key equal to <tt>key</tt>, or <tt>null</tt> if there is none.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T search(T key) throws EmptyTreeException {
+        if(root == NIL)
+            throw new EmptyTreeException("search(): Tree is empty.");
+        int node = root;
+        while(node != NIL){
+            int cmp = key.compareTo(keyOf(node));
+            if(cmp == 0)
+                return keyOf(node);
+            node = (cmp < 0) ? left[node] : right[node];
+        }
+        return null;
+    }
+
+    /**
+     * Passes every key of the tree to <tt>action</tt>, in ascending order.
+     * @param action The action to perform on every key.
+     */
+    public void forEach(Consumer<? super T> action){
+        inOrder(node -> action.accept(keyOf(node)));
+    }
+}
@@ -0,0 +1,223 @@
+package projects.avlg.clients;
+
+import projects.avlg.AVLGStatistics;
+import projects.avlg.AVLGTree;
+import projects.avlg.exceptions.EmptyTreeException;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p><tt>GSweepTimingClient</tt> replays recorded workloads against {@link AVLGTree}s of every maximum imbalance G from
+ * 1 to {@link #MAX_G}, to show the tradeoff that G controls: fewer rotations per update against taller trees, hence
+ * longer searches. For every workload and every G, it reports the throughput of a plain replay, the best of a few rounds,
+ * and then, from a replay with {@link AVLGStatistics statistics} enabled, the final and maximum height of the tree, the
+ * average search path length and the rotations per insertion and per deletion. A last row does the same for a tree that
+ * {@link AVLGTree#enableAdaptiveImbalance(int, int, int) adapts} G within [1, {@link #MAX_G}] by itself; its height
+ * columns are the ones of its last G.</p>
+ *
+ * <p>Workloads are given as files on the command line, one operation per line: <tt>i</tt>, <tt>d</tt> or <tt>s</tt>,
+ * for an insertion, a deletion or a search, followed by an <tt>int</tt> key, as in <tt>i 42</tt>. Empty lines and lines
+ * that start with <tt>#</tt> are skipped. Without arguments, the client generates a read-heavy, a write-heavy, an
+ * ascending-insertion and an alternating workload instead, the latter of write-heavy bursts and read-heavy phases.</p>
+ */
+public class GSweepTimingClient {
+
+    private static final int MAX_G = 8;
+    private static final int ROUNDS = 3; // We report the best of a few rounds, to leave JIT compilation out.
+    private static final int SAMPLING_PERIOD = 1000;
+    private static final int ADAPTATION_WINDOW = 1024;
+    private static final int NUM_OPS = 1000000, KEY_RANGE = 200000;
+
+    private static final byte INSERT = 0, DELETE = 1, SEARCH = 2;
+
+    private static final long SEED = 47;
+    private static final Random RNG = new Random(SEED);
+
+    /*
+     * A recorded workload: parallel arrays of operations and keys.
+     */
+    private static final class Workload {
+        private final String name;
+        private final byte[] ops;
+        private final int[] keys;
+
+        private Workload(String name, byte[] ops, int[] keys){
+            this.name = name;
+            this.ops = ops;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * <p><tt>main()</tt> is the routine that executes the experiment.</p>
+     * @param args Paths to workload files. If there are none, synthetic workloads are generated.
+     * @throws IOException if a workload file cannot be read.
+     * @throws InvalidBalanceException never, in practice.
+     */
+    public static void main(String[] args) throws IOException, InvalidBalanceException {
+        Workload[] workloads;
+        if(args.length > 0){
+            workloads = new Workload[args.length];
+            for(int i = 0; i < args.length; i++)
+                workloads[i] = read(args[i]);
+        } else {
+            workloads = new Workload[]{random("read-heavy (90% searches)", 90), random("write-heavy (50% searches)", 50),
+                    ascending("ascending insertions"), alternating("alternating (20 bursts of 95% or 10% writes)", 20)};
+        }
+        for(Workload workload : workloads){
+            System.out.println("----------------------------------------------------------------");
+            System.out.println(workload.name + ": " + workload.ops.length + " operations.");
+            System.out.println("  G    Mops/s  height  max height  search path  rotations/insert  rotations/delete");
+            for(int g = 1; g <= MAX_G + 1; g++){ // G = MAX_G + 1 stands for the adaptive tree.
+                long best = Long.MAX_VALUE, checksum = 0;
+                for(int round = 0; round < ROUNDS; round++){
+                    AVLGTree<Integer> tree = tree(g);
+                    long begin = System.nanoTime();
+                    checksum += replay(tree, workload);
+                    best = Math.min(best, System.nanoTime() - begin);
+                }
+                AVLGTree<Integer> tree = tree(g);
+                AVLGStatistics statistics = tree.enableStatistics(SAMPLING_PERIOD);
+                checksum += replay(tree, workload);
+                int maxHeight = Math.max(tree.getHeight(), Arrays.stream(statistics.getHeightSamples()).max().orElse(-1));
+                System.out.println(String.format("%3s  %8.2f  %6d  %10d  %11.2f  %16.3f  %16.3f%s",
+                        (g > MAX_G) ? "1-" + MAX_G : g, workload.ops.length / (best / 1e3), tree.getHeight(), maxHeight,
+                        statistics.getAverageSearchPathLength(), statistics.getRotationsPerInsert(),
+                        statistics.getRotationsPerDelete(), (checksum < 0) ? "!" : ""));
+            }
+        }
+        System.out.println("----------------------------------------------------------------");
+    }
+
+    /* *********** Some helper functions to make main() cleaner: ***************** */
+
+    private static AVLGTree<Integer> tree(int g) throws InvalidBalanceException {
+        if(g <= MAX_G)
+            return new AVLGTree<>(g);
+        AVLGTree<Integer> tree = new AVLGTree<>(MAX_G);
+        tree.enableAdaptiveImbalance(1, MAX_G, ADAPTATION_WINDOW);
+        return tree;
+    }
+
+    /*
+     * Replays workload against tree, and returns the number of successful searches and deletions, which keeps the JIT
+     * from optimizing them away.
+     */
+    private static long replay(AVLGTree<Integer> tree, Workload workload){
+        long found = 0;
+        byte[] ops = workload.ops;
+        int[] keys = workload.keys;
+        try {
+            for(int i = 0; i < ops.length; i++){
+                switch(ops[i]){
+                    case INSERT:
+                        tree.insert(keys[i]);
+                        break;
+                    case DELETE:
+                        if(!tree.isEmpty() && tree.delete(keys[i]) != null)
+                            found++;
+                        break;
+                    default:
+                        if(!tree.isEmpty() && tree.search(keys[i]) != null)
+                            found++;
+                }
+            }
+        } catch (EmptyTreeException e) {
+            throw new AssertionError(e); // We never touch an empty tree.
+        }
+        return found;
+    }
+
+    private static Workload read(String path) throws IOException {
+        byte[] ops = new byte[1024];
+        int[] keys = new int[1024];
+        int count = 0;
+        try(BufferedReader reader = new BufferedReader(new FileReader(path))){
+            String line;
+            while((line = reader.readLine()) != null){
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split("\\s+");
+                if(fields.length != 2)
+                    throw new IOException(path + ": malformed line \"" + line + "\".");
+                if(count == ops.length){
+                    ops = Arrays.copyOf(ops, 2 * count);
+                    keys = Arrays.copyOf(keys, 2 * count);
+                }
+                switch(fields[0]){
+                    case "i": ops[count] = INSERT; break;
+                    case "d": ops[count] = DELETE; break;
+                    case "s": ops[count] = SEARCH; break;
+                    default: throw new IOException(path + ": unknown operation \"" + fields[0] + "\".");
+                }
+                try {
+                    keys[count++] = Integer.parseInt(fields[1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ": malformed key \"" + fields[1] + "\".", e);
+                }
+            }
+        }
+        return new Workload(path, Arrays.copyOf(ops, count), Arrays.copyOf(keys, count));
+    }
+
+    /*
+     * Random keys, after a warm-up of KEY_RANGE / 2 insertions; the updates are evenly split between insertions and
+     * deletions, so that the size of the tree stays roughly constant.
+     */
+    private static Workload random(String name, int searchPercentage){
+        int warmUp = KEY_RANGE / 2;
+        byte[] ops = new byte[warmUp + NUM_OPS];
+        int[] keys = new int[ops.length];
+        for(int i = 0; i < ops.length; i++){
+            keys[i] = RNG.nextInt(KEY_RANGE);
+            if(i < warmUp)
+                ops[i] = INSERT;
+            else if(RNG.nextInt(100) < searchPercentage)
+                ops[i] = SEARCH;
+            else
+                ops[i] = RNG.nextBoolean() ? INSERT : DELETE;
+        }
+        return new Workload(name, ops, keys);
+    }
+
+    /*
+     * Bursts of mostly writes alternating with phases of mostly reads, after the same warm-up as random().
+     */
+    private static Workload alternating(String name, int bursts){
+        int warmUp = KEY_RANGE / 2, burst = NUM_OPS / bursts;
+        byte[] ops = new byte[warmUp + burst * bursts];
+        int[] keys = new int[ops.length];
+        for(int i = 0; i < ops.length; i++){
+            keys[i] = RNG.nextInt(KEY_RANGE);
+            int writePercentage = (((i - warmUp) / burst) % 2 == 0) ? 95 : 10;
+            if(i < warmUp)
+                ops[i] = INSERT;
+            else if(RNG.nextInt(100) >= writePercentage)
+                ops[i] = SEARCH;
+            else
+                ops[i] = RNG.nextBoolean() ? INSERT : DELETE;
+        }
+        return new Workload(name, ops, keys);
+    }
+
+    /*
+     * Ascending insertions, the worst case for rotations, each followed by a search for a random key inserted so far.
+     */
+    private static Workload ascending(String name){
+        byte[] ops = new byte[NUM_OPS];
+        int[] keys = new int[NUM_OPS];
+        for(int i = 0; i < NUM_OPS; i += 2){
+            ops[i] = INSERT;
+            keys[i] = i / 2;
+            ops[i + 1] = SEARCH;
+            keys[i + 1] = RNG.nextInt(i / 2 + 1);
+        }
+        return new Workload(name, ops, keys);
+    }
+}
@@ -0,0 +1,113 @@
+package projects.avlg.clients;
+
+import projects.avlg.AVLGTree;
+import projects.avlg.IntAVLGTree;
+import projects.avlg.PooledAVLGTree;
+import projects.avlg.exceptions.EmptyTreeException;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.Random;
+
+/**
+ * <p><tt>PooledAVLGTimingClient</tt> compares {@link AVLGTree}, whose nodes are objects, against {@link PooledAVLGTree}
+ * and {@link IntAVLGTree}, whose nodes live in parallel arrays, on the same random <tt>int</tt> keys. It times the
+ * insertion of all the keys, a search for every one of them, and the deletion of half of them, and estimates the memory
+ * that every full tree retains, as the growth of the used heap, after a garbage collection, over the empty heap.</p>
+ *
+ * <p>Keys are boxed as they are inserted in the trees that need boxes, so that the estimates include the boxes. The
+ * estimates go through {@link System#gc()}, so they are approximate.</p>
+ *
+ * <p>This application ignores all command-line arguments.</p>
+ */
+public class PooledAVLGTimingClient {
+
+    private static final int NUM_KEYS = 2000000;
+    private static final int MAX_IMBALANCE = 1;
+    private static final int ROUNDS = 3; // We report the best of a few rounds, to leave JIT compilation out.
+
+    private static final long SEED = 47;
+    private static final Random RNG = new Random(SEED);
+
+    /**
+     * <p><tt>main()</tt> is the routine that executes the experiment.</p>
+     * @param args Arguments provided by the shell on the command line. Ignored.
+     * @throws InvalidBalanceException never, in practice.
+     * @throws EmptyTreeException never, in practice.
+     */
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException {
+        int[] keys = new int[NUM_KEYS]; // The time this takes is not counted in our experiments, of course.
+        for(int i = 0; i < NUM_KEYS; i++)
+            keys[i] = RNG.nextInt();
+        System.out.println("----------------------------------------------------------------");
+        System.out.println("Inserting " + NUM_KEYS + " random keys, searching for all of them and deleting half of them.");
+        for(String how : new String[]{"AVLGTree<Integer>", "PooledAVLGTree<Integer>", "IntAVLGTree"}){
+            long bestInsert = Long.MAX_VALUE, bestSearch = Long.MAX_VALUE, bestDelete = Long.MAX_VALUE, bytes = 0, checksum = 0;
+            for(int round = 0; round < ROUNDS; round++){
+                long empty = usedHeap();
+                long begin = System.nanoTime(), inserted, searched, deleting, deleted;
+                switch(how){
+                    case "AVLGTree<Integer>": {
+                        AVLGTree<Integer> tree = new AVLGTree<>(MAX_IMBALANCE);
+                        for(int key : keys)
+                            tree.insert(key);
+                        inserted = System.nanoTime();
+                        for(int key : keys)
+                            checksum += (tree.search(key) == null) ? 0 : 1; // Keeps the JIT from optimizing searches away.
+                        searched = System.nanoTime();
+                        bytes = usedHeap() - empty;
+                        deleting = System.nanoTime();
+                        for(int i = 0; i < NUM_KEYS; i += 2)
+                            tree.delete(keys[i]);
+                        deleted = System.nanoTime();
+                        break;
+                    }
+                    case "PooledAVLGTree<Integer>": {
+                        PooledAVLGTree<Integer> tree = new PooledAVLGTree<>(MAX_IMBALANCE);
+                        for(int key : keys)
+                            tree.insert(key);
+                        inserted = System.nanoTime();
+                        for(int key : keys)
+                            checksum += (tree.search(key) == null) ? 0 : 1;
+                        searched = System.nanoTime();
+                        bytes = usedHeap() - empty;
+                        deleting = System.nanoTime();
+                        for(int i = 0; i < NUM_KEYS; i += 2)
+                            tree.delete(keys[i]);
+                        deleted = System.nanoTime();
+                        break;
+                    }
+                    default: {
+                        IntAVLGTree tree = new IntAVLGTree(MAX_IMBALANCE);
+                        for(int key : keys)
+                            tree.insert(key);
+                        inserted = System.nanoTime();
+                        for(int key : keys)
+                            checksum += tree.contains(key) ? 1 : 0;
+                        searched = System.nanoTime();
+                        bytes = usedHeap() - empty;
+                        deleting = System.nanoTime();
+                        for(int i = 0; i < NUM_KEYS; i += 2)
+                            tree.delete(keys[i]);
+                        deleted = System.nanoTime();
+                    }
+                }
+                bestInsert = Math.min(bestInsert, inserted - begin);
+                bestSearch = Math.min(bestSearch, searched - inserted);
+                bestDelete = Math.min(bestDelete, deleted - deleting);
+            }
+            System.out.println(String.format("%-24s insert %7.1f ms, search %7.1f ms, delete %7.1f ms, ~%5.1f bytes per key%s",
+                    how + ":", bestInsert / 1e6, bestSearch / 1e6, bestDelete / 1e6, (double)bytes / NUM_KEYS,
+                    (checksum < 0) ? "!" : "."));
+        }
+        System.out.println("----------------------------------------------------------------");
+    }
+
+    /* *********** Some helper functions to make main() cleaner: ***************** */
+
+    private static long usedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
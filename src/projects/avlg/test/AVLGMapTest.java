@@ -0,0 +1,82 @@
+package projects.avlg.test;
+
+import org.junit.Test;
+import projects.avlg.AVLGMap;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>A testing framework for {@link AVLGMap}.</p>
+ *
+ * @see AVLGMap
+ */
+public class AVLGMapTest {
+
+	@Test(expected = InvalidBalanceException.class)
+	public void testInvalidBalance() throws InvalidBalanceException {
+		new AVLGMap<Integer, String>(0);
+	}
+
+	@Test
+	public void testAgainstTreeMap() throws InvalidBalanceException {
+		Random rng = new Random(AVLGTreeTest.SEED);
+		for(int g = 1; g <= 4; g++){
+			AVLGMap<Integer, Integer> map = new AVLGMap<>(g);
+			TreeMap<Integer, Integer> expected = new TreeMap<>();
+			for(int i = 0; i < 30000; i++){
+				int key = rng.nextInt(2000), value = rng.nextInt(10);
+				switch(rng.nextInt(6)){
+					case 0:
+						assertEquals(expected.put(key, value), map.put(key, value));
+						break;
+					case 1:
+						assertEquals(expected.remove(key), map.remove(key));
+						break;
+					case 2:
+						assertEquals(expected.computeIfAbsent(key, k -> k + 1), map.computeIfAbsent(key, k -> k + 1));
+						break;
+					case 3: // Values of 0 make the remapping unmap the key.
+						assertEquals(expected.computeIfPresent(key, (k, v) -> (v == 0) ? null : v - 1),
+								map.computeIfPresent(key, (k, v) -> (v == 0) ? null : v - 1));
+						break;
+					case 4:
+						assertEquals(expected.merge(key, value, Integer::sum), map.merge(key, value, Integer::sum));
+						break;
+					default:
+						assertEquals(expected.get(key), map.get(key));
+						assertEquals(expected.containsKey(key), map.containsKey(key));
+				}
+			}
+			assertEquals(expected.size(), map.getCount());
+			assertTrue(map.isBST());
+			assertTrue(map.isAVLGBalanced());
+			List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+			map.forEach((k, v) -> entries.add(new AbstractMap.SimpleEntry<>(k, v)));
+			assertEquals(new ArrayList<>(expected.entrySet()), entries);
+		}
+	}
+
+	@Test
+	public void testWordCount() throws InvalidBalanceException {
+		AVLGMap<String, Integer> counts = new AVLGMap<>(2);
+		for(String word : "the quick brown fox jumps over the lazy dog the end".split(" "))
+			counts.merge(word, 1, Integer::sum);
+		assertEquals(Integer.valueOf(3), counts.get("the"));
+		assertEquals(Integer.valueOf(1), counts.get("fox"));
+		assertNull(counts.get("cat"));
+		assertEquals(9, counts.getCount());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullValue() throws InvalidBalanceException {
+		new AVLGMap<Integer, Integer>(1).put(1, null);
+	}
+}
@@ -0,0 +1,500 @@
+package projects.avlg.test;
+
+import org.junit.Test;
+import projects.avlg.AVLGStatistics;
+import projects.avlg.AVLGTree;
+import projects.avlg.exceptions.EmptyTreeException;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>A testing framework for {@link AVLGTree}.</p>
+ *
+ * @see AVLGTree
+ */
+public class AVLGTreeTest {
+
+	private static final int MAX_IMBALANCE = 3;
+	static final long SEED = 47; // Shared by every test of the package.
+
+	private AVLGTree<Integer> tree(int maxImbalance){
+		try {
+			return new AVLGTree<>(maxImbalance);
+		} catch (InvalidBalanceException e) {
+			throw new AssertionError("Valid imbalance " + maxImbalance + " was rejected.", e);
+		}
+	}
+
+	@Test(expected = InvalidBalanceException.class)
+	public void testInvalidBalance() throws InvalidBalanceException {
+		new AVLGTree<Integer>(0);
+	}
+
+	@Test
+	public void testEmptiness(){
+		AVLGTree<Integer> tree = tree(1);
+		assertTrue(tree.isEmpty());
+		assertEquals(0, tree.getCount());
+		assertEquals(-1, tree.getHeight());
+		assertEquals(0, tree.rank(5));
+		assertEquals(0, tree.countInRange(0, 10));
+		try {
+			tree.search(5);
+			fail("search() on an empty tree should throw.");
+		} catch (EmptyTreeException ignored) {}
+		try {
+			tree.delete(5);
+			fail("delete() on an empty tree should throw.");
+		} catch (EmptyTreeException ignored) {}
+	}
+
+	@Test
+	public void testRotations() throws EmptyTreeException {
+		for(int g = 1; g <= 4; g++){
+			AVLGTree<Integer> tree = tree(g);
+			for(int i = 0; i < 1000; i++){ // Ascending insertions trigger rotations all along the right spine.
+				tree.insert(i);
+				assertTrue(tree.isBST());
+				assertTrue(tree.isAVLGBalanced());
+			}
+			assertEquals(1000, tree.getCount());
+			for(int i = 0; i < 1000; i += 2){
+				assertEquals(Integer.valueOf(i), tree.delete(i));
+				assertTrue(tree.isAVLGBalanced());
+			}
+			assertEquals(500, tree.getCount());
+			assertNull(tree.search(0));
+			assertEquals(Integer.valueOf(1), tree.search(1));
+		}
+	}
+
+	@Test
+	public void testDuplicatesAndMissingKeys() throws EmptyTreeException {
+		AVLGTree<Integer> tree = tree(MAX_IMBALANCE);
+		tree.insert(7);
+		tree.insert(7);
+		assertEquals(1, tree.getCount());
+		assertNull(tree.delete(8));
+		assertEquals(Integer.valueOf(7), tree.delete(7));
+		assertTrue(tree.isEmpty());
+	}
+
+	@Test
+	public void testOrderStatistics() throws EmptyTreeException {
+		Random rng = new Random(SEED);
+		AVLGTree<Integer> tree = tree(MAX_IMBALANCE);
+		List<Integer> keys = new ArrayList<>();
+		for(int i = 0; i < 2000; i++){
+			int key = 2 * rng.nextInt(10000); // Even keys only, so that odd keys are never stored.
+			if(!keys.contains(key)){
+				keys.add(key);
+				tree.insert(key);
+			}
+		}
+		for(int i = 0; i < 500; i++)
+			tree.delete(keys.remove(rng.nextInt(keys.size())));
+		Collections.sort(keys);
+		assertTrue(tree.isAVLGBalanced());
+		for(int i = 0; i < keys.size(); i++){
+			assertEquals(keys.get(i), tree.select(i));
+			assertEquals(i, tree.rank(keys.get(i)));
+			assertEquals(i + 1, tree.rank(keys.get(i) + 1));
+		}
+		assertEquals(keys.size(), tree.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+		assertEquals(1, tree.countInRange(keys.get(10), keys.get(10)));
+		assertEquals(11, tree.countInRange(keys.get(10), keys.get(20)));
+		assertEquals(10, tree.countInRange(keys.get(10) + 1, keys.get(20)));
+		assertEquals(0, tree.countInRange(keys.get(20), keys.get(10)));
+	}
+
+	@Test
+	public void testNavigation(){
+		AVLGTree<Integer> tree = tree(MAX_IMBALANCE);
+		assertNull(tree.floor(5));
+		for(int i = 0; i < 100; i += 10)
+			tree.insert(i);
+		assertEquals(Integer.valueOf(20), tree.floor(25));
+		assertEquals(Integer.valueOf(20), tree.floor(20));
+		assertNull(tree.floor(-1));
+		assertEquals(Integer.valueOf(30), tree.ceiling(25));
+		assertEquals(Integer.valueOf(30), tree.ceiling(30));
+		assertNull(tree.ceiling(91));
+		assertEquals(Integer.valueOf(40), tree.successor(30));
+		assertNull(tree.successor(90));
+		assertEquals(Integer.valueOf(20), tree.predecessor(30));
+		assertNull(tree.predecessor(0));
+	}
+
+	@Test
+	public void testRangeIteration(){
+		AVLGTree<Integer> tree = tree(MAX_IMBALANCE);
+		for(int i = 0; i < 1000; i++)
+			tree.insert(i);
+		List<Integer> all = new ArrayList<>();
+		for(Integer key : tree)
+			all.add(key);
+		assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()), all);
+		List<Integer> range = new ArrayList<>();
+		Iterator<Integer> it = tree.iterator(250, 260);
+		while(it.hasNext())
+			range.add(it.next());
+		assertEquals(IntStream.range(250, 260).boxed().collect(Collectors.toList()), range);
+		assertFalse(tree.iterator(260, 250).hasNext());
+		assertEquals(IntStream.range(100, 900).boxed().collect(Collectors.toList()),
+				StreamSupport.stream(tree.spliterator(100, 900), true).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testBuildFromSorted() throws EmptyTreeException {
+		Integer[] keys = IntStream.range(0, 10000).map(i -> 2 * i).boxed().toArray(Integer[]::new);
+		for(int mode = 0; mode < 3; mode++){
+			AVLGTree<Integer> tree = tree(MAX_IMBALANCE);
+			tree.insert(-5); // Replaced by the build.
+			if(mode == 2)
+				tree.buildFromSorted(java.util.Arrays.asList(keys).iterator(), keys.length);
+			else
+				tree.buildFromSorted(keys, mode == 1);
+			assertEquals(keys.length, tree.getCount());
+			assertEquals(13, tree.getHeight()); // floor(log2(10000)): perfectly balanced.
+			assertTrue(tree.isBST());
+			assertTrue(tree.isAVLGBalanced());
+			assertNull(tree.search(-5));
+			assertEquals(Integer.valueOf(5000), tree.select(2500));
+			tree.insert(1);
+			assertTrue(tree.isAVLGBalanced());
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testBuildFromUnsorted(){
+		tree(1).buildFromSorted(new Integer[]{1, 3, 3});
+	}
+
+	private static List<Integer> keys(AVLGTree<Integer> tree){
+		List<Integer> keys = new ArrayList<>();
+		for(Integer key : tree)
+			keys.add(key);
+		return keys;
+	}
+
+	@Test
+	public void testJoinAndSplit(){
+		for(int g = 1; g <= 4; g++){
+			AVLGTree<Integer> lower = tree(g), upper = tree(1); // Very different heights.
+			for(int i = 0; i < 5000; i++)
+				lower.insert(i);
+			for(int i = 5000; i < 5010; i++)
+				upper.insert(i);
+			lower.join(upper);
+			assertTrue(upper.isEmpty());
+			assertEquals(5010, lower.getCount());
+			assertTrue(lower.isBST());
+			assertTrue(lower.isAVLGBalanced());
+			AVLGTree<Integer> tail = lower.split(1234);
+			assertEquals(IntStream.range(0, 1234).boxed().collect(Collectors.toList()), keys(lower));
+			assertEquals(IntStream.range(1234, 5010).boxed().collect(Collectors.toList()), keys(tail));
+			assertTrue(lower.isAVLGBalanced());
+			assertTrue(tail.isAVLGBalanced());
+			assertEquals(3776, tail.getCount());
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testJoinOverlapping(){
+		AVLGTree<Integer> lower = tree(1), upper = tree(1);
+		lower.insert(5);
+		upper.insert(5);
+		lower.join(upper);
+	}
+
+	@Test
+	public void testSetOperations(){
+		Random rng = new Random(SEED);
+		List<Integer> a = new ArrayList<>(), b = new ArrayList<>();
+		for(int i = 0; i < 20000; i++){
+			a.add(rng.nextInt(30000));
+			b.add(rng.nextInt(30000));
+		}
+		TreeSet<Integer> union = new TreeSet<>(a), intersection = new TreeSet<>(a),
+				difference = new TreeSet<>(a);
+		union.addAll(b);
+		intersection.retainAll(b);
+		difference.removeAll(b);
+		for(int mode = 0; mode < 2; mode++){
+			boolean parallel = (mode == 1);
+			for(int op = 0; op < 3; op++){
+				AVLGTree<Integer> x = tree(MAX_IMBALANCE), y = tree(1);
+				a.forEach(x::insert);
+				b.forEach(y::insert);
+				if(op == 0)
+					x.union(y, parallel);
+				else if(op == 1)
+					x.intersection(y, parallel);
+				else
+					x.difference(y, parallel);
+				assertTrue(y.isEmpty());
+				assertTrue(x.isBST());
+				assertTrue(x.isAVLGBalanced());
+				assertEquals(new ArrayList<>((op == 0) ? union : (op == 1) ? intersection : difference), keys(x));
+			}
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testCombineLessBalanced(){
+		tree(1).union(tree(2));
+	}
+
+	@Test
+	public void testStatistics() throws EmptyTreeException {
+		AVLGTree<Integer> tree = tree(1);
+		assertNull(tree.getStatistics());
+		AVLGStatistics statistics = tree.enableStatistics(2);
+		assertSame(statistics, tree.getStatistics());
+		for(int i = 1; i <= 7; i++) // Four single rotations, at 3, 5, 6 and 7, into 4(2(1, 3), 6(5, 7)).
+			tree.insert(i);
+		assertEquals(7, statistics.getInsertions());
+		assertEquals(4, statistics.getSingleRotationsOnInsert());
+		assertEquals(0, statistics.getDoubleRotationsOnInsert());
+		assertArrayEquals(new int[]{1, 2, 2}, statistics.getHeightSamples());
+		assertEquals(4, (int)tree.search(4)); // Visits 1 node,
+		assertEquals(1, (int)tree.search(1)); // 3 nodes,
+		assertNull(tree.search(8)); // and 3 nodes.
+		assertEquals(7.0 / 3, statistics.getAverageSearchPathLength(), 1e-9);
+		tree.delete(1);
+		tree.delete(3);
+		tree.delete(2); // Empties the left subtree of 4, which takes a single rotation.
+		assertEquals(1, statistics.getSingleRotationsOnDelete());
+		assertEquals(0, statistics.getDoubleRotationsOnDelete());
+		assertEquals(1.0 / 3, statistics.getRotationsPerDelete(), 1e-9);
+		tree.disableStatistics();
+		tree.insert(0);
+		assertNull(tree.getStatistics());
+		assertEquals(7, statistics.getInsertions());
+
+		AVLGTree<Integer> zigZag = tree(1);
+		statistics = zigZag.enableStatistics(1);
+		zigZag.insert(3);
+		zigZag.insert(1);
+		zigZag.insert(2);
+		assertEquals(1, statistics.getDoubleRotationsOnInsert());
+		assertEquals(0, statistics.getSingleRotationsOnInsert());
+		assertArrayEquals(new int[]{0, 1, 1}, statistics.getHeightSamples());
+	}
+
+	@Test
+	public void testStatisticsDoNotChangeTheTree() throws EmptyTreeException {
+		Random rng = new Random(SEED);
+		for(int g = 1; g <= 4; g++){
+			AVLGTree<Integer> plain = tree(g), counted = tree(g);
+			AVLGStatistics statistics = counted.enableStatistics(100);
+			for(int i = 0; i < 20000; i++){
+				int key = rng.nextInt(2000);
+				if(rng.nextInt(3) > 0){
+					plain.insert(key);
+					counted.insert(key);
+				} else if(!plain.isEmpty()){
+					assertEquals(plain.delete(key), counted.delete(key));
+				}
+			}
+			assertEquals(keys(plain), keys(counted));
+			assertEquals(plain.getHeight(), counted.getHeight());
+			assertEquals(plain.getRoot(), counted.getRoot());
+			assertTrue(statistics.getRotationsPerInsert() > 0);
+			assertTrue(statistics.getHeightSamples().length > 0);
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInvalidSamplingPeriod(){
+		tree(1).enableStatistics(0);
+	}
+
+	@Test
+	public void testAdaptiveImbalance() throws InvalidBalanceException, EmptyTreeException {
+		AVLGTree<Integer> tree = tree(3);
+		tree.enableAdaptiveImbalance(1, 6, 100);
+		assertEquals(3, tree.getMaxImbalance());
+		for(int i = 0; i < 100; i++) // A window of writes only raises G to its upper bound.
+			tree.insert(i * 7919 % 20011);
+		assertEquals(6, tree.getMaxImbalance());
+		for(int i = 0; i < 100_000; i++)
+			tree.insert(i * 7919 % 20011);
+		for(int i = 0; i < 70; i++) // 30% writes are neither few nor many enough to change G.
+			tree.search(i);
+		for(int i = 0; i < 30; i++)
+			tree.insert(-i);
+		assertEquals(6, tree.getMaxImbalance());
+		for(int i = 0; i < 100; i++) // A window of reads lowers it to its lower bound,
+			tree.search(i);
+		assertEquals(1, tree.getMaxImbalance());
+		assertTrue(tree.isRestoringBalance()); // and the tree repairs itself as operations go by.
+		int operations = 0;
+		while(tree.isRestoringBalance()){
+			assertEquals(Integer.valueOf(operations % 20011), tree.search(operations % 20011));
+			operations++;
+		}
+		assertTrue(operations > 1); // No single operation did the whole job.
+		assertTrue(tree.isAVLGBalanced());
+		assertTrue(tree.isBST());
+		assertEquals(20011 + 29, tree.getCount());
+	}
+
+	@Test
+	public void testAdaptiveAgainstTreeSet() throws InvalidBalanceException, EmptyTreeException {
+		Random rng = new Random(SEED);
+		AVLGTree<Integer> tree = tree(1);
+		tree.enableAdaptiveImbalance(1, 8, 64);
+		TreeSet<Integer> expected = new TreeSet<>();
+		for(int phase = 0; phase < 40; phase++){
+			int writePercentage = (phase % 2 == 0) ? 90 : 10;
+			for(int i = 0; i < 2000; i++){
+				int key = rng.nextInt(5000);
+				boolean repairing = tree.isRestoringBalance();
+				if(rng.nextInt(100) < writePercentage){
+					if(rng.nextBoolean()){
+						tree.insert(key);
+						expected.add(key);
+					} else if(!tree.isEmpty()){
+						assertEquals(expected.remove(key), tree.delete(key) != null);
+					}
+				} else if(!tree.isEmpty()){
+					assertEquals(expected.contains(key), tree.search(key) != null);
+				}
+				if(repairing && !tree.isRestoringBalance()) // Updates in the middle of a repair keep it sound.
+					assertTrue(tree.isAVLGBalanced());
+			}
+			assertTrue(tree.isBST());
+			assertEquals(new ArrayList<>(expected), keys(tree));
+		}
+		tree.restoreBalance();
+		assertFalse(tree.isRestoringBalance());
+		assertTrue(tree.isAVLGBalanced());
+	}
+
+	@Test(expected = InvalidBalanceException.class)
+	public void testInvalidAdaptiveImbalance() throws InvalidBalanceException {
+		tree(1).enableAdaptiveImbalance(3, 2, 100);
+	}
+
+	@Test
+	public void testCursorAgainstTreeSet() throws EmptyTreeException {
+		Random rng = new Random(SEED);
+		for(int g = 1; g <= 4; g++){
+			AVLGTree<Integer> tree = tree(g);
+			AVLGTree<Integer>.Cursor cursor = tree.cursor();
+			assertNull(cursor.get()); // The tree is empty.
+			TreeSet<Integer> expected = new TreeSet<>();
+			Integer current = null;
+			for(int i = 0; i < 20000; i++){
+				int key = rng.nextInt(2000);
+				switch(rng.nextInt(6)){
+					case 0:
+						cursor.insert(key);
+						expected.add(key);
+						current = key;
+						break;
+					case 1: // Changes behind the cursor's back.
+						tree.insert(key);
+						expected.add(key);
+						if(!tree.isEmpty() && rng.nextBoolean()){
+							tree.delete(key + 1);
+							expected.remove(key + 1);
+							if(current != null && current == key + 1)
+								current = expected.ceiling(key + 1);
+						}
+						break;
+					case 2:
+						current = cursor.seek(key);
+						assertEquals(expected.ceiling(key), current);
+						break;
+					case 3:
+					case 4:
+						Integer next = (current == null) ? null : expected.higher(current);
+						assertEquals(next, cursor.next());
+						current = next;
+						break;
+					default:
+						Integer previous = (current == null) ? null : expected.lower(current);
+						assertEquals(previous, cursor.previous());
+						current = previous;
+				}
+				assertEquals(current, cursor.get());
+			}
+			assertTrue(tree.isBST());
+			assertTrue(tree.isAVLGBalanced());
+			assertEquals(new ArrayList<>(expected), keys(tree));
+		}
+	}
+
+	/*
+	 * A key that counts its comparisons.
+	 */
+	private static final class CountedKey implements Comparable<CountedKey> {
+		private static long comparisons;
+		private final int value;
+
+		private CountedKey(int value){
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(CountedKey other){
+			comparisons++;
+			return Integer.compare(value, other.value);
+		}
+	}
+
+	@Test
+	public void testCursorLocality() throws InvalidBalanceException {
+		AVLGTree<CountedKey> tree = new AVLGTree<>(1), fingered = new AVLGTree<>(1);
+		AVLGTree<CountedKey>.Cursor cursor = fingered.cursor();
+		CountedKey.comparisons = 0;
+		for(int i = 0; i < 100_000; i++)
+			tree.insert(new CountedKey(2 * i));
+		long fromRoot = CountedKey.comparisons;
+		CountedKey.comparisons = 0;
+		for(int i = 0; i < 100_000; i++)
+			cursor.insert(new CountedKey(2 * i));
+		assertTrue(CountedKey.comparisons < fromRoot / 2); // Each insertion starts next to the previous one.
+		assertTrue(fingered.isAVLGBalanced());
+		assertEquals(100_000, fingered.getCount());
+
+		cursor = fingered.cursor();
+		CountedKey.comparisons = 0;
+		for(int i = 1; i < 200_000; i += 4) // Keys 2 away from each other, in rank.
+			assertEquals(i + 1, cursor.seek(new CountedKey(i)).value);
+		assertTrue(CountedKey.comparisons < 10L * 50_000); // From the root, it would take ~17 per key.
+		assertNull(cursor.seek(new CountedKey(200_000)));
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testFailFastIteration(){
+		AVLGTree<Integer> tree = tree(1);
+		tree.insert(1);
+		tree.insert(2);
+		Iterator<Integer> it = tree.iterator();
+		it.next();
+		tree.insert(3);
+		it.next();
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testSelectOutOfBounds(){
+		AVLGTree<Integer> tree = tree(1);
+		tree.insert(1);
+		tree.select(1);
+	}
+}
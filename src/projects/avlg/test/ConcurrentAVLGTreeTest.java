@@ -0,0 +1,109 @@
+package projects.avlg.test;
+
+import org.junit.Test;
+import projects.avlg.ConcurrentAVLGTree;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>A testing framework for {@link ConcurrentAVLGTree}.</p>
+ *
+ * @see ConcurrentAVLGTree
+ */
+public class ConcurrentAVLGTreeTest {
+
+	private static final int THREADS = 4;
+
+	@Test(expected = InvalidBalanceException.class)
+	public void testInvalidBalance() throws InvalidBalanceException {
+		new ConcurrentAVLGTree<Integer>(0);
+	}
+
+	@Test
+	public void testSequentialAgainstTreeSet() throws InvalidBalanceException {
+		Random rng = new Random(AVLGTreeTest.SEED);
+		for(int g = 1; g <= 4; g++){
+			ConcurrentAVLGTree<Integer> tree = new ConcurrentAVLGTree<>(g);
+			TreeSet<Integer> expected = new TreeSet<>();
+			for(int i = 0; i < 50000; i++){
+				int key = rng.nextInt(2000);
+				switch(rng.nextInt(3)){
+					case 0:
+						assertEquals(expected.add(key), tree.insert(key));
+						break;
+					case 1:
+						assertEquals(expected.remove(key), tree.delete(key) != null);
+						break;
+					default:
+						assertEquals(expected.contains(key), tree.search(key) != null);
+				}
+			}
+			assertEquals(expected.size(), tree.getCount());
+			assertTrue(tree.isBST());
+			assertTrue(tree.isAVLGBalanced());
+		}
+	}
+
+	@Test
+	public void testRoutingNodes() throws InvalidBalanceException {
+		ConcurrentAVLGTree<Integer> tree = new ConcurrentAVLGTree<>(1);
+		for(int key : new int[]{2, 1, 3})
+			tree.insert(key);
+		assertEquals(Integer.valueOf(2), tree.delete(2)); // The root has two children, so it stays as a routing node.
+		assertNull(tree.search(2));
+		assertEquals(2, tree.getCount());
+		assertEquals(1, tree.getHeight());
+		assertTrue(tree.insert(2)); // Revived.
+		assertFalse(tree.insert(2));
+		assertEquals(Integer.valueOf(2), tree.delete(2));
+		tree.delete(1); // Now the routing node can go.
+		assertEquals(0, tree.getHeight());
+		assertTrue(tree.isAVLGBalanced());
+	}
+
+	@Test
+	public void testConcurrentUpdatesAndLookups() throws InvalidBalanceException, InterruptedException {
+		for(int g = 1; g <= 3; g++){
+			ConcurrentAVLGTree<Integer> tree = new ConcurrentAVLGTree<>(g);
+			int perThread = 2000;
+			for(int key = 1; key <= perThread; key++) // Negative keys that stay put, for the readers.
+				tree.insert(-key);
+			AtomicBoolean failed = new AtomicBoolean();
+			Thread[] threads = new Thread[THREADS + 1];
+			for(int t = 0; t < THREADS; t++){
+				int id = t;
+				threads[t] = new Thread(() -> { // Each writer owns the keys that are equal to its id modulo THREADS.
+					Random rng = new Random(AVLGTreeTest.SEED + id);
+					boolean[] stored = new boolean[perThread];
+					for(int i = 0; i < 20000; i++){
+						int k = rng.nextInt(perThread), key = k * THREADS + id;
+						if(stored[k] ? tree.delete(key) == null : !tree.insert(key))
+							failed.set(true);
+						stored[k] = !stored[k];
+					}
+					for(int k = 0; k < perThread; k++)
+						if(stored[k] != (tree.search(k * THREADS + id) != null))
+							failed.set(true);
+				});
+			}
+			threads[THREADS] = new Thread(() -> {
+				Random rng = new Random(AVLGTreeTest.SEED);
+				for(int i = 0; i < 50000; i++)
+					if(tree.search(-1 - rng.nextInt(perThread)) == null)
+						failed.set(true);
+			});
+			for(Thread thread : threads)
+				thread.start();
+			for(Thread thread : threads)
+				thread.join();
+			assertFalse(failed.get());
+			assertTrue(tree.isBST());
+			assertTrue(tree.isAVLGBalanced());
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package projects.avlg.test;
+
+import org.junit.Test;
+import projects.avlg.PersistentAVLGTree;
+import projects.avlg.exceptions.EmptyTreeException;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>A testing framework for {@link PersistentAVLGTree}.</p>
+ *
+ * @see PersistentAVLGTree
+ */
+public class PersistentAVLGTreeTest {
+
+	private static List<Integer> keys(Iterable<Integer> tree){
+		List<Integer> keys = new ArrayList<>();
+		for(Integer key : tree)
+			keys.add(key);
+		return keys;
+	}
+
+	@Test(expected = EmptyTreeException.class)
+	public void testEmptySearch() throws InvalidBalanceException, EmptyTreeException {
+		new PersistentAVLGTree<Integer>(1).search(5);
+	}
+
+	@Test
+	public void testAgainstTreeSet() throws InvalidBalanceException, EmptyTreeException {
+		Random rng = new Random(AVLGTreeTest.SEED);
+		for(int g = 1; g <= 4; g++){
+			PersistentAVLGTree<Integer> tree = new PersistentAVLGTree<>(g);
+			TreeSet<Integer> expected = new TreeSet<>();
+			for(int i = 0; i < 20000; i++){
+				int key = rng.nextInt(3000);
+				if(rng.nextBoolean() || tree.isEmpty()){
+					tree.insert(key);
+					expected.add(key);
+				} else {
+					assertEquals(expected.remove(key), tree.delete(key) != null);
+				}
+			}
+			assertEquals(expected.size(), tree.getCount());
+			assertEquals(new ArrayList<>(expected), keys(tree));
+			assertEquals(expected.headSet(1500).size(), tree.rank(1500));
+			assertTrue(tree.isBST());
+			assertTrue(tree.isAVLGBalanced());
+		}
+	}
+
+	@Test
+	public void testSnapshotsAreIsolated() throws InvalidBalanceException, EmptyTreeException {
+		PersistentAVLGTree<Integer> tree = new PersistentAVLGTree<>(2);
+		for(int i = 0; i < 1000; i++)
+			tree.insert(i);
+		PersistentAVLGTree<Integer> snapshot = tree.snapshot();
+		List<Integer> before = keys(snapshot);
+		for(int i = 0; i < 1000; i += 2)
+			tree.delete(i);
+		tree.insert(5000);
+		snapshot.insert(-1);
+		assertEquals(1000, before.size());
+		assertEquals(1001, snapshot.getCount());
+		assertEquals(Integer.valueOf(0), snapshot.search(0));
+		assertNull(snapshot.search(5000));
+		assertEquals(501, tree.getCount());
+		assertNull(tree.search(0));
+		assertNull(tree.search(-1));
+		assertTrue(snapshot.isAVLGBalanced());
+		assertTrue(tree.isAVLGBalanced());
+	}
+
+	@Test
+	public void testIteratorSeesOneVersion() throws InvalidBalanceException {
+		PersistentAVLGTree<Integer> tree = new PersistentAVLGTree<>(1);
+		for(int i = 0; i < 100; i++)
+			tree.insert(i);
+		int count = 0;
+		for(Integer ignored : tree){
+			tree.insert(1000 + count); // Not visible to the iterator, and no ConcurrentModificationException.
+			count++;
+		}
+		assertEquals(100, count);
+		assertEquals(200, tree.getCount());
+	}
+}
@@ -0,0 +1,93 @@
+package projects.avlg.test;
+
+import org.junit.Test;
+import projects.avlg.IntAVLGTree;
+import projects.avlg.LongAVLGTree;
+import projects.avlg.PooledAVLGTree;
+import projects.avlg.exceptions.EmptyTreeException;
+import projects.avlg.exceptions.InvalidBalanceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>A testing framework for {@link PooledAVLGTree}, {@link IntAVLGTree} and {@link LongAVLGTree}.</p>
+ *
+ * @see PooledAVLGTree
+ * @see IntAVLGTree
+ * @see LongAVLGTree
+ */
+public class PooledAVLGTreeTest {
+
+	@Test(expected = InvalidBalanceException.class)
+	public void testInvalidBalance() throws InvalidBalanceException {
+		new IntAVLGTree(0);
+	}
+
+	@Test(expected = EmptyTreeException.class)
+	public void testEmptySearch() throws InvalidBalanceException, EmptyTreeException {
+		new PooledAVLGTree<Integer>(1).search(5);
+	}
+
+	@Test
+	public void testAgainstTreeSet() throws InvalidBalanceException, EmptyTreeException {
+		Random rng = new Random(AVLGTreeTest.SEED);
+		for(int g = 1; g <= 4; g++){
+			IntAVLGTree ints = new IntAVLGTree(g);
+			LongAVLGTree longs = new LongAVLGTree(g, 1); // Starts tiny, to make the pool grow.
+			PooledAVLGTree<Integer> objects = new PooledAVLGTree<>(g);
+			TreeSet<Integer> expected = new TreeSet<>();
+			for(int i = 0; i < 30000; i++){
+				int key = rng.nextInt(3000);
+				if(rng.nextInt(5) < 3){
+					boolean added = expected.add(key);
+					assertEquals(added, ints.insert(key));
+					assertEquals(added, longs.insert((long)key << 32));
+					objects.insert(key);
+				} else {
+					boolean removed = expected.remove(key);
+					assertEquals(removed, ints.delete(key));
+					assertEquals(removed, longs.delete((long)key << 32));
+					if(!objects.isEmpty())
+						assertEquals(removed, objects.delete(key) != null);
+				}
+				assertEquals(expected.contains(key), ints.contains(key));
+			}
+			assertEquals(expected.size(), ints.getCount());
+			assertEquals(expected.size(), longs.getCount());
+			assertEquals(expected.size(), objects.getCount());
+			assertTrue(ints.isBST() && longs.isBST() && objects.isBST());
+			assertTrue(ints.isAVLGBalanced() && longs.isAVLGBalanced() && objects.isAVLGBalanced());
+			List<Integer> inOrder = new ArrayList<>();
+			ints.forEach((int key) -> inOrder.add(key));
+			assertEquals(new ArrayList<>(expected), inOrder);
+			List<Integer> objectsInOrder = new ArrayList<>();
+			objects.forEach(objectsInOrder::add);
+			assertEquals(new ArrayList<>(expected), objectsInOrder);
+		}
+	}
+
+	@Test
+	public void testFreeListReuse() throws InvalidBalanceException {
+		IntAVLGTree tree = new IntAVLGTree(1, 100);
+		for(int round = 0; round < 10; round++){
+			for(int i = 0; i < 100; i++)
+				assertTrue(tree.insert(round * 1000 + i));
+			for(int i = 0; i < 100; i++)
+				assertTrue(tree.delete(round * 1000 + i));
+		}
+		assertEquals(100, tree.getCapacity()); // Deleted nodes were reused, so the pool never grew.
+		assertTrue(tree.isEmpty());
+		assertEquals(-1, tree.getHeight());
+		for(int i = 0; i < 1000; i++)
+			tree.insert(i);
+		assertEquals(9, tree.getHeight()); // Ascending keys make an AVL-1 tree of ~log2(1000) height.
+		tree.clear();
+		assertTrue(tree.isEmpty());
+		assertFalse(tree.contains(5));
+	}
+}
@@ -0,0 +1,116 @@
+package projects.spatial.clients;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.trees.KDTree;
+import projects.spatial.trees.PRQuadTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p><tt>HilbertLoadTimingClient</tt> loads the same points into {@link KDTree}s and {@link PRQuadTree}s in different
+ * ways, and times both the load and a fixed set of queries that follow it:</p>
+ *
+ * <ul>
+ *     <li>For {@link KDTree}s, random-order insertion is compared against a sequential and a parallel
+ *     {@link KDTree#insertAll(java.util.Collection, boolean) bulk load}, and, for a tree that already holds half of the
+ *     points, random-order insertion of the other half against a Hilbert-ordered batch insertion. The queries are nearest
+ *     neighbor queries around random anchors.</li>
+ *     <li>For {@link PRQuadTree}s, random-order insertion is compared against
+ *     {@link PRQuadTree#insertAll(java.util.Collection, boolean) Hilbert-ordered} insertion. The trees have the same shape
+ *     either way, so any difference in the searches that follow comes from memory locality alone.</li>
+ * </ul>
+ *
+ * <p>This application ignores all command-line arguments.</p>
+ */
+public class HilbertLoadTimingClient {
+
+    private static final int NUM_POINTS = 1000000;
+    private static final int NUM_QUERIES = 500000;
+    private static final int K = 20; // The PRQuadTree spans [-2^19, 2^19]^2.
+    private static final int BUCKET_SIZE = 4;
+
+    private static final long SEED = 47;
+    private static final Random RNG = new Random(SEED);
+
+    /**
+     * <p><tt>main()</tt> is the routine that executes the experiment.</p>
+     * @param args Arguments provided by the shell on the command line. Ignored.
+     */
+    public static void main(String[] args){
+        List<KDPoint> points = points(NUM_POINTS); // The time this takes is not counted in our experiments, of course.
+        List<KDPoint> anchors = points(NUM_QUERIES);
+        System.out.println("----------------------------------------------------------------");
+        System.out.println("Loading " + NUM_POINTS + " points into a KDTree, then running " + NUM_QUERIES + " nearest neighbor queries.");
+        for(String how : new String[]{"insert()", "insertAll(), sequential", "insertAll(), parallel", "half, then insert()",
+                "half, then insertAll()"}){
+            KDTree tree = new KDTree();
+            long begin = System.nanoTime();
+            switch(how){
+                case "insert()":
+                    for(KDPoint p : points)
+                        tree.insert(p);
+                    break;
+                case "insertAll(), sequential":
+                    tree.insertAll(points, false);
+                    break;
+                case "insertAll(), parallel":
+                    tree.insertAll(points, true);
+                    break;
+                default: // Half of the points are already there, and the load time is that of the other half.
+                    tree.insertAll(points.subList(0, NUM_POINTS / 2), false);
+                    begin = System.nanoTime();
+                    if(how.endsWith("insertAll()"))
+                        tree.insertAll(points.subList(NUM_POINTS / 2, NUM_POINTS), false);
+                    else
+                        for(KDPoint p : points.subList(NUM_POINTS / 2, NUM_POINTS))
+                            tree.insert(p);
+            }
+            long load = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            long checksum = 0;
+            for(KDPoint anchor : anchors)
+                checksum += (tree.nearestNeighbor(anchor) == null) ? 0 : 1; // Keeps the JIT from optimizing queries away.
+            long queries = System.nanoTime() - begin;
+            report(how, load, queries, tree.height(), checksum);
+        }
+
+        System.out.println("----------------------------------------------------------------");
+        System.out.println("Loading " + NUM_POINTS + " points into a PRQuadTree, then running " + NUM_QUERIES + " searches.");
+        for(boolean hilbert : new boolean[]{false, true}){
+            PRQuadTree tree = new PRQuadTree(K, BUCKET_SIZE);
+            long begin = System.nanoTime();
+            if(hilbert){
+                tree.insertAll(points, false);
+            } else {
+                for(KDPoint p : points)
+                    tree.insert(p);
+            }
+            long load = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            long checksum = 0;
+            for(int i = 0; i < NUM_QUERIES; i++)
+                checksum += tree.search(points.get(RNG.nextInt(NUM_POINTS))) ? 1 : 0;
+            long queries = System.nanoTime() - begin;
+            report(hilbert ? "insertAll()" : "insert()", load, queries, tree.height(), checksum);
+        }
+        System.out.println("----------------------------------------------------------------");
+    }
+
+    /* *********** Some helper functions to make main() cleaner: ***************** */
+
+    private static List<KDPoint> points(int n){
+        double half = Math.scalb(1.0, K - 1);
+        KDPoint[] points = new KDPoint[n];
+        for(int i = 0; i < n; i++)
+            points[i] = new KDPoint((2 * RNG.nextDouble() - 1) * half, (2 * RNG.nextDouble() - 1) * half);
+        return new ArrayList<>(Arrays.asList(points));
+    }
+
+    private static void report(String how, long loadNanos, long queryNanos, int height, long checksum){
+        System.out.println(String.format("%-24s load %8.1f ms, queries %8.1f ms, height %d%s", how + ":", loadNanos / 1e6,
+                queryNanos / 1e6, height, (checksum < 0) ? "!" : "."));
+    }
+}
@@ -0,0 +1,83 @@
+package projects.spatial.clients;
+
+import projects.spatial.clustering.KMeans;
+import projects.spatial.clustering.KMeansResult;
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * <p><tt>KMeansTimingClient</tt> clusters a mixture of Gaussian blobs with {@link KMeans} and prints the time spent
+ * on every iteration of the filtering algorithm, next to the time a naive assignment step, which compares every point
+ * against every center, takes over the same points.</p>
+ *
+ * <p>This application ignores all command-line arguments.</p>
+ */
+public class KMeansTimingClient {
+
+    private static final int NUM_POINTS = 1000000;
+    private static final int DIMS = 2;
+    private static final int[] KS = {8, 64, 256};
+    private static final int MAX_ITERATIONS = 20;
+    private static final int NAIVE_ITERATIONS = 3;
+
+    private static final long SEED = 47;
+    private static final Random RNG = new Random(SEED);
+
+    /**
+     * <p><tt>main()</tt> is the routine that executes the experiment.</p>
+     * @param args Arguments provided by the shell on the command line. Ignored.
+     */
+    public static void main(String[] args){
+        for(int k : KS){
+            System.out.println("----------------------------------------------------------------");
+            System.out.println("Clustering " + NUM_POINTS + " " + DIMS + "-D points drawn from " + k + " blobs into " + k + " clusters.");
+            ArrayList<KDPoint> points = blobs(k); // The time this takes is not counted in our experiments, of course.
+            KMeansResult result = new KMeans(k, MAX_ITERATIONS, KMeans.DEFAULT_TOLERANCE, SEED,
+                    Runtime.getRuntime().availableProcessors()).cluster(points);
+            System.out.println(result);
+            System.out.println(String.format("A naive assignment step takes %.2f ms on average.", naiveMillis(points, result.getCenters())));
+        }
+        System.out.println("----------------------------------------------------------------");
+    }
+
+    /* *********** Some helper functions to make main() cleaner: ***************** */
+
+    private static ArrayList<KDPoint> blobs(int k){
+        KDPoint[] means = new KDPoint[k];
+        for(int i = 0; i < k; i++){
+            means[i] = new KDPoint(DIMS);
+            for(int d = 0; d < DIMS; d++)
+                means[i].coords[d] = 1000 * RNG.nextDouble();
+        }
+        ArrayList<KDPoint> points = new ArrayList<>(NUM_POINTS);
+        for(int i = 0; i < NUM_POINTS; i++){
+            KDPoint p = new KDPoint(means[RNG.nextInt(k)]);
+            for(int d = 0; d < DIMS; d++)
+                p.coords[d] += 10 * RNG.nextGaussian();
+            points.add(p);
+        }
+        return points;
+    }
+
+    private static double naiveMillis(ArrayList<KDPoint> points, KDPoint[] centers){
+        long begin = System.nanoTime();
+        long checksum = 0;
+        for(int iteration = 0; iteration < NAIVE_ITERATIONS; iteration++)
+            for(KDPoint p : points){
+                int best = 0;
+                double bestDist = centers[0].distance(p);
+                for(int z = 1; z < centers.length; z++){
+                    double dist = centers[z].distance(p);
+                    if(dist < bestDist){
+                        bestDist = dist;
+                        best = z;
+                    }
+                }
+                checksum += best; // Keeps the JIT from optimizing the loop away.
+            }
+        double millis = (System.nanoTime() - begin) / 1e6 / NAIVE_ITERATIONS;
+        return (checksum < 0) ? -millis : millis;
+    }
+}
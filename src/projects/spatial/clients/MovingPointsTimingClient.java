@@ -0,0 +1,111 @@
+package projects.spatial.clients;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.trees.KDTree;
+import projects.spatial.trees.PRQuadTree;
+
+import java.util.Random;
+
+/**
+ * <p><tt>MovingPointsTimingClient</tt> simulates a fleet of vehicles that report their position once per tick, and
+ * times how long it takes {@link KDTree} and {@link PRQuadTree} to track them, first through a {@link KDTree#delete(KDPoint)
+ * delete} followed by an {@link KDTree#insert(KDPoint) insert}, and then through a single {@link KDTree#update(KDPoint, KDPoint)
+ * update}. Every vehicle moves by a random step whose size is varied across experiments: small steps mostly keep vehicles
+ * within their region, whereas large ones keep moving them across the tree.</p>
+ *
+ * <p>This application ignores all command-line arguments.</p>
+ */
+public class MovingPointsTimingClient {
+
+    private static final int NUM_VEHICLES = 100000;
+    private static final int NUM_TICKS = 20;
+    private static final int K = 12; // The PRQuadTree spans [-2048, 2048]^2.
+    private static final int BUCKET_SIZE = 4;
+    private static final double[] STEPS = {0.5, 8, 128};
+
+    private static final long SEED = 47;
+    private static final Random RNG = new Random(SEED);
+
+    /**
+     * <p><tt>main()</tt> is the routine that executes the experiment.</p>
+     * @param args Arguments provided by the shell on the command line. Ignored.
+     */
+    public static void main(String[] args){
+        for(double step : STEPS){
+            System.out.println("----------------------------------------------------------------");
+            System.out.println("Running " + NUM_TICKS + " ticks of " + NUM_VEHICLES + " vehicles with a step of " + step + ".");
+            double[][][] trajectories = trajectories(step); // The time this takes is not counted in our experiments, of course.
+            for(boolean useUpdate : new boolean[]{false, true}){
+                String how = useUpdate ? "update()" : "delete() + insert()";
+                System.out.println("KDTree, " + how + ": " + trackWithKDTree(trajectories, useUpdate) + " ms.");
+                System.out.println("PRQuadTree, " + how + ": " + trackWithPRQuadTree(trajectories, useUpdate) + " ms.");
+            }
+        }
+        System.out.println("----------------------------------------------------------------");
+    }
+
+    /* *********** Some helper functions to make main() cleaner: ***************** */
+
+    /*
+     * trajectories[t][v] is the position of vehicle v at tick t. Positions are rounded to a grid of
+     * 1/1024 and kept inside the space spanned by the PRQuadTree. Bouncing off the borders could
+     * make two vehicles meet, but that is rare enough not to matter for timing purposes.
+     */
+    private static double[][][] trajectories(double step){
+        double half = Math.scalb(1.0, K - 1) - 1;
+        double[][][] positions = new double[NUM_TICKS + 1][NUM_VEHICLES][];
+        for(int v = 0; v < NUM_VEHICLES; v++)
+            positions[0][v] = new double[]{snap((2 * RNG.nextDouble() - 1) * half), snap((2 * RNG.nextDouble() - 1) * half)};
+        for(int t = 1; t <= NUM_TICKS; t++)
+            for(int v = 0; v < NUM_VEHICLES; v++){
+                double[] prev = positions[t - 1][v];
+                positions[t][v] = new double[]{snap(clamp(prev[0] + step * RNG.nextGaussian(), half)),
+                        snap(clamp(prev[1] + step * RNG.nextGaussian(), half))};
+            }
+        return positions;
+    }
+
+    private static double clamp(double x, double half){
+        return Math.max(-half, Math.min(half, x));
+    }
+
+    private static double snap(double x){
+        return Math.rint(x * 1024) / 1024;
+    }
+
+    private static long trackWithKDTree(double[][][] trajectories, boolean useUpdate){
+        KDTree tree = new KDTree(2);
+        for(double[] position : trajectories[0])
+            tree.insert(new KDPoint(position));
+        long begin = System.currentTimeMillis();
+        for(int t = 1; t < trajectories.length; t++)
+            for(int v = 0; v < NUM_VEHICLES; v++){
+                KDPoint from = new KDPoint(trajectories[t - 1][v]), to = new KDPoint(trajectories[t][v]);
+                if(useUpdate){
+                    tree.update(from, to);
+                } else {
+                    tree.delete(from);
+                    tree.insert(to);
+                }
+            }
+        return System.currentTimeMillis() - begin;
+    }
+
+    private static long trackWithPRQuadTree(double[][][] trajectories, boolean useUpdate){
+        PRQuadTree tree = new PRQuadTree(K, BUCKET_SIZE);
+        for(double[] position : trajectories[0])
+            tree.insert(new KDPoint(position));
+        long begin = System.currentTimeMillis();
+        for(int t = 1; t < trajectories.length; t++)
+            for(int v = 0; v < NUM_VEHICLES; v++){
+                KDPoint from = new KDPoint(trajectories[t - 1][v]), to = new KDPoint(trajectories[t][v]);
+                if(useUpdate){
+                    tree.update(from, to);
+                } else {
+                    tree.delete(from);
+                    tree.insert(to);
+                }
+            }
+        return System.currentTimeMillis() - begin;
+    }
+}
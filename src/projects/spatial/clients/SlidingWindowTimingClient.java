@@ -0,0 +1,91 @@
+package projects.spatial.clients;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.trees.KDTree;
+import projects.spatial.trees.TimeWindowedSpatialIndex;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * <p><tt>SlidingWindowTimingClient</tt> simulates a stream of position reports, of which only those of the last
+ * {@link #WINDOW} ticks matter, and times how long it takes to keep them indexed, first with a single {@link KDTree}
+ * from which every expired report is {@link KDTree#delete(KDPoint) deleted} explicitly, and then with a
+ * {@link TimeWindowedSpatialIndex} of {@link KDTree}s, which drops whole slices. Both run the same nearest neighbor
+ * queries after every tick, so that the cost of fanning queries out across slices is accounted for.</p>
+ *
+ * <p>This application ignores all command-line arguments.</p>
+ */
+public class SlidingWindowTimingClient {
+
+    private static final int NUM_TICKS = 200;
+    private static final int REPORTS_PER_TICK = 10000;
+    private static final int WINDOW = 50; // In ticks.
+    private static final int[] SLICES = {5, 10, 25};
+    private static final int QUERIES_PER_TICK = 1000;
+
+    private static final long SEED = 47;
+
+    private static long tick; // The clock of the windowed index.
+
+    /**
+     * <p><tt>main()</tt> is the routine that executes the experiment.</p>
+     * @param args Arguments provided by the shell on the command line. Ignored.
+     */
+    public static void main(String[] args){
+        System.out.println("----------------------------------------------------------------");
+        System.out.println("Streaming " + NUM_TICKS + " ticks of " + REPORTS_PER_TICK + " reports, with a window of " + WINDOW + " ticks.");
+        System.out.println("KDTree with explicit deletes: " + explicitDeletes() + " ms.");
+        for(int slices : SLICES)
+            System.out.println("TimeWindowedSpatialIndex with " + slices + " slices: " + windowed(slices) + " ms.");
+        System.out.println("----------------------------------------------------------------");
+    }
+
+    /* *********** Some helper functions to make main() cleaner: ***************** */
+
+    private static KDPoint report(Random rng){
+        return new KDPoint(1000 * rng.nextDouble(), 1000 * rng.nextDouble());
+    }
+
+    private static long explicitDeletes(){
+        Random rng = new Random(SEED);
+        KDTree tree = new KDTree();
+        ArrayDeque<KDPoint> live = new ArrayDeque<>();
+        long checksum = 0;
+        long begin = System.currentTimeMillis();
+        for(int t = 0; t < NUM_TICKS; t++){
+            if(t >= WINDOW)
+                for(int i = 0; i < REPORTS_PER_TICK; i++)
+                    tree.delete(live.removeFirst());
+            for(int i = 0; i < REPORTS_PER_TICK; i++){
+                KDPoint p = report(rng);
+                tree.insert(p);
+                live.addLast(p);
+            }
+            for(int q = 0; q < QUERIES_PER_TICK; q++)
+                checksum += tree.nearestNeighbor(report(rng)) == null ? 0 : 1; // Keeps the JIT from optimizing queries away.
+        }
+        long millis = System.currentTimeMillis() - begin;
+        return (checksum < 0) ? -millis : millis;
+    }
+
+    /*
+     * Slices of WINDOW / slices ticks each, so that the window spans WINDOW ticks like above,
+     * give or take the slice that is being filled.
+     */
+    private static long windowed(int slices){
+        Random rng = new Random(SEED);
+        tick = 0;
+        TimeWindowedSpatialIndex index = new TimeWindowedSpatialIndex(slices, WINDOW / slices, KDTree::new, () -> tick);
+        long checksum = 0;
+        long begin = System.currentTimeMillis();
+        for(tick = 0; tick < NUM_TICKS; tick++){
+            for(int i = 0; i < REPORTS_PER_TICK; i++)
+                index.insert(report(rng));
+            for(int q = 0; q < QUERIES_PER_TICK; q++)
+                checksum += index.nearestNeighbor(report(rng)) == null ? 0 : 1;
+        }
+        long millis = System.currentTimeMillis() - begin;
+        return (checksum < 0) ? -millis : millis;
+    }
+}
@@ -0,0 +1,108 @@
+package projects.spatial.clients;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.trees.PRQuadTree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * <p><tt>SnapshotTimingClient</tt> checkpoints a {@link PRQuadTree} into a temporary file and restores it, first through
+ * {@link ObjectOutputStream} and {@link ObjectInputStream}, and then through the binary snapshots of
+ * {@link PRQuadTree#writeSnapshot(Path)} and {@link PRQuadTree#readSnapshot(Path)}. It prints the time every step takes and
+ * the size of the resulting files, and makes sure that both restored trees match the original one.</p>
+ *
+ * <p>This application ignores all command-line arguments.</p>
+ */
+public class SnapshotTimingClient {
+
+    private static final int NUM_POINTS = 1000000;
+    private static final int K = 20; // The PRQuadTree spans [-2^19, 2^19]^2.
+    private static final int[] BUCKET_SIZES = {1, 4, 16};
+    private static final int ROUNDS = 3; // We report the best of a few rounds, to leave JIT compilation out.
+
+    private static final long SEED = 47;
+    private static final Random RNG = new Random(SEED);
+
+    /**
+     * <p><tt>main()</tt> is the routine that executes the experiment.</p>
+     * @param args Arguments provided by the shell on the command line. Ignored.
+     * @throws IOException if the temporary files cannot be written or read.
+     * @throws ClassNotFoundException never, in practice.
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        KDPoint[] points = points(); // The time this takes is not counted in our experiments, of course.
+        Path file = Files.createTempFile("prquadtree", ".bin");
+        try {
+            for(int bucketSize : BUCKET_SIZES){
+                PRQuadTree tree = new PRQuadTree(K, bucketSize);
+                for(KDPoint p : points)
+                    tree.insert(p);
+                System.out.println("----------------------------------------------------------------");
+                System.out.println("A PRQuadTree of " + tree.count() + " points with a bucket size of " + bucketSize +
+                        " and a height of " + tree.height() + ".");
+
+                long write = Long.MAX_VALUE, read = Long.MAX_VALUE;
+                PRQuadTree restored = null;
+                for(int round = 0; round < ROUNDS; round++){
+                    long begin = System.nanoTime();
+                    try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+                        out.writeObject(tree);
+                    }
+                    write = Math.min(write, System.nanoTime() - begin);
+                    begin = System.nanoTime();
+                    try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))){
+                        restored = (PRQuadTree)in.readObject();
+                    }
+                    read = Math.min(read, System.nanoTime() - begin);
+                }
+                report("ObjectOutputStream", write, read, Files.size(file));
+                check(tree, restored, points);
+
+                write = read = Long.MAX_VALUE;
+                for(int round = 0; round < ROUNDS; round++){
+                    long begin = System.nanoTime();
+                    tree.writeSnapshot(file);
+                    write = Math.min(write, System.nanoTime() - begin);
+                    begin = System.nanoTime();
+                    restored = PRQuadTree.readSnapshot(file);
+                    read = Math.min(read, System.nanoTime() - begin);
+                }
+                report("Binary snapshot", write, read, Files.size(file));
+                check(tree, restored, points);
+            }
+            System.out.println("----------------------------------------------------------------");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /* *********** Some helper functions to make main() cleaner: ***************** */
+
+    private static KDPoint[] points(){
+        double half = Math.scalb(1.0, K - 1);
+        KDPoint[] points = new KDPoint[NUM_POINTS];
+        for(int i = 0; i < NUM_POINTS; i++)
+            points[i] = new KDPoint((2 * RNG.nextDouble() - 1) * half, (2 * RNG.nextDouble() - 1) * half);
+        return points;
+    }
+
+    private static void report(String how, long writeNanos, long readNanos, long bytes){
+        System.out.println(String.format("%s: write %.1f ms, read %.1f ms, %.1f MB.", how, writeNanos / 1e6,
+                readNanos / 1e6, bytes / 1e6));
+    }
+
+    private static void check(PRQuadTree original, PRQuadTree restored, KDPoint[] points){
+        if(restored.count() != original.count() || restored.height() != original.height())
+            throw new RuntimeException("The restored tree does not match the original one.");
+        for(int i = 0; i < points.length; i += 1000)
+            if(!restored.search(points[i]))
+                throw new RuntimeException("The restored tree lost " + points[i] + ".");
+    }
+}
@@ -0,0 +1,291 @@
+package projects.spatial.clustering;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.trees.KDTree;
+import projects.spatial.trees.PointIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+
+/**
+ * <p>{@link DBSCAN} implements the density-based clustering algorithm of Ester, Kriegel, Sander and Xu on top of the
+ * range queries of a {@link KDTree}. A point is a <em>core</em> point if at least <tt>minPts</tt> points, itself
+ * included, lie within a distance of <tt>eps</tt> from it. Core points within <tt>eps</tt> of each other belong to the same
+ * cluster; every other point within <tt>eps</tt> of a core point is a <em>border</em> point of one of the clusters of those
+ * core points, and all remaining points are {@link #NOISE}.</p>
+ *
+ * <p>Instead of expanding clusters one at a time from a seed, which is inherently sequential, the algorithm runs in four
+ * phases, and reports the time spent on each of them:</p>
+ * <ol>
+ *     <li><b>Indexing</b>: the points are inserted into a {@link KDTree} in random order, so that it stays reasonably
+ *     balanced whatever the order of the input. Exact duplicates are collapsed into a single <em>distinct</em> point
+ *     with a multiplicity, and distinct points are sorted by grid cell, so that the queries of the next phases run in
+ *     an order with good locality.</li>
+ *     <li><b>Core detection</b>: every distinct point runs a {@link KDTree#rangeCount(KDPoint, double, int) count-only
+ *     range query}, in parallel, which stops as soon as it has seen enough points.</li>
+ *     <li><b>Merging</b>: every core point runs a full range query, in parallel, and unites itself with every core point
+ *     it finds in a lock-free union-find structure. Every non-core point it finds is claimed as a border point through a
+ *     compare-and-set, so that it goes to the first cluster that reaches it.</li>
+ *     <li><b>Labeling</b>: cluster identifiers are assigned to the union-find roots, in order of first appearance in the
+ *     input.</li>
+ * </ol>
+ *
+ * <p>Note that <tt>eps</tt> is a plain Euclidean distance, whereas {@link KDPoint#distance(KDPoint)} is squared; we
+ * square <tt>eps</tt> before querying.</p>
+ *
+ * @see DBSCANResult
+ * @see KDTree#rangeCount(KDPoint, double, int)
+ */
+public class DBSCAN {
+
+    /**
+     * The label of points that belong to no cluster.
+     */
+    public static final int NOISE = -1;
+
+    private static final long SEED = 47;
+
+    private final double eps;
+    private final int minPts, parallelism;
+
+    /* ************************************************************************** */
+    /* ************************* PRIVATE FIELDS AND CLASSES ********************* */
+    /* ************************************************************************** */
+
+    /*
+     * Runs body over [from, to) in parallel, splitting the range in halves.
+     */
+    private static final class ForEach extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int GRAIN = 256;
+        private final int from, to;
+        private final IntConsumer body;
+
+        ForEach(int from, int to, IntConsumer body){
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= GRAIN){
+                for(int i = from; i < to; i++)
+                    body.accept(i);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ForEach(from, mid, body), new ForEach(mid, to, body));
+        }
+    }
+
+    /*
+     * Lock-free union-find with path halving. Roots are linked by index, the larger one under the smaller one,
+     * which rules out cycles without any ranks: a compare-and-set on a root only succeeds if it still is a root.
+     */
+    private static int find(AtomicIntegerArray parent, int x){
+        while(true){
+            int p = parent.get(x);
+            if(p == x)
+                return x;
+            int grandparent = parent.get(p);
+            parent.compareAndSet(x, p, grandparent); // Harmless if it fails.
+            x = grandparent;
+        }
+    }
+
+    private static void union(AtomicIntegerArray parent, int a, int b){
+        while(true){
+            int rootA = find(parent, a), rootB = find(parent, b);
+            if(rootA == rootB)
+                return;
+            int hi = Math.max(rootA, rootB), lo = Math.min(rootA, rootB);
+            if(parent.compareAndSet(hi, hi, lo))
+                return;
+        }
+    }
+
+    /*
+     * Sorts the distinct points in place, by the grid cell of side eps that they fall into, with the first dimension
+     * as the major one, and returns the new position of every point. Queries that run in this order keep hitting the
+     * same paths of the tree, which makes them several times faster than in input order.
+     */
+    private int[] spatialOrder(ArrayList<KDPoint> distinct){
+        int m = distinct.size(), dims = distinct.get(0).coords.length;
+        double[] cells = new double[m * dims];
+        Integer[] order = new Integer[m];
+        for(int i = 0; i < m; i++){
+            order[i] = i;
+            for(int d = 0; d < dims; d++){
+                double c = distinct.get(i).coords[d];
+                cells[i * dims + d] = (eps == 0) ? c : Math.floor(c / eps);
+            }
+        }
+        Arrays.sort(order, (a, b) -> {
+            for(int d = 0; d < dims; d++){
+                int cmp = Double.compare(cells[a * dims + d], cells[b * dims + d]);
+                if(cmp != 0)
+                    return cmp;
+            }
+            return 0;
+        });
+        int[] rank = new int[m];
+        KDPoint[] sorted = new KDPoint[m];
+        for(int i = 0; i < m; i++){
+            rank[order[i]] = i;
+            sorted[i] = distinct.get(order[i]);
+        }
+        for(int i = 0; i < m; i++)
+            distinct.set(i, sorted[i]);
+        return rank;
+    }
+
+    /* ************************************************************************** */
+    /* ************************ PUBLIC (INTERFACE) METHODS ********************** */
+    /* ************************************************************************** */
+
+    /**
+     * Creates a {@link DBSCAN} engine with as many worker threads as there are available processors.
+     * @param eps The radius of the neighborhood of a point, as a Euclidean (<b>not</b> squared) distance.
+     * @param minPts The minimum number of points in the neighborhood of a core point, itself included.
+     * @throws RuntimeException if <tt>eps</tt> is negative or <tt>minPts</tt> &lt; 1.
+     */
+    public DBSCAN(double eps, int minPts){
+        this(eps, minPts, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Full constructor.
+     * @param eps The radius of the neighborhood of a point, as a Euclidean (<b>not</b> squared) distance.
+     * @param minPts The minimum number of points in the neighborhood of a core point, itself included.
+     * @param parallelism The number of worker threads.
+     * @throws RuntimeException if <tt>eps</tt> is negative, or if <tt>minPts</tt> or <tt>parallelism</tt> is smaller than 1.
+     */
+    public DBSCAN(double eps, int minPts, int parallelism){
+        if(eps < 0)
+            throw new RuntimeException("The radius eps cannot be negative; we were given " + eps + ".");
+        if(minPts < 1)
+            throw new RuntimeException("The parameter minPts needs to be a positive integer; we were given " + minPts + ".");
+        if(parallelism < 1)
+            throw new RuntimeException("The parallelism needs to be a positive integer; we were given " + parallelism + ".");
+        this.eps = eps;
+        this.minPts = minPts;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Clusters the provided {@link KDPoint}s.
+     * @param points The {@link KDPoint}s to cluster, all of the same dimensionality. They are not modified.
+     * @return The outcome of the clustering, with one label per point in the iteration order of <tt>points</tt>.
+     * @throws RuntimeException if dimensionalities differ.
+     */
+    public DBSCANResult cluster(Collection<KDPoint> points){
+        int n = points.size();
+        if(n == 0)
+            return new DBSCANResult(new int[0], new boolean[0], 0, new long[4]);
+        int dims = points.iterator().next().coords.length;
+        long[] phaseNanos = new long[4];
+
+        // Phase 1: collapse duplicates and index everything.
+        long begin = System.nanoTime();
+        PointIndex indexOf = new PointIndex(n);
+        ArrayList<KDPoint> distinct = new ArrayList<>();
+        int[] ofInput = new int[n];
+        KDPoint[] input = new KDPoint[n];
+        int i = 0;
+        for(KDPoint p : points){
+            if(p.coords.length != dims)
+                throw new RuntimeException("All KDPoints need to have the same dimensionality, " + dims + ", but " + p + " does not.");
+            int index = indexOf.getOrDefault(p, -1);
+            if(index == -1){
+                index = distinct.size();
+                indexOf.put(p, index);
+                distinct.add(new KDPoint(p));
+            }
+            input[i] = p;
+            ofInput[i++] = index;
+        }
+        int m = distinct.size();
+        int[] rank = spatialOrder(distinct);
+        for(i = 0; i < n; i++)
+            ofInput[i] = rank[ofInput[i]];
+        for(i = 0; i < m; i++)
+            indexOf.put(distinct.get(i), i);
+        int[] weight = new int[m];
+        for(int index : ofInput)
+            weight[index]++;
+        int[] order = new int[n];
+        Random rng = new Random(SEED);
+        for(i = 0; i < n; i++){ // Inside-out Fisher-Yates.
+            int j = rng.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        KDTree tree = new KDTree(dims);
+        for(int index : order)
+            tree.insert(input[index]);
+        phaseNanos[0] = System.nanoTime() - begin;
+
+        double range = eps * eps;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Phase 2: core points. The tree is read-only from now on, so concurrent queries are safe.
+            begin = System.nanoTime();
+            boolean[] core = new boolean[m];
+            pool.invoke(new ForEach(0, m, d -> core[d] = weight[d] >= minPts
+                    || tree.rangeCount(distinct.get(d), range, minPts - weight[d]) + weight[d] >= minPts));
+            phaseNanos[1] = System.nanoTime() - begin;
+
+            // Phase 3: merge core points and claim border points.
+            begin = System.nanoTime();
+            AtomicIntegerArray parent = new AtomicIntegerArray(m), borderOf = new AtomicIntegerArray(m);
+            for(int d = 0; d < m; d++){
+                parent.set(d, d);
+                borderOf.set(d, -1);
+            }
+            pool.invoke(new ForEach(0, m, d -> {
+                if(!core[d])
+                    return;
+                for(KDPoint neighbor : tree.range(distinct.get(d), range)){
+                    int other = indexOf.getOrDefault(neighbor, -1);
+                    if(core[other])
+                        union(parent, d, other);
+                    else if(borderOf.get(other) == -1)
+                        borderOf.compareAndSet(other, -1, d);
+                }
+            }));
+            phaseNanos[2] = System.nanoTime() - begin;
+
+            // Phase 4: labels, numbered in order of first appearance.
+            begin = System.nanoTime();
+            int[] clusterOfRoot = new int[m];
+            Arrays.fill(clusterOfRoot, -1);
+            int numClusters = 0;
+            int[] labels = new int[n];
+            boolean[] isCore = new boolean[n];
+            for(i = 0; i < n; i++){
+                int d = ofInput[i];
+                int anchor = core[d] ? d : borderOf.get(d);
+                isCore[i] = core[d];
+                if(anchor == -1){
+                    labels[i] = NOISE;
+                    continue;
+                }
+                int root = find(parent, anchor);
+                if(clusterOfRoot[root] == -1)
+                    clusterOfRoot[root] = numClusters++;
+                labels[i] = clusterOfRoot[root];
+            }
+            phaseNanos[3] = System.nanoTime() - begin;
+            return new DBSCANResult(labels, isCore, numClusters, phaseNanos);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package projects.spatial.clustering;
+
+/**
+ * <p>{@link DBSCANResult} holds the outcome of a {@link DBSCAN} run: a cluster label for every input point, which of
+ * them are core points, and the time spent on every phase of the run.</p>
+ *
+ * <p>Clusters are numbered from 0 onwards, in the order in which they are first encountered in the input, and points
+ * that belong to no cluster carry the label {@link DBSCAN#NOISE}.</p>
+ *
+ * @see DBSCAN
+ */
+public class DBSCANResult {
+
+    private final int[] labels;
+    private final boolean[] core;
+    private final int numClusters;
+    private final long[] phaseNanos; // Indexing, core detection, merging, labeling.
+
+    DBSCANResult(int[] labels, boolean[] core, int numClusters, long[] phaseNanos){
+        this.labels = labels;
+        this.core = core;
+        this.numClusters = numClusters;
+        this.phaseNanos = phaseNanos;
+    }
+
+    /**
+     * Returns the cluster label of every input point.
+     * @return A fresh array, whose <em>i</em>-th element is the label of the <em>i</em>-th input point: either a
+     * cluster number in [0, {@link #getNumClusters()}), or {@link DBSCAN#NOISE}.
+     */
+    public int[] getLabels(){
+        return labels.clone();
+    }
+
+    /**
+     * Returns the cluster label of a single input point.
+     * @param i The position of the point in the input.
+     * @return The label of the <em>i</em>-th input point.
+     * @throws IndexOutOfBoundsException if <tt>i</tt> is not a valid position.
+     */
+    public int getLabel(int i){
+        return labels[i];
+    }
+
+    /**
+     * Reports whether an input point is a core point.
+     * @param i The position of the point in the input.
+     * @return <tt>true</tt> if the <em>i</em>-th input point is a core point, <tt>false</tt> otherwise.
+     * @throws IndexOutOfBoundsException if <tt>i</tt> is not a valid position.
+     */
+    public boolean isCore(int i){
+        return core[i];
+    }
+
+    /**
+     * Returns the number of clusters found.
+     * @return The number of clusters.
+     */
+    public int getNumClusters(){
+        return numClusters;
+    }
+
+    /**
+     * Returns the number of input points in every cluster, border points included.
+     * @return A fresh array, whose <em>i</em>-th element is the size of the <em>i</em>-th cluster.
+     */
+    public int[] getClusterSizes(){
+        int[] sizes = new int[numClusters];
+        for(int label : labels)
+            if(label != DBSCAN.NOISE)
+                sizes[label]++;
+        return sizes;
+    }
+
+    /**
+     * Returns the number of input points labeled as {@link DBSCAN#NOISE}.
+     * @return The number of noise points.
+     */
+    public int getNoiseCount(){
+        int count = 0;
+        for(int label : labels)
+            if(label == DBSCAN.NOISE)
+                count++;
+        return count;
+    }
+
+    /**
+     * Returns the time spent on collapsing duplicates and building the spatial index.
+     * @return The duration of the indexing phase, in milliseconds.
+     */
+    public double getIndexMillis(){
+        return phaseNanos[0] / 1e6;
+    }
+
+    /**
+     * Returns the time spent on finding the core points.
+     * @return The duration of the core detection phase, in milliseconds.
+     */
+    public double getCoreMillis(){
+        return phaseNanos[1] / 1e6;
+    }
+
+    /**
+     * Returns the time spent on merging core points into clusters and claiming border points.
+     * @return The duration of the merging phase, in milliseconds.
+     */
+    public double getMergeMillis(){
+        return phaseNanos[2] / 1e6;
+    }
+
+    /**
+     * Returns the time spent on numbering clusters and labeling the input.
+     * @return The duration of the labeling phase, in milliseconds.
+     */
+    public double getLabelMillis(){
+        return phaseNanos[3] / 1e6;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("DBSCAN found %d clusters and %d noise points among %d points.%n" +
+                        "Indexing: %.2f ms, core detection: %.2f ms, merging: %.2f ms, labeling: %.2f ms.",
+                numClusters, getNoiseCount(), labels.length,
+                getIndexMillis(), getCoreMillis(), getMergeMillis(), getLabelMillis());
+    }
+}
@@ -0,0 +1,178 @@
+package projects.spatial.clustering;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>DBSCANTests</tt> checks {@link DBSCAN} against a brute-force, O(n<sup>2</sup>) DBSCAN that compares every pair
+ * of points. Core points and the clusters they form are uniquely defined, so they have to match exactly. A border point
+ * may belong to any of the clusters of the core points within <tt>eps</tt> of it, so we only check that it does.</p>
+ *
+ * <p>Points lie on a grid whose step divides <tt>eps</tt>, so that many pairs of points are exactly <tt>eps</tt> apart,
+ * and many points are input more than once.</p>
+ *
+ * @see DBSCAN
+ */
+public class DBSCANTests {
+
+    private Random r;
+    private static final int SEED = 47;
+    private static final double STEP = 0.5;
+
+    @Before
+    public void setUp() {
+        r = new Random(SEED);
+    }
+
+    private List<KDPoint> gridBlobs(int n, int numBlobs, double spread){
+        List<KDPoint> points = new ArrayList<>();
+        double[][] means = new double[numBlobs][2];
+        for(double[] mean : means){
+            mean[0] = 50 * r.nextDouble();
+            mean[1] = 50 * r.nextDouble();
+        }
+        for(int i = 0; i < n; i++){
+            double[] mean = means[r.nextInt(numBlobs)];
+            boolean noise = r.nextInt(5) == 0;
+            double x = noise ? 50 * r.nextDouble() : mean[0] + spread * r.nextGaussian();
+            double y = noise ? 50 * r.nextDouble() : mean[1] + spread * r.nextGaussian();
+            points.add(new KDPoint(STEP * Math.round(x / STEP), STEP * Math.round(y / STEP)));
+        }
+        for(int i = 0; i < n / 10; i++) // Explicit duplicates, including of noise points.
+            points.add(new KDPoint(points.get(r.nextInt(points.size()))));
+        return points;
+    }
+
+    private static boolean[] bruteForceCore(List<KDPoint> points, double eps, int minPts){
+        int n = points.size();
+        boolean[] core = new boolean[n];
+        for(int i = 0; i < n; i++){
+            int neighbors = 0;
+            for(KDPoint q : points)
+                if(points.get(i).distance(q) <= eps * eps) // The point itself, and its duplicates, count.
+                    neighbors++;
+            core[i] = neighbors >= minPts;
+        }
+        return core;
+    }
+
+    /*
+     * Connected components of the core points, where two core points are connected if they lie within eps of each
+     * other. Non-core points get -1.
+     */
+    private static int[] bruteForceComponents(List<KDPoint> points, boolean[] core, double eps){
+        int n = points.size();
+        int[] component = new int[n];
+        Arrays.fill(component, -1);
+        int numComponents = 0;
+        for(int seed = 0; seed < n; seed++){
+            if(!core[seed] || component[seed] != -1)
+                continue;
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(seed);
+            component[seed] = numComponents;
+            while(!queue.isEmpty()){
+                int i = queue.poll();
+                for(int j = 0; j < n; j++)
+                    if(core[j] && component[j] == -1 && points.get(i).distance(points.get(j)) <= eps * eps){
+                        component[j] = numComponents;
+                        queue.add(j);
+                    }
+            }
+            numComponents++;
+        }
+        return component;
+    }
+
+    private void checkAgainstBruteForce(List<KDPoint> points, double eps, int minPts, int parallelism){
+        DBSCANResult result = new DBSCAN(eps, minPts, parallelism).cluster(points);
+        int n = points.size();
+        boolean[] core = bruteForceCore(points, eps, minPts);
+        int[] component = bruteForceComponents(points, core, eps);
+        int numComponents = 0;
+        for(int c : component)
+            numComponents = Math.max(numComponents, c + 1);
+
+        assertEquals(numComponents, result.getNumClusters());
+        int[] clusterOfComponent = new int[numComponents], componentOfCluster = new int[numComponents];
+        Arrays.fill(clusterOfComponent, -1);
+        Arrays.fill(componentOfCluster, -1);
+        for(int i = 0; i < n; i++){
+            assertEquals("Core flag of " + points.get(i), core[i], result.isCore(i));
+            if(!core[i])
+                continue;
+            int label = result.getLabel(i);
+            assertTrue(label >= 0);
+            // The two partitions of the core points have to be the same, up to the numbering of their parts.
+            if(clusterOfComponent[component[i]] == -1 && componentOfCluster[label] == -1){
+                clusterOfComponent[component[i]] = label;
+                componentOfCluster[label] = component[i];
+            }
+            assertEquals(clusterOfComponent[component[i]], label);
+            assertEquals(componentOfCluster[label], component[i]);
+        }
+        for(int i = 0; i < n; i++){
+            if(core[i])
+                continue;
+            int label = result.getLabel(i);
+            boolean reachable = false, labelReachable = false;
+            for(int j = 0; j < n; j++)
+                if(core[j] && points.get(i).distance(points.get(j)) <= eps * eps){
+                    reachable = true;
+                    labelReachable |= result.getLabel(j) == label;
+                }
+            if(reachable)
+                assertTrue("Border point " + points.get(i) + " is not next to its cluster.", labelReachable);
+            else
+                assertEquals(DBSCAN.NOISE, label);
+        }
+    }
+
+    @Test
+    public void testAgainstBruteForce() {
+        checkAgainstBruteForce(gridBlobs(1500, 6, 2), 1.0, 5, 1);
+    }
+
+    @Test
+    public void testAgainstBruteForceInParallel() {
+        checkAgainstBruteForce(gridBlobs(3000, 10, 1.5), 1.0, 6, 4);
+    }
+
+    @Test
+    public void testDuplicatesMakeCorePoints() {
+        List<KDPoint> points = new ArrayList<>();
+        for(int i = 0; i < 4; i++)
+            points.add(new KDPoint(0, 0));
+        points.add(new KDPoint(1, 0)); // Exactly eps away from the copies of the origin only, so border points.
+        points.add(new KDPoint(-1, 0));
+        points.add(new KDPoint(10, 10));
+        checkAgainstBruteForce(points, 1.0, 6, 2);
+        DBSCANResult result = new DBSCAN(1.0, 6, 2).cluster(points);
+        assertEquals(1, result.getNumClusters());
+        assertTrue(result.isCore(0) && result.isCore(3)); // 4 copies and 2 neighbors.
+        assertFalse(result.isCore(4) || result.isCore(5));
+        assertEquals(0, result.getLabel(4));
+        assertEquals(0, result.getLabel(5));
+        assertEquals(DBSCAN.NOISE, result.getLabel(6));
+    }
+
+    @Test
+    public void testZeroRadius() {
+        checkAgainstBruteForce(gridBlobs(1000, 3, 1), 0.0, 3, 2);
+    }
+
+    @Test
+    public void testEverythingIsCoreWithMinPtsOne() {
+        List<KDPoint> points = gridBlobs(500, 4, 3);
+        checkAgainstBruteForce(points, 1.0, 1, 2);
+    }
+}
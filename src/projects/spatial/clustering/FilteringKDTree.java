@@ -0,0 +1,365 @@
+package projects.spatial.clustering;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>{@link FilteringKDTree} is the static <em>K</em>-D tree behind the <em>filtering algorithm</em> of Kanungo et al.
+ * for {@link KMeans}. Unlike the nodes of a {@link projects.spatial.trees.KDTree}, every node here carries aggregates
+ * over all the points below it: their count, their coordinate-wise sum, the sum of their squared norms and their tight
+ * bounding box. That lets a whole subtree be assigned to a single center in O(dims) time, once every other candidate
+ * center has been shown to be farther from every point of the box.</p>
+ *
+ * <p>Points are packed in a single <tt>double[]</tt>, which construction reorders in place. Every node spans a
+ * contiguous index range of it, and is split at the median of the widest dimension of its bounding box. Nodes of at most
+ * {@link #LEAF_SIZE} points are leaves, and are scanned exhaustively.</p>
+ *
+ * @see KMeans
+ */
+final class FilteringKDTree {
+
+    /**
+     * The maximum number of points held by a leaf.
+     */
+    static final int LEAF_SIZE = 8;
+
+    /*
+     * A node over the points in [from, to).
+     */
+    static final class Node {
+        final int from, to;
+        final double[] lo, hi, sum;
+        double sumSq;
+        Node left, right;
+
+        Node(int from, int to, int dims){
+            this.from = from;
+            this.to = to;
+            lo = new double[dims];
+            hi = new double[dims];
+            sum = new double[dims];
+        }
+
+        int count(){
+            return to - from;
+        }
+
+        boolean isLeaf(){
+            return left == null;
+        }
+    }
+
+    /*
+     * The per-task output of one assignment step: for every center, the sum and the number of the points
+     * assigned to it, plus the total squared distance of all points from their centers. Tasks fill their own
+     * accumulator and we merge them as they join, so that no two threads ever write to the same one.
+     */
+    static final class Accumulator {
+        final double[] sums;   // k * dims
+        final long[] counts;   // k
+        double distortion;
+        final int[][] candidates; // Per-depth scratch space for candidate lists.
+
+        Accumulator(int k, int dims, int depth){
+            sums = new double[k * dims];
+            counts = new long[k];
+            distortion = 0.0;
+            candidates = new int[depth + 1][k];
+        }
+
+        void merge(Accumulator other){
+            for(int i = 0; i < sums.length; i++)
+                sums[i] += other.sums[i];
+            for(int i = 0; i < counts.length; i++)
+                counts[i] += other.counts[i];
+            distortion += other.distortion;
+        }
+    }
+
+    private final double[] coords;
+    private final int n, dims, height, forkDepth;
+    private final Node root;
+
+    /**
+     * Builds the tree over the first <tt>n</tt> points packed in <tt>coords</tt>. The array is <b>adopted</b> and reordered
+     * in place, so the caller should not hold on to it.
+     * @param coords The packed coordinates of the points.
+     * @param n The number of points, which should be positive.
+     * @param dims The dimensionality of the points.
+     * @param pool The pool to build and filter in.
+     */
+    FilteringKDTree(double[] coords, int n, int dims, ForkJoinPool pool){
+        this.coords = coords;
+        this.n = n;
+        this.dims = dims;
+        // About four leaf tasks per worker: enough for some load balancing, but not so many that accumulators dominate.
+        forkDepth = (32 - Integer.numberOfLeadingZeros(pool.getParallelism() - 1)) + 2;
+        root = pool.invoke(new BuildTask(0, n, 0));
+        height = height(root);
+    }
+
+    /* ******************************* CONSTRUCTION ******************************** */
+
+    private final class BuildTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+        private final int from, to, depth;
+
+        BuildTask(int from, int to, int depth){
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Node compute(){
+            Node node = new Node(from, to, dims);
+            aggregate(node);
+            if(node.count() <= LEAF_SIZE)
+                return node;
+            int mid = (from + to) >>> 1;
+            select(from, to - 1, mid, widestDimension(node));
+            if(depth < forkDepth){
+                BuildTask left = new BuildTask(from, mid, depth + 1);
+                left.fork();
+                node.right = new BuildTask(mid, to, depth + 1).compute();
+                node.left = left.join();
+            } else {
+                node.left = new BuildTask(from, mid, depth + 1).compute();
+                node.right = new BuildTask(mid, to, depth + 1).compute();
+            }
+            return node;
+        }
+    }
+
+    private void aggregate(Node node){
+        for(int d = 0; d < dims; d++){
+            node.lo[d] = Double.POSITIVE_INFINITY;
+            node.hi[d] = Double.NEGATIVE_INFINITY;
+        }
+        for(int i = node.from; i < node.to; i++){
+            int base = i * dims;
+            for(int d = 0; d < dims; d++){
+                double c = coords[base + d];
+                if(c < node.lo[d])
+                    node.lo[d] = c;
+                if(c > node.hi[d])
+                    node.hi[d] = c;
+                node.sum[d] += c;
+                node.sumSq += c * c;
+            }
+        }
+    }
+
+    private int widestDimension(Node node){
+        int widest = 0;
+        for(int d = 1; d < dims; d++)
+            if(node.hi[d] - node.lo[d] > node.hi[widest] - node.lo[widest])
+                widest = d;
+        return widest;
+    }
+
+    /*
+     * Quickselect over the inclusive index range [lo, hi] by dimension dim, with Hoare partitioning,
+     * exactly like KDSegment does it.
+     */
+    private void select(int lo, int hi, int k, int dim){
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        while(lo < hi){
+            double pivot = coords[(lo + rng.nextInt(hi - lo + 1)) * dims + dim];
+            int i = lo, j = hi;
+            while(i <= j){
+                while(coords[i * dims + dim] < pivot)
+                    i++;
+                while(coords[j * dims + dim] > pivot)
+                    j--;
+                if(i <= j)
+                    swap(i++, j--);
+            }
+            if(k <= j)
+                hi = j;
+            else if(k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private void swap(int i, int j){
+        if(i == j)
+            return;
+        int a = i * dims, b = j * dims;
+        for(int d = 0; d < dims; d++){
+            double tmp = coords[a + d];
+            coords[a + d] = coords[b + d];
+            coords[b + d] = tmp;
+        }
+    }
+
+    private static int height(Node node){
+        return (node == null) ? -1 : 1 + Math.max(height(node.left), height(node.right));
+    }
+
+    /* ******************************** FILTERING ********************************** */
+
+    /**
+     * Runs one assignment step against the given centers, in parallel.
+     * @param centers The packed coordinates of the <tt>k</tt> current centers.
+     * @param k The number of centers.
+     * @param pool The pool to run in.
+     * @return The sums, counts and distortion of the points assigned to each center.
+     */
+    Accumulator assign(double[] centers, int k, ForkJoinPool pool){
+        int[] all = new int[k];
+        for(int i = 0; i < k; i++)
+            all[i] = i;
+        return pool.invoke(new FilterTask(root, all, k, centers, k, 0));
+    }
+
+    private final class FilterTask extends RecursiveTask<Accumulator> {
+        private static final long serialVersionUID = 1L;
+        private final Node node;
+        private final int[] candidates;
+        private final int numCandidates, k, depth;
+        private final double[] centers;
+
+        FilterTask(Node node, int[] candidates, int numCandidates, double[] centers, int k, int depth){
+            this.node = node;
+            this.candidates = candidates;
+            this.numCandidates = numCandidates;
+            this.centers = centers;
+            this.k = k;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Accumulator compute(){
+            if(depth >= forkDepth || node.isLeaf()){
+                Accumulator acc = new Accumulator(k, dims, height - depth);
+                filter(node, candidates, numCandidates, centers, acc, 0);
+                return acc;
+            }
+            int[] kept = new int[numCandidates];
+            int numKept = prune(node, candidates, numCandidates, centers, kept);
+            if(numKept == 1){
+                Accumulator acc = new Accumulator(k, dims, 0);
+                assignWhole(node, kept[0], centers, acc);
+                return acc;
+            }
+            FilterTask left = new FilterTask(node.left, kept, numKept, centers, k, depth + 1);
+            left.fork();
+            Accumulator acc = new FilterTask(node.right, kept, numKept, centers, k, depth + 1).compute();
+            acc.merge(left.join());
+            return acc;
+        }
+    }
+
+    /*
+     * Sequential filtering of the subtree rooted at node. Candidate lists of deeper levels live in acc's scratch space,
+     * indexed by the depth relative to the subtree's root.
+     */
+    private void filter(Node node, int[] candidates, int numCandidates, double[] centers, Accumulator acc, int depth){
+        if(node.isLeaf()){
+            for(int i = node.from; i < node.to; i++){
+                int base = i * dims, best = candidates[0];
+                double bestDist = distance(base, centers, best);
+                for(int c = 1; c < numCandidates; c++){
+                    double dist = distance(base, centers, candidates[c]);
+                    if(dist < bestDist){
+                        bestDist = dist;
+                        best = candidates[c];
+                    }
+                }
+                int sumBase = best * dims;
+                for(int d = 0; d < dims; d++)
+                    acc.sums[sumBase + d] += coords[base + d];
+                acc.counts[best]++;
+                acc.distortion += bestDist;
+            }
+            return;
+        }
+        int[] kept = acc.candidates[depth];
+        int numKept = prune(node, candidates, numCandidates, centers, kept);
+        if(numKept == 1){
+            assignWhole(node, kept[0], centers, acc);
+            return;
+        }
+        filter(node.left, kept, numKept, centers, acc, depth + 1);
+        filter(node.right, kept, numKept, centers, acc, depth + 1);
+    }
+
+    /*
+     * Writes into kept the candidates that might be the closest center to some point of node's box, and returns
+     * how many there are. The candidate closest to the box's midpoint, z*, always survives; any other candidate z
+     * is dropped if it is no closer than z* to the vertex of the box that lies farthest in the direction of z - z*,
+     * because then it is no closer than z* to any point of the box.
+     */
+    private int prune(Node node, int[] candidates, int numCandidates, double[] centers, int[] kept){
+        int best = candidates[0];
+        double bestDist = Double.POSITIVE_INFINITY;
+        for(int c = 0; c < numCandidates; c++){
+            int z = candidates[c], base = z * dims;
+            double dist = 0.0;
+            for(int d = 0; d < dims; d++){
+                double diff = centers[base + d] - 0.5 * (node.lo[d] + node.hi[d]);
+                dist += diff * diff;
+            }
+            if(dist < bestDist){
+                bestDist = dist;
+                best = z;
+            }
+        }
+        kept[0] = best;
+        int numKept = 1, bestBase = best * dims;
+        for(int c = 0; c < numCandidates; c++){
+            int z = candidates[c];
+            if(z == best)
+                continue;
+            int base = z * dims;
+            double distZ = 0.0, distBest = 0.0;
+            for(int d = 0; d < dims; d++){
+                double vertex = (centers[base + d] > centers[bestBase + d]) ? node.hi[d] : node.lo[d];
+                double diffZ = centers[base + d] - vertex, diffBest = centers[bestBase + d] - vertex;
+                distZ += diffZ * diffZ;
+                distBest += diffBest * diffBest;
+            }
+            if(distZ < distBest)
+                kept[numKept++] = z;
+        }
+        return numKept;
+    }
+
+    /*
+     * Assigns every point below node to center z, in O(dims) time, using the node's aggregates. The squared
+     * distances add up to sumSq - 2 z.sum + count |z|^2.
+     */
+    private void assignWhole(Node node, int z, double[] centers, Accumulator acc){
+        int base = z * dims;
+        double dot = 0.0, normSq = 0.0;
+        for(int d = 0; d < dims; d++){
+            acc.sums[base + d] += node.sum[d];
+            dot += centers[base + d] * node.sum[d];
+            normSq += centers[base + d] * centers[base + d];
+        }
+        acc.counts[z] += node.count();
+        acc.distortion += Math.max(0.0, node.sumSq - 2 * dot + node.count() * normSq); // Guard against cancellation.
+    }
+
+    private double distance(int base, double[] centers, int z){
+        int centerBase = z * dims;
+        double sum = 0.0;
+        for(int d = 0; d < dims; d++){
+            double diff = coords[base + d] - centers[centerBase + d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    int size(){
+        return n;
+    }
+
+    int height(){
+        return height;
+    }
+}
@@ -0,0 +1,205 @@
+package projects.spatial.clustering;
+
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>{@link KMeans} is a <em>k</em>-means clustering engine for {@link KDPoint}s, which runs Lloyd's iterations with the
+ * <em>filtering algorithm</em> of Kanungo, Mount, Netanyahu, Piatko, Silverman and Wu. A naive assignment step compares
+ * every point against every center, which costs O(n &#42; k) per iteration. The filtering algorithm instead builds a
+ * <em>K</em>-D tree over the points once, keeps the count, sum and bounding box of the points below every node, and walks
+ * it with a shrinking set of <em>candidate</em> centers. As soon as a single candidate can be the closest center to every
+ * point of a node's box, the whole subtree is assigned to it through its aggregates, without visiting any of its points.
+ * Once clusters are reasonably separated, most of the tree is pruned this way.</p>
+ *
+ * <p>The tree is built, and every assignment step is run, in parallel across subtrees on a {@link ForkJoinPool}. Every
+ * task sums up the points it assigns in its own accumulator, and accumulators are merged as tasks join. The time spent on
+ * building the tree and on every iteration is reported in the returned {@link KMeansResult}.</p>
+ *
+ * <p>Initial centers are either provided by the caller or sampled uniformly at random among the points (Forgy's method),
+ * with a configurable seed. A center that ends up with no points stays where it was. Iterations stop once no center
+ * moves by more than a tolerance, or after a maximum number of iterations.</p>
+ *
+ * @see KMeansResult
+ * @see FilteringKDTree
+ */
+public class KMeans {
+
+    /**
+     * The default maximum number of iterations.
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    /**
+     * The default convergence tolerance, as a {@link KDPoint#distance(KDPoint) distance}, so a <b>squared</b> one.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-12;
+
+    private final int k, maxIterations, parallelism;
+    private final double tolerance;
+    private final long seed;
+
+    /**
+     * Creates an engine for <tt>k</tt> clusters, with the default maximum number of iterations and tolerance, a fixed seed
+     * and as many worker threads as there are available processors.
+     * @param k The number of clusters.
+     * @throws RuntimeException if <tt>k</tt> &lt; 1.
+     */
+    public KMeans(int k){
+        this(k, DEFAULT_MAX_ITERATIONS, DEFAULT_TOLERANCE, 47, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Full constructor.
+     * @param k The number of clusters.
+     * @param maxIterations The maximum number of iterations to run.
+     * @param tolerance Iterations stop once no center moves by a (squared) distance of more than this.
+     * @param seed The seed of the random sampling of initial centers.
+     * @param parallelism The number of worker threads.
+     * @throws RuntimeException if <tt>k</tt>, <tt>maxIterations</tt> or <tt>parallelism</tt> is smaller than 1, or if
+     * <tt>tolerance</tt> is negative.
+     */
+    public KMeans(int k, int maxIterations, double tolerance, long seed, int parallelism){
+        if(k < 1)
+            throw new RuntimeException("The number of clusters needs to be a positive integer; we were given " + k + ".");
+        if(maxIterations < 1)
+            throw new RuntimeException("The maximum number of iterations needs to be a positive integer; we were given " + maxIterations + ".");
+        if(parallelism < 1)
+            throw new RuntimeException("The parallelism needs to be a positive integer; we were given " + parallelism + ".");
+        if(tolerance < 0)
+            throw new RuntimeException("The tolerance cannot be negative; we were given " + tolerance + ".");
+        this.k = k;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.seed = seed;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Clusters the provided {@link KDPoint}s, starting from <tt>k</tt> distinct points sampled at random among them.
+     * @param points The {@link KDPoint}s to cluster, all of the same dimensionality. They are not modified.
+     * @return The outcome of the clustering.
+     * @throws RuntimeException if there are fewer than <tt>k</tt> distinct points, or if their dimensionalities differ.
+     */
+    public KMeansResult cluster(Collection<KDPoint> points){
+        return cluster(points, null);
+    }
+
+    /**
+     * Clusters the provided {@link KDPoint}s, starting from the provided centers.
+     * @param points The {@link KDPoint}s to cluster, all of the same dimensionality. They are not modified.
+     * @param initialCenters The <tt>k</tt> initial centers, or <tt>null</tt> to sample them at random among the points.
+     * @return The outcome of the clustering.
+     * @throws RuntimeException if there are no points, if <tt>initialCenters</tt> does not hold exactly <tt>k</tt> centers,
+     * or if dimensionalities differ.
+     */
+    public KMeansResult cluster(Collection<KDPoint> points, List<KDPoint> initialCenters){
+        if(points.isEmpty())
+            throw new RuntimeException("Cannot cluster an empty collection of KDPoints.");
+        int n = points.size(), dims = points.iterator().next().coords.length;
+        double[] coords = pack(points, dims);
+        double[] centers = (initialCenters == null) ? sample(coords, n, dims) : pack(initialCenters, dims);
+        if(centers.length != k * dims)
+            throw new RuntimeException("Expected " + k + " initial centers, but we were given " + centers.length / dims + ".");
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long begin = System.nanoTime();
+            FilteringKDTree tree = new FilteringKDTree(coords, n, dims, pool);
+            long buildNanos = System.nanoTime() - begin;
+
+            long[] iterationNanos = new long[maxIterations];
+            long[] counts = null;
+            double distortion = 0.0;
+            int iterations = 0;
+            boolean converged = false;
+            while(iterations < maxIterations && !converged){
+                begin = System.nanoTime();
+                FilteringKDTree.Accumulator acc = tree.assign(centers, k, pool);
+                double maxShift = 0.0;
+                for(int z = 0; z < k; z++){
+                    if(acc.counts[z] == 0)
+                        continue; // An empty cluster keeps its center.
+                    double shift = 0.0;
+                    for(int d = 0; d < dims; d++){
+                        double updated = acc.sums[z * dims + d] / acc.counts[z];
+                        double diff = updated - centers[z * dims + d];
+                        shift += diff * diff;
+                        centers[z * dims + d] = updated;
+                    }
+                    maxShift = Math.max(maxShift, shift);
+                }
+                counts = acc.counts;
+                distortion = acc.distortion;
+                converged = maxShift <= tolerance;
+                iterationNanos[iterations++] = System.nanoTime() - begin;
+            }
+            return new KMeansResult(unpack(centers, dims), counts, distortion, converged, buildNanos,
+                    Arrays.copyOf(iterationNanos, iterations));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /* ******************************* PRIVATE METHODS ******************************** */
+
+    private static double[] pack(Collection<KDPoint> points, int dims){
+        double[] coords = new double[points.size() * dims];
+        int i = 0;
+        for(KDPoint p : points){
+            if(p.coords.length != dims)
+                throw new RuntimeException("All KDPoints need to have the same dimensionality, " + dims + ", but " + p + " does not.");
+            System.arraycopy(p.coords, 0, coords, i, dims);
+            i += dims;
+        }
+        return coords;
+    }
+
+    private static KDPoint[] unpack(double[] coords, int dims){
+        KDPoint[] points = new KDPoint[coords.length / dims];
+        for(int i = 0; i < points.length; i++){
+            points[i] = new KDPoint(dims);
+            System.arraycopy(coords, i * dims, points[i].coords, 0, dims);
+        }
+        return points;
+    }
+
+    /*
+     * Forgy initialization: k distinct points, drawn uniformly at random through a partial Fisher-Yates shuffle
+     * of the indices. Duplicate centers would never separate, so we skip over them.
+     */
+    private double[] sample(double[] coords, int n, int dims){
+        Random rng = new Random(seed);
+        double[] centers = new double[k * dims];
+        int[] order = new int[n];
+        for(int i = 0; i < n; i++)
+            order[i] = i;
+        int found = 0;
+        for(int i = 0; i < n && found < k; i++){
+            int j = i + rng.nextInt(n - i), chosen = order[j];
+            order[j] = order[i];
+            order[i] = chosen;
+            if(!isCenter(coords, chosen * dims, centers, found, dims))
+                System.arraycopy(coords, chosen * dims, centers, found++ * dims, dims);
+        }
+        if(found < k)
+            throw new RuntimeException("Cannot find " + k + " distinct KDPoints to start from; there are only " + found + ".");
+        return centers;
+    }
+
+    private static boolean isCenter(double[] coords, int base, double[] centers, int numCenters, int dims){
+        for(int z = 0; z < numCenters; z++){
+            int d = 0;
+            while(d < dims && coords[base + d] == centers[z * dims + d])
+                d++;
+            if(d == dims)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+package projects.spatial.clustering;
+
+import projects.spatial.kdpoint.KDPoint;
+
+/**
+ * <p>{@link KMeansResult} holds the outcome of a {@link KMeans} run: the final centers, the size of every cluster, the
+ * distortion of the final assignment, and the time spent on every phase of the run.</p>
+ *
+ * <p>Points are assigned to clusters by their nearest center; {@link #assign(KDPoint)} does that for any
+ * {@link KDPoint}, so the engine does not need to keep a label per input point around.</p>
+ *
+ * @see KMeans
+ */
+public class KMeansResult {
+
+    private final KDPoint[] centers;
+    private final long[] clusterSizes;
+    private final double distortion;
+    private final boolean converged;
+    private final long buildNanos;
+    private final long[] iterationNanos;
+
+    KMeansResult(KDPoint[] centers, long[] clusterSizes, double distortion, boolean converged,
+                 long buildNanos, long[] iterationNanos){
+        this.centers = centers;
+        this.clusterSizes = clusterSizes;
+        this.distortion = distortion;
+        this.converged = converged;
+        this.buildNanos = buildNanos;
+        this.iterationNanos = iterationNanos;
+    }
+
+    /**
+     * Returns the final cluster centers.
+     * @return A fresh array of deep copies of the <tt>k</tt> centers.
+     */
+    public KDPoint[] getCenters(){
+        KDPoint[] copies = new KDPoint[centers.length];
+        for(int i = 0; i < centers.length; i++)
+            copies[i] = new KDPoint(centers[i]);
+        return copies;
+    }
+
+    /**
+     * Returns the number of points assigned to every center in the last iteration.
+     * @return A fresh array, whose <em>i</em>-th element is the size of the cluster of the <em>i</em>-th center.
+     */
+    public long[] getClusterSizes(){
+        return clusterSizes.clone();
+    }
+
+    /**
+     * Returns the sum of the {@link KDPoint#distance(KDPoint) distances}, which are squared, of every point from the center
+     * it was assigned to in the last iteration. This is the quantity that <em>k</em>-means minimizes.
+     * @return The distortion of the last assignment.
+     */
+    public double getDistortion(){
+        return distortion;
+    }
+
+    /**
+     * Reports whether the run stopped because the centers stopped moving, rather than because it ran out of iterations.
+     * @return <tt>true</tt> if the run converged, <tt>false</tt> otherwise.
+     */
+    public boolean isConverged(){
+        return converged;
+    }
+
+    /**
+     * Returns the number of iterations run.
+     * @return The number of iterations.
+     */
+    public int getIterations(){
+        return iterationNanos.length;
+    }
+
+    /**
+     * Returns the time spent on building the <em>K</em>-D tree over the points.
+     * @return The construction time, in milliseconds.
+     */
+    public double getBuildMillis(){
+        return buildNanos / 1e6;
+    }
+
+    /**
+     * Returns the time spent on every iteration, that is, on an assignment step and the update of the centers.
+     * @return A fresh array, whose <em>i</em>-th element is the duration of the <em>i</em>-th iteration in milliseconds.
+     */
+    public double[] getIterationMillis(){
+        double[] millis = new double[iterationNanos.length];
+        for(int i = 0; i < millis.length; i++)
+            millis[i] = iterationNanos[i] / 1e6;
+        return millis;
+    }
+
+    /**
+     * Finds the center nearest to <tt>p</tt>, in O(k) time.
+     * @param p The {@link KDPoint} to assign to a cluster.
+     * @return The index of the center nearest to <tt>p</tt>, in the order of {@link #getCenters()}. Ties are broken in
+     * favor of the lowest index.
+     */
+    public int assign(KDPoint p){
+        int best = 0;
+        double bestDist = centers[0].distance(p);
+        for(int i = 1; i < centers.length; i++){
+            double dist = centers[i].distance(p);
+            if(dist < bestDist){
+                bestDist = dist;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append("k-means with ").append(centers.length).append(" clusters ")
+                .append(converged ? "converged" : "did not converge").append(" after ").append(getIterations())
+                .append(" iterations, with a distortion of ").append(distortion).append(".\n");
+        sb.append(String.format("Tree construction: %.2f ms.%n", getBuildMillis()));
+        double total = 0.0;
+        double[] millis = getIterationMillis();
+        for(int i = 0; i < millis.length; i++){
+            sb.append(String.format("Iteration %d: %.2f ms.%n", i + 1, millis[i]));
+            total += millis[i];
+        }
+        sb.append(String.format("Total: %.2f ms.", total + getBuildMillis()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package projects.spatial.clustering;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>KMeansTests</tt> checks that the filtering algorithm of {@link KMeans}, on top of {@link FilteringKDTree},
+ * computes exactly the iterations that a plain Lloyd's algorithm, which compares every point against every center,
+ * computes. The points are drawn at random from a continuous distribution, so that no point is ever equidistant from two
+ * centers, and the two implementations cannot legitimately disagree.</p>
+ *
+ * @see KMeans
+ * @see FilteringKDTree
+ */
+public class KMeansTests {
+
+    private Random r;
+    private static final int SEED = 47;
+    private static final double EPSILON = 1e-9; // Sums are accumulated in a different order.
+
+    @Before
+    public void setUp() {
+        r = new Random(SEED);
+    }
+
+    /*
+     * Gaussian blobs around random centers, so that the filtering algorithm prunes most of the tree, plus some uniform
+     * noise, so that it also has to split boxes between close candidates.
+     */
+    private List<KDPoint> blobs(int n, int dims, int numBlobs){
+        double[][] means = new double[numBlobs][dims];
+        for(double[] mean : means)
+            for(int d = 0; d < dims; d++)
+                mean[d] = 100 * r.nextDouble();
+        List<KDPoint> points = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            KDPoint p = new KDPoint(dims);
+            double[] mean = means[r.nextInt(numBlobs)];
+            boolean noise = r.nextInt(10) == 0;
+            for(int d = 0; d < dims; d++)
+                p.coords[d] = noise ? 100 * r.nextDouble() : mean[d] + 5 * r.nextGaussian();
+            points.add(p);
+        }
+        return points;
+    }
+
+    /*
+     * One Lloyd iteration: assigns every point to its nearest center and moves every center to the mean of its points.
+     * An empty cluster keeps its center, as in KMeans. Returns the distortion of the assignment.
+     */
+    private static double lloyd(List<KDPoint> points, KDPoint[] centers, long[] sizes){
+        int dims = centers[0].coords.length;
+        double[][] sums = new double[centers.length][dims];
+        double distortion = 0.0;
+        Arrays.fill(sizes, 0);
+        for(KDPoint p : points){
+            int best = 0;
+            for(int z = 1; z < centers.length; z++)
+                if(centers[z].distance(p) < centers[best].distance(p))
+                    best = z;
+            distortion += centers[best].distance(p);
+            sizes[best]++;
+            for(int d = 0; d < dims; d++)
+                sums[best][d] += p.coords[d];
+        }
+        for(int z = 0; z < centers.length; z++)
+            if(sizes[z] > 0)
+                for(int d = 0; d < dims; d++)
+                    centers[z].coords[d] = sums[z][d] / sizes[z];
+        return distortion;
+    }
+
+    private void checkAgainstLloyd(int n, int dims, int k, int maxIterations, int parallelism){
+        List<KDPoint> points = blobs(n, dims, k);
+        List<KDPoint> initial = new ArrayList<>();
+        for(int z = 0; z < k; z++)
+            initial.add(new KDPoint(points.get(r.nextInt(n))));
+        KMeansResult result = new KMeans(k, maxIterations, 0.0, SEED, parallelism).cluster(points, initial);
+
+        KDPoint[] centers = new KDPoint[k];
+        for(int z = 0; z < k; z++)
+            centers[z] = new KDPoint(initial.get(z));
+        long[] sizes = new long[k];
+        double distortion = 0.0;
+        for(int i = 0; i < result.getIterations(); i++)
+            distortion = lloyd(points, centers, sizes);
+
+        KDPoint[] actual = result.getCenters();
+        for(int z = 0; z < k; z++)
+            for(int d = 0; d < dims; d++)
+                assertEquals(centers[z].coords[d], actual[z].coords[d], EPSILON);
+        assertArrayEquals(sizes, result.getClusterSizes());
+        assertEquals(distortion, result.getDistortion(), EPSILON * distortion);
+        if(result.isConverged()) // A fixed point of the filtering algorithm has to be one of Lloyd's, too.
+            assertEquals(distortion, lloyd(points, centers, sizes), EPSILON * distortion);
+    }
+
+    @Test
+    public void testSingleIteration() {
+        checkAgainstLloyd(5000, 2, 8, 1, 1);
+    }
+
+    @Test
+    public void testAgainstLloyd() {
+        checkAgainstLloyd(5000, 2, 8, 20, 1);
+    }
+
+    @Test
+    public void testAgainstLloydInParallel() {
+        checkAgainstLloyd(20000, 2, 16, 20, 4);
+    }
+
+    @Test
+    public void testAgainstLloydInHigherDimensions() {
+        checkAgainstLloyd(5000, 4, 6, 20, 4);
+    }
+
+    @Test
+    public void testEmptyClusterKeepsItsCenter() {
+        List<KDPoint> points = new ArrayList<>();
+        for(int i = 0; i < 100; i++)
+            points.add(new KDPoint(r.nextDouble(), r.nextDouble()));
+        List<KDPoint> initial = new ArrayList<>();
+        initial.add(new KDPoint(0.5, 0.5));
+        initial.add(new KDPoint(1000, 1000)); // Farther from every point than the first center.
+        KMeansResult result = new KMeans(2, 10, 0.0, SEED, 2).cluster(points, initial);
+        assertEquals(new KDPoint(1000, 1000), result.getCenters()[1]);
+        assertEquals(0, result.getClusterSizes()[1]);
+        assertEquals(100, result.getClusterSizes()[0]);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTooFewDistinctPoints() {
+        List<KDPoint> points = new ArrayList<>();
+        for(int i = 0; i < 10; i++)
+            points.add(new KDPoint(1, 1));
+        new KMeans(2).cluster(points);
+    }
+}
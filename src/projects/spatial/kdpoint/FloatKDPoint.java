@@ -0,0 +1,159 @@
+package projects.spatial.kdpoint;
+
+/** <p>{@link FloatKDPoint} is the single-precision counterpart of {@link KDPoint}. It is meant for applications
+ * whose coordinates (GPS readings, embedding values, etc) never needed <tt>double</tt> precision in the first place,
+ * and who would rather spend half the memory on them. Coordinates are stored as <tt>float</tt>s, but distances are
+ * accumulated in <tt>double</tt>, so that they are directly comparable with those that {@link KDPoint#distance(KDPoint)}
+ * reports.</p>
+ *
+ * <p>Converting from a {@link KDPoint} rounds every coordinate to the nearest <tt>float</tt>. Converting back
+ * with {@link #toKDPoint()} is exact.</p>
+ *
+ * @see KDPoint
+ * @see projects.spatial.trees.KDTree#KDTree(int, boolean)
+ */
+public class FloatKDPoint {
+
+	/** Publicly accessible for the same reasons as {@link KDPoint#coords}. This makes {@link FloatKDPoint}s
+	 * <b>mutable</b>, so deep copies will be required wherever we copy {@link FloatKDPoint}s.
+	 */
+	public float[] coords;
+
+	/**
+	 * Default constructor initializes <tt>this</tt> as a 2D {@link FloatKDPoint} describing
+	 * the Cartesian origin.
+	 */
+	public FloatKDPoint(){
+		this(2);
+	}
+
+	/**
+	 * Initialize a <em>k</em>-dimensional {@link FloatKDPoint} at the origin of the axes.
+	 * @param k The dimensionality of the {@link FloatKDPoint}.
+	 * @throws RuntimeException if the provided dimensionality is &lt; 1.
+	 */
+	public FloatKDPoint(int k){
+		if(k <= 0)
+			throw new RuntimeException("All FloatKDPoints need to have a positive dimensionality.");
+		coords = new float[k];
+	}
+
+	/**
+	 * Initialize a {@link FloatKDPoint} with some values. Implicitly sets the {@link FloatKDPoint}'s
+	 * dimensionality.
+	 * @param vals The values with which to initialize the {@link FloatKDPoint}.
+	 */
+	public FloatKDPoint(float... vals){
+		coords = new float[vals.length];
+		System.arraycopy(vals, 0, coords, 0, vals.length);
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param p The {@link FloatKDPoint} on which we will base the creation of <tt>this</tt>.
+	 */
+	public FloatKDPoint(FloatKDPoint p){
+		this(p.coords);
+	}
+
+	/**
+	 * Initialize a {@link FloatKDPoint} from a {@link KDPoint}, rounding every coordinate to the nearest <tt>float</tt>.
+	 * @param p The {@link KDPoint} on which we will base the creation of <tt>this</tt>.
+	 */
+	public FloatKDPoint(KDPoint p){
+		coords = new float[p.coords.length];
+		for(int i = 0; i < coords.length; i++)
+			coords[i] = (float)p.coords[i];
+	}
+
+	/**
+	 * Widens <tt>this</tt> into a freshly allocated {@link KDPoint}. No precision is lost.
+	 * @return A {@link KDPoint} with the same coordinates as <tt>this</tt>.
+	 */
+	public KDPoint toKDPoint(){
+		KDPoint p = new KDPoint(coords.length);
+		for(int i = 0; i < coords.length; i++)
+			p.coords[i] = coords[i];
+		return p;
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if(o == null)
+			return false;
+		if(o.getClass() != getClass())
+			return false;
+		FloatKDPoint oCasted = (FloatKDPoint)o;
+		if(oCasted.coords.length != coords.length)
+			return false;
+		for(int i = 0; i < coords.length; i++)
+			if(coords[i] != oCasted.coords[i])
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode(){
+		int hash = 1;
+		for(float c : coords)
+			hash = 31 * hash + Float.floatToIntBits(c == 0.0f ? 0.0f : c); // -0.0f == 0.0f in equals(), so they must hash alike.
+		return hash;
+	}
+
+	/**
+	 * Calculate the <b><u>squared</u> Euclidean distance</b> between <tt>this</tt> and <tt>p</tt>, accumulated
+	 * in <tt>double</tt> precision.
+	 * @param p The {@link FloatKDPoint} to calculate the distance to.
+	 * @return The <b><u>squared</u> Euclidean distance</b> between the two points.
+	 * @throws RuntimeException if the dimensionality of the two points is different.
+	 */
+	public double distance(FloatKDPoint p) throws RuntimeException{
+		if(coords.length != p.coords.length)
+			throw new RuntimeException("Cannot calculate the Euclidean Distance between FloatKDPoints of different dimensionalities.");
+		double sum = 0.0;
+		for(int i = 0; i < coords.length; i++){
+			double diff = (double)coords[i] - p.coords[i];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	/**
+	 * Calculate the <b><u>squared</u> Euclidean distance</b> between <tt>this</tt> and a {@link KDPoint}, accumulated
+	 * in <tt>double</tt> precision.
+	 * @param p The {@link KDPoint} to calculate the distance to.
+	 * @return The <b><u>squared</u> Euclidean distance</b> between the two points.
+	 * @throws RuntimeException if the dimensionality of the two points is different.
+	 */
+	public double distance(KDPoint p) throws RuntimeException{
+		if(coords.length != p.coords.length)
+			throw new RuntimeException("Cannot calculate the Euclidean Distance between points of different dimensionalities.");
+		double sum = 0.0;
+		for(int i = 0; i < coords.length; i++){
+			double diff = coords[i] - p.coords[i];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	/**
+	 * A static version of distance calculations, for symmetry with {@link KDPoint#distance(KDPoint, KDPoint)}.
+	 * @param p1 One of the two {@link FloatKDPoint}s to calculate the distance of.
+	 * @param p2 One of the two {@link FloatKDPoint}s to calculate the distance of.
+	 * @return The <b><u>squared</u> Euclidean distance</b> between <tt>p1</tt> and <tt>p2</tt>.
+	 */
+	public static double distance(FloatKDPoint p1, FloatKDPoint p2){
+		return p1.distance(p2);
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder retVal = new StringBuilder("A FloatKDPoint with coordinates: (");
+		for(int i = 0; i < coords.length; i++){
+			retVal.append(coords[i]);
+			if(i < coords.length - 1)
+				retVal.append(", ");
+		}
+		return retVal.append(").").toString();
+	}
+}
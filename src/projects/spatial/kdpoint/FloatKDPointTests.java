@@ -0,0 +1,103 @@
+package projects.spatial.kdpoint;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.trees.KDTree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>FloatKDPointTests</tt> is a unit testing class for {@link FloatKDPoint} and for the single-precision
+ * storage mode of {@link KDTree}, which has to keep working with {@link KDPoint}s at its boundary.</p>
+ *
+ * @see KDPointTests
+ */
+public class FloatKDPointTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int SCALE = 10;
+	private static final double EPSILON = 1e-9;
+	private static final int MAX_ITER = 10000;
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	@Test
+	public void testConversions() {
+		FloatKDPoint fp = new FloatKDPoint(new KDPoint(1.5, -2.25, 0.1));
+		assertEquals(3, fp.coords.length);
+		assertEquals(1.5f, fp.coords[0], 0.0f);
+		assertEquals(0.1f, fp.coords[2], 0.0f);
+		KDPoint widened = fp.toKDPoint();
+		assertEquals(-2.25, widened.coords[1], 0.0);
+		assertEquals((double)0.1f, widened.coords[2], 0.0); // Widening is exact; the rounding happened on the way in.
+		assertEquals(fp, new FloatKDPoint(widened));
+	}
+
+	@Test
+	public void testEqualsAndHashCode() {
+		assertEquals(new FloatKDPoint(0.0f, 3.0f), new FloatKDPoint(-0.0f, 3.0f));
+		assertEquals(new FloatKDPoint(0.0f, 3.0f).hashCode(), new FloatKDPoint(-0.0f, 3.0f).hashCode());
+		assertNotEquals(new FloatKDPoint(1.0f, 3.0f), new FloatKDPoint(1.0f, 3.0f, 0.0f));
+		assertNotEquals(new FloatKDPoint(1.0f), new KDPoint(1.0));
+	}
+
+	@Test
+	public void testDistance() {
+		FloatKDPoint one = new FloatKDPoint(1, 1);
+		assertEquals(2, new FloatKDPoint().distance(one), EPSILON);
+		assertEquals(2, one.distance(new KDPoint()), EPSILON);
+		for(int i = 0; i < MAX_ITER; i++){
+			KDPoint p = new KDPoint(SCALE * r.nextDouble(), -SCALE * r.nextDouble()),
+					q = new KDPoint(-SCALE * r.nextDouble(), SCALE * r.nextDouble());
+			FloatKDPoint fp = new FloatKDPoint(p), fq = new FloatKDPoint(q);
+			assertEquals(fp.toKDPoint().distance(fq.toKDPoint()), FloatKDPoint.distance(fp, fq), EPSILON);
+			assertEquals(fp.toKDPoint().distance(q), fp.distance(q), EPSILON);
+		}
+		try {
+			new FloatKDPoint(2).distance(new FloatKDPoint(3));
+			fail("Should've caught a RuntimeException when computing the distance between FloatKDPoints of different dimensionalities.");
+		} catch(RuntimeException ignored){
+			// Good
+		}
+	}
+
+	@Test
+	public void testFloatStorageKDTree() {
+		KDTree doubles = new KDTree(2), floats = new KDTree(2, true);
+		assertTrue(floats.isFloatStorage());
+		assertFalse(doubles.isFloatStorage());
+		ArrayList<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < MAX_ITER; i++){
+			KDPoint p = new KDPoint(new FloatKDPoint(new KDPoint(SCALE * r.nextGaussian(), SCALE * r.nextGaussian())).toKDPoint());
+			points.add(p);
+			doubles.insert(p);
+			floats.insert(p);
+		}
+		KDPoint anchor = new KDPoint(0.5, -0.5);
+		assertEquals(doubles.nearestNeighbor(anchor), floats.nearestNeighbor(anchor));
+		Collection<KDPoint> doubleRange = doubles.range(anchor, SCALE), floatRange = floats.range(anchor, SCALE);
+		assertEquals(doubleRange.size(), floatRange.size());
+		assertTrue(floatRange.containsAll(doubleRange));
+
+		// A double-precision point finds (and deletes) its rounded copy.
+		KDPoint precise = new KDPoint(1.0 / 3, 2.0 / 3);
+		floats.insert(precise);
+		assertTrue(floats.search(precise));
+		assertTrue(floats.search(new FloatKDPoint(precise).toKDPoint()));
+		floats.delete(precise);
+		assertFalse(floats.search(precise));
+
+		for(KDPoint p : points)
+			floats.delete(p);
+		assertEquals(0, floats.count());
+		assertTrue(floats.isEmpty());
+	}
+}
@@ -0,0 +1,219 @@
+package projects.spatial.kdpoint;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/** <p>{@link HilbertCurve} maps {@link KDPoint}s to their position along a <em>Hilbert curve</em> that fills a box of
+ * <em>k</em>-dimensional space. The box is cut into a grid of 2<sup>b</sup> cells per dimension, and every point is
+ * mapped to the index of its cell along the curve, which is a <tt>long</tt> of <em>k</em> &#42; <em>b</em> bits. Since the
+ * curve never jumps, points that are close along it are close in space; and since it visits every quadrant (octant, etc)
+ * of the grid in one go, at every level of subdivision, sorting points by their key groups them by region at every
+ * scale, much like the nodes of a spatial tree.</p>
+ *
+ * <p>Keys are computed with Skilling's transposition algorithm, which works for any number of dimensions, with
+ * <em>b</em> = min(31, 62 / <em>k</em>) bits per dimension. Beyond 62 dimensions, there is not even a single bit per
+ * dimension left, so those are not supported.</p>
+ *
+ * @see #sort(KDPoint[], boolean)
+ */
+public class HilbertCurve {
+
+	private final int dims, bits;
+	private final double[] lo, inverseExtent;
+
+	/* *************************************************************************
+	 ************************ PRIVATE METHODS AND FIELDS ***********************
+	 ***************************************************************************/
+
+	/*
+	 * Skilling's algorithm: turns the cell coordinates in x, of b bits each, into the "transposed" Hilbert index,
+	 * in place. Interleaving the bits of the result, most significant first, gives the index along the curve.
+	 * The branches of the original are replaced with masks, since their outcome is a coin toss.
+	 */
+	private void axesToTranspose(long[] x, int b){
+		for(long q = 1L << (b - 1); q > 1; q >>= 1){ // Inverse undo.
+			long p = q - 1;
+			x[0] ^= p & -((x[0] & q) >>> Long.numberOfTrailingZeros(q));
+			for(int i = 1; i < dims; i++){
+				long set = -((x[i] & q) >>> Long.numberOfTrailingZeros(q)); // All ones if bit q of x[i] is set.
+				long t = (x[0] ^ x[i]) & p & ~set;
+				x[0] ^= (p & set) | t;
+				x[i] ^= t;
+			}
+		}
+		for(int i = 1; i < dims; i++) // Gray encode.
+			x[i] ^= x[i - 1];
+		long t = 0;
+		for(long q = 1L << (b - 1); q > 1; q >>= 1)
+			t ^= (q - 1) & -((x[dims - 1] & q) >>> Long.numberOfTrailingZeros(q));
+		for(int i = 0; i < dims; i++)
+			x[i] ^= t;
+	}
+
+	/*
+	 * Spreads the low 32 bits of v over the even bit positions of the result.
+	 */
+	private static long spread(long v){
+		v &= 0xFFFFFFFFL;
+		v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+		v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+		v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		v = (v | (v << 2)) & 0x3333333333333333L;
+		return (v | (v << 1)) & 0x5555555555555555L;
+	}
+
+	/*
+	 * The Hilbert index of p on a grid of 2^b cells per dimension, where b <= bits. This is the prefix of
+	 * dims * b bits of the index on the full grid.
+	 */
+	private long key(KDPoint p, int b, long[] x){
+		long max = (1L << b) - 1;
+		double cells = Math.scalb(1.0, b);
+		for(int d = 0; d < dims; d++){
+			double cell = Math.floor((p.coords[d] - lo[d]) * inverseExtent[d] * cells);
+			x[d] = (cell <= 0) ? 0 : (cell >= max) ? max : (long)cell; // NaNs go to cell 0.
+		}
+		axesToTranspose(x, b);
+		if(dims == 2)
+			return (spread(x[0]) << 1) | spread(x[1]);
+		long key = 0;
+		for(int j = b - 1; j >= 0; j--)
+			for(int d = 0; d < dims; d++)
+				key = (key << 1) | ((x[d] >>> j) & 1);
+		return key;
+	}
+
+	/* ***************************************************************************** */
+	/* ******************* PUBLIC (INTERFACE) METHODS ****************************** */
+	/* ***************************************************************************** */
+
+	/**
+	 * Creates a curve that fills the box [<tt>lo</tt>, <tt>hi</tt>]. Points outside of the box are mapped to the
+	 * nearest cell on its boundary.
+	 * @param lo The lower corner of the box.
+	 * @param hi The upper corner of the box.
+	 * @throws RuntimeException if the two corners have different or unsupported dimensionalities, or if <tt>lo</tt>
+	 * exceeds <tt>hi</tt> in some dimension.
+	 */
+	public HilbertCurve(double[] lo, double[] hi){
+		if(lo.length != hi.length)
+			throw new RuntimeException("The corners of the box have different dimensionalities, " + lo.length + " and " + hi.length + ".");
+		if(lo.length < 1 || lo.length > 62)
+			throw new RuntimeException("Hilbert curves are supported in 1 to 62 dimensions; we were given " + lo.length + ".");
+		dims = lo.length;
+		bits = Math.min(31, 62 / dims);
+		this.lo = lo.clone();
+		inverseExtent = new double[dims];
+		for(int d = 0; d < dims; d++){
+			if(!(lo[d] <= hi[d]))
+				throw new RuntimeException("The lower corner of the box exceeds the upper one in dimension " + d + ".");
+			inverseExtent[d] = (hi[d] > lo[d]) ? 1.0 / (hi[d] - lo[d]) : 0.0;
+		}
+	}
+
+	/**
+	 * Creates a curve that fills the bounding box of the provided {@link KDPoint}s.
+	 * @param points The {@link KDPoint}s, all of the same dimensionality.
+	 * @return A curve over the bounding box of <tt>points</tt>.
+	 * @throws RuntimeException if there are no points, or if their dimensionalities differ or are unsupported.
+	 */
+	public static HilbertCurve over(KDPoint[] points){
+		if(points.length == 0)
+			throw new RuntimeException("Cannot compute the bounding box of no KDPoints.");
+		int dims = points[0].coords.length;
+		double[] lo = points[0].coords.clone(), hi = points[0].coords.clone();
+		for(KDPoint p : points){
+			if(p.coords.length != dims)
+				throw new RuntimeException("All KDPoints need to have the same dimensionality, " + dims + ", but " + p + " does not.");
+			for(int d = 0; d < dims; d++){
+				lo[d] = Math.min(lo[d], p.coords[d]);
+				hi[d] = Math.max(hi[d], p.coords[d]);
+			}
+		}
+		return new HilbertCurve(lo, hi);
+	}
+
+	/**
+	 * Returns the number of bits per dimension of the grid that the curve fills.
+	 * @return The number of bits <em>b</em>, so that the grid has 2<sup>b</sup> cells per dimension.
+	 */
+	public int getBitsPerDimension(){
+		return bits;
+	}
+
+	/**
+	 * Computes the position of the cell of <tt>p</tt> along the curve.
+	 * @param p The {@link KDPoint} to map.
+	 * @return The Hilbert index of <tt>p</tt>, in [0, 2<sup>k &#42; b</sup>).
+	 * @throws RuntimeException if <tt>p</tt> has the wrong dimensionality.
+	 */
+	public long key(KDPoint p){
+		if(p.coords.length != dims)
+			throw new RuntimeException("This curve fills a " + dims + "-dimensional box; we were given " + p + ".");
+		return key(p, bits, new long[dims]);
+	}
+
+	/**
+	 * <p>Sorts the provided {@link KDPoint}s in place, by their position along this curve. Points of the same cell keep
+	 * their relative order.</p>
+	 *
+	 * <p>Every point is sorted by a single <tt>long</tt>, which packs its key above its position in the input, so that
+	 * sorting is a primitive sort. To make room for the position, keys are computed on a coarser grid than the full one
+	 * when needed, which is a prefix of the full key: the order is the same, but points that share a coarse cell stay in
+	 * input order. With a million points in 2D, that still leaves a grid of 2<sup>21</sup> cells per dimension.</p>
+	 * @param points The {@link KDPoint}s to sort.
+	 * @param parallel If <tt>true</tt>, keys are computed and sorted on the common {@link java.util.concurrent.ForkJoinPool}.
+	 * @throws RuntimeException if some point has the wrong dimensionality.
+	 */
+	public void sortAlong(KDPoint[] points, boolean parallel){
+		int n = points.length;
+		if(n < 2)
+			return;
+		for(KDPoint p : points)
+			if(p.coords.length != dims)
+				throw new RuntimeException("This curve fills a " + dims + "-dimensional box; we were given " + p + ".");
+		int indexBits = 64 - Long.numberOfLeadingZeros(n - 1);
+		int b = Math.min(bits, (63 - indexBits) / dims);
+		if(b < 1)
+			throw new RuntimeException("Too many KDPoints to sort in " + dims + " dimensions: " + n + ".");
+		long[] packed = new long[n];
+		if(parallel){
+			ThreadLocal<long[]> scratch = ThreadLocal.withInitial(() -> new long[dims]);
+			Arrays.parallelSetAll(packed, i -> (key(points[i], b, scratch.get()) << indexBits) | i);
+			Arrays.parallelSort(packed);
+		} else {
+			long[] x = new long[dims];
+			for(int i = 0; i < n; i++)
+				packed[i] = (key(points[i], b, x) << indexBits) | i;
+			Arrays.sort(packed);
+		}
+		KDPoint[] original = points.clone();
+		long mask = (1L << indexBits) - 1;
+		for(int i = 0; i < n; i++)
+			points[i] = original[(int)(packed[i] & mask)];
+	}
+
+	/**
+	 * Sorts the provided {@link KDPoint}s in place, along a Hilbert curve over their bounding box.
+	 * @param points The {@link KDPoint}s to sort, all of the same dimensionality.
+	 * @param parallel If <tt>true</tt>, keys are computed and sorted on the common {@link java.util.concurrent.ForkJoinPool}.
+	 * @throws RuntimeException if dimensionalities differ or are unsupported.
+	 */
+	public static void sort(KDPoint[] points, boolean parallel){
+		if(points.length > 1)
+			over(points).sortAlong(points, parallel);
+	}
+
+	/**
+	 * Copies the provided {@link KDPoint} references into an array, sorted along a Hilbert curve over their bounding box.
+	 * @param points The {@link KDPoint}s to sort, all of the same dimensionality. The collection is not modified.
+	 * @param parallel If <tt>true</tt>, keys are computed and sorted on the common {@link java.util.concurrent.ForkJoinPool}.
+	 * @return A fresh array with the references of <tt>points</tt>, in Hilbert order.
+	 * @throws RuntimeException if dimensionalities differ or are unsupported.
+	 */
+	public static KDPoint[] sorted(Collection<KDPoint> points, boolean parallel){
+		KDPoint[] array = points.toArray(new KDPoint[0]);
+		sort(array, parallel);
+		return array;
+	}
+}
@@ -0,0 +1,166 @@
+package projects.spatial.kdpoint;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>HilbertCurveTests</tt> checks that {@link HilbertCurve} visits every cell of a small grid exactly once, moving
+ * to an adjacent cell at every step, and that sorting along it keeps points of the same cell in input order.</p>
+ *
+ * @see HilbertCurve
+ */
+public class HilbertCurveTests {
+
+	private Random r;
+	private static final int SEED = 47;
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	/*
+	 * Walks the cells of a grid of 2^b cells per dimension over [0, 2^b]^dims in curve order, through the centers of the
+	 * cells. Keys on a coarser grid are prefixes of the full ones, so the top dims * b bits give the position of a cell.
+	 */
+	private static void checkGrid(int dims, int b){
+		double[] lo = new double[dims], hi = new double[dims];
+		Arrays.fill(hi, 1 << b);
+		HilbertCurve curve = new HilbertCurve(lo, hi);
+		int cells = 1 << (dims * b), shift = dims * (curve.getBitsPerDimension() - b);
+		int[][] cellAt = new int[cells][];
+		for(int cell = 0; cell < cells; cell++){
+			int[] x = new int[dims];
+			double[] center = new double[dims];
+			for(int d = 0, rest = cell; d < dims; d++, rest >>= b){
+				x[d] = rest & ((1 << b) - 1);
+				center[d] = x[d] + 0.5;
+			}
+			long key = curve.key(new KDPoint(center));
+			int position = (int)(key >>> shift);
+			assertNull("Two cells at position " + position, cellAt[position]);
+			cellAt[position] = x;
+		}
+		for(int d = 0; d < dims; d++)
+			assertEquals(0, cellAt[0][d]); // The curve starts at the lower corner.
+		for(int i = 1; i < cells; i++){
+			int steps = 0;
+			for(int d = 0; d < dims; d++)
+				steps += Math.abs(cellAt[i][d] - cellAt[i - 1][d]);
+			assertEquals("The curve jumps between positions " + (i - 1) + " and " + i, 1, steps);
+		}
+	}
+
+	@Test
+	public void testKeysVisitEveryCellOnceWithoutJumping() {
+		checkGrid(2, 1);
+		checkGrid(2, 3);
+		checkGrid(2, 5);
+	}
+
+	@Test
+	public void testKeysInThreeDimensions() {
+		checkGrid(3, 1);
+		checkGrid(3, 3);
+	}
+
+	@Test
+	public void testOutOfBoxPointsAreClamped() {
+		HilbertCurve curve = new HilbertCurve(new double[]{0, 0}, new double[]{8, 8});
+		assertEquals(curve.key(new KDPoint(0, 0)), curve.key(new KDPoint(-5, -100)));
+		assertEquals(curve.key(new KDPoint(8, 0)), curve.key(new KDPoint(50, -1)));
+		assertEquals(curve.key(new KDPoint(0, 0)), curve.key(new KDPoint(Double.NaN, Double.NaN)));
+	}
+
+	/*
+	 * Points on the integer grid of [0, 16]^2, with plenty of copies: every distinct point gets its own cell on any grid
+	 * of at least 2^5 cells per dimension, so the full keys of the sorted points have to be non-decreasing, and copies of
+	 * the same point have to stay in input order.
+	 */
+	private void checkSortAlong(boolean parallel){
+		HilbertCurve curve = new HilbertCurve(new double[]{0, 0}, new double[]{16, 16});
+		KDPoint[] points = new KDPoint[5000];
+		for(int i = 0; i < points.length; i++)
+			points[i] = new KDPoint(r.nextInt(17), r.nextInt(17));
+		KDPoint[] sorted = points.clone();
+		curve.sortAlong(sorted, parallel);
+		int[] positionOf = new int[points.length];
+		for(int i = 0; i < sorted.length; i++){
+			int position = -1;
+			for(int j = 0; j < points.length && position < 0; j++)
+				if(points[j] == sorted[i])
+					position = j;
+			positionOf[i] = position;
+		}
+		int[] seen = positionOf.clone();
+		Arrays.sort(seen);
+		for(int i = 0; i < seen.length; i++)
+			assertEquals(i, seen[i]); // A permutation of the input.
+		for(int i = 1; i < sorted.length; i++){
+			long previous = curve.key(sorted[i - 1]), current = curve.key(sorted[i]);
+			assertTrue(previous <= current);
+			if(previous == current)
+				assertTrue("Points of the same cell were reordered.", positionOf[i - 1] < positionOf[i]);
+		}
+	}
+
+	@Test
+	public void testSortAlongKeepsInputOrderWithinCells() {
+		checkSortAlong(false);
+	}
+
+	@Test
+	public void testParallelSortAlongKeepsInputOrderWithinCells() {
+		checkSortAlong(true);
+	}
+
+	@Test
+	public void testSortAlongKeepsInputOrderOfDistinctPointsInTheSameCell() {
+		HilbertCurve curve = new HilbertCurve(new double[]{0, 0}, new double[]{1, 1});
+		KDPoint[] points = new KDPoint[4000];
+		int clustered = 0;
+		for(int i = 0; i < points.length; i++) // Every other point is in a cell far narrower than the grid of the sort.
+			points[i] = r.nextBoolean() ? new KDPoint(0.3 + clustered++ * 1e-12, 0.7 - clustered * 1e-12) : new KDPoint(r.nextDouble(), r.nextDouble());
+		for(boolean parallel : new boolean[]{false, true}){
+			KDPoint[] sorted = points.clone();
+			curve.sortAlong(sorted, parallel);
+			double last = -1;
+			int seen = 0;
+			for(KDPoint p : sorted){
+				if(Math.abs(p.coords[0] - 0.3) < 1e-6 && Math.abs(p.coords[1] - 0.7) < 1e-6){
+					assertTrue(p.coords[0] > last); // Input order, which is the order of their x coordinates.
+					last = p.coords[0];
+					seen++;
+				}
+			}
+			assertEquals(clustered, seen);
+		}
+	}
+
+	@Test
+	public void testSortOverBoundingBox() {
+		KDPoint[] points = new KDPoint[1000];
+		for(int i = 0; i < points.length; i++)
+			points[i] = new KDPoint(100 * r.nextDouble() - 50, r.nextDouble());
+		KDPoint[] sequential = points.clone(), parallel = points.clone();
+		HilbertCurve.sort(sequential, false);
+		HilbertCurve.sort(parallel, true);
+		assertArrayEquals(sequential, parallel);
+		HilbertCurve curve = HilbertCurve.over(points);
+		for(int i = 1; i < sequential.length; i++) // Keys on the coarser grid of the sort are prefixes of these.
+			assertTrue(curve.key(sequential[i - 1]) >>> 20 <= curve.key(sequential[i]) >>> 20);
+		KDPoint[] single = {new KDPoint(1, 1)};
+		HilbertCurve.sort(single, false); // A single point needs no box.
+		assertEquals(new KDPoint(1, 1), single[0]);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testWrongDimensionality() {
+		new HilbertCurve(new double[]{0, 0}, new double[]{1, 1}).key(new KDPoint(0.5, 0.5, 0.5));
+	}
+}
@@ -186,6 +186,16 @@ public class KDPointTests {
 		}
 	}
 	
+	@Test
+	public void testHashCode(){
+		for(int i = 0; i < MAX_ITER; i++){
+			KDPoint p = new KDPoint(-SCALE * r.nextDouble(), SCALE * r.nextDouble());
+			assertEquals(p.hashCode(), new KDPoint(p).hashCode());
+		}
+		assertEquals(new KDPoint(0.0, 3.0), new KDPoint(-0.0, 3.0)); // -0.0 == 0.0, so the two must hash alike.
+		assertEquals(new KDPoint(0.0, 3.0).hashCode(), new KDPoint(-0.0, 3.0).hashCode());
+	}
+
 	@Test
 	public void testToString(){
 		
@@ -2,7 +2,9 @@ package projects.spatial.knnutils;
 
 import projects.spatial.kdpoint.KDPoint;
 
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * <p>{@link BoundedPriorityQueue} is an {@link Iterable} priority queue whose number of elements
@@ -10,20 +12,41 @@ import java.util.Iterator;
  * its length is not expanded, but rather the maximum priority element is ejected
  * (which could be the element just attempted to be enqueued).</p>
  *
- * <p><b>YOU ***** MUST ***** IMPLEMENT THIS CLASS!</b></p>
- *
- * @author  ---- YOUR NAME HERE! -----
- *
+ * <p>Elements are kept in two parallel arrays sorted by priority, with ties broken in FIFO order. Since the
+ * capacity of the queue is the <em>k</em> of a <em>k</em>-NN query, which is small, shifting elements on insertion
+ * is cheaper than maintaining a heap and it makes {@link #last()} a constant time operation.</p>
  */
 public class BoundedPriorityQueue<T> implements Iterable<T>{
 
-	private static RuntimeException UNIMPL_METHOD = new RuntimeException("Implement this method!");
-
 	/* *************************************************************************
-	 ************** PLACE YOUR PRIVATE METHODS AND FIELDS HERE: ****************
+	 ************************ PRIVATE METHODS AND FIELDS ***********************
 	 ***************************************************************************/
 
+	private Object[] elements;
+	private double[] priorities;
+	private int size;
+	private int modCount; // For fail-fast iterators.
 
+	/*
+	 * Returns the first index whose priority is strictly larger than the one given, so that
+	 * elements of equal priority are served in FIFO order.
+	 */
+	private int upperBound(double priority){
+		int lo = 0, hi = size;
+		while(lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if(priorities[mid] <= priority)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T elementAt(int i){
+		return (T)elements[i];
+	}
 
 	/* ***************************************************************************** */
 	/* ******************* PUBLIC (INTERFACE) METHODS ****************************** */
@@ -36,7 +59,12 @@ public class BoundedPriorityQueue<T> implements Iterable<T>{
 	 * @throws RuntimeException if <tt>size</tt> &lt; 1.
 	 */
 	public BoundedPriorityQueue(int size){
-		throw UNIMPL_METHOD; // Erase this after you implement the method!
+		if(size < 1)
+			throw new RuntimeException("The size of a BoundedPriorityQueue needs to be a positive integer; we were given " + size + ".");
+		elements = new Object[size];
+		priorities = new double[size];
+		this.size = 0;
+		modCount = 0;
 	}
 
 	/**
@@ -51,7 +79,17 @@ public class BoundedPriorityQueue<T> implements Iterable<T>{
 	 * @see projects.spatial.kdpoint.KDPoint#distance(KDPoint)
 	 */
 	public void enqueue(T element, double priority) {
-		throw UNIMPL_METHOD; // Erase this after you implement the method!
+		int pos = upperBound(priority);
+		if(pos == elements.length) // Worse than everything in a full queue; ejected right away.
+			return;
+		int last = (size == elements.length) ? size - 1 : size; // The maximum priority element falls off if we are full.
+		System.arraycopy(elements, pos, elements, pos + 1, last - pos);
+		System.arraycopy(priorities, pos, priorities, pos + 1, last - pos);
+		elements[pos] = element;
+		priorities[pos] = priority;
+		if(size < elements.length)
+			size++;
+		modCount++;
 	}
 
 	/**
@@ -59,7 +97,14 @@ public class BoundedPriorityQueue<T> implements Iterable<T>{
 	 * @return The minimum priority element in the queue, or <tt>null</tt> if the queue is empty.
 	 */
 	public T dequeue() {
-		throw UNIMPL_METHOD; // Erase this after you implement the method!
+		if(size == 0)
+			return null;
+		T first = elementAt(0);
+		System.arraycopy(elements, 1, elements, 0, size - 1);
+		System.arraycopy(priorities, 1, priorities, 0, size - 1);
+		elements[--size] = null; // Let the garbage collector do its job.
+		modCount++;
+		return first;
 	}
 
 	/**
@@ -67,7 +112,7 @@ public class BoundedPriorityQueue<T> implements Iterable<T>{
 	 * @return The minimum priority element of the queue, or <tt>null</tt> if the queue is empty.
 	 */
 	public T first() {
-		throw UNIMPL_METHOD; // Erase this after you implement the method!
+		return (size == 0) ? null : elementAt(0);
 	}
 
 
@@ -78,7 +123,17 @@ public class BoundedPriorityQueue<T> implements Iterable<T>{
 	 * @return The maximum priority element of the queue, or <tt>null</tt> if the queue is empty.
 	 */
 	public T last() {
-		throw UNIMPL_METHOD; // Erase this after you implement the method!
+		return (size == 0) ? null : elementAt(size - 1);
+	}
+
+	/**
+	 * Return the priority of the <b>maximum priority element</b> of the queue. For the queues of kNN queries, this is
+	 * the distance of the current k-th nearest neighbor, which pruning can use as is, instead of computing it again from
+	 * {@link #last()}.
+	 * @return The maximum priority in the queue, or {@link Double#POSITIVE_INFINITY} if the queue is empty.
+	 */
+	public double lastPriority() {
+		return (size == 0) ? Double.POSITIVE_INFINITY : priorities[size - 1];
 	}
 
 	/**
@@ -86,7 +141,7 @@ public class BoundedPriorityQueue<T> implements Iterable<T>{
 	 * @return The size of the queue. Returns 0 if the queue is empty.
 	 */
 	public int size() {
-		throw UNIMPL_METHOD; // Erase this after you implement the method!
+		return size;
 	}
 
 	/**
@@ -94,11 +149,29 @@ public class BoundedPriorityQueue<T> implements Iterable<T>{
 	 * @return <tt>true</tt> iff the queue contains <b>0 (zero)</b> elements.
 	 */
 	public boolean isEmpty() {
-		throw UNIMPL_METHOD; // Erase this after you implement the method!
+		return size == 0;
 	}
 
 	@Override
 	public Iterator<T> iterator() {
-		throw UNIMPL_METHOD; // Erase this after you implement the method!
+		return new Iterator<T>() {
+
+			private int current = 0;
+			private final int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				if(expectedModCount != modCount)
+					throw new ConcurrentModificationException("BoundedPriorityQueue was modified during iteration.");
+				return current < size;
+			}
+
+			@Override
+			public T next() {
+				if(!hasNext())
+					throw new NoSuchElementException("No more elements in the BoundedPriorityQueue.");
+				return elementAt(current++);
+			}
+		};
 	}
 }
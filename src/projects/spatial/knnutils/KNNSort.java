@@ -0,0 +1,116 @@
+package projects.spatial.knnutils;
+
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.List;
+import java.util.ListIterator;
+
+/**<p><tt>KNNSort</tt> sorts {@link KDPoint}s by their {@link KDPoint#distance(KDPoint) distance} to an anchor
+ * {@link KDPoint}, in the same order as sorting them with a {@link KNNComparator} would: ascending distance, with ties
+ * kept in their original order. A {@link KNNComparator} computes two distances in every one of the O(n log n)
+ * comparisons of a sort; <tt>KNNSort</tt> <em>decorates</em> every point with its distance once, sorts the distances
+ * and the points together as two parallel arrays, and then drops the distances.</p>
+ *
+ * <p>The sort is a stable merge sort over primitive <tt>double</tt> keys, with insertion sort for short runs. It allocates
+ * the distances and a scratch copy of both arrays, and nothing per point.</p>
+ *
+ * @see KNNComparator
+ */
+public class KNNSort {
+
+	/* *************************************************************************
+	 ************************ PRIVATE METHODS AND FIELDS ***********************
+	 ***************************************************************************/
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private KNNSort(){} // Only static methods.
+
+	private static double[] distances(Object[] points, KDPoint anchor){
+		double[] dists = new double[points.length];
+		for(int i = 0; i < points.length; i++)
+			dists[i] = ((KDPoint)points[i]).distance(anchor);
+		return dists;
+	}
+
+	/*
+	 * Sorts keys[lo, hi) and the points alongside them, stably. The scratch arrays hold the same contents as keys and
+	 * points over [lo, hi) on entry, and they are used as the source of every merge, alternating roles with the
+	 * destination at every level, so that no range is ever copied back.
+	 */
+	private static void mergeSort(double[] srcKeys, Object[] srcPoints, double[] keys, Object[] points, int lo, int hi){
+		if(hi - lo <= INSERTION_SORT_THRESHOLD){
+			for(int i = lo + 1; i < hi; i++){
+				double key = keys[i];
+				Object point = points[i];
+				int j = i - 1;
+				while(j >= lo && keys[j] > key){ // Strict, for stability.
+					keys[j + 1] = keys[j];
+					points[j + 1] = points[j];
+					j--;
+				}
+				keys[j + 1] = key;
+				points[j + 1] = point;
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		mergeSort(keys, points, srcKeys, srcPoints, lo, mid);
+		mergeSort(keys, points, srcKeys, srcPoints, mid, hi);
+		if(srcKeys[mid - 1] <= srcKeys[mid]){ // Already in order.
+			System.arraycopy(srcKeys, lo, keys, lo, hi - lo);
+			System.arraycopy(srcPoints, lo, points, lo, hi - lo);
+			return;
+		}
+		for(int i = lo, l = lo, r = mid; i < hi; i++){
+			if(r >= hi || (l < mid && srcKeys[l] <= srcKeys[r])){
+				keys[i] = srcKeys[l];
+				points[i] = srcPoints[l++];
+			} else {
+				keys[i] = srcKeys[r];
+				points[i] = srcPoints[r++];
+			}
+		}
+	}
+
+	private static void sort(Object[] points, KDPoint anchor){
+		double[] keys = distances(points, anchor);
+		mergeSort(keys.clone(), points.clone(), keys, points, 0, points.length);
+	}
+
+	/* ***************************************************************************** */
+	/* ******************* PUBLIC (INTERFACE) METHODS ****************************** */
+	/* ***************************************************************************** */
+
+	/**
+	 * Sorts <tt>points</tt> in place, by ascending distance to <tt>anchor</tt>. Points at the same distance keep their
+	 * relative order.
+	 * @param points The {@link KDPoint}s to sort.
+	 * @param anchor The {@link KDPoint} that distances are measured from.
+	 * @param <T> A {@link KDPoint} type.
+	 * @throws RuntimeException if some point has a different dimensionality than <tt>anchor</tt>.
+	 */
+	public static <T extends KDPoint> void sort(T[] points, KDPoint anchor){
+		sort((Object[])points, anchor);
+	}
+
+	/**
+	 * Sorts <tt>points</tt> in place, by ascending distance to <tt>anchor</tt>. Points at the same distance keep their
+	 * relative order. The list is sorted as an array and written back through its {@link ListIterator}, like
+	 * {@link List#sort(java.util.Comparator)} does.
+	 * @param points The {@link KDPoint}s to sort. The list needs to support {@link ListIterator#set(Object)}.
+	 * @param anchor The {@link KDPoint} that distances are measured from.
+	 * @param <T> A {@link KDPoint} type.
+	 * @throws RuntimeException if some point has a different dimensionality than <tt>anchor</tt>.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends KDPoint> void sort(List<T> points, KDPoint anchor){
+		Object[] array = points.toArray();
+		sort(array, anchor);
+		ListIterator<T> it = points.listIterator();
+		for(Object p : array){
+			it.next();
+			it.set((T)p);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package projects.spatial.knnutils;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>KNNSortTests</tt> checks that {@link KNNSort} sorts {@link KDPoint}s in exactly the order of a stable sort with a
+ * {@link KNNComparator}. Points lie on a small grid, so that many of them are equally far from the anchor, or copies of
+ * each other, and ties are told apart by identity.</p>
+ *
+ * @see KNNSort
+ */
+public class KNNSortTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int GRID = 10;
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	private List<KDPoint> gridPoints(int n){
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < n; i++)
+			points.add(new KDPoint(r.nextInt(GRID), r.nextInt(GRID)));
+		return points;
+	}
+
+	private static void assertSameOrder(List<KDPoint> expected, List<KDPoint> actual){
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++)
+			assertSame("Different points at position " + i, expected.get(i), actual.get(i));
+	}
+
+	/*
+	 * Sizes around the threshold of the insertion sort, and some that make several levels of merges.
+	 */
+	@Test
+	public void testSameOrderAsKNNComparator() {
+		for(int n : new int[]{0, 1, 2, 3, 15, 16, 17, 31, 32, 33, 100, 1000, 5000}){
+			List<KDPoint> points = gridPoints(n);
+			KDPoint anchor = new KDPoint(r.nextInt(GRID), r.nextInt(GRID)); // Often a copy of some point, at distance 0.
+			List<KDPoint> expected = new ArrayList<>(points);
+			expected.sort(new KNNComparator<>(anchor)); // List#sort() is stable.
+
+			KDPoint[] array = points.toArray(new KDPoint[0]);
+			KNNSort.sort(array, anchor);
+			assertSameOrder(expected, List.of(array));
+
+			List<KDPoint> list = new ArrayList<>(points);
+			KNNSort.sort(list, anchor);
+			assertSameOrder(expected, list);
+
+			List<KDPoint> linked = new LinkedList<>(points);
+			KNNSort.sort(linked, anchor);
+			assertSameOrder(expected, linked);
+		}
+	}
+
+	@Test
+	public void testTiesKeepInputOrder() {
+		KDPoint anchor = new KDPoint(0, 0);
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < 100; i++) // Four points at distance 25 around the anchor, and copies of them, interleaved.
+			points.add(new KDPoint(new double[][]{{3, 4}, {-4, 3}, {5, 0}, {0, -5}}[i % 4]));
+		points.add(50, new KDPoint(1, 0));
+		points.add(new KDPoint(0, 0));
+		List<KDPoint> sorted = new ArrayList<>(points);
+		KNNSort.sort(sorted, anchor);
+		assertSame(points.get(points.size() - 1), sorted.get(0));
+		assertSame(points.get(50), sorted.get(1));
+		List<KDPoint> rest = new ArrayList<>(points);
+		rest.remove(points.size() - 1);
+		rest.remove(50);
+		assertSameOrder(rest, sorted.subList(2, sorted.size()));
+	}
+
+	@Test
+	public void testAlreadySortedAndReversedInputs() {
+		KDPoint anchor = new KDPoint(0, 0);
+		List<KDPoint> ascending = new ArrayList<>();
+		for(int i = 0; i < 300; i++)
+			ascending.add(new KDPoint(i / 3, 0)); // Runs of three ties.
+		List<KDPoint> sorted = new ArrayList<>(ascending);
+		KNNSort.sort(sorted, anchor);
+		assertSameOrder(ascending, sorted);
+
+		List<KDPoint> descending = new ArrayList<>(ascending);
+		Collections.reverse(descending);
+		List<KDPoint> expected = new ArrayList<>(descending);
+		expected.sort(new KNNComparator<>(anchor));
+		KNNSort.sort(descending, anchor);
+		assertSameOrder(expected, descending);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testDifferentDimensionalities() {
+		KNNSort.sort(new KDPoint[]{new KDPoint(1, 1), new KDPoint(1, 1, 1)}, new KDPoint(0, 0));
+	}
+}
@@ -0,0 +1,104 @@
+package projects.spatial.knnutils;
+
+import projects.spatial.trees.KDTree;
+
+/**<p>{@link NNContext} is the mutable, reusable counterpart of {@link NNData}: it tracks the best candidate of a
+ * nearest neighbor query and its distance from the anchor, but it is meant to be {@link #reset() reset} and reused across
+ * queries instead of allocated anew for every one of them. The distance is kept in a primitive field, with
+ * {@link KDTree#INFTY} standing for &quot;no candidate yet&quot;, like in {@link NNData}.</p>
+ *
+ * <p>The candidate does not need to be a {@link projects.spatial.kdpoint.KDPoint}: a tree can offer its <em>nodes</em>,
+ * and only copy the point out of the winning node once the query is over. Since a query improves on its best guess
+ * O(log n) times on average, this saves as many copies per query.</p>
+ *
+ * <p>A context is not thread-safe. Use {@link #forCurrentThread()} to get one that is private to the calling thread.</p>
+ *
+ * @param <T> The type of the candidates.
+ *
+ * @see NNData
+ * @see KDTree#nearestNeighbor(projects.spatial.kdpoint.KDPoint)
+ */
+public class NNContext<T> {
+
+	/* *************************************************************************
+	 ************************ PRIVATE METHODS AND FIELDS ***********************
+	 ***************************************************************************/
+
+	private static final ThreadLocal<NNContext<Object>> CONTEXTS = ThreadLocal.withInitial(NNContext::new);
+
+	private T best;
+	private double bestDist;
+
+	/* ***************************************************************************** */
+	/* ******************* PUBLIC (INTERFACE) METHODS ****************************** */
+	/* ***************************************************************************** */
+
+	/**
+	 * Creates an empty context.
+	 */
+	public NNContext(){
+		reset();
+	}
+
+	/**
+	 * Returns the context of the calling thread, {@link #reset() reset}. The same object is returned to every call from
+	 * the same thread, so a context must not be used past the query that requested it, and queries must not be nested.
+	 * @param <T> The type of the candidates.
+	 * @return The context of the calling thread, with no candidate.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> NNContext<T> forCurrentThread(){
+		return (NNContext<T>)CONTEXTS.get().reset();
+	}
+
+	/**
+	 * Forgets the current candidate. This also drops the reference to it, so that a context that is kept around does
+	 * not keep its last candidate alive.
+	 * @return <tt>this</tt>, for chaining.
+	 */
+	public NNContext<T> reset(){
+		best = null;
+		bestDist = KDTree.INFTY;
+		return this;
+	}
+
+	/**
+	 * Replaces the current candidate with <tt>candidate</tt> if there is none, or if <tt>candidate</tt> is strictly
+	 * closer. On ties, the candidate that was offered first wins.
+	 * @param candidate The candidate.
+	 * @param dist Its distance from the anchor.
+	 * @return <tt>true</tt> if <tt>candidate</tt> became the current candidate, <tt>false</tt> otherwise.
+	 */
+	public boolean offer(T candidate, double dist){
+		if(bestDist != KDTree.INFTY && dist >= bestDist)
+			return false;
+		best = candidate;
+		bestDist = dist;
+		return true;
+	}
+
+	/**
+	 * Reports whether a subtree that lies at least <tt>dist</tt> away from the anchor could hold a better candidate.
+	 * @param dist A lower bound for the distance of every point of the subtree from the anchor.
+	 * @return <tt>true</tt> if there is no candidate yet or if <tt>dist</tt> is strictly smaller than its distance.
+	 */
+	public boolean mightImprove(double dist){
+		return bestDist == KDTree.INFTY || dist < bestDist;
+	}
+
+	/**
+	 * Returns the current candidate.
+	 * @return The current candidate, or <tt>null</tt> if there is none.
+	 */
+	public T best(){
+		return best;
+	}
+
+	/**
+	 * Returns the distance of the current candidate from the anchor.
+	 * @return The distance of the current candidate, or {@link KDTree#INFTY} if there is none.
+	 */
+	public double bestDistance(){
+		return bestDist;
+	}
+}
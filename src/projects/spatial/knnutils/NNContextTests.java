@@ -0,0 +1,110 @@
+package projects.spatial.knnutils;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.nodes.KDTreeNode;
+import projects.spatial.trees.KDTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>NNContextTests</tt> checks the bookkeeping of {@link NNContext}, and checks that nearest neighbor queries which
+ * reuse the context of their thread, one after the other, answer exactly like queries that start from a fresh
+ * {@link NNData} or a fresh {@link NNContext}.</p>
+ *
+ * @see NNContext
+ */
+public class NNContextTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int GRID = 50;
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	private KDPoint gridPoint(){
+		return new KDPoint(r.nextInt(GRID), r.nextInt(GRID));
+	}
+
+	@Test
+	public void testOfferAndReset() {
+		NNContext<String> context = new NNContext<>();
+		assertNull(context.best());
+		assertEquals(KDTree.INFTY, context.bestDistance(), 0.0);
+		assertTrue(context.mightImprove(Double.MAX_VALUE));
+		assertTrue(context.offer("far", 9));
+		assertTrue(context.offer("near", 4));
+		assertFalse(context.offer("tie", 4)); // The first candidate at a distance wins.
+		assertFalse(context.offer("farther", 5));
+		assertEquals("near", context.best());
+		assertEquals(4, context.bestDistance(), 0.0);
+		assertTrue(context.mightImprove(3.9));
+		assertFalse(context.mightImprove(4));
+		assertSame(context, context.reset());
+		assertNull(context.best());
+		assertEquals(KDTree.INFTY, context.bestDistance(), 0.0);
+		assertTrue(context.offer("zero", 0));
+	}
+
+	@Test
+	public void testContextOfCurrentThread() throws InterruptedException {
+		NNContext<String> context = NNContext.forCurrentThread();
+		context.offer("stale", 1); // Left behind by some query.
+		NNContext<String> again = NNContext.forCurrentThread();
+		assertSame(context, again);
+		assertNull(again.best()); // Handed out reset.
+		AtomicReference<NNContext<String>> other = new AtomicReference<>();
+		Thread thread = new Thread(() -> other.set(NNContext.forCurrentThread()));
+		thread.start();
+		thread.join();
+		assertNotNull(other.get());
+		assertNotSame(context, other.get());
+	}
+
+	/*
+	 * Many queries in a row on the same thread, which all go through the same context, against the allocating query
+	 * and a fresh context on the same tree. All of them break ties the same way, so they have to agree on the point,
+	 * not only on its distance.
+	 */
+	@Test
+	public void testReusedContextAnswersLikeFreshQueries() {
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < 3000; i++)
+			points.add(gridPoint());
+		KDTree tree = new KDTree(2, false, 0.25);
+		for(KDPoint p : points)
+			tree.insert(p);
+		for(int i = 0; i < 1000; i++) // Tombstones, which queries have to skip.
+			tree.delete(points.get(r.nextInt(points.size())));
+		KDTreeNode root = KDTreeNode.build(points.toArray(new KDPoint[0]), 0, 2, false);
+		for(int i = 0; i < 2000; i++){
+			KDPoint anchor = (i % 2 == 0) ? gridPoint() : new KDPoint(GRID * r.nextDouble(), GRID * r.nextDouble());
+			NNData<KDPoint> fresh = root.nearestNeighbor(anchor, 0, new NNData<>(null, KDTree.INFTY), 2);
+			NNContext<KDTreeNode> context = new NNContext<>();
+			root.nearestNeighbor(anchor, 0, context, 2);
+			assertEquals(fresh.bestGuess, context.best().getPoint());
+			assertEquals(fresh.bestDist, context.bestDistance(), 0.0);
+
+			NNContext<KDTreeNode> reused = NNContext.forCurrentThread();
+			root.nearestNeighbor(anchor, 0, reused, 2);
+			assertEquals(fresh.bestGuess, reused.best().getPoint());
+			reused.offer(root, -2); // Leaves junk behind for the next query.
+
+			KDPoint nn = tree.nearestNeighbor(anchor); // Through the context of this thread as well.
+			double best = Double.MAX_VALUE;
+			for(KDPoint p : points)
+				if(tree.search(p) && !p.equals(anchor))
+					best = Math.min(best, p.distance(anchor));
+			assertEquals(best, nn.distance(anchor), 0.0);
+		}
+	}
+}
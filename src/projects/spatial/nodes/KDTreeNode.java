@@ -2,29 +2,364 @@ package projects.spatial.nodes;
 
 import projects.spatial.kdpoint.KDPoint;
 import projects.spatial.knnutils.BoundedPriorityQueue;
+import projects.spatial.knnutils.NNContext;
 import projects.spatial.knnutils.NNData;
+import projects.spatial.trees.KDTree;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * <p>{@link KDTreeNode} is an abstraction over nodes of a KD-Tree. It is used extensively by
  * {@link projects.spatial.trees.KDTree} to implement its functionality.</p>
  *
- * <p><b>YOU ***** MUST ***** IMPLEMENT THIS CLASS!</b></p>
+ * <p>A node stores its coordinates either as a <tt>double[]</tt> or, in <em>single-precision storage mode</em>,
+ * as a <tt>float[]</tt>, which halves the memory spent on coordinates. In single-precision mode, incoming
+ * {@link KDPoint}s are rounded to the nearest <tt>float</tt> before they are compared against the stored coordinates,
+ * whereas distances are always accumulated in <tt>double</tt>. All the nodes of a tree share the same mode, which is
+ * decided when the root is created.</p>
  *
- * @author  ---- YOUR NAME HERE! -----
+ * <p>Nodes also support <em>lazy deletion</em>: a node can be marked as a <b>tombstone</b>, in which case it keeps
+ * guiding searches with its coordinates, but is skipped by every query. Every node maintains the number of nodes and the
+ * number of tombstones in its subtree, so that a subtree can be {@link #compact(KDPoint, double, int, int) rebuilt}
+ * without its tombstones once they make up too large a fraction of it.</p>
  *
  * @see projects.spatial.trees.KDTree
+ * @see projects.spatial.kdpoint.FloatKDPoint
  */
 public class KDTreeNode {
 
-    private static RuntimeException UNIMPL_METHOD = new RuntimeException("Implement this method!");
-
     /* *************************************************************************
-     ************** PLACE YOUR PRIVATE METHODS AND FIELDS HERE: ****************
+     ************************ PRIVATE METHODS AND FIELDS ***********************
      ***************************************************************************/
 
+    private double[] coords;      // null in single-precision mode.
+    private float[] floatCoords;  // null in double-precision mode.
+    private KDTreeNode left, right;
+    private boolean deleted;      // Tombstone; only ever set in lazy deletion mode.
+    private int size, dead;       // Nodes and tombstones in the subtree rooted at this.
+
+    private static int sizeOf(KDTreeNode node){
+        return (node == null) ? 0 : node.size;
+    }
+
+    private static int deadOf(KDTreeNode node){
+        return (node == null) ? 0 : node.dead;
+    }
+
+    /*
+     * Recomputes the subtree counters from those of the children, after the structure below this changed.
+     */
+    private void recount(){
+        size = 1 + sizeOf(left) + sizeOf(right);
+        dead = (deleted ? 1 : 0) + deadOf(left) + deadOf(right);
+    }
+
+    private boolean isFloatStorage(){
+        return floatCoords != null;
+    }
+
+    /*
+     * The stored coordinate at dimension dim, widened to a double if need be.
+     */
+    private double coord(int dim){
+        return isFloatStorage() ? floatCoords[dim] : coords[dim];
+    }
+
+    /*
+     * The coordinate of an incoming point at dimension dim, as it would be stored by this node.
+     * All BST-style navigation should go through this method, so that single-precision trees
+     * guide a double-precision point exactly as they guided its rounded version on insertion.
+     */
+    private double key(KDPoint p, int dim){
+        return key(p, dim, isFloatStorage());
+    }
+
+    /*
+     * The same, for the partitions of a build, which have no node to ask yet. Splitting on raw coordinates would let a
+     * point that only ties the median once rounded end up left of it, where searches never look.
+     */
+    private static double key(KDPoint p, int dim, boolean floatStorage){
+        return floatStorage ? (float)p.coords[dim] : p.coords[dim];
+    }
+
+    /*
+     * Equality between the stored point and p, up to the precision of this node.
+     */
+    private boolean holds(KDPoint p){
+        int dims = isFloatStorage() ? floatCoords.length : coords.length;
+        if(p.coords.length != dims)
+            return false;
+        for(int i = 0; i < dims; i++)
+            if(key(p, i) != coord(i))
+                return false;
+        return true;
+    }
+
+    /*
+     * Squared Euclidean distance between the stored point and p, as KDPoint#distance(KDPoint) would report it.
+     */
+    private double distanceTo(KDPoint p){
+        int dims = isFloatStorage() ? floatCoords.length : coords.length;
+        if(p.coords.length != dims)
+            throw new RuntimeException("Cannot calculate the Euclidean Distance between KDPoints of different dimensionalities.");
+        double sum = 0.0;
+        for(int i = 0; i < dims; i++){
+            double diff = coord(i) - p.coords[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private void store(KDPoint p, boolean floatStorage){
+        if(floatStorage){
+            floatCoords = new float[p.coords.length];
+            for(int i = 0; i < floatCoords.length; i++)
+                floatCoords[i] = (float)p.coords[i];
+            coords = null;
+        } else {
+            coords = p.coords.clone();
+            floatCoords = null;
+        }
+    }
+
+    /*
+     * Replaces the stored point with a copy of the one held by other, in other's precision.
+     */
+    private void copyPointOf(KDTreeNode other){
+        coords = (other.coords == null) ? null : other.coords.clone();
+        floatCoords = (other.floatCoords == null) ? null : other.floatCoords.clone();
+        deleted = other.deleted;
+    }
+
+    private KDTreeNode spawn(KDPoint p){
+        return new KDTreeNode(p, isFloatStorage());
+    }
+
+    /*
+     * Finds the node holding the minimum coordinate at dimension targetDim in the subtree rooted at this.
+     * Only the left subtree needs to be examined when this splits on targetDim.
+     */
+    private KDTreeNode findMin(int targetDim, int currDim, int dims){
+        int nextDim = (currDim + 1) % dims;
+        if(currDim == targetDim)
+            return (left == null) ? this : left.findMin(targetDim, nextDim, dims);
+        KDTreeNode min = this;
+        if(left != null){
+            KDTreeNode leftMin = left.findMin(targetDim, nextDim, dims);
+            if(leftMin.coord(targetDim) < min.coord(targetDim))
+                min = leftMin;
+        }
+        if(right != null){
+            KDTreeNode rightMin = right.findMin(targetDim, nextDim, dims);
+            if(rightMin.coord(targetDim) < min.coord(targetDim))
+                min = rightMin;
+        }
+        return min;
+    }
+
+    private void collectLive(Collection<KDPoint> points){
+        if(!deleted)
+            points.add(getPoint());
+        if(left != null)
+            left.collectLive(points);
+        if(right != null)
+            right.collectLive(points);
+    }
+
+    /*
+     * Builds a perfectly balanced tree over points[from, to), splitting on currDim at the root. The median of every
+     * range is moved to the first position of its value, so that everything to its left is strictly smaller, as
+     * insert() and search() expect. Nodes are allocated in pre-order.
+     */
+    private static KDTreeNode build(KDPoint[] points, int from, int to, int currDim, int dims, boolean floatStorage){
+        if(from >= to)
+            return null;
+        int split = partition(points, from, to, currDim, floatStorage);
+        KDTreeNode node = new KDTreeNode(points[split], floatStorage);
+        int nextDim = (currDim + 1) % dims;
+        node.left = build(points, from, split, nextDim, dims, floatStorage);
+        node.right = build(points, split + 1, to, nextDim, dims, floatStorage);
+        node.recount();
+        return node;
+    }
+
+    /*
+     * Builds the two halves of a range in parallel, down to ranges of GRAIN points, which are built sequentially.
+     * Every worker allocates the nodes of its subtrees in pre-order, so subtrees still end up contiguous in memory.
+     */
+    private static final class BuildTask extends RecursiveTask<KDTreeNode> {
+        private static final long serialVersionUID = 1L;
+        private static final int GRAIN = 1 << 14;
+        private final KDPoint[] points;
+        private final int from, to, currDim, dims;
+        private final boolean floatStorage;
+
+        BuildTask(KDPoint[] points, int from, int to, int currDim, int dims, boolean floatStorage){
+            this.points = points;
+            this.from = from;
+            this.to = to;
+            this.currDim = currDim;
+            this.dims = dims;
+            this.floatStorage = floatStorage;
+        }
+
+        @Override
+        protected KDTreeNode compute(){
+            if(to - from <= GRAIN)
+                return build(points, from, to, currDim, dims, floatStorage);
+            int split = partition(points, from, to, currDim, floatStorage);
+            KDTreeNode node = new KDTreeNode(points[split], floatStorage);
+            int nextDim = (currDim + 1) % dims;
+            BuildTask left = new BuildTask(points, from, split, nextDim, dims, floatStorage);
+            left.fork();
+            node.right = new BuildTask(points, split + 1, to, nextDim, dims, floatStorage).compute();
+            node.left = left.join();
+            node.recount();
+            return node;
+        }
+    }
+
+    /*
+     * Adds the subtree rooted at this, whose root lies at the given depth, to profile. A node has four references,
+     * a boolean and two ints, and owns its coordinate array.
+     */
+    void profile(ShapeProfile profile, int depth){
+        long bytes = ShapeProfile.objectBytes(4 * 4 + 1 + 2 * 4) + (isFloatStorage() ?
+                ShapeProfile.arrayBytes(floatCoords.length, Float.BYTES) : ShapeProfile.arrayBytes(coords.length, Double.BYTES));
+        profile.countNode(depth, left == null && right == null, bytes);
+        profile.countOccupancy(deleted ? 0 : 1);
+        if(deleted)
+            profile.countTombstone();
+        if(left != null)
+            left.profile(profile, depth + 1);
+        if(right != null)
+            right.profile(profile, depth + 1);
+    }
+
+    /*
+     * A parallel range query over the subtree of node. Subtrees that are small enough are queried sequentially.
+     */
+    private static final class KDRangeTask extends RangeTask {
+        private static final long serialVersionUID = 1L;
+        private final KDTreeNode node;
+        private final int currDim, dims;
+
+        KDRangeTask(KDTreeNode node, KDPoint anchor, double range, int currDim, int dims){
+            super(anchor, range);
+            this.node = node;
+            this.currDim = currDim;
+            this.dims = dims;
+        }
+
+        @Override
+        protected void compute(){
+            if(node.size <= GRAIN){
+                node.range(anchor, found, range, currDim, dims);
+                return;
+            }
+            if(!node.deleted && node.distanceTo(anchor) <= range && !node.holds(anchor))
+                found.add(node.getPoint());
+            int nextDim = (currDim + 1) % dims;
+            double diff = anchor.coords[currDim] - node.coord(currDim);
+            KDTreeNode near = (diff >= 0) ? node.right : node.left, far = (diff >= 0) ? node.left : node.right;
+            if(near != null)
+                spawn(new KDRangeTask(near, anchor, range, nextDim, dims));
+            if(far != null && diff * diff <= range)
+                spawn(new KDRangeTask(far, anchor, range, nextDim, dims));
+            runSubtasks();
+        }
+    }
+
+    /*
+     * Moves the median of points[from, to) on currDim, as nodes of the given precision store it, to the first position
+     * of its value, with everything strictly smaller before it and everything else after it, and returns that position.
+     */
+    private static int partition(KDPoint[] points, int from, int to, int currDim, boolean floatStorage){
+        int mid = (from + to) >>> 1;
+        select(points, from, to - 1, mid, currDim, floatStorage);
+        double median = key(points[mid], currDim, floatStorage);
+        int split = from;
+        for(int i = from; i < mid; i++) // Everything in [from, mid) is <= median; move the strictly smaller ones first.
+            if(key(points[i], currDim, floatStorage) < median)
+                swap(points, i, split++);
+        swap(points, split, mid);
+        return split;
+    }
+
+    /*
+     * Quickselect over the inclusive range [lo, hi], with Hoare partitioning and a middle pivot.
+     */
+    private static void select(KDPoint[] points, int lo, int hi, int k, int dim, boolean floatStorage){
+        while(lo < hi){
+            double pivot = key(points[(lo + hi) >>> 1], dim, floatStorage);
+            int i = lo, j = hi;
+            while(i <= j){
+                while(key(points[i], dim, floatStorage) < pivot)
+                    i++;
+                while(key(points[j], dim, floatStorage) > pivot)
+                    j--;
+                if(i <= j)
+                    swap(points, i++, j--);
+            }
+            if(k <= j)
+                hi = j;
+            else if(k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private static void swap(KDPoint[] points, int i, int j){
+        KDPoint tmp = points[i];
+        points[i] = points[j];
+        points[j] = tmp;
+    }
+
+    private KDTreeNode rebuild(int currDim, int dims){
+        ArrayList<KDPoint> live = new ArrayList<>(size - dead);
+        collectLive(live);
+        return build(live.toArray(new KDPoint[0]), 0, live.size(), currDim, dims, isFloatStorage());
+    }
+
+    private boolean needsRebuild(double threshold){
+        return dead > threshold * size;
+    }
 
+    /*
+     * Walks down the search path of p below this, and rebuilds the highest subtree on it whose tombstone ratio
+     * exceeds threshold. Returns the number of tombstones dropped.
+     */
+    private int compactPath(KDPoint p, double threshold, int currDim, int dims){
+        int nextDim = (currDim + 1) % dims;
+        boolean goRight = key(p, currDim) >= coord(currDim);
+        KDTreeNode child = goRight ? right : left;
+        if(child == null)
+            return 0;
+        int dropped;
+        if(child.needsRebuild(threshold)){
+            dropped = child.dead;
+            child = child.rebuild(nextDim, dims);
+        } else {
+            dropped = child.compactPath(p, threshold, nextDim, dims);
+        }
+        if(goRight)
+            right = child;
+        else
+            left = child;
+        size -= dropped;
+        dead -= dropped;
+        return dropped;
+    }
+
+    /*
+     * The child that the search path of p continues through, for tests that walk down a path.
+     */
+    KDTreeNode childOnPath(KDPoint p, int currDim){
+        return (key(p, currDim) >= coord(currDim)) ? right : left;
+    }
 
     /* ***************************************************************************** */
     /* ******************* PUBLIC (INTERFACE) METHODS ****************************** */
@@ -37,7 +372,48 @@ public class KDTreeNode {
      *          <b>mutable!!!</b>.
      */
     public KDTreeNode(KDPoint p){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        this(p, false);
+    }
+
+    /**
+     * 2-arg constructor. Stores the provided {@link KDPoint} inside the freshly created node, with the requested
+     * precision. Every node that is later created under <tt>this</tt> inherits that precision.
+     * @param p The {@link KDPoint} to store inside <tt>this</tt>.
+     * @param floatStorage If <tt>true</tt>, the coordinates of <tt>p</tt> are rounded to and stored as <tt>float</tt>s.
+     * @see #KDTreeNode(KDPoint)
+     */
+    public KDTreeNode(KDPoint p, boolean floatStorage){
+        store(p, floatStorage);
+        left = right = null;
+        deleted = false;
+        size = 1;
+        dead = 0;
+    }
+
+    /**
+     * Builds a perfectly balanced tree over the provided {@link KDPoint}s, which are copied, not adopted.
+     * @param points The {@link KDPoint}s to store. The array is reordered, but its elements are not modified.
+     * @param currDim The dimension that the root of the new tree should split on.
+     * @param dims The total number of dimensions that the space considers.
+     * @param floatStorage If <tt>true</tt>, the coordinates are rounded to and stored as <tt>float</tt>s.
+     * @return The root of the new tree, or <tt>null</tt> if <tt>points</tt> is empty.
+     */
+    public static KDTreeNode build(KDPoint[] points, int currDim, int dims, boolean floatStorage){
+        return build(points, 0, points.length, currDim, dims, floatStorage);
+    }
+
+    /**
+     * Builds a perfectly balanced tree over the provided {@link KDPoint}s, like {@link #build(KDPoint[], int, int, boolean)},
+     * but builds large subtrees in parallel, on the common {@link java.util.concurrent.ForkJoinPool}. The result is the
+     * same tree.
+     * @param points The {@link KDPoint}s to store. The array is reordered, but its elements are not modified.
+     * @param currDim The dimension that the root of the new tree should split on.
+     * @param dims The total number of dimensions that the space considers.
+     * @param floatStorage If <tt>true</tt>, the coordinates are rounded to and stored as <tt>float</tt>s.
+     * @return The root of the new tree, or <tt>null</tt> if <tt>points</tt> is empty.
+     */
+    public static KDTreeNode buildParallel(KDPoint[] points, int currDim, int dims, boolean floatStorage){
+        return new BuildTask(points, 0, points.length, currDim, dims, floatStorage).invoke();
     }
 
     /**
@@ -51,7 +427,19 @@ public class KDTreeNode {
      * @see #delete(KDPoint, int, int)
      */
     public  void insert(KDPoint pIn, int currDim, int dims){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        int nextDim = (currDim + 1) % dims;
+        size++;
+        if(key(pIn, currDim) >= coord(currDim)) {
+            if(right == null)
+                right = spawn(pIn);
+            else
+                right.insert(pIn, nextDim, dims);
+        } else {
+            if(left == null)
+                left = spawn(pIn);
+            else
+                left.insert(pIn, nextDim, dims);
+        }
     }
 
     /**
@@ -66,8 +454,9 @@ public class KDTreeNode {
      *      <li>Has a NULL subtree as a right child.</li>
      * </ul>
      *
-     * <p>You should consult the class slides, your notes, and the textbook about what you need to do in those two
-     * special cases.</p>
+     * <p>In the first case, the node is overwritten by the point of minimum <tt>currDim</tt> coordinate in its right
+     * subtree, which is then recursively deleted from there. In the second case, the same is done with the minimum of the
+     * left subtree, which then becomes the right subtree of the node.</p>
      * @param currDim The current dimension to consider.
      * @param dims The total number of dimensions that the space considers.
      * @param pIn The {@link KDPoint} to insert into the node.
@@ -75,7 +464,156 @@ public class KDTreeNode {
      * @return A reference to <tt>this</tt> after the deletion takes place.
      */
     public KDTreeNode delete(KDPoint pIn, int currDim, int dims){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        int nextDim = (currDim + 1) % dims;
+        if(holds(pIn)){
+            if(right != null){
+                KDTreeNode min = right.findMin(currDim, nextDim, dims);
+                copyPointOf(min);
+                right = right.delete(getPoint(), nextDim, dims);
+            } else if(left != null){
+                KDTreeNode min = left.findMin(currDim, nextDim, dims);
+                copyPointOf(min);
+                right = left.delete(getPoint(), nextDim, dims);
+                left = null;
+            } else {
+                return null; // Leaf; the parent drops its reference.
+            }
+        } else if(key(pIn, currDim) < coord(currDim)){
+            if(left != null)
+                left = left.delete(pIn, nextDim, dims);
+        } else {
+            if(right != null)
+                right = right.delete(pIn, nextDim, dims);
+        }
+        recount();
+        return this;
+    }
+
+    /**
+     * <p>Lazily deletes the provided {@link KDPoint} from the tree rooted at <tt>this</tt>: the first node on its search path
+     * that holds it and is not already a tombstone is marked as one, and the structure of the tree is left untouched.
+     * Tombstones are skipped by every query, and are only physically removed when a subtree is
+     * {@link #compact(KDPoint, double, int, int) compacted}.</p>
+     * @param pIn The {@link KDPoint} to delete.
+     * @param currDim The current dimension to consider.
+     * @param dims The total number of dimensions that the space considers.
+     * @return <tt>true</tt> if a node was marked, <tt>false</tt> if <tt>pIn</tt> was not in the tree.
+     * @see #compact(KDPoint, double, int, int)
+     */
+    public boolean markDeleted(KDPoint pIn, int currDim, int dims){
+        if(!deleted && holds(pIn)){
+            deleted = true;
+            dead++;
+            return true;
+        }
+        KDTreeNode child = (key(pIn, currDim) >= coord(currDim)) ? right : left;
+        if(child == null || !child.markDeleted(pIn, (currDim + 1) % dims, dims))
+            return false;
+        dead++;
+        return true;
+    }
+
+    /**
+     * <p>Rebuilds the highest subtree on the search path of <tt>p</tt> whose fraction of tombstones exceeds
+     * <tt>threshold</tt>, if any, into a perfectly balanced subtree without tombstones. Calling this after every
+     * {@link #markDeleted(KDPoint, int, int) lazy deletion} of <tt>p</tt> keeps the tombstones of every subtree along the
+     * way under the threshold, at an amortized cost of O(log n / threshold) per deletion, since a subtree of <em>m</em>
+     * nodes needs about <tt>threshold</tt> &#42; <em>m</em> deletions below it between any two rebuilds.</p>
+     * @param p The {@link KDPoint} whose search path to examine.
+     * @param threshold The maximum fraction of tombstones a subtree can hold without being rebuilt.
+     * @param currDim The current dimension to consider.
+     * @param dims The total number of dimensions that the space considers.
+     * @return The root of the subtree after compaction, which is <tt>null</tt> if it held nothing but tombstones.
+     */
+    public KDTreeNode compact(KDPoint p, double threshold, int currDim, int dims){
+        if(needsRebuild(threshold))
+            return rebuild(currDim, dims);
+        compactPath(p, threshold, currDim, dims);
+        return this;
+    }
+
+    /**
+     * Rebuilds the subtree rooted at <tt>this</tt> into a perfectly balanced one, without any tombstones.
+     * @param currDim The dimension that <tt>this</tt> splits on.
+     * @param dims The total number of dimensions that the space considers.
+     * @return The root of the rebuilt subtree, which is <tt>null</tt> if it held nothing but tombstones.
+     */
+    public KDTreeNode compactAll(int currDim, int dims){
+        return rebuild(currDim, dims);
+    }
+
+    /**
+     * <p>Moves a {@link KDPoint} within the tree rooted at <tt>this</tt>, with a single descent. We follow the old position
+     * of the point like {@link #search(KDPoint, int, int)} would, while keeping track of whether its new position would
+     * still be routed the same way. When we reach the node that holds the old position:</p>
+     *
+     * <ul>
+     *     <li>If the routes never diverged, the new position lies within the region of that node. If, moreover, the node
+     *     is a leaf, or the new position keeps the node's coordinate at <tt>currDim</tt>, overwriting the point in place
+     *     preserves the BST property at every level, so that is all we do.</li>
+     *     <li>Otherwise, we {@link #delete(KDPoint, int, int) delete} the old position there and insert the new one at the
+     *     lowest node whose region contains it: either the same node, or the one where the two routes diverged.</li>
+     * </ul>
+     *
+     * <p>If the old position is not in the tree, no changes are made. In {@link Relocation#Relocation(KDPoint, KDPoint, boolean)
+     * lazy} mode, the old position is {@link #markDeleted(KDPoint, int, int) marked as a tombstone} instead of being
+     * deleted.</p>
+     * @param r The state of the move, which also reports its outcome back to the caller.
+     * @param currDim The current dimension considered.
+     * @param dims The total number of dimensions considered.
+     * @return A reference to <tt>this</tt> after the move takes place. If <tt>this</tt> is the root of the tree, it is
+     * never <tt>null</tt>.
+     * @see Relocation
+     */
+    public KDTreeNode update(Relocation r, int currDim, int dims){
+        int nextDim = (currDim + 1) % dims;
+        if(!deleted && holds(r.from)){
+            r.found = true;
+            if(!r.diverged && ((left == null && right == null) || key(r.to, currDim) == coord(currDim))){
+                store(r.to, isFloatStorage());
+                r.placed = true;
+                return this;
+            }
+            if(r.lazy){
+                deleted = r.tombstoned = true;
+                dead++;
+                if(!r.diverged){
+                    insert(r.to, currDim, dims);
+                    r.placed = true;
+                }
+                return this;
+            }
+            KDTreeNode result = delete(r.from, currDim, dims);
+            if(!r.diverged){ // Our region contains the new position.
+                if(result == null)
+                    result = spawn(r.to);
+                else
+                    result.insert(r.to, currDim, dims);
+                r.placed = true;
+            }
+            return result;
+        }
+        boolean goRight = key(r.from, currDim) >= coord(currDim);
+        KDTreeNode child = goRight ? right : left;
+        if(child == null)
+            return this; // Not found.
+        boolean divergesHere = !r.diverged && (key(r.to, currDim) >= coord(currDim)) != goRight;
+        if(divergesHere)
+            r.diverged = true;
+        child = child.update(r, nextDim, dims);
+        if(goRight)
+            right = child;
+        else
+            left = child;
+        recount();
+        if(divergesHere){
+            r.diverged = false;
+            if(r.found && !r.placed){
+                insert(r.to, currDim, dims);
+                r.placed = true;
+            }
+        }
+        return this;
     }
 
     /**
@@ -86,7 +624,14 @@ public class KDTreeNode {
      * @return <tt>true</tt> iff <tt>pIn</tt> was found in the subtree rooted at <tt>this</tt>, <tt>false</tt> otherwise.
      */
     public  boolean search(KDPoint pIn, int currDim, int dims){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        KDTreeNode curr = this;
+        while(curr != null){
+            if(!curr.deleted && curr.holds(pIn))
+                return true;
+            curr = (curr.key(pIn, currDim) >= curr.coord(currDim)) ? curr.right : curr.left;
+            currDim = (currDim + 1) % dims;
+        }
+        return false;
     }
 
     /**
@@ -108,9 +653,63 @@ public class KDTreeNode {
      */
     public void range(KDPoint anchor, Collection<KDPoint> results,
                        double range, int currDim , int dims){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        if(!deleted && distanceTo(anchor) <= range && !holds(anchor))
+            results.add(getPoint());
+        int nextDim = (currDim + 1) % dims;
+        double diff = anchor.coords[currDim] - coord(currDim);
+        KDTreeNode near = (diff >= 0) ? right : left, far = (diff >= 0) ? left : right;
+        if(near != null)
+            near.range(anchor, results, range, nextDim, dims);
+        if(far != null && diff * diff <= range) // KDPoint#distance() is squared, so we compare against squared differences.
+            far.range(anchor, results, range, nextDim, dims);
+    }
+
+
+    /**
+     * <p>Executes the same range query as {@link #range(KDPoint, Collection, double, int, int)}, in parallel on the common
+     * {@link java.util.concurrent.ForkJoinPool}. The query forks at every node whose subtree is large enough, and every task
+     * collects its points into a buffer of its own; subtrees of a few thousand nodes are traversed sequentially. The buffers
+     * are concatenated once the query is over.</p>
+     *
+     * <p>This only pays off for wide ranges over large trees, where the query visits a good part of the tree anyway.</p>
+     * @param anchor The centroid of the hypersphere that the range query implicitly creates.
+     * @param range The <b>INCLUSIVE</b> range from the &quot;anchor&quot; {@link KDPoint}, in terms of
+     *              {@link KDPoint#distance(KDPoint)}.
+     * @param currDim The current dimension examined by the {@link KDTreeNode}.
+     * @param dims The total number of dimensions of our {@link KDPoint}s.
+     * @return The {@link KDPoint}s of the subtree rooted at <tt>this</tt> that lie within <tt>range</tt> of <tt>anchor</tt>,
+     * except for the ones equal to <tt>anchor</tt>, in the order that the sequential query would report them.
+     * @see #range(KDPoint, Collection, double, int, int)
+     */
+    public Collection<KDPoint> parallelRange(KDPoint anchor, double range, int currDim, int dims){
+        return RangeTask.run(new KDRangeTask(this, anchor, range, currDim, dims));
     }
 
+    /**
+     * Counts the {@link KDPoint}s that a {@link #range(KDPoint, Collection, double, int, int) range query} with the same
+     * arguments would report, with the same pruning, but without materializing any of them. Counting stops as soon as
+     * <tt>limit</tt> is reached, which is all that threshold tests such as the one for DBSCAN core points need.
+     * @param anchor The centroid of the hypersphere that the range query implicitly creates.
+     * @param range The <b>INCLUSIVE</b> range from the &quot;anchor&quot; {@link KDPoint}, in terms of
+     *              {@link KDPoint#distance(KDPoint)}.
+     * @param limit The count at which to stop counting.
+     * @param currDim The current dimension examined by the {@link KDTreeNode}.
+     * @param dims The total number of dimensions of our {@link KDPoint}s.
+     * @return The number of {@link KDPoint}s in the subtree rooted at <tt>this</tt> that lie within <tt>range</tt> of
+     * <tt>anchor</tt>, not counting the ones equal to <tt>anchor</tt>, or <tt>limit</tt> if there are more.
+     * @see #range(KDPoint, Collection, double, int, int)
+     */
+    public int rangeCount(KDPoint anchor, double range, int limit, int currDim, int dims){
+        int count = (!deleted && distanceTo(anchor) <= range && !holds(anchor)) ? 1 : 0;
+        int nextDim = (currDim + 1) % dims;
+        double diff = anchor.coords[currDim] - coord(currDim);
+        KDTreeNode near = (diff >= 0) ? right : left, far = (diff >= 0) ? left : right;
+        if(near != null && count < limit)
+            count += near.rangeCount(anchor, range, limit - count, nextDim, dims);
+        if(far != null && count < limit && diff * diff <= range)
+            count += far.rangeCount(anchor, range, limit - count, nextDim, dims);
+        return count;
+    }
 
     /**
      * <p>Executes a nearest neighbor query, which returns the nearest neighbor, in terms of
@@ -139,7 +738,46 @@ public class KDTreeNode {
      */
     public  NNData<KDPoint> nearestNeighbor(KDPoint anchor, int currDim,
                                             NNData<KDPoint> n, int dims){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        if(!deleted && !holds(anchor)){
+            double dist = distanceTo(anchor);
+            if(n.bestDist == KDTree.INFTY || dist < n.bestDist){
+                n.bestDist = dist;
+                n.bestGuess = getPoint();
+            }
+        }
+        int nextDim = (currDim + 1) % dims;
+        double diff = anchor.coords[currDim] - coord(currDim);
+        KDTreeNode near = (diff >= 0) ? right : left, far = (diff >= 0) ? left : right;
+        if(near != null)
+            near.nearestNeighbor(anchor, nextDim, n, dims);
+        if(far != null && (n.bestDist == KDTree.INFTY || diff * diff < n.bestDist))
+            far.nearestNeighbor(anchor, nextDim, n, dims);
+        return n;
+    }
+
+    /**
+     * <p>Executes the same nearest neighbor query as {@link #nearestNeighbor(KDPoint, int, NNData, int)}, but offers
+     * the candidate <em>nodes</em> to a reusable {@link NNContext}, instead of copying the point of every node that
+     * improves on the best guess. Once the query is over, the caller copies the point out of the winning node with
+     * {@link #getPoint()}, so that the whole query allocates nothing else.</p>
+     *
+     * @param anchor The &quot;anchor&quot; {@link KDPoint} of the nearest neighbor query.
+     * @param currDim The current dimension considered.
+     * @param context The context that tracks the nearest node found so far and its distance from <tt>anchor</tt>.
+     * @param dims The total number of dimensions considered.
+     *
+     * @see NNContext
+     */
+    public void nearestNeighbor(KDPoint anchor, int currDim, NNContext<KDTreeNode> context, int dims){
+        if(!deleted && !holds(anchor))
+            context.offer(this, distanceTo(anchor));
+        int nextDim = (currDim + 1) % dims;
+        double diff = anchor.coords[currDim] - coord(currDim);
+        KDTreeNode near = (diff >= 0) ? right : left, far = (diff >= 0) ? left : right;
+        if(near != null)
+            near.nearestNeighbor(anchor, nextDim, context, dims);
+        if(far != null && context.mightImprove(diff * diff))
+            far.nearestNeighbor(anchor, nextDim, context, dims);
     }
 
     /**
@@ -170,8 +808,55 @@ public class KDTreeNode {
      * @see BoundedPriorityQueue
      */
     public  void kNearestNeighbors(int k, KDPoint anchor, BoundedPriorityQueue<KDPoint> queue, int currDim, int dims){
+        if(!deleted && !holds(anchor)){
+            double dist = distanceTo(anchor);
+            if(queue.size() < k || dist < queue.lastPriority()) // Only allocate a copy if it makes the cut.
+                queue.enqueue(getPoint(), dist);
+        }
+        int nextDim = (currDim + 1) % dims;
+        double diff = anchor.coords[currDim] - coord(currDim);
+        KDTreeNode near = (diff >= 0) ? right : left, far = (diff >= 0) ? left : right;
+        if(near != null)
+            near.kNearestNeighbors(k, anchor, queue, nextDim, dims);
+        if(far != null && (queue.size() < k || diff * diff < queue.lastPriority()))
+            far.kNearestNeighbors(k, anchor, queue, nextDim, dims);
+    }
 
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+    /**
+     * Walks the subtree rooted at <tt>root</tt> once, and reports its shape.
+     * @param root The root of the subtree, which lies at depth 0, or <tt>null</tt> for an empty tree.
+     * @return A {@link ShapeProfile} of the subtree rooted at <tt>root</tt>.
+     */
+    public static ShapeProfile profile(KDTreeNode root){
+        ShapeProfile profile = new ShapeProfile(1);
+        if(root != null)
+            root.profile(profile, 0);
+        return profile;
+    }
+
+    /**
+     * Returns the number of nodes in the subtree rooted at <tt>this</tt>, tombstones included.
+     * @return The number of nodes in the subtree rooted at <tt>this</tt>.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Returns the number of tombstones in the subtree rooted at <tt>this</tt>.
+     * @return The number of nodes of the subtree rooted at <tt>this</tt> that were lazily deleted.
+     */
+    public int deadCount(){
+        return dead;
+    }
+
+    /**
+     * Reports whether <tt>this</tt> was {@link #markDeleted(KDPoint, int, int) lazily deleted}. A tombstone keeps
+     * routing searches, but its point is not in the tree anymore.
+     * @return <tt>true</tt> if <tt>this</tt> is a tombstone, <tt>false</tt> otherwise.
+     */
+    public boolean isDeleted(){
+        return deleted;
     }
 
     /**
@@ -183,16 +868,24 @@ public class KDTreeNode {
      * @return the height of the subtree rooted at the current node.
      */
     public int height(){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        int leftHeight = (left == null) ? -1 : left.height();
+        int rightHeight = (right == null) ? -1 : right.height();
+        return Math.max(leftHeight, rightHeight) + 1;
     }
 
 
     /**
      * A simple getter for the {@link KDPoint} held by the current node. Remember: {@link KDPoint}s ARE
-     * IMMUTABLE, SO WE NEED TO DO DEEP COPIES!!!
+     * IMMUTABLE, SO WE NEED TO DO DEEP COPIES!!! In single-precision mode, the returned point carries
+     * the stored <tt>float</tt> coordinates, widened to <tt>double</tt>.
      * @return The {@link KDPoint} held inside <tt>this</tt>.
      */
     public KDPoint getPoint(){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        if(!isFloatStorage())
+            return new KDPoint(coords);
+        KDPoint p = new KDPoint(floatCoords.length);
+        for(int i = 0; i < floatCoords.length; i++)
+            p.coords[i] = floatCoords[i];
+        return p;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+package projects.spatial.nodes;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>KDTreeNodeTests</tt> checks that {@link KDTreeNode#update(Relocation, int, int)} leaves a tree with the same
+ * points, and a valid structure, as a {@link KDTreeNode#delete(KDPoint, int, int) deletion} followed by an
+ * {@link KDTreeNode#insert(KDPoint, int, int) insertion} would.</p>
+ *
+ * @see KDTreeNode
+ * @see Relocation
+ */
+public class KDTreeNodeTests {
+
+    private Random r;
+    private static final int SEED = 47;
+    private static final int DIMS = 2;
+    private static final int GRID = 16; // Points on a small grid, so that moves often land on duplicates and ties.
+    private static final int MAX_ITER = 3000;
+    private static final KDPoint FAR = new KDPoint(-1e9, -1e9); // Below and left of everything.
+
+    @Before
+    public void setUp() {
+        r = new Random(SEED);
+    }
+
+    private KDPoint gridPoint(){
+        return new KDPoint(r.nextInt(GRID), r.nextInt(GRID));
+    }
+
+    /*
+     * The live points of the tree, in preorder: from an anchor below and left of every point, the range query always
+     * visits a node, then its left subtree, then its right one.
+     */
+    private static List<KDPoint> preorder(KDTreeNode root){
+        List<KDPoint> points = new ArrayList<>();
+        if(root != null)
+            root.range(FAR, points, Double.MAX_VALUE, 0, DIMS);
+        return points;
+    }
+
+    private static List<String> sorted(List<KDPoint> points){
+        List<String> keys = new ArrayList<>();
+        for(KDPoint p : points)
+            keys.add(p.toString());
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static KDTreeNode insert(KDTreeNode root, KDPoint p, boolean floatStorage){
+        if(root == null)
+            return new KDTreeNode(p, floatStorage);
+        root.insert(p, 0, DIMS);
+        return root;
+    }
+
+    /*
+     * Every live point must be found by search(), which only follows the BST path of the point; a point stored on the
+     * wrong side of some ancestor would not be.
+     */
+    private static void checkStructure(KDTreeNode root, int live){
+        List<KDPoint> points = preorder(root);
+        assertEquals(live, points.size());
+        if(root == null)
+            return;
+        assertEquals(live, root.size() - root.deadCount());
+        for(KDPoint p : points)
+            assertTrue("Lost track of " + p, root.search(p, 0, DIMS));
+    }
+
+    private void checkAgainstDeleteAndInsert(boolean floatStorage, boolean lazy){
+        KDTreeNode moved = null, reference = null;
+        for(int i = 0; i < 50; i++){
+            KDPoint p = gridPoint();
+            moved = insert(moved, p, floatStorage);
+            reference = insert(reference, p, floatStorage);
+        }
+        int live = 50; // Moves keep the number of points.
+        for(int i = 0; i < MAX_ITER; i++){
+            KDPoint from = (r.nextInt(10) == 0) ? gridPoint() : preorder(reference).get(r.nextInt(live));
+            KDPoint to = gridPoint();
+            boolean stored = reference.search(from, 0, DIMS);
+            int deadBefore = moved.deadCount();
+            Relocation relocation = new Relocation(from, to, lazy);
+            moved = moved.update(relocation, 0, DIMS);
+            assertEquals(stored, relocation.isFound());
+            assertFalse(relocation.isCollided()); // KD-Trees allow for duplicates.
+            assertEquals(relocation.isTombstoned() ? 1 : 0, moved.deadCount() - deadBefore);
+            assertTrue(lazy || !relocation.isTombstoned());
+            if(stored){
+                reference = reference.delete(from, 0, DIMS);
+                reference = insert(reference, to, floatStorage);
+            }
+            assertEquals(sorted(preorder(reference)), sorted(preorder(moved)));
+            checkStructure(moved, live);
+            if(lazy && r.nextInt(100) == 0)
+                moved = moved.compactAll(0, DIMS);
+        }
+    }
+
+    @Test
+    public void testUpdateAgainstDeleteAndInsert() {
+        checkAgainstDeleteAndInsert(false, false);
+    }
+
+    @Test
+    public void testUpdateAgainstDeleteAndInsertWithFloatStorage() {
+        checkAgainstDeleteAndInsert(true, false);
+    }
+
+    @Test
+    public void testLazyUpdateAgainstDeleteAndInsert() {
+        checkAgainstDeleteAndInsert(false, true);
+    }
+
+    @Test
+    public void testLazyUpdateAgainstDeleteAndInsertWithFloatStorage() {
+        checkAgainstDeleteAndInsert(true, true);
+    }
+
+    /*
+     * (5, 5) splits on x, (8, 2) on y and (7, 1), (9, 4) are leaves below it.
+     */
+    private static KDTreeNode smallTree(){
+        KDTreeNode root = new KDTreeNode(new KDPoint(5, 5));
+        for(KDPoint p : new KDPoint[]{new KDPoint(8, 2), new KDPoint(7, 1), new KDPoint(9, 4), new KDPoint(2, 3)})
+            root.insert(p, 0, DIMS);
+        return root;
+    }
+
+    @Test
+    public void testInPlaceOverwrite() {
+        KDTreeNode root = smallTree();
+        List<KDPoint> before = preorder(root);
+        // A leaf that stays within its region, and an inner node whose splitting coordinate (y = 2) does not change.
+        Relocation leaf = new Relocation(new KDPoint(9, 4), new KDPoint(6, 3));
+        root = root.update(leaf, 0, DIMS);
+        Relocation inner = new Relocation(new KDPoint(8, 2), new KDPoint(100, 2));
+        root = root.update(inner, 0, DIMS);
+        assertTrue(leaf.isFound() && inner.isFound());
+        before.set(before.indexOf(new KDPoint(9, 4)), new KDPoint(6, 3));
+        before.set(before.indexOf(new KDPoint(8, 2)), new KDPoint(100, 2));
+        assertEquals(before, preorder(root)); // Same shape, with the two points replaced.
+        assertEquals(5, root.size());
+        assertEquals(2, root.height());
+        checkStructure(root, 5);
+    }
+
+    @Test
+    public void testDivergenceAtInnerNode() {
+        KDTreeNode root = smallTree();
+        // (8, 2) is routed right at the root, but (3, 7) is routed left: the old position is deleted below the root,
+        // and the new one is inserted from the root.
+        Relocation relocation = new Relocation(new KDPoint(8, 2), new KDPoint(3, 7));
+        root = root.update(relocation, 0, DIMS);
+        assertTrue(relocation.isFound());
+        assertEquals(5, root.size());
+        assertFalse(root.search(new KDPoint(8, 2), 0, DIMS));
+        assertTrue(root.search(new KDPoint(3, 7), 0, DIMS));
+        checkStructure(root, 5);
+        // An inner node whose splitting coordinate changes cannot be overwritten, even without diverging: (7, 1) lies
+        // in the right subtree of the root, and would be lost if the root split at x = 8.
+        relocation = new Relocation(new KDPoint(5, 5), new KDPoint(8, 5));
+        root = root.update(relocation, 0, DIMS);
+        assertTrue(relocation.isFound());
+        assertTrue(root.search(new KDPoint(8, 5), 0, DIMS));
+        assertTrue(root.search(new KDPoint(7, 1), 0, DIMS));
+        assertFalse(root.search(new KDPoint(5, 5), 0, DIMS));
+        checkStructure(root, 5);
+    }
+
+    @Test
+    public void testLazyUpdateLeavesTombstone() {
+        KDTreeNode root = smallTree();
+        Relocation relocation = new Relocation(new KDPoint(8, 2), new KDPoint(3, 7), true);
+        root = root.update(relocation, 0, DIMS);
+        assertTrue(relocation.isFound() && relocation.isTombstoned());
+        assertEquals(6, root.size());
+        assertEquals(1, root.deadCount());
+        assertFalse(root.search(new KDPoint(8, 2), 0, DIMS));
+        checkStructure(root, 5);
+        // Moving a point back onto its tombstone's position inserts a live copy, rather than reviving the tombstone.
+        relocation = new Relocation(new KDPoint(3, 7), new KDPoint(8, 2), true);
+        root = root.update(relocation, 0, DIMS);
+        assertTrue(root.search(new KDPoint(8, 2), 0, DIMS));
+        checkStructure(root, 5);
+        root = root.compactAll(0, DIMS);
+        assertEquals(0, root.deadCount());
+        checkStructure(root, 5);
+    }
+
+    @Test
+    public void testUpdateOfMissingPoint() {
+        KDTreeNode root = smallTree();
+        List<KDPoint> before = preorder(root);
+        Relocation relocation = new Relocation(new KDPoint(8, 3), new KDPoint(0, 0));
+        root = root.update(relocation, 0, DIMS);
+        assertFalse(relocation.isFound());
+        assertEquals(before, preorder(root));
+    }
+
+    /*
+     * Deletes p the way a lazy KDTree does: marks it, then compacts its search path.
+     */
+    private static KDTreeNode lazyDelete(KDTreeNode root, KDPoint p, double threshold){
+        if(root.markDeleted(p, 0, DIMS))
+            root = root.compact(p, threshold, 0, DIMS);
+        return root;
+    }
+
+    @Test
+    public void testTombstonesStayUnderThresholdAlongDeletedPath() {
+        for(double threshold : new double[]{0.1, 0.25, 0.5}){
+            KDTreeNode root = null;
+            List<KDPoint> live = new ArrayList<>();
+            for(int i = 0; i < 2000; i++){
+                KDPoint p = gridPoint();
+                root = insert(root, p, false);
+                live.add(p);
+            }
+            while(live.size() > 100){
+                KDPoint p = live.remove(r.nextInt(live.size()));
+                root = lazyDelete(root, p, threshold);
+                int dim = 0;
+                for(KDTreeNode node = root; node != null; node = node.childOnPath(p, dim), dim = (dim + 1) % DIMS)
+                    assertTrue("A subtree on the path of " + p + " holds too many tombstones.",
+                            node.deadCount() <= threshold * node.size());
+                if(r.nextInt(10) == 0){ // Insertions dilute tombstones, and may go below them.
+                    KDPoint q = gridPoint();
+                    root = insert(root, q, false);
+                    live.add(q);
+                }
+                if(r.nextInt(100) == 0)
+                    checkStructure(root, live.size());
+            }
+            assertEquals(sorted(live), sorted(preorder(root)));
+        }
+    }
+}
@@ -3,6 +3,8 @@ package projects.spatial.nodes;
 import projects.spatial.kdpoint.KDPoint;
 import projects.spatial.trees.PRQuadTree;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 
 
@@ -13,14 +15,11 @@ import java.util.Collection;
  *  <li><b>Once created</b>, it will contain at least one {@link KDPoint}. </li>
  * </ul>
  *
- * <p><b>YOU ***** MUST ***** IMPLEMENT THIS CLASS!</b></p>
- *
- * @author --- YOUR NAME HERE! ---
+ * <p>The bucket is a plain array of at most <tt>bucketingParam</tt> {@link KDPoint}s, which are deep copies of the
+ * ones inserted.</p>
  */
 public class PRQuadBlackNode extends PRQuadNode {
 
-    private static final RuntimeException UNIMPL_METHOD = new RuntimeException("Implement this method!");
-
     /* ****************************************************************************** */
     /* ***** YOU SHOULD LEAVE THE FOLLOWING PUBLICLY AVAILABLE CONSTANT AS IS. ****** */
     /* ****************************************************************************** */
@@ -31,13 +30,45 @@ public class PRQuadBlackNode extends PRQuadNode {
      */
     public static final int DEFAULT_BUCKETSIZE = 1;
 
+    private static final long serialVersionUID = 1L;
+
     /* ************************************************************************* */
-    /* ************** PLACE YOUR PRIVATE METHODS AND FIELDS HERE: **************** */
+    /* ********************** PRIVATE METHODS AND FIELDS ************************ */
     /* ************************************************************************** */
 
+    KDPoint[] points; // Package-private for PRQuadSnapshot, which fills buckets directly.
+    int size;
 
+    private int indexOf(KDPoint p){
+        for(int i = 0; i < size; i++)
+            if(points[i].equals(p))
+                return i;
+        return -1;
+    }
 
+    /*
+     * Appends p to the bucket, which is assumed to have room for it. The array of a bucket that PRQuadSnapshot decoded only
+     * holds the points that it was given, so it grows here, up to bucketingParam.
+     */
+    void append(KDPoint p){
+        if(size == points.length)
+            points = Arrays.copyOf(points, (int)Math.min(bucketingParam, 2L * size));
+        points[size++] = p;
+    }
 
+    private void removeAt(int i){
+        points[i] = points[--size]; // Order within a bucket does not matter.
+        points[size] = null;
+    }
+
+    /*
+     * Appends the points of other to this bucket, which is assumed to have enough room. Used by
+     * PRQuadGrayNode when it collapses into a black node. The points are not copied again.
+     */
+    void absorb(PRQuadBlackNode other){
+        System.arraycopy(other.points, 0, points, size, other.size);
+        size += other.size;
+    }
 
     /* ***************************************************************************** */
     /* ******************* PUBLIC (INTERFACE) METHODS ****************************** */
@@ -54,8 +85,16 @@ public class PRQuadBlackNode extends PRQuadNode {
      * @see #PRQuadBlackNode(KDPoint, int, int, KDPoint)
      */
     public PRQuadBlackNode(KDPoint centroid, int k, int bucketingParam){
+        this(centroid, k, bucketingParam, bucketingParam);
+    }
+
+    /*
+     * Creates an empty bucket with room for capacity points, which grows up to bucketingParam as points are appended.
+     */
+    PRQuadBlackNode(KDPoint centroid, int k, int bucketingParam, int capacity){
         super(centroid, k, bucketingParam); // Call to the super class' protected constructor to properly initialize the object!
-        throw UNIMPL_METHOD; // Depending on your implementation, you might want more things to be done by this constructor; erase this line if you add to this constructor's body.
+        points = new KDPoint[capacity];
+        size = 0;
     }
 
     /**
@@ -72,7 +111,7 @@ public class PRQuadBlackNode extends PRQuadNode {
      */
     public PRQuadBlackNode(KDPoint centroid, int k, int bucketingParam, KDPoint p){
         this(centroid, k, bucketingParam); // Call to the current class' other constructor, which takes care of the base class' initialization itself.
-        throw UNIMPL_METHOD; // // Depending on your implementation, you might want more things to be done by this constructor; erase this line if you add to this constructor's body.
+        points[size++] = new KDPoint(p);
     }
 
 
@@ -101,7 +140,14 @@ public class PRQuadBlackNode extends PRQuadNode {
      */
     @Override
     public PRQuadNode insert(KDPoint p, int k) {
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        if(size < bucketingParam){
+            append(new KDPoint(p));
+            return this;
+        }
+        PRQuadNode gray = new PRQuadGrayNode(centroid, this.k, bucketingParam);
+        for(int i = 0; i < size; i++)
+            gray = gray.insert(points[i], this.k);
+        return gray.insert(p, this.k);
     }
 
 
@@ -117,22 +163,63 @@ public class PRQuadBlackNode extends PRQuadNode {
      */
     @Override
     public PRQuadNode delete(KDPoint p) {
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        int i = indexOf(p);
+        if(i == -1)
+            return this;
+        removeAt(i);
+        return (size == 0) ? null : this;
+    }
+
+    /**
+     * <p>Relocating a {@link KDPoint} within a {@link PRQuadBlackNode} overwrites it in place. By the time we get here,
+     * every ancestor has routed both the old and the new position to the same child, so the new position lies within the
+     * quadrant of <tt>this</tt>. If the new position is already in the bucket, the moved point merges with it.</p>
+     * @param r The state of the move.
+     * @return Either <tt>this</tt> or <tt>null</tt>, depending on whether the node underflows.
+     */
+    @Override
+    public PRQuadNode update(Relocation r) {
+        int i = indexOf(r.from);
+        if(i == -1)
+            return this;
+        r.found = true;
+        if(r.from.equals(r.to))
+            return this;
+        if(indexOf(r.to) != -1){
+            r.collided = true;
+            removeAt(i);
+        } else {
+            points[i] = new KDPoint(r.to);
+        }
+        return (size == 0) ? null : this;
     }
 
     @Override
     public boolean search(KDPoint p){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        return indexOf(p) != -1;
     }
 
     @Override
     public int height(){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        return 0;
     }
 
     @Override
     public int count(){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        return size;
+    }
+
+    @Override
+    void profile(ShapeProfile profile, int depth){
+        profile.countNode(depth, true, NODE_BYTES + ShapeProfile.arrayBytes(points.length, 4) + size * ShapeProfile.pointBytes(2));
+        profile.countOccupancy(size);
+    }
+
+    @Override
+    public void range(KDPoint anchor, Collection<KDPoint> results, double range){
+        for(int i = 0; i < size; i++)
+            if(points[i].distance(anchor) <= range && !points[i].equals(anchor))
+                results.add(new KDPoint(points[i]));
     }
 
     /** Returns all the {@link KDPoint}s contained by the {@link PRQuadBlackNode}. <b>INVARIANT</b>: the returned
@@ -143,6 +230,9 @@ public class PRQuadBlackNode extends PRQuadNode {
      * a <tt>null</tt> reference.
      */
     public Collection<KDPoint> getPoints(){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        ArrayList<KDPoint> copies = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+            copies.add(new KDPoint(points[i]));
+        return copies;
     }
 }
@@ -3,6 +3,8 @@ package projects.spatial.nodes;
 import projects.spatial.kdpoint.KDPoint;
 import projects.spatial.trees.PRQuadTree;
 
+import java.util.Collection;
+
 /** <p>A {@link PRQuadGrayNode} is a gray (&quot;mixed&quot;) {@link PRQuadNode}. It
  * maintains the following invariants: </p>
  * <ul>
@@ -12,18 +14,72 @@ import projects.spatial.trees.PRQuadTree;
  *      or smaller, we can prune the node.</li>
  * </ul>
  *
- * <p><b>YOU ***** MUST ***** IMPLEMENT THIS CLASS!</b></p>
- *
- *  @author --- YOUR NAME HERE! ---
+ * <p>Children are indexed by quadrant as NW (0), NE (1), SW (2) and SE (3). A {@link KDPoint} that lies exactly on
+ * the vertical (horizontal) axis of the cross through the centroid belongs to the eastern (northern) quadrants.
+ * The node caches the number of {@link KDPoint}s below it, so that {@link #count()} is O(1) and collapsing
+ * decisions do not need to traverse the subtree.</p>
  */
 public class PRQuadGrayNode extends PRQuadNode{
 
-    private static RuntimeException UNIMPL_METHOD = new RuntimeException("Implement this method!");
-
     /* *************************************************************************
-     ************** PLACE YOUR PRIVATE METHODS AND FIELDS HERE: ****************
+     ************************ PRIVATE METHODS AND FIELDS ***********************
      ***************************************************************************/
 
+    private static final long serialVersionUID = 1L;
+
+    PRQuadNode[] children; // Package-private, like the recount() and centroidOf() helpers, for PRQuadSnapshot.
+    private int count;
+
+    private int quadrantOf(KDPoint p){
+        int east = (p.coords[0] >= centroid.coords[0]) ? 1 : 0;
+        int south = (p.coords[1] >= centroid.coords[1]) ? 0 : 2;
+        return south + east;
+    }
+
+    KDPoint centroidOf(int quadrant){
+        double offset = Math.scalb(1.0, k - 2); // Half the side of a child quadrant.
+        return new KDPoint(centroid.coords[0] + ((quadrant & 1) == 1 ? offset : -offset),
+                centroid.coords[1] + (quadrant < 2 ? offset : -offset));
+    }
+
+    private static int countOf(PRQuadNode node){
+        return (node == null) ? 0 : node.count();
+    }
+
+    void recount(){
+        count = 0;
+        for(PRQuadNode child : children)
+            count += countOf(child);
+    }
+
+    /*
+     * Inserts p into the child at quadrant q, allocating a black node if the quadrant is white.
+     */
+    private void insertInto(int q, KDPoint p){
+        if(children[q] == null)
+            children[q] = new PRQuadBlackNode(centroidOf(q), k - 1, bucketingParam, p);
+        else
+            children[q] = children[q].insert(p, k - 1);
+    }
+
+    /*
+     * Replaces this with a black node if it has no gray children and its points fit in a single bucket.
+     * This covers the case of a single remaining black child as well.
+     */
+    private PRQuadNode collapseIfUnderfull(){
+        if(count > bucketingParam)
+            return this;
+        for(PRQuadNode child : children)
+            if(child instanceof PRQuadGrayNode)
+                return this;
+        if(count == 0)
+            return null;
+        PRQuadBlackNode black = new PRQuadBlackNode(centroid, k, bucketingParam);
+        for(PRQuadNode child : children)
+            if(child != null)
+                black.absorb((PRQuadBlackNode)child);
+        return black;
+    }
 
 
     /* ***************************************************************************** */
@@ -41,7 +97,8 @@ public class PRQuadGrayNode extends PRQuadNode{
      */
     public PRQuadGrayNode(KDPoint centroid, int k, int bucketingParam){
         super(centroid, k, bucketingParam); // Call to the super class' protected constructor to properly initialize the object!
-        throw UNIMPL_METHOD; // You will very likely have additional functionality that you need to implement; erase this line when you do.
+        children = new PRQuadNode[4];
+        count = 0;
     }
 
 
@@ -60,7 +117,9 @@ public class PRQuadGrayNode extends PRQuadNode{
      */
     @Override
     public PRQuadNode insert(KDPoint p, int k) {
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        insertInto(quadrantOf(p), p);
+        count++;
+        return this;
     }
 
 
@@ -88,23 +147,87 @@ public class PRQuadGrayNode extends PRQuadNode{
      */
     @Override
     public PRQuadNode delete(KDPoint p) {
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        int q = quadrantOf(p);
+        if(children[q] == null)
+            return this;
+        int before = children[q].count();
+        children[q] = children[q].delete(p);
+        if(countOf(children[q]) == before)
+            return this; // Not found; no changes.
+        count--;
+        return collapseIfUnderfull();
+    }
 
+    /**
+     * <p>Relocating a {@link KDPoint} through a {@link PRQuadGrayNode} follows the old position down for as long as the
+     * new one would be routed to the same quadrant. At the first {@link PRQuadGrayNode} where the two positions fall
+     * into different quadrants, the old position is deleted from one child and the new one inserted into another,
+     * unless it is already there, in which case the two merge. Either way, the node might have to be collapsed
+     * afterwards, just like after a deletion.</p>
+     * @param r The state of the move.
+     * @return The subtree rooted at the current node, potentially adjusted after the move.
+     * @see #delete(KDPoint)
+     */
+    @Override
+    public PRQuadNode update(Relocation r) {
+        int from = quadrantOf(r.from), to = quadrantOf(r.to);
+        if(children[from] == null)
+            return this;
+        if(from == to){
+            children[from] = children[from].update(r);
+        } else {
+            int before = children[from].count();
+            children[from] = children[from].delete(r.from);
+            if(countOf(children[from]) == before)
+                return this; // Not found; no changes.
+            r.found = true;
+            if(children[to] != null && children[to].search(r.to))
+                r.collided = true;
+            else
+                insertInto(to, r.to);
+        }
+        if(!r.collided)
+            return this;
+        recount();
+        return collapseIfUnderfull();
     }
 
     @Override
     public boolean search(KDPoint p){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        PRQuadNode child = children[quadrantOf(p)];
+        return (child != null) && child.search(p);
     }
 
     @Override
     public int height(){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        int max = -1;
+        for(PRQuadNode child : children)
+            if(child != null)
+                max = Math.max(max, child.height());
+        return max + 1;
     }
 
     @Override
     public int count(){
-        throw UNIMPL_METHOD; // Erase this after you implement the method!
+        return count;
+    }
+
+    @Override
+    void profile(ShapeProfile profile, int depth){
+        profile.countNode(depth, false, NODE_BYTES + ShapeProfile.arrayBytes(children.length, 4));
+        for(PRQuadNode child : children){
+            if(child == null)
+                profile.countEmptySlots(1);
+            else
+                child.profile(profile, depth + 1);
+        }
+    }
+
+    @Override
+    public void range(KDPoint anchor, Collection<KDPoint> results, double range){
+        for(PRQuadNode child : children)
+            if(child != null && child.mightIntersect(anchor, range))
+                child.range(anchor, results, range);
     }
 }
 
@@ -2,17 +2,20 @@ package projects.spatial.nodes;
 import projects.spatial.kdpoint.KDPoint;
 import projects.spatial.trees.PRQuadTree;
 
+import java.io.Serializable;
+import java.util.Collection;
+
 /**
  * <p>{@link PRQuadNode} is an <tt>abstract class</tt> used to provide the common structure that all
  * implementing subclasses will share.  It is an abstraction over nodes of a Point-Region (PR)- QuadTree.
  * Consult the lecture slides and the textbook to review the different kinds of nodes in a PR-QuadTree, what they
  * should contain and how they should implement insertion and deletion. </p>
  *
- * <p><b>YOU SHOULD ***NOT*** EDIT THIS CLASS!</b> If you do, you risk <b>not passing our tests!</b></p>
- *
  * @author <a href="mailto:jasonfil@cs.umd.edu">Jason Filippou</a>
  */
-public abstract class PRQuadNode {
+public abstract class PRQuadNode implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * The centroid of the current node. Its dimensions allow us to direct incoming {@link KDPoint}s
@@ -49,6 +52,60 @@ public abstract class PRQuadNode {
      */
     protected int bucketingParam;
 
+    /*
+     * A parallel range query over the subtree of node. Subtrees that are small enough are queried sequentially.
+     */
+    private static final class QuadRangeTask extends RangeTask {
+        private static final long serialVersionUID = 1L;
+        private final PRQuadNode node;
+
+        QuadRangeTask(PRQuadNode node, KDPoint anchor, double range){
+            super(anchor, range);
+            this.node = node;
+        }
+
+        @Override
+        protected void compute(){
+            if(node instanceof PRQuadBlackNode || node.count() <= GRAIN){
+                node.range(anchor, found, range);
+                return;
+            }
+            for(PRQuadNode child : ((PRQuadGrayNode)node).children)
+                if(child != null && child.mightIntersect(anchor, range))
+                    spawn(new QuadRangeTask(child, anchor, range));
+            runSubtasks();
+        }
+    }
+
+    /*
+     * The bytes of a node, which has four fields of 4 bytes each besides its centroid, the centroid itself and whatever
+     * array the node owns.
+     */
+    static final long NODE_BYTES = ShapeProfile.objectBytes(5 * 4) + ShapeProfile.pointBytes(2);
+
+    /**
+     * Adds the subtree rooted at the current node, which lies at the given depth, to <tt>profile</tt>.
+     * @param profile The profile of the whole tree.
+     * @param depth The depth of the current node.
+     */
+    abstract void profile(ShapeProfile profile, int depth);
+
+    /**
+     * Reports whether the quadrant spanned by <tt>this</tt> comes within <tt>range</tt> of <tt>anchor</tt>, in terms of
+     * {@link KDPoint#distance(KDPoint)}, which is squared.
+     * @param anchor The anchor of a range query.
+     * @param range The <b>INCLUSIVE</b> range of the query.
+     * @return <tt>true</tt> if the closest point of the quadrant to <tt>anchor</tt> lies within <tt>range</tt>.
+     */
+    boolean mightIntersect(KDPoint anchor, double range){
+        double half = Math.scalb(1.0, k - 1), dist = 0.0;
+        for(int i = 0; i < 2; i++){
+            double gap = Math.abs(anchor.coords[i] - centroid.coords[i]) - half;
+            if(gap > 0)
+                dist += gap * gap;
+        }
+        return dist <= range;
+    }
 
 
     /**
@@ -94,6 +151,17 @@ public abstract class PRQuadNode {
      */
     public abstract PRQuadNode delete(KDPoint p);
 
+    /**
+     * Moves a {@link KDPoint} within the subtree rooted at the current node, from <tt>r</tt>'s old position to its new one,
+     * with a single descent. The new position is assumed to lie within the quadrant spanned by the current node. If the
+     * old position is <b>not</b> in the subtree, <b>no changes</b> should be performed in the subtree.
+     *
+     * @param r The state of the move, which also reports its outcome back to the caller.
+     * @return The subtree rooted at the current node, potentially adjusted after the move.
+     * @see Relocation
+     */
+    public abstract PRQuadNode update(Relocation r);
+
     /**
      * Searches the subtree rooted at the current node for the provided {@link KDPoint}.
      *
@@ -122,6 +190,45 @@ public abstract class PRQuadNode {
      * @return the total number of {@link KDPoint}s contained in the subtree rooted at the current node.
      */
     public abstract int count();
+
+    /**
+     * Collects all the {@link KDPoint}s of the subtree rooted at the current node whose
+     * {@link KDPoint#distance(KDPoint) distance} from <tt>anchor</tt> is <b>at most</b> <tt>range</tt>, <b>INCLUSIVE</b>,
+     * except for the ones equal to <tt>anchor</tt>, like range queries over {@link projects.spatial.trees.KDTree}s do.
+     * Quadrants that lie entirely out of range are pruned.
+     *
+     * @param anchor The centroid of the disk that the range query implicitly creates.
+     * @param results A {@link Collection} that accumulates copies of the {@link KDPoint}s found.
+     * @param range The <b>INCLUSIVE</b> range from <tt>anchor</tt>, in terms of {@link KDPoint#distance(KDPoint)}.
+     */
+    public abstract void range(KDPoint anchor, Collection<KDPoint> results, double range);
+
+    /**
+     * Walks the subtree rooted at <tt>root</tt> once, and reports its shape.
+     * @param root The root of the subtree, which lies at depth 0, or <tt>null</tt> for an empty tree.
+     * @param bucketingParam The bucketing parameter of the tree.
+     * @return A {@link ShapeProfile} of the subtree rooted at <tt>root</tt>.
+     */
+    public static ShapeProfile profile(PRQuadNode root, int bucketingParam){
+        ShapeProfile profile = new ShapeProfile(bucketingParam);
+        if(root != null)
+            root.profile(profile, 0);
+        return profile;
+    }
+
+    /**
+     * Executes the same range query as {@link #range(KDPoint, Collection, double)}, in parallel on the common
+     * {@link java.util.concurrent.ForkJoinPool}. The query forks at every gray node with enough points below it, one task
+     * per quadrant in range, and every task collects its points into a buffer of its own; smaller subtrees are traversed
+     * sequentially. The buffers are concatenated once the query is over.
+     *
+     * @param anchor The centroid of the disk that the range query implicitly creates.
+     * @param range The <b>INCLUSIVE</b> range from <tt>anchor</tt>, in terms of {@link KDPoint#distance(KDPoint)}.
+     * @return Copies of the {@link KDPoint}s found, in the order that the sequential query would report them.
+     */
+    public Collection<KDPoint> parallelRange(KDPoint anchor, double range){
+        return RangeTask.run(new QuadRangeTask(this, anchor, range));
+    }
 }
 
 
@@ -0,0 +1,288 @@
+package projects.spatial.nodes;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.trees.PRQuadTree;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>{@link PRQuadSnapshot} encodes a P-R QuadTree into a compact binary form, and decodes it back, through NIO channels.
+ * The encoding is a header followed by a pre-order traversal of the nodes:</p>
+ *
+ * <ul>
+ *     <li>The <b>header</b> holds a magic number, a format version, the exponent <tt>k</tt> of the root, the bucketing
+ *     parameter and the number of points, so that a snapshot can be restored without any other information.</li>
+ *     <li>A <b>gray</b> node is a single byte: a tag in its high nibble and a bit mask of its non-white children, indexed
+ *     by quadrant, in its low nibble. Its non-white children follow, in quadrant order.</li>
+ *     <li>A <b>black</b> node is a tag byte, the size of its bucket as a variable-length integer, and the coordinates of its
+ *     points, packed as pairs of <tt>double</tt>s.</li>
+ *     <li>An empty tree is encoded as a single white tag.</li>
+ * </ul>
+ *
+ * <p>Centroids and side lengths are never stored, since every one of them follows from the root's and the quadrant
+ * of the node. Decoding allocates every node directly with its final contents, instead of re-inserting points from the
+ * root, so no point is ever routed or bucket split.</p>
+ *
+ * @see PRQuadTree#writeSnapshot(WritableByteChannel)
+ * @see PRQuadTree#readSnapshot(ReadableByteChannel)
+ */
+public class PRQuadSnapshot {
+
+    /* ************************************************************************** */
+    /* ************************* PRIVATE FIELDS AND CLASSES ********************* */
+    /* ************************************************************************** */
+
+    private static final int MAGIC = 0x50525154; // "PRQT"
+    private static final byte VERSION = 1;
+
+    private static final int WHITE = 0x00, BLACK = 0x01, GRAY = 0x10;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /*
+     * Neither the header nor the size of a bucket can be trusted to allocate memory upfront: a bucketing parameter larger
+     * than this has to be backed by as many points, and buckets start out no larger than this and grow with the points
+     * actually read.
+     */
+    private static final int MAX_UNBACKED_BUCKET_SIZE = 1 << 12;
+
+    private final int k, bucketingParam, count;
+    private final PRQuadNode root;
+
+    /*
+     * A ByteBuffer that drains into a channel whenever it cannot fit the next write.
+     */
+    private static final class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(WritableByteChannel channel){
+            this.channel = channel;
+        }
+
+        ByteBuffer reserve(int bytes) throws IOException {
+            if(buffer.remaining() < bytes)
+                flush();
+            return buffer;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    /*
+     * A ByteBuffer that refills from a channel whenever it does not hold enough bytes for the next read.
+     */
+    private static final class Input {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Input(ReadableByteChannel channel){
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        ByteBuffer require(int bytes) throws IOException {
+            if(buffer.remaining() < bytes){
+                buffer.compact();
+                while(buffer.position() < bytes)
+                    if(channel.read(buffer) < 0)
+                        throw new EOFException("The PRQuadTree snapshot ended unexpectedly.");
+                buffer.flip();
+            }
+            return buffer;
+        }
+    }
+
+    private PRQuadSnapshot(int k, int bucketingParam, int count, PRQuadNode root){
+        this.k = k;
+        this.bucketingParam = bucketingParam;
+        this.count = count;
+        this.root = root;
+    }
+
+    private static void writeVarInt(Output out, int value) throws IOException {
+        ByteBuffer buffer = out.reserve(5);
+        while((value & ~0x7F) != 0){
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    private static int readVarInt(Input in) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            byte b = in.require(1).get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0)
+                return value;
+        }
+        throw new IOException("Malformed PRQuadTree snapshot: a bucket size is too long.");
+    }
+
+    private static void writeNode(Output out, PRQuadNode node) throws IOException {
+        if(node instanceof PRQuadBlackNode){
+            PRQuadBlackNode black = (PRQuadBlackNode)node;
+            out.reserve(1).put((byte)BLACK);
+            writeVarInt(out, black.size);
+            for(int i = 0; i < black.size; i++)
+                out.reserve(16).putDouble(black.points[i].coords[0]).putDouble(black.points[i].coords[1]);
+        } else {
+            PRQuadNode[] children = ((PRQuadGrayNode)node).children;
+            int mask = 0;
+            for(int q = 0; q < 4; q++)
+                if(children[q] != null)
+                    mask |= 1 << q;
+            out.reserve(1).put((byte)(GRAY | mask));
+            for(PRQuadNode child : children)
+                if(child != null)
+                    writeNode(out, child);
+        }
+    }
+
+    /*
+     * Whether p lies in the quadrant of side 2^k centered at centroid, the way routing from the root decides it: every
+     * quadrant holds its western and southern sides, but only the sides of the root, at rootHalf from the origin, bound
+     * their quadrants on the east and north too. NaN coordinates lie nowhere.
+     */
+    private static boolean inQuadrant(KDPoint p, KDPoint centroid, int k, double rootHalf){
+        double half = Math.scalb(1.0, k - 1);
+        for(int d = 0; d < 2; d++){
+            double c = p.coords[d], high = centroid.coords[d] + half;
+            if(!(c >= centroid.coords[d] - half && (c < high || (c == high && high == rootHalf))))
+                return false;
+        }
+        return true;
+    }
+
+    private static PRQuadNode readNode(Input in, KDPoint centroid, int k, int bucketingParam, double rootHalf) throws IOException {
+        int tag = in.require(1).get() & 0xFF;
+        if(tag == BLACK){
+            int size = readVarInt(in);
+            if(size < 1 || size > bucketingParam)
+                throw new IOException("Malformed PRQuadTree snapshot: a bucket holds " + size + " points, but buckets hold between 1 and " + bucketingParam + ".");
+            PRQuadBlackNode black = new PRQuadBlackNode(centroid, k, bucketingParam, Math.min(size, MAX_UNBACKED_BUCKET_SIZE));
+            for(int i = 0; i < size; i++){
+                ByteBuffer buffer = in.require(16);
+                KDPoint p = new KDPoint(buffer.getDouble(), buffer.getDouble());
+                if(!inQuadrant(p, centroid, k, rootHalf))
+                    throw new IOException("Malformed PRQuadTree snapshot: " + p + " lies outside of the quadrant of its bucket.");
+                for(int j = 0; j < i; j++)
+                    if(black.points[j].equals(p))
+                        throw new IOException("Malformed PRQuadTree snapshot: " + p + " is stored twice.");
+                black.append(p);
+            }
+            return black;
+        }
+        if((tag & 0xF0) != GRAY || (tag & 0x0F) == 0)
+            throw new IOException("Malformed PRQuadTree snapshot: unexpected node tag " + tag + ".");
+        // Negative exponents are fine, but the quadrants of the children need a side that a double can represent. This
+        // also bounds the depth of the recursion, whatever the input.
+        if(Math.scalb(1.0, k - 2) == 0)
+            throw new IOException("Malformed PRQuadTree snapshot: a gray node lies deeper than quadrants can be split.");
+        PRQuadGrayNode gray = new PRQuadGrayNode(centroid, k, bucketingParam);
+        for(int q = 0; q < 4; q++)
+            if((tag & (1 << q)) != 0)
+                gray.children[q] = readNode(in, gray.centroidOf(q), k - 1, bucketingParam, rootHalf);
+        gray.recount();
+        return gray;
+    }
+
+    /* ************************************************************************** */
+    /* ************************ PUBLIC (INTERFACE) METHODS ********************** */
+    /* ************************************************************************** */
+
+    /**
+     * Encodes a P-R QuadTree into <tt>channel</tt>. The channel is not closed.
+     * @param root The root of the tree, or <tt>null</tt> if it is empty.
+     * @param k The exponent of 2 that defines the side length of the root.
+     * @param bucketingParam The bucketing parameter of the tree.
+     * @param count The number of points in the tree.
+     * @param channel The channel to write to.
+     * @throws IOException if writing to the channel fails.
+     */
+    public static void write(PRQuadNode root, int k, int bucketingParam, int count, WritableByteChannel channel) throws IOException {
+        Output out = new Output(channel);
+        out.reserve(17).putInt(MAGIC).put(VERSION).putInt(k).putInt(bucketingParam).putInt(count);
+        if(root == null)
+            out.reserve(1).put((byte)WHITE);
+        else
+            writeNode(out, root);
+        out.flush();
+    }
+
+    /**
+     * Decodes a P-R QuadTree that {@link #write(PRQuadNode, int, int, int, WritableByteChannel)} encoded, from
+     * <tt>channel</tt>. The channel is not closed, but it might have been read past the end of the snapshot.
+     * @param channel The channel to read from.
+     * @return The decoded snapshot.
+     * @throws IOException if reading from the channel fails, or if it does not hold a valid snapshot. Snapshots whose
+     * bucketing parameter is larger than both 4096 and their number of points are considered invalid.
+     */
+    public static PRQuadSnapshot read(ReadableByteChannel channel) throws IOException {
+        Input in = new Input(channel);
+        ByteBuffer header = in.require(17);
+        int magic = header.getInt();
+        byte version = header.get();
+        if(magic != MAGIC || version != VERSION)
+            throw new IOException("Not a PRQuadTree snapshot of version " + VERSION + ".");
+        int k = header.getInt(), bucketingParam = header.getInt(), count = header.getInt();
+        double rootHalf = Math.scalb(1.0, k - 1);
+        if(bucketingParam < 1 || count < 0 || rootHalf == 0 || Double.isInfinite(rootHalf))
+            throw new IOException("Malformed PRQuadTree snapshot header.");
+        if(bucketingParam > MAX_UNBACKED_BUCKET_SIZE && bucketingParam > count)
+            throw new IOException("Malformed PRQuadTree snapshot header: a bucketing parameter of " + bucketingParam + " for " + count + " points.");
+        PRQuadNode root;
+        if(count == 0){
+            if(in.require(1).get() != WHITE)
+                throw new IOException("Malformed PRQuadTree snapshot: an empty tree has nodes.");
+            root = null;
+        } else {
+            root = readNode(in, new KDPoint(0, 0), k, bucketingParam, rootHalf);
+            if(root.count() != count)
+                throw new IOException("Malformed PRQuadTree snapshot: the header promises " + count + " points, but the nodes hold " + root.count() + ".");
+        }
+        return new PRQuadSnapshot(k, bucketingParam, count, root);
+    }
+
+    /**
+     * Returns the exponent of 2 that defines the side length of the root.
+     * @return The parameter <tt>k</tt> of the encoded tree.
+     */
+    public int getK(){
+        return k;
+    }
+
+    /**
+     * Returns the bucketing parameter of the encoded tree.
+     * @return The bucketing parameter.
+     */
+    public int getBucketSize(){
+        return bucketingParam;
+    }
+
+    /**
+     * Returns the number of points of the encoded tree.
+     * @return The number of {@link KDPoint}s.
+     */
+    public int getCount(){
+        return count;
+    }
+
+    /**
+     * Returns the root of the decoded tree.
+     * @return The root, or <tt>null</tt> if the tree is empty.
+     */
+    public PRQuadNode getRoot(){
+        return root;
+    }
+}
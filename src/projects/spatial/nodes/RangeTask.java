@@ -0,0 +1,78 @@
+package projects.spatial.nodes;
+
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>{@link RangeTask} is the common skeleton of the parallel range queries of {@link KDTreeNode} and
+ * {@link PRQuadNode}. Every task covers a subtree: it collects the matching points of the top node of its subtree into a
+ * buffer of its own, and forks a subtask for every child subtree that the query cannot prune. Subtrees of at most
+ * {@link #GRAIN} points are traversed sequentially, straight into the buffer of the task that reaches them, since forking
+ * costs more than visiting them.</p>
+ *
+ * <p>No buffer is ever shared between threads, so there is no synchronization besides the joins. Once every task is
+ * done, the buffers are concatenated in pre-order, into a single list of the exact size.</p>
+ */
+abstract class RangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Subtrees of at most this many points are queried sequentially.
+     */
+    static final int GRAIN = 1 << 13;
+
+    final KDPoint anchor;
+    final double range;
+    final ArrayList<KDPoint> found = new ArrayList<>();
+    private final ArrayList<RangeTask> subtasks = new ArrayList<>(4);
+
+    RangeTask(KDPoint anchor, double range){
+        this.anchor = anchor;
+        this.range = range;
+    }
+
+    /**
+     * Registers a subtask, to be run by {@link #runSubtasks()}.
+     * @param task The subtask.
+     */
+    void spawn(RangeTask task){
+        subtasks.add(task);
+    }
+
+    /**
+     * Runs every registered subtask, in parallel, and waits for all of them.
+     */
+    void runSubtasks(){
+        invokeAll(subtasks);
+    }
+
+    private int total(){
+        int total = found.size();
+        for(RangeTask task : subtasks)
+            total += task.total();
+        return total;
+    }
+
+    private void drainInto(Collection<KDPoint> results){
+        results.addAll(found);
+        for(RangeTask task : subtasks)
+            task.drainInto(results);
+    }
+
+    /**
+     * Runs <tt>root</tt> on the common {@link ForkJoinPool} and concatenates the buffers of all of its tasks.
+     * @param root The task of the root of the query.
+     * @return The points that the query found.
+     */
+    static ArrayList<KDPoint> run(RangeTask root){
+        ForkJoinPool.commonPool().invoke(root);
+        ArrayList<KDPoint> results = new ArrayList<>(root.total());
+        root.drainInto(results);
+        return results;
+    }
+}
@@ -0,0 +1,93 @@
+package projects.spatial.nodes;
+
+import projects.spatial.kdpoint.KDPoint;
+
+/**
+ * <p>{@link Relocation} is a simple &quot;struct-like&quot; class that carries the state of a single <b>move</b> of
+ * a {@link KDPoint} through the recursive <tt>update</tt> methods of {@link KDTreeNode} and {@link PRQuadNode}, much like
+ * {@link projects.spatial.knnutils.NNData} does for nearest neighbor queries.</p>
+ *
+ * <p>Moving a point with a single traversal, instead of a search, a deletion and an insertion, relies on the following
+ * observation: as long as the old and the new position of the point would be routed to the same subtree, the new position
+ * lies within the region spanned by that subtree. So we descend along the old position until the two routes
+ * <em>diverge</em>. If they never do, the point can be overwritten in place. Otherwise, the node where they diverged is the
+ * lowest one whose region contains both positions; the old position is deleted below it, and the new one is inserted into
+ * it, without ever going back to the root.</p>
+ *
+ * @see KDTreeNode#update(Relocation, int, int)
+ * @see PRQuadNode#update(Relocation)
+ */
+public class Relocation {
+
+    /** The current position of the point to move. */
+    final KDPoint from;
+
+    /** The position the point should be moved to. */
+    final KDPoint to;
+
+    /** Set once the point at {@link #from} has been found (and hence removed or overwritten). */
+    boolean found;
+
+    /** Set while the recursion is below the node where the routes of {@link #from} and {@link #to} diverged. */
+    boolean diverged;
+
+    /** Set once the point at {@link #to} is in the tree. */
+    boolean placed;
+
+    /** Set if {@link #to} was already in a tree that does not allow for duplicates, so the two points merged into one. */
+    boolean collided;
+
+    /** Whether the old position should be marked as a tombstone, rather than deleted. Only {@link KDTreeNode} supports this. */
+    final boolean lazy;
+
+    /** Set if the old position was marked as a tombstone. */
+    boolean tombstoned;
+
+    /**
+     * Creates the state for a move from <tt>from</tt> to <tt>to</tt>.
+     * @param from The current position of the point.
+     * @param to The new position of the point.
+     */
+    public Relocation(KDPoint from, KDPoint to){
+        this(from, to, false);
+    }
+
+    /**
+     * Creates the state for a move from <tt>from</tt> to <tt>to</tt>, which optionally leaves a tombstone behind.
+     * @param from The current position of the point.
+     * @param to The new position of the point.
+     * @param lazy If <tt>true</tt>, a node that cannot be overwritten in place is marked as a tombstone, like
+     *             {@link KDTreeNode#markDeleted(KDPoint, int, int)} does, instead of being deleted.
+     */
+    public Relocation(KDPoint from, KDPoint to, boolean lazy){
+        this.from = from;
+        this.to = to;
+        this.lazy = lazy;
+        found = diverged = placed = collided = tombstoned = false;
+    }
+
+    /**
+     * Reports whether the point to move was found.
+     * @return <tt>true</tt> if the point at the old position was found and moved, <tt>false</tt> if it was not in the tree.
+     */
+    public boolean isFound(){
+        return found;
+    }
+
+    /**
+     * Reports whether the new position was already occupied in a tree that does not allow for duplicates, such as
+     * a {@link projects.spatial.trees.PRQuadTree}. In that case, the tree holds one point less after the move.
+     * @return <tt>true</tt> if the moved point merged with an existing one, <tt>false</tt> otherwise.
+     */
+    public boolean isCollided(){
+        return collided;
+    }
+
+    /**
+     * Reports whether the move left a tombstone behind, which only happens in lazy mode.
+     * @return <tt>true</tt> if the node at the old position was marked as a tombstone, <tt>false</tt> otherwise.
+     */
+    public boolean isTombstoned(){
+        return tombstoned;
+    }
+}
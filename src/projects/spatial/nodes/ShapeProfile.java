@@ -0,0 +1,236 @@
+package projects.spatial.nodes;
+
+import java.util.Arrays;
+
+/**
+ * <p>{@link ShapeProfile} describes the shape of a spatial tree, as measured by a single walk over its nodes: how many
+ * nodes there are at every depth, how deep the leaves are, how full the nodes that store points are, how many nodes of
+ * every kind there are, and roughly how much memory they take. It is meant to explain a large
+ * {@link projects.spatial.trees.KDTree#height() height}, to choose bucket sizes, and to decide when a tree is worth
+ * rebuilding.</p>
+ *
+ * <p>The terms are shared between the two kinds of trees:</p>
+ * <ul>
+ *     <li>For a {@link KDTreeNode K-D tree}, <b>internal</b> nodes have at least one child and <b>leaves</b> have none.
+ *     Every node stores a point, so every node counts towards the occupancy histogram: with one point, or with none if it
+ *     is a tombstone.</li>
+ *     <li>For a {@link PRQuadNode P-R QuadTree}, internal nodes are the {@link PRQuadGrayNode gray} nodes and leaves are the
+ *     {@link PRQuadBlackNode black} ones, which are the only ones that store points. White quadrants are not nodes; they are
+ *     counted as <b>empty child slots</b> of their gray parents.</li>
+ * </ul>
+ *
+ * <p>Memory is estimated for a 64-bit JVM with compressed references, which is the default for heaps under 32 GB:
+ * 12-byte object headers, 16-byte array headers, 4-byte references, and every object padded to a multiple of 8 bytes. It
+ * counts the nodes and everything that they own: coordinate arrays, child arrays, buckets and the points in them.</p>
+ *
+ * @see projects.spatial.trees.KDTree#profile()
+ * @see projects.spatial.trees.PRQuadTree#profile()
+ */
+public class ShapeProfile {
+
+    /* ************************************************************************** */
+    /* ************************* PRIVATE FIELDS AND METHODS ********************* */
+    /* ************************************************************************** */
+
+    private static final int OBJECT_HEADER = 12, ARRAY_HEADER = 16, REFERENCE = 4;
+
+    private int[] nodesAtDepth = new int[16], leavesAtDepth = new int[16];
+    private final int[] occupancy;
+    private int internalNodes, leaves, tombstones, emptySlots, points, height = -1;
+    private long leafDepthSum, bytes;
+
+    private static long align(long bytes){
+        return (bytes + 7) & ~7L;
+    }
+
+    /*
+     * The size of an object with the given bytes of fields, references included.
+     */
+    static long objectBytes(int fieldBytes){
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    /*
+     * The size of an array of the given length, with elements of the given size.
+     */
+    static long arrayBytes(int length, int elementBytes){
+        return align(ARRAY_HEADER + (long)length * elementBytes);
+    }
+
+    /*
+     * The size of a KDPoint of the given dimensionality, along with its coordinates.
+     */
+    static long pointBytes(int dims){
+        return objectBytes(REFERENCE) + arrayBytes(dims, Double.BYTES);
+    }
+
+    /*
+     * Creates an empty profile for nodes that hold up to capacity points each.
+     */
+    ShapeProfile(int capacity){
+        occupancy = new int[capacity + 1];
+    }
+
+    /*
+     * Counts a node at the given depth, which owns the given number of bytes.
+     */
+    void countNode(int depth, boolean leaf, long nodeBytes){
+        if(depth >= nodesAtDepth.length){
+            nodesAtDepth = Arrays.copyOf(nodesAtDepth, Math.max(2 * nodesAtDepth.length, depth + 1));
+            leavesAtDepth = Arrays.copyOf(leavesAtDepth, nodesAtDepth.length);
+        }
+        nodesAtDepth[depth]++;
+        height = Math.max(height, depth);
+        if(leaf){
+            leaves++;
+            leavesAtDepth[depth]++;
+            leafDepthSum += depth;
+        } else {
+            internalNodes++;
+        }
+        bytes += nodeBytes;
+    }
+
+    /*
+     * Counts a node that stores points, with the given number of them.
+     */
+    void countOccupancy(int held){
+        occupancy[held]++;
+        points += held;
+    }
+
+    void countTombstone(){
+        tombstones++;
+    }
+
+    void countEmptySlots(int slots){
+        emptySlots += slots;
+    }
+
+    /* ************************************************************************** */
+    /* ************************ PUBLIC (INTERFACE) METHODS ********************** */
+    /* ************************************************************************** */
+
+    /**
+     * Returns the number of nodes of the tree.
+     * @return The number of internal nodes plus the number of leaves.
+     */
+    public int getNodeCount(){
+        return internalNodes + leaves;
+    }
+
+    /**
+     * Returns the number of internal nodes: K-D tree nodes with at least one child, or gray P-R QuadTree nodes.
+     * @return The number of internal nodes.
+     */
+    public int getInternalNodeCount(){
+        return internalNodes;
+    }
+
+    /**
+     * Returns the number of leaves: K-D tree nodes without children, or black P-R QuadTree nodes.
+     * @return The number of leaves.
+     */
+    public int getLeafCount(){
+        return leaves;
+    }
+
+    /**
+     * Returns the number of tombstones of a K-D tree in lazy deletion mode.
+     * @return The number of nodes that were lazily deleted, which is always 0 for P-R QuadTrees.
+     */
+    public int getTombstoneCount(){
+        return tombstones;
+    }
+
+    /**
+     * Returns the number of white quadrants below gray P-R QuadTree nodes.
+     * @return The number of <tt>null</tt> children of gray nodes, which is always 0 for K-D trees.
+     */
+    public int getEmptyChildSlots(){
+        return emptySlots;
+    }
+
+    /**
+     * Returns the number of points stored in the tree, tombstones excluded.
+     * @return The number of points found by the walk.
+     */
+    public int getPointCount(){
+        return points;
+    }
+
+    /**
+     * Returns the height of the tree, with the same definition as the trees' <tt>height()</tt>.
+     * @return The depth of the deepest node, or -1 for an empty tree.
+     */
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * Returns the average depth of the leaves of the tree. For a balanced binary tree of n nodes, it is close to
+     * log<sub>2</sub>n - 1; much larger values mean that some regions of space are reached through long paths.
+     * @return The average depth of the leaves, or {@link Double#NaN} for an empty tree.
+     */
+    public double getAverageLeafDepth(){
+        return (leaves == 0) ? Double.NaN : (double)leafDepthSum / leaves;
+    }
+
+    /**
+     * Returns the number of nodes at every depth.
+     * @return An array of length {@link #getHeight()} + 1, whose element <tt>d</tt> is the number of nodes at depth
+     * <tt>d</tt>.
+     */
+    public int[] getDepthHistogram(){
+        return Arrays.copyOf(nodesAtDepth, height + 1);
+    }
+
+    /**
+     * Returns the number of leaves at every depth.
+     * @return An array of length {@link #getHeight()} + 1, whose element <tt>d</tt> is the number of leaves at depth
+     * <tt>d</tt>.
+     */
+    public int[] getLeafDepthHistogram(){
+        return Arrays.copyOf(leavesAtDepth, height + 1);
+    }
+
+    /**
+     * Returns the distribution of the number of points held by the nodes that store points. For a P-R QuadTree, a
+     * distribution that is heavy at 1 means that buckets could be smaller; one that is heavy at the bucket size means
+     * that many buckets are one insertion away from a split.
+     * @return An array whose element <tt>i</tt> is the number of nodes that hold exactly <tt>i</tt> points. Its length is
+     * the bucket size plus one for P-R QuadTrees, and 2 for K-D trees, where element 0 counts tombstones.
+     */
+    public int[] getOccupancyHistogram(){
+        return occupancy.clone();
+    }
+
+    /**
+     * Returns an estimate of the memory taken by the nodes of the tree and everything they own.
+     * @return The estimated footprint, in bytes.
+     */
+    public long getEstimatedBytes(){
+        return bytes;
+    }
+
+    /**
+     * Returns a human-readable, multi-line report of this profile.
+     * @return The report.
+     */
+    @Override
+    public String toString(){
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Nodes: %d (%d internal, %d leaves), %d tombstones, %d empty child slots.%n",
+                getNodeCount(), internalNodes, leaves, tombstones, emptySlots));
+        report.append(String.format("Points: %d. Estimated footprint: %d bytes (%.1f bytes per point).%n", points, bytes,
+                (points == 0) ? 0.0 : (double)bytes / points));
+        report.append(String.format("Height: %d. Average leaf depth: %.2f.%n", height, getAverageLeafDepth()));
+        report.append(String.format("Depth histogram (nodes / leaves):%n"));
+        for(int d = 0; d <= height; d++)
+            report.append(String.format("%6d: %d / %d%n", d, nodesAtDepth[d], leavesAtDepth[d]));
+        report.append(String.format("Occupancy histogram (points held: nodes):%n"));
+        for(int i = 0; i < occupancy.length; i++)
+            report.append(String.format("%6d: %d%n", i, occupancy[i]));
+        return report.toString();
+    }
+}
@@ -0,0 +1,227 @@
+package projects.spatial.nodes;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.trees.KDTree;
+import projects.spatial.trees.PRQuadTree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>ShapeProfileTests</tt> checks the {@link ShapeProfile}s of small trees built by hand, whose shapes are known
+ * exactly: the depth histograms, the average leaf depth, the occupancy histogram, the counts of every kind of node, and
+ * the memory estimate, which must grow with every node.</p>
+ *
+ * @see ShapeProfile
+ * @see KDTree#profile()
+ * @see PRQuadTree#profile()
+ */
+public class ShapeProfileTests {
+
+    private Random r;
+    private static final int SEED = 47;
+
+    /*
+     * With compressed references: a 12-byte header and 25 bytes of fields, padded to 40, plus a double[2] of 32 bytes.
+     */
+    private static final long KD_NODE_BYTES = 72;
+
+    @Before
+    public void setUp() {
+        r = new Random(SEED);
+    }
+
+    /*
+     * The tree below, where every node splits on x at even depths and on y at odd ones:
+     *
+     *                (5, 5)
+     *              /        \
+     *         (2, 7)        (8, 3)
+     *         /            /      \
+     *     (1, 1)       (7, 1)    (9, 9)
+     *                            /
+     *                        (6, 8)
+     */
+    private static KDTree handBuiltKDTree(boolean floatStorage, double tombstoneThreshold){
+        KDTree tree = new KDTree(2, floatStorage, tombstoneThreshold);
+        for(KDPoint p : new KDPoint[]{new KDPoint(5, 5), new KDPoint(2, 7), new KDPoint(8, 3), new KDPoint(1, 1),
+                new KDPoint(9, 9), new KDPoint(7, 1), new KDPoint(6, 8)})
+            tree.insert(p);
+        return tree;
+    }
+
+    @Test
+    public void testEmptyTrees() {
+        for(ShapeProfile profile : new ShapeProfile[]{new KDTree(2).profile(), new PRQuadTree(4, 3).profile()}){
+            assertEquals(0, profile.getNodeCount());
+            assertEquals(0, profile.getPointCount());
+            assertEquals(-1, profile.getHeight());
+            assertTrue(Double.isNaN(profile.getAverageLeafDepth()));
+            assertArrayEquals(new int[0], profile.getDepthHistogram());
+            assertArrayEquals(new int[0], profile.getLeafDepthHistogram());
+            assertEquals(0, profile.getEstimatedBytes());
+        }
+        assertArrayEquals(new int[]{0, 0}, new KDTree(2).profile().getOccupancyHistogram());
+        assertArrayEquals(new int[]{0, 0, 0, 0}, new PRQuadTree(4, 3).profile().getOccupancyHistogram());
+    }
+
+    @Test
+    public void testHandBuiltKDTree() {
+        KDTree tree = handBuiltKDTree(false, 0);
+        ShapeProfile profile = tree.profile();
+        assertArrayEquals(new int[]{1, 2, 3, 1}, profile.getDepthHistogram());
+        assertArrayEquals(new int[]{0, 0, 2, 1}, profile.getLeafDepthHistogram());
+        assertEquals(7.0 / 3, profile.getAverageLeafDepth(), 1e-12);
+        assertEquals(tree.height(), profile.getHeight());
+        assertEquals(7, profile.getNodeCount());
+        assertEquals(4, profile.getInternalNodeCount());
+        assertEquals(3, profile.getLeafCount());
+        assertEquals(0, profile.getTombstoneCount());
+        assertEquals(0, profile.getEmptyChildSlots());
+        assertEquals(7, profile.getPointCount());
+        assertArrayEquals(new int[]{0, 7}, profile.getOccupancyHistogram());
+        assertEquals(7 * (ShapeProfile.objectBytes(4 * 4 + 1 + 2 * 4) + ShapeProfile.arrayBytes(2, Double.BYTES)),
+                profile.getEstimatedBytes());
+        assertEquals(7 * KD_NODE_BYTES, profile.getEstimatedBytes());
+
+        tree.delete(new KDPoint(6, 8)); // The only node at depth 3.
+        profile = tree.profile();
+        assertArrayEquals(new int[]{1, 2, 3}, profile.getDepthHistogram());
+        assertArrayEquals(new int[]{0, 0, 3}, profile.getLeafDepthHistogram());
+        assertEquals(2.0, profile.getAverageLeafDepth(), 0.0);
+        assertEquals(3, profile.getInternalNodeCount());
+        assertEquals(3, profile.getLeafCount());
+        assertEquals(6 * KD_NODE_BYTES, profile.getEstimatedBytes());
+    }
+
+    @Test
+    public void testKDTreeWithFloatStorage() {
+        ShapeProfile profile = handBuiltKDTree(true, 0).profile();
+        assertArrayEquals(new int[]{1, 2, 3, 1}, profile.getDepthHistogram());
+        assertEquals(7 * (ShapeProfile.objectBytes(4 * 4 + 1 + 2 * 4) + ShapeProfile.arrayBytes(2, Float.BYTES)),
+                profile.getEstimatedBytes());
+        assertEquals(7 * (KD_NODE_BYTES - 8), profile.getEstimatedBytes()); // A float[2] takes 24 bytes.
+    }
+
+    @Test
+    public void testKDTreeWithTombstones() {
+        KDTree tree = handBuiltKDTree(false, 1); // Never rebuilds subtrees that still hold points.
+        tree.delete(new KDPoint(8, 3));
+        tree.delete(new KDPoint(5, 5));
+        ShapeProfile profile = tree.profile();
+        assertArrayEquals(new int[]{1, 2, 3, 1}, profile.getDepthHistogram()); // Tombstones keep their places.
+        assertEquals(7, profile.getNodeCount());
+        assertEquals(2, profile.getTombstoneCount());
+        assertEquals(5, profile.getPointCount());
+        assertArrayEquals(new int[]{2, 5}, profile.getOccupancyHistogram());
+        assertEquals(7 * KD_NODE_BYTES, profile.getEstimatedBytes());
+    }
+
+    @Test
+    public void testDegenerateKDTree() {
+        KDTree tree = new KDTree(2);
+        int n = 40; // Deeper than the initial histograms.
+        for(int i = 0; i < n; i++)
+            tree.insert(new KDPoint(i, i));
+        ShapeProfile profile = tree.profile();
+        int[] ones = new int[n], leafAtBottom = new int[n];
+        Arrays.fill(ones, 1);
+        leafAtBottom[n - 1] = 1;
+        assertArrayEquals(ones, profile.getDepthHistogram());
+        assertArrayEquals(leafAtBottom, profile.getLeafDepthHistogram());
+        assertEquals(n - 1, profile.getAverageLeafDepth(), 0.0);
+        assertEquals(n - 1, profile.getHeight());
+        assertEquals(n - 1, profile.getInternalNodeCount());
+        assertEquals(1, profile.getLeafCount());
+    }
+
+    /*
+     * With k = 4, the root spans [-8, 8]^2; with buckets of 2, the points below give:
+     *
+     *                      gray
+     *        /          |          |          \
+     *      gray     (-1, -1)    (3, -5)     (white)
+     *     /    \
+     * (1, 1)  (5, 6)
+     * (2, 2)
+     *
+     * where the gray child spans [0, 8]^2 and has two white quadrants of its own.
+     */
+    @Test
+    public void testHandBuiltPRQuadTree() {
+        PRQuadTree tree = new PRQuadTree(4, 2);
+        tree.insert(new KDPoint(1, 1));
+        tree.insert(new KDPoint(2, 2));
+        ShapeProfile profile = tree.profile();
+        assertArrayEquals(new int[]{1}, profile.getDepthHistogram()); // A single black node.
+        assertEquals(0.0, profile.getAverageLeafDepth(), 0.0);
+        assertArrayEquals(new int[]{0, 0, 1}, profile.getOccupancyHistogram());
+        assertEquals(0, profile.getInternalNodeCount());
+        assertEquals(PRQuadNode.NODE_BYTES + ShapeProfile.arrayBytes(2, 4) + 2 * ShapeProfile.pointBytes(2),
+                profile.getEstimatedBytes());
+
+        tree.insert(new KDPoint(-1, -1));
+        tree.insert(new KDPoint(3, -5));
+        tree.insert(new KDPoint(5, 6));
+        profile = tree.profile();
+        assertArrayEquals(new int[]{1, 3, 2}, profile.getDepthHistogram());
+        assertArrayEquals(new int[]{0, 2, 2}, profile.getLeafDepthHistogram());
+        assertEquals(1.5, profile.getAverageLeafDepth(), 0.0);
+        assertEquals(tree.height(), profile.getHeight());
+        assertEquals(6, profile.getNodeCount());
+        assertEquals(2, profile.getInternalNodeCount());
+        assertEquals(4, profile.getLeafCount());
+        assertEquals(3, profile.getEmptyChildSlots());
+        assertEquals(0, profile.getTombstoneCount());
+        assertEquals(5, profile.getPointCount());
+        assertArrayEquals(new int[]{0, 3, 1}, profile.getOccupancyHistogram());
+        long gray = PRQuadNode.NODE_BYTES + ShapeProfile.arrayBytes(4, 4), black = PRQuadNode.NODE_BYTES + ShapeProfile.arrayBytes(2, 4);
+        assertEquals(2 * gray + 4 * black + 5 * ShapeProfile.pointBytes(2), profile.getEstimatedBytes());
+        assertEquals(2 * 112 + 4 * 104 + 5 * 48, profile.getEstimatedBytes()); // 80-byte node bodies, with their centroids.
+    }
+
+    @Test
+    public void testHistogramsAreCopies() {
+        ShapeProfile profile = handBuiltKDTree(false, 0).profile();
+        profile.getDepthHistogram()[0] = 100;
+        profile.getOccupancyHistogram()[1] = 100;
+        assertEquals(1, profile.getDepthHistogram()[0]);
+        assertEquals(7, profile.getOccupancyHistogram()[1]);
+    }
+
+    /*
+     * Every node, and every point, adds to the estimate.
+     */
+    @Test
+    public void testEstimateGrowsWithNodeCount() {
+        KDTree kdTree = new KDTree(2);
+        PRQuadTree quadTree = new PRQuadTree(10, 3);
+        long kdBytes = 0, quadBytes = 0;
+        int quadNodes = 0;
+        for(int i = 0; i < 2000; i++){
+            KDPoint p = new KDPoint(r.nextInt(1000) - 500, r.nextInt(1000) - 500);
+            kdTree.insert(p);
+            ShapeProfile profile = kdTree.profile();
+            assertEquals(i + 1, profile.getNodeCount());
+            assertEquals((i + 1) * KD_NODE_BYTES, profile.getEstimatedBytes());
+            assertTrue(profile.getEstimatedBytes() > kdBytes);
+            kdBytes = profile.getEstimatedBytes();
+
+            int before = quadTree.count();
+            quadTree.insert(p);
+            profile = quadTree.profile();
+            assertEquals(quadTree.count(), profile.getPointCount());
+            assertTrue(profile.getNodeCount() >= quadNodes);
+            if(quadTree.count() > before)
+                assertTrue(profile.getEstimatedBytes() > quadBytes);
+            else
+                assertEquals(quadBytes, profile.getEstimatedBytes()); // A duplicate, which is ignored.
+            quadBytes = profile.getEstimatedBytes();
+            quadNodes = profile.getNodeCount();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package projects.spatial.trees;
+
+import projects.spatial.kdpoint.FloatKDPoint;
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.knnutils.BoundedPriorityQueue;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>{@link CachedKDTree} puts a bounded, least-recently-used cache of nearest neighbor and <em>k</em>-NN results in
+ * front of a {@link KDTree}. It pays off for workloads where the same anchor {@link KDPoint}s are queried over and over,
+ * while the tree changes comparatively rarely. Range queries are forwarded to the tree uncached.</p>
+ *
+ * <p>Cached results are never stale. There are two ways in which they are kept fresh, selected through {@link Invalidation}:</p>
+ * <ul>
+ *     <li>{@link Invalidation#VERSION}: every entry remembers the {@link KDTree#getVersion() version} of the tree it was
+ *     computed on, and is discarded on lookup if the tree has changed since. Modifications cost O(1), but every one of
+ *     them invalidates the entire cache.</li>
+ *     <li>{@link Invalidation#REGION}: every entry remembers the radius of its result, that is, the distance from its anchor
+ *     to the farthest neighbor reported (or infinity, if fewer than <em>k</em> neighbors were found). An insertion or
+ *     deletion through <tt>this</tt> only discards those entries whose ball contains the modified {@link KDPoint}, since no
+ *     other result can change. Modifications cost O(capacity).</li>
+ * </ul>
+ *
+ * <p>In both modes, modifications made directly to the underlying {@link KDTree}, bypassing <tt>this</tt>, are detected
+ * through its version and flush the cache. Like {@link KDTree}, this class is <b>not</b> thread-safe.</p>
+ *
+ * @see KDTree#getVersion()
+ */
+public class CachedKDTree implements SpatialDictionary, SpatialQuerySolver {
+
+	/**
+	 * The two invalidation strategies supported by {@link CachedKDTree}.
+	 */
+	public enum Invalidation {
+		/** Discard every entry computed on an older version of the tree. */
+		VERSION,
+		/** Discard only the entries whose result could be affected by a modification. */
+		REGION
+	}
+
+	/**
+	 * The number of entries cached by default.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/* ************************************************************************** */
+	/* ************************* PRIVATE FIELDS AND CLASSES ********************* */
+	/* ************************************************************************** */
+
+	/*
+	 * Cache key: a copy of the anchor, since KDPoints are mutable, and k, with k = 0 standing for nearestNeighbor().
+	 */
+	private static final class QueryKey {
+		private final KDPoint anchor;
+		private final int k;
+
+		QueryKey(KDPoint anchor, int k){
+			this.anchor = new KDPoint(anchor);
+			this.k = k;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof QueryKey))
+				return false;
+			QueryKey other = (QueryKey)o;
+			return k == other.k && anchor.equals(other.anchor);
+		}
+
+		@Override
+		public int hashCode(){
+			return 31 * anchor.hashCode() + k;
+		}
+	}
+
+	/*
+	 * A cached result: the neighbors in ascending order of distance, their distances and the radius of the result.
+	 */
+	private static final class Entry {
+		private final KDPoint[] neighbors;
+		private final double[] distances;
+		private final double radius;
+		private long version; // Bumped in place by REGION invalidation for entries that survive a modification.
+
+		Entry(KDPoint[] neighbors, double[] distances, boolean complete, long version){
+			this.neighbors = neighbors;
+			this.distances = distances;
+			radius = (complete && distances.length > 0) ? distances[distances.length - 1] : Double.POSITIVE_INFINITY;
+			this.version = version;
+		}
+	}
+
+	private final KDTree tree;
+	private final Invalidation invalidation;
+	private final LinkedHashMap<QueryKey, Entry> cache;
+	private long expectedVersion; // The version of the tree after our own latest modification.
+	private long hits, misses, evictions, invalidations;
+
+	/* ************************************************************************** */
+	/* ***************************** CONSTRUCTORS ******************************* */
+	/* ************************************************************************** */
+
+	/**
+	 * Wraps <tt>tree</tt> with a cache of {@link #DEFAULT_CAPACITY} entries and {@link Invalidation#REGION} invalidation.
+	 * @param tree The {@link KDTree} to cache the results of.
+	 */
+	public CachedKDTree(KDTree tree){
+		this(tree, DEFAULT_CAPACITY, Invalidation.REGION);
+	}
+
+	/**
+	 * Full constructor.
+	 * @param tree The {@link KDTree} to cache the results of.
+	 * @param capacity The maximum number of cached results. When exceeded, the least recently used one is evicted.
+	 * @param invalidation How to keep cached results fresh upon modifications.
+	 * @throws RuntimeException if <tt>capacity</tt> &lt; 1.
+	 */
+	public CachedKDTree(KDTree tree, int capacity, Invalidation invalidation){
+		if(capacity < 1)
+			throw new RuntimeException("The capacity of a CachedKDTree needs to be a positive integer; we were given " + capacity + ".");
+		this.tree = tree;
+		this.invalidation = invalidation;
+		cache = new LinkedHashMap<QueryKey, Entry>(16, 0.75f, true){ // Access order makes this an LRU cache.
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<QueryKey, Entry> eldest){
+				if(size() > capacity){
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+		expectedVersion = tree.getVersion();
+	}
+
+	/* ************************************************************************** */
+	/* ***************************** PRIVATE METHODS **************************** */
+	/* ************************************************************************** */
+
+	/*
+	 * Looks up a fresh entry, discarding it if it is stale. Out-of-band modifications of the tree flush everything.
+	 */
+	private Entry lookup(QueryKey key){
+		if(tree.getVersion() != expectedVersion){
+			invalidations += cache.size();
+			cache.clear();
+			expectedVersion = tree.getVersion();
+		}
+		Entry e = cache.get(key);
+		if(e != null && e.version != tree.getVersion()){
+			cache.remove(key);
+			invalidations++;
+			e = null;
+		}
+		if(e == null)
+			misses++;
+		else
+			hits++;
+		return e;
+	}
+
+	/*
+	 * Called right after we modify the tree at p. A single-precision tree stores, and reports, p rounded to floats, so
+	 * that is the point that the cached balls are checked against.
+	 */
+	private void modified(KDPoint p, long versionBefore){
+		if(tree.getVersion() == versionBefore)
+			return; // No-op, e.g. deleting a point that was not there.
+		boolean outOfBand = versionBefore != expectedVersion;
+		expectedVersion = tree.getVersion();
+		if(outOfBand){
+			invalidations += cache.size();
+			cache.clear();
+			return;
+		}
+		if(invalidation == Invalidation.VERSION)
+			return; // Stale entries are discarded lazily, by lookup().
+		double[] stored = tree.isFloatStorage() ? new FloatKDPoint(p).toKDPoint().coords : p.coords;
+		Iterator<Map.Entry<QueryKey, Entry>> it = cache.entrySet().iterator();
+		while(it.hasNext()){
+			Map.Entry<QueryKey, Entry> mapEntry = it.next();
+			Entry e = mapEntry.getValue();
+			double[] anchor = mapEntry.getKey().anchor.coords;
+			double dist = 0.0;
+			for(int i = 0; i < anchor.length; i++){
+				double diff = anchor[i] - stored[i];
+				dist += diff * diff;
+			}
+			if(dist <= e.radius){
+				it.remove();
+				invalidations++;
+			} else {
+				e.version = expectedVersion; // Still valid on the new version.
+			}
+		}
+	}
+
+	/* ************************************************************************** */
+	/* ************************ PUBLIC (INTERFACE) METHODS ********************** */
+	/* ************************************************************************** */
+
+	@Override
+	public void insert(KDPoint p){
+		long before = tree.getVersion();
+		tree.insert(p);
+		modified(p, before);
+	}
+
+	@Override
+	public void delete(KDPoint p){
+		long before = tree.getVersion();
+		tree.delete(p);
+		modified(p, before);
+	}
+
+	@Override
+	public boolean search(KDPoint p){
+		return tree.search(p);
+	}
+
+	@Override
+	public Collection<KDPoint> range(KDPoint p, double range){
+		return tree.range(p, range);
+	}
+
+	@Override
+	public KDPoint nearestNeighbor(KDPoint p){
+		QueryKey key = new QueryKey(p, 0);
+		Entry e = lookup(key);
+		if(e == null){
+			KDPoint nn = tree.nearestNeighbor(p);
+			e = (nn == null) ? new Entry(new KDPoint[0], new double[0], false, tree.getVersion())
+					: new Entry(new KDPoint[]{new KDPoint(nn)}, new double[]{nn.distance(p)}, true, tree.getVersion());
+			cache.put(key, e);
+		}
+		return (e.neighbors.length == 0) ? null : new KDPoint(e.neighbors[0]);
+	}
+
+	@Override
+	public BoundedPriorityQueue<KDPoint> kNearestNeighbors(int k, KDPoint p){
+		if(k <= 0)
+			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		QueryKey key = new QueryKey(p, k);
+		Entry e = lookup(key);
+		if(e == null){
+			BoundedPriorityQueue<KDPoint> queue = tree.kNearestNeighbors(k, p);
+			KDPoint[] neighbors = new KDPoint[queue.size()];
+			double[] distances = new double[queue.size()];
+			int i = 0;
+			for(KDPoint neighbor : queue){
+				neighbors[i] = new KDPoint(neighbor);
+				distances[i++] = neighbor.distance(p);
+			}
+			e = new Entry(neighbors, distances, neighbors.length == k, tree.getVersion());
+			cache.put(key, e);
+		}
+		BoundedPriorityQueue<KDPoint> result = new BoundedPriorityQueue<>(k);
+		for(int i = 0; i < e.neighbors.length; i++) // Already sorted, so every enqueue() is an append.
+			result.enqueue(new KDPoint(e.neighbors[i]), e.distances[i]);
+		return result;
+	}
+
+	@Override
+	public int height(){
+		return tree.height();
+	}
+
+	@Override
+	public boolean isEmpty(){
+		return tree.isEmpty();
+	}
+
+	@Override
+	public int count(){
+		return tree.count();
+	}
+
+	/* ************************************************************************** */
+	/* ******************************** METRICS ********************************* */
+	/* ************************************************************************** */
+
+	/**
+	 * Returns the fraction of nearest neighbor and <em>k</em>-NN queries that were answered from the cache.
+	 * @return The hit rate, in [0, 1]. If no queries have been made, returns 0.
+	 */
+	public double hitRate(){
+		long total = hits + misses;
+		return (total == 0) ? 0.0 : (double)hits / total;
+	}
+
+	/**
+	 * Returns the number of queries that were answered from the cache.
+	 * @return The number of cache hits.
+	 */
+	public long hits(){
+		return hits;
+	}
+
+	/**
+	 * Returns the number of queries that had to be forwarded to the tree.
+	 * @return The number of cache misses.
+	 */
+	public long misses(){
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries evicted to make room for newer ones.
+	 * @return The number of capacity evictions.
+	 */
+	public long evictions(){
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of entries discarded because a modification of the tree could have changed them.
+	 * @return The number of invalidated entries.
+	 */
+	public long invalidations(){
+		return invalidations;
+	}
+
+	/**
+	 * Returns the number of entries currently cached.
+	 * @return The size of the cache.
+	 */
+	public int cacheSize(){
+		return cache.size();
+	}
+
+	/**
+	 * Zeroes all metrics. The cached entries are kept.
+	 */
+	public void resetStatistics(){
+		hits = misses = evictions = invalidations = 0;
+	}
+
+	/**
+	 * Empties the cache. The metrics are kept.
+	 */
+	public void clearCache(){
+		cache.clear();
+	}
+
+	/**
+	 * Returns the {@link KDTree} behind the cache. Modifying it directly is allowed, but it flushes the cache.
+	 * @return The underlying {@link KDTree}.
+	 */
+	public KDTree getTree(){
+		return tree;
+	}
+
+	@Override
+	public String toString(){
+		return "CachedKDTree with " + cache.size() + " cached results: " + hits + " hits, " + misses + " misses, " +
+				evictions + " evictions and " + invalidations + " invalidations.";
+	}
+}
@@ -0,0 +1,158 @@
+package projects.spatial.trees;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.knnutils.BoundedPriorityQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>CachedKDTreeTests</tt> checks that {@link CachedKDTree} answers every query exactly as the {@link KDTree} behind
+ * it would, under both {@link CachedKDTree.Invalidation} strategies and both storage precisions.</p>
+ *
+ * @see CachedKDTree
+ */
+public class CachedKDTreeTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int SCALE = 10;
+	private static final int ANCHORS = 30;
+	private static final int MAX_ITER = 5000;
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	private KDPoint randomPoint(){
+		return new KDPoint(SCALE * r.nextDouble(), SCALE * r.nextDouble());
+	}
+
+	private static List<Double> distances(BoundedPriorityQueue<KDPoint> queue, KDPoint anchor){
+		List<Double> distances = new ArrayList<>();
+		for(KDPoint p : queue)
+			distances.add(p.distance(anchor));
+		return distances;
+	}
+
+	/*
+	 * Replays random insertions, deletions and queries against a cached tree and a plain one. Anchors come from a small
+	 * pool, so that most queries hit the cache. Ties make the neighbors themselves ambiguous, so we compare distances.
+	 */
+	private void checkAgainstPlainTree(boolean floatStorage, CachedKDTree.Invalidation invalidation){
+		CachedKDTree cached = new CachedKDTree(new KDTree(2, floatStorage), 16, invalidation);
+		KDTree plain = new KDTree(2, floatStorage);
+		KDPoint[] anchors = new KDPoint[ANCHORS];
+		for(int i = 0; i < ANCHORS; i++)
+			anchors[i] = randomPoint();
+		List<KDPoint> inserted = new ArrayList<>();
+		for(int i = 0; i < MAX_ITER; i++){
+			int op = r.nextInt(10);
+			if(op < 2){
+				KDPoint p = randomPoint();
+				inserted.add(p);
+				cached.insert(p);
+				plain.insert(p);
+			} else if(op < 3 && !inserted.isEmpty()){
+				KDPoint p = inserted.remove(r.nextInt(inserted.size()));
+				cached.delete(p);
+				plain.delete(p);
+			} else {
+				KDPoint anchor = anchors[r.nextInt(ANCHORS)];
+				if(r.nextBoolean()){
+					KDPoint expected = plain.nearestNeighbor(anchor), actual = cached.nearestNeighbor(anchor);
+					if(expected == null)
+						assertNull(actual);
+					else
+						assertEquals(expected.distance(anchor), actual.distance(anchor), 0.0);
+				} else {
+					int k = 1 + r.nextInt(4);
+					assertEquals(distances(plain.kNearestNeighbors(k, anchor), anchor),
+							distances(cached.kNearestNeighbors(k, anchor), anchor));
+				}
+			}
+		}
+		assertEquals(plain.count(), cached.count());
+		assertTrue(cached.hits() > 0);
+	}
+
+	@Test
+	public void testRegionInvalidation() {
+		checkAgainstPlainTree(false, CachedKDTree.Invalidation.REGION);
+	}
+
+	@Test
+	public void testVersionInvalidation() {
+		checkAgainstPlainTree(false, CachedKDTree.Invalidation.VERSION);
+	}
+
+	@Test
+	public void testRegionInvalidationWithFloatStorage() {
+		checkAgainstPlainTree(true, CachedKDTree.Invalidation.REGION);
+	}
+
+	@Test
+	public void testVersionInvalidationWithFloatStorage() {
+		checkAgainstPlainTree(true, CachedKDTree.Invalidation.VERSION);
+	}
+
+	@Test
+	public void testRoundedInsertionInvalidates() {
+		CachedKDTree cached = new CachedKDTree(new KDTree(2, true));
+		KDPoint origin = new KDPoint(0, 0);
+		cached.insert(new KDPoint(1, 0));
+		assertEquals(new KDPoint(1, 0), cached.nearestNeighbor(origin));
+		// Just outside the unit circle in double precision, but inside it once rounded to floats, as the tree stores it.
+		KDPoint p = new KDPoint(0.4102567244281184, 0.9119700767468595);
+		assertTrue(p.distance(origin) > 1);
+		cached.insert(p);
+		assertEquals(cached.getTree().nearestNeighbor(origin), cached.nearestNeighbor(origin));
+		assertTrue(cached.nearestNeighbor(origin).distance(origin) < 1);
+	}
+
+	@Test
+	public void testOutOfBandModificationsFlush() {
+		CachedKDTree cached = new CachedKDTree(new KDTree());
+		KDPoint anchor = new KDPoint(0, 0);
+		cached.insert(new KDPoint(5, 5));
+		assertEquals(new KDPoint(5, 5), cached.nearestNeighbor(anchor));
+		cached.getTree().insert(new KDPoint(1, 1)); // Bypasses the cache.
+		assertEquals(new KDPoint(1, 1), cached.nearestNeighbor(anchor));
+		assertEquals(2, cached.misses());
+		assertEquals(1, cached.invalidations());
+	}
+
+	@Test
+	public void testLRUEviction() {
+		CachedKDTree cached = new CachedKDTree(new KDTree(), 2, CachedKDTree.Invalidation.REGION);
+		cached.insert(new KDPoint(0, 0));
+		KDPoint a = new KDPoint(1, 1), b = new KDPoint(2, 2), c = new KDPoint(3, 3);
+		cached.nearestNeighbor(a);
+		cached.nearestNeighbor(b);
+		cached.nearestNeighbor(a); // b is now the least recently used.
+		cached.nearestNeighbor(c);
+		assertEquals(1, cached.evictions());
+		assertEquals(2, cached.cacheSize());
+		long misses = cached.misses();
+		cached.nearestNeighbor(a);
+		assertEquals(misses, cached.misses());
+		cached.nearestNeighbor(b);
+		assertEquals(misses + 1, cached.misses());
+		assertEquals(new KDPoint(-0.0, 0.0), new KDPoint(0.0, -0.0)); // Both zeros key the same entry, as for equals().
+		cached.nearestNeighbor(new KDPoint(-1.0, -0.0));
+		misses = cached.misses();
+		cached.nearestNeighbor(new KDPoint(-1.0, 0.0));
+		assertEquals(misses, cached.misses());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInvalidCapacity() {
+		new CachedKDTree(new KDTree(), 0, CachedKDTree.Invalidation.VERSION);
+	}
+}
@@ -0,0 +1,296 @@
+package projects.spatial.trees;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.knnutils.BoundedPriorityQueue;
+import projects.spatial.knnutils.NNData;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>{@link KDSegment} is an <b>immutable</b>, perfectly balanced <em>K</em>-D tree over a fixed set of
+ * {@link KDPoint}s. It is the building block of {@link LogarithmicKDIndex}.</p>
+ *
+ * <p>There are no node objects: the coordinates of all points are packed in a single <tt>double[]</tt> and the
+ * tree is implicit in their order. The subtree over the index range <tt>[lo, hi)</tt> has its root at
+ * <tt>mid = (lo + hi) / 2</tt>, its left subtree over <tt>[lo, mid)</tt> and its right subtree over <tt>(mid, hi)</tt>.
+ * Construction places the median of the cutting dimension at <tt>mid</tt> through quickselect, so the tree has
+ * a height of exactly floor(log<sub>2</sub>n). Because quickselect does not separate ties, points whose cutting
+ * coordinate equals the median's may end up on either side.</p>
+ *
+ * <p>The only mutable state is a set of <em>tombstones</em>: {@link #kill(int)} marks a point as deleted, and all
+ * queries skip it from then on. Dead points are dropped when segments are merged.</p>
+ *
+ * @see LogarithmicKDIndex
+ */
+final class KDSegment {
+
+    private final double[] coords; // Packed, n * dims long.
+    private final int n, dims;
+    private final BitSet dead;
+    private int deadCount;
+
+    /**
+     * Builds a balanced segment over the first <tt>n</tt> points packed in <tt>coords</tt>. The array is <b>adopted</b>
+     * and reordered in place, so the caller should not hold on to it.
+     * @param coords The packed coordinates of the points.
+     * @param n The number of points.
+     * @param dims The dimensionality of the points.
+     */
+    KDSegment(double[] coords, int n, int dims){
+        this.coords = coords;
+        this.n = n;
+        this.dims = dims;
+        dead = new BitSet(n);
+        deadCount = 0;
+        build(0, n, 0);
+    }
+
+    /* ******************************* CONSTRUCTION ******************************** */
+
+    private void build(int lo, int hi, int dim){
+        if(hi - lo <= 1)
+            return;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, dim);
+        int nextDim = (dim + 1) % dims;
+        build(lo, mid, nextDim);
+        build(mid + 1, hi, nextDim);
+    }
+
+    /*
+     * Quickselect over the inclusive index range [lo, hi], ordering by dimension dim, such that
+     * the element that belongs at index k ends up there. Uses Hoare's partitioning scheme, which
+     * performs far fewer swaps than Lomuto's; every swap moves a whole point.
+     */
+    private void select(int lo, int hi, int k, int dim){
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        while(lo < hi){
+            double pivot = coords[(lo + rng.nextInt(hi - lo + 1)) * dims + dim];
+            int i = lo, j = hi;
+            while(i <= j){
+                while(coords[i * dims + dim] < pivot)
+                    i++;
+                while(coords[j * dims + dim] > pivot)
+                    j--;
+                if(i <= j)
+                    swap(i++, j--);
+            }
+            // Now [lo, j] <= pivot, [i, hi] >= pivot, and anything in between equals the pivot.
+            if(k <= j)
+                hi = j;
+            else if(k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private void swap(int i, int j){
+        if(i == j)
+            return;
+        int a = i * dims, b = j * dims;
+        for(int d = 0; d < dims; d++){
+            double tmp = coords[a + d];
+            coords[a + d] = coords[b + d];
+            coords[b + d] = tmp;
+        }
+    }
+
+    /* ****************************** POINT HELPERS ******************************** */
+
+    private double distance(int i, KDPoint p){
+        double sum = 0.0;
+        int base = i * dims;
+        for(int d = 0; d < dims; d++){
+            double diff = coords[base + d] - p.coords[d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private boolean matches(int i, KDPoint p){
+        int base = i * dims;
+        for(int d = 0; d < dims; d++)
+            if(coords[base + d] != p.coords[d])
+                return false;
+        return true;
+    }
+
+    /**
+     * Materializes the point at index <tt>i</tt> into a freshly allocated {@link KDPoint}.
+     * @param i The index of the point.
+     * @return A deep copy of the point at index <tt>i</tt>.
+     */
+    KDPoint pointAt(int i){
+        KDPoint p = new KDPoint(dims);
+        System.arraycopy(coords, i * dims, p.coords, 0, dims);
+        return p;
+    }
+
+    /* ***************************** TOMBSTONES *********************************** */
+
+    /**
+     * Finds a <b>live</b> copy of <tt>p</tt> in the segment.
+     * @param p The {@link KDPoint} to look for.
+     * @return The index of a live copy of <tt>p</tt>, or -1 if there is none.
+     */
+    int indexOf(KDPoint p){
+        return indexOf(p, 0, n, 0);
+    }
+
+    private int indexOf(KDPoint p, int lo, int hi, int dim){
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            double split = coords[mid * dims + dim];
+            int nextDim = (dim + 1) % dims;
+            if(p.coords[dim] < split)
+                hi = mid;
+            else if(p.coords[dim] > split)
+                lo = mid + 1;
+            else { // Ties can lie on both sides.
+                if(!dead.get(mid) && matches(mid, p))
+                    return mid;
+                int found = indexOf(p, lo, mid, nextDim);
+                if(found != -1)
+                    return found;
+                lo = mid + 1;
+            }
+            dim = nextDim;
+        }
+        return -1;
+    }
+
+    /**
+     * Marks the point at index <tt>i</tt> as deleted.
+     * @param i The index of the point, as returned by {@link #indexOf(KDPoint)}.
+     * @return <tt>true</tt> if the point was live before the call, <tt>false</tt> otherwise.
+     */
+    boolean kill(int i){
+        if(dead.get(i))
+            return false;
+        dead.set(i);
+        deadCount++;
+        return true;
+    }
+
+    boolean isDead(int i){
+        return dead.get(i);
+    }
+
+    /**
+     * Returns a copy of the tombstones, so that a merge can later find out which points died while it was running.
+     * @return A copy of the set of dead indices.
+     */
+    BitSet tombstones(){
+        return (BitSet)dead.clone();
+    }
+
+    /**
+     * Appends the coordinates of all points that are live according to <tt>tombstones</tt> to <tt>dest</tt>.
+     * @param tombstones A (possibly stale) copy of this segment's tombstones.
+     * @param dest The packed destination array.
+     * @param offset The point index in <tt>dest</tt> at which to start writing.
+     * @return The number of points written.
+     */
+    int copyLive(BitSet tombstones, double[] dest, int offset){
+        int written = 0;
+        for(int i = 0; i < n; i++)
+            if(!tombstones.get(i))
+                System.arraycopy(coords, i * dims, dest, (offset + written++) * dims, dims);
+        return written;
+    }
+
+    int size(){
+        return n;
+    }
+
+    int liveCount(){
+        return n - deadCount;
+    }
+
+    /**
+     * The height of the implicit tree, which is floor(log<sub>2</sub>n) by construction.
+     * @return The height of the segment, or -1 if it is empty.
+     */
+    int height(){
+        return (n == 0) ? -1 : 31 - Integer.numberOfLeadingZeros(n);
+    }
+
+    /* ******************************** QUERIES *********************************** */
+
+    void range(KDPoint anchor, Collection<KDPoint> results, double range){
+        range(anchor, results, range, 0, n, 0);
+    }
+
+    private void range(KDPoint anchor, Collection<KDPoint> results, double range, int lo, int hi, int dim){
+        if(lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        if(!dead.get(mid) && distance(mid, anchor) <= range && !matches(mid, anchor))
+            results.add(pointAt(mid));
+        int nextDim = (dim + 1) % dims;
+        double diff = anchor.coords[dim] - coords[mid * dims + dim];
+        if(diff <= 0 || diff * diff <= range)
+            range(anchor, results, range, lo, mid, nextDim);
+        if(diff >= 0 || diff * diff <= range)
+            range(anchor, results, range, mid + 1, hi, nextDim);
+    }
+
+    void nearestNeighbor(KDPoint anchor, NNData<KDPoint> n){
+        nearestNeighbor(anchor, n, 0, this.n, 0);
+    }
+
+    private void nearestNeighbor(KDPoint anchor, NNData<KDPoint> n, int lo, int hi, int dim){
+        if(lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        if(!dead.get(mid) && !matches(mid, anchor)){
+            double dist = distance(mid, anchor);
+            if(n.bestDist == KDTree.INFTY || dist < n.bestDist){
+                n.bestDist = dist;
+                n.bestGuess = pointAt(mid);
+            }
+        }
+        int nextDim = (dim + 1) % dims;
+        double diff = anchor.coords[dim] - coords[mid * dims + dim];
+        boolean leftFirst = diff < 0;
+        for(int side = 0; side < 2; side++){
+            boolean goLeft = (side == 0) == leftFirst;
+            if(side == 1 && n.bestDist != KDTree.INFTY && diff * diff > n.bestDist)
+                break; // The far side cannot contain anything better.
+            if(goLeft)
+                nearestNeighbor(anchor, n, lo, mid, nextDim);
+            else
+                nearestNeighbor(anchor, n, mid + 1, hi, nextDim);
+        }
+    }
+
+    void kNearestNeighbors(int k, KDPoint anchor, BoundedPriorityQueue<KDPoint> queue){
+        kNearestNeighbors(k, anchor, queue, 0, n, 0);
+    }
+
+    private void kNearestNeighbors(int k, KDPoint anchor, BoundedPriorityQueue<KDPoint> queue, int lo, int hi, int dim){
+        if(lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        if(!dead.get(mid) && !matches(mid, anchor)){
+            double dist = distance(mid, anchor);
+            if(queue.size() < k || dist < queue.lastPriority())
+                queue.enqueue(pointAt(mid), dist);
+        }
+        int nextDim = (dim + 1) % dims;
+        double diff = anchor.coords[dim] - coords[mid * dims + dim];
+        boolean leftFirst = diff < 0;
+        for(int side = 0; side < 2; side++){
+            boolean goLeft = (side == 0) == leftFirst;
+            if(side == 1 && queue.size() == k && diff * diff >= queue.lastPriority())
+                break;
+            if(goLeft)
+                kNearestNeighbors(k, anchor, queue, lo, mid, nextDim);
+            else
+                kNearestNeighbors(k, anchor, queue, mid + 1, hi, nextDim);
+        }
+    }
+}
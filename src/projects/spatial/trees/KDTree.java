@@ -1,7 +1,11 @@
 package projects.spatial.trees;
+import projects.spatial.kdpoint.FloatKDPoint;
+import projects.spatial.kdpoint.HilbertCurve;
 import projects.spatial.kdpoint.KDPoint;
 import projects.spatial.knnutils.*;
 import projects.spatial.nodes.KDTreeNode;
+import projects.spatial.nodes.Relocation;
+import projects.spatial.nodes.ShapeProfile;
 import java.util.Collection;
 import java.util.LinkedList;
 
@@ -17,8 +21,18 @@ import java.util.LinkedList;
  * slides and the textbook for exact algorithms, with code samples, of insertion, deletion and range / kNN
  * queries.</p>
  *
- * <p><b>YOU SHOULD ***NOT*** EDIT THIS CLASS!</b> If you do, you risk <b>not passing our tests!</b> The
- * entire functionality will be implemented in {@link KDTreeNode}.</p>
+ * <p>A tree can optionally be created in <b>lazy deletion</b> mode, through {@link #KDTree(int, boolean, double)}. Deletions
+ * then only mark the node of the deleted point as a tombstone, which queries skip, and the highest subtree on the path of
+ * the deletion whose fraction of tombstones exceeds a threshold is rebuilt, balanced and without tombstones, right away.
+ * This keeps deletions from restructuring the tree one node at a time, and keeps it balanced under heavy churn.</p>
+ *
+ * <p>A tree can also maintain an <b>exact-match index</b> on the side, through {@link #KDTree(int, boolean, double, boolean)}:
+ * a {@link PointIndex} from every stored point to its multiplicity. {@link #search(KDPoint)} then takes expected O(1) time,
+ * and {@link #delete(KDPoint)} and {@link #update(KDPoint, KDPoint)} find out whether their target exists without
+ * descending the tree, so that a deletion makes a single descent instead of two.</p>
+ *
+ * <p>The recursive work on the structure of the tree is done by {@link KDTreeNode}; the tree itself keeps the count of
+ * its points, the options it was created with, and the exact-match index.</p>
  *
  * @author  <a href ="mailto:jasonfil@cs.umd.edu">Jason Filippou</a>
  *
@@ -70,6 +84,31 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 	 */
 	private int count;
 
+	/**
+	 * Whether the nodes of <tt>this</tt> store their coordinates as <tt>float</tt>s.
+	 * @see #KDTree(int, boolean)
+	 */
+	private boolean floatStorage;
+
+	/**
+	 * A counter of successful modifications, which lets clients such as {@link CachedKDTree} find out whether
+	 * results that they computed earlier are still valid.
+	 * @see #getVersion()
+	 */
+	private long version;
+
+	/**
+	 * The maximum fraction of tombstones that a subtree can hold before it is rebuilt, or 0 if deletions are eager.
+	 * @see #KDTree(int, boolean, double)
+	 */
+	private double tombstoneThreshold;
+
+	/**
+	 * The multiplicity of every stored point, or <tt>null</tt> if <tt>this</tt> maintains no exact-match index.
+	 * @see #KDTree(int, boolean, double, boolean)
+	 */
+	private PointIndex index;
+
 
 	/* *********************************************************************************************** */
 	/* *************************** PUBLIC METHOD IMPLEMENTATION ************************************* */
@@ -90,34 +129,184 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 	 * @throws RuntimeException if <tt>k&lt;=0</tt>.
 	 */
 	public KDTree(int k){
+		this(k, false);
+	}
+
+	/**
+	 * <p>This constructor additionally allows the user to select <b>single-precision</b> coordinate storage, which
+	 * halves the memory spent on coordinates. In that mode, every inserted {@link KDPoint} is rounded to the nearest
+	 * <tt>float</tt>; {@link #search(KDPoint)} and {@link #delete(KDPoint)} match the rounded value, and all returned
+	 * {@link KDPoint}s carry the rounded coordinates. Distances are still computed in <tt>double</tt>.</p>
+	 * @param k The dimensionality of <tt>this</tt>.
+	 * @param floatStorage If <tt>true</tt>, coordinates are stored as <tt>float</tt>s.
+	 * @throws RuntimeException if <tt>k&lt;=0</tt>.
+	 * @see projects.spatial.kdpoint.FloatKDPoint
+	 */
+	public KDTree(int k, boolean floatStorage){
+		this(k, floatStorage, 0);
+	}
+
+	/**
+	 * <p>This constructor additionally allows the user to select <b>lazy deletion</b>. With a positive
+	 * <tt>tombstoneThreshold</tt>, {@link #delete(KDPoint)} marks the node that holds the point as a <em>tombstone</em>
+	 * instead of restructuring the tree below it, and all queries skip tombstones. Once tombstones make up more than
+	 * <tt>tombstoneThreshold</tt> of any subtree on the path of a deletion, the highest such subtree is rebuilt into a
+	 * perfectly balanced one without them. {@link #liveCount()} and {@link #deadCount()} expose the number of points and
+	 * tombstones held.</p>
+	 *
+	 * <p>Lower thresholds keep the tree smaller at the expense of more frequent rebuilds. A threshold of 1 never
+	 * rebuilds anything, except for subtrees that hold nothing but tombstones, and {@link #compact()} can rebuild the
+	 * whole tree on demand.</p>
+	 * @param k The dimensionality of <tt>this</tt>.
+	 * @param floatStorage If <tt>true</tt>, coordinates are stored as <tt>float</tt>s.
+	 * @param tombstoneThreshold The maximum fraction of tombstones in any subtree, in (0, 1], or 0 for eager deletion.
+	 * @throws RuntimeException if <tt>k&lt;=0</tt>, or if <tt>tombstoneThreshold</tt> is not in [0, 1].
+	 * @see KDTreeNode#markDeleted(KDPoint, int, int)
+	 * @see KDTreeNode#compact(KDPoint, double, int, int)
+	 */
+	public KDTree(int k, boolean floatStorage, double tombstoneThreshold){
+		this(k, floatStorage, tombstoneThreshold, false);
+	}
+
+	/**
+	 * <p>This constructor additionally allows the user to maintain an <b>exact-match index</b>: an open-addressing hash
+	 * map from every stored {@link KDPoint} to its multiplicity. With it, {@link #search(KDPoint)} takes expected O(1)
+	 * time instead of O(height), and {@link #delete(KDPoint)} and {@link #update(KDPoint, KDPoint)} return immediately
+	 * for points that are not stored, and descend the tree only once for those that are. The price is an extra hash
+	 * map operation, and a copy of every distinct point, per modification.</p>
+	 * @param k The dimensionality of <tt>this</tt>.
+	 * @param floatStorage If <tt>true</tt>, coordinates are stored as <tt>float</tt>s.
+	 * @param tombstoneThreshold The maximum fraction of tombstones in any subtree, in (0, 1], or 0 for eager deletion.
+	 * @param exactMatchIndex If <tt>true</tt>, <tt>this</tt> maintains a {@link PointIndex} of its points.
+	 * @throws RuntimeException if <tt>k&lt;=0</tt>, or if <tt>tombstoneThreshold</tt> is not in [0, 1].
+	 * @see PointIndex
+	 */
+	public KDTree(int k, boolean floatStorage, double tombstoneThreshold, boolean exactMatchIndex){
 		if(k <= 0)
 			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		if(!(tombstoneThreshold >= 0 && tombstoneThreshold <= 1))
+			throw new RuntimeException("The tombstone threshold provided, " + tombstoneThreshold + ", is invalid: Please provide a value in [0, 1].");
 		dims = k;
 		root = null;
 		count = 0;
+		this.floatStorage = floatStorage;
+		version = 0;
+		this.tombstoneThreshold = tombstoneThreshold;
+		index = exactMatchIndex ? new PointIndex() : null;
+	}
+
+	/*
+	 * The point that the tree actually stores for p, which is what the index is keyed on.
+	 */
+	private KDPoint stored(KDPoint p){
+		return floatStorage ? new FloatKDPoint(p).toKDPoint() : p;
 	}
 
 	@Override
 	public void insert(KDPoint p){
 		if(root == null)
-			root = new KDTreeNode(p);
+			root = new KDTreeNode(p, floatStorage);
 		else
 			root.insert(p, 0, dims);
+		if(index != null)
+			index.add(stored(p), 1);
 		count++;
+		version++;
+	}
+
+	/**
+	 * <p>Inserts a batch of {@link KDPoint}s. If <tt>this</tt> is empty, this is a <b>bulk load</b>: the tree is built
+	 * bottom-up, perfectly balanced, by repeatedly splitting the batch at its median, in O(n log n) time, and its
+	 * nodes are allocated in pre-order, so that every subtree, which spans a box of space, occupies a contiguous stretch of
+	 * memory. Otherwise, the batch is sorted along a {@link HilbertCurve} and inserted point by point, so that consecutive
+	 * insertions follow nearly the same path, and the new nodes of every region of space are allocated together.</p>
+	 * @param points The {@link KDPoint}s to insert. The collection is not modified.
+	 * @param parallel If <tt>true</tt>, the bulk load builds subtrees, and the batch insertion sorts, in parallel on the
+	 *                 common {@link java.util.concurrent.ForkJoinPool}.
+	 * @see KDTreeNode#buildParallel(KDPoint[], int, int, boolean)
+	 * @see HilbertCurve#sort(KDPoint[], boolean)
+	 */
+	public void insertAll(Collection<KDPoint> points, boolean parallel){
+		if(points.isEmpty())
+			return;
+		KDPoint[] batch = points.toArray(new KDPoint[0]);
+		if(root != null){
+			HilbertCurve.sort(batch, parallel);
+			for(KDPoint p : batch)
+				insert(p);
+			return;
+		}
+		root = parallel ? KDTreeNode.buildParallel(batch, 0, dims, floatStorage) : KDTreeNode.build(batch, 0, dims, floatStorage);
+		if(index != null)
+			for(KDPoint p : batch)
+				index.add(stored(p), 1);
+		count = batch.length;
+		version++;
+	}
+
+	/**
+	 * Inserts a batch of {@link KDPoint}s sequentially.
+	 * @param points The {@link KDPoint}s to insert. The collection is not modified.
+	 * @see #insertAll(Collection, boolean)
+	 */
+	public void insertAll(Collection<KDPoint> points){
+		insertAll(points, false);
 	}
 
 	@Override
 	public void delete(KDPoint p){
-		if (root != null) {
-			if(search(p)) {
-				root = root.delete(p, 0, dims);
-				count--; // Guaranteed successful deletion.
-			}
+		if(root == null || (index != null && !index.containsKey(stored(p))))
+			return;
+		if(isLazyDeletion()){
+			if(!root.markDeleted(p, 0, dims))
+				return;
+			root = root.compact(p, tombstoneThreshold, 0, dims);
+		} else {
+			if(index == null && !search(p))
+				return;
+			int before = root.size();
+			root = root.delete(p, 0, dims);
+			if(root != null && root.size() == before)
+				return; // Nothing was removed, so neither the count nor the index may change.
+		}
+		if(index != null)
+			index.add(stored(p), -1);
+		count--;
+		version++;
+	}
+
+	/**
+	 * <p>Moves the {@link KDPoint} <tt>oldP</tt> to the position <tt>newP</tt>. This is equivalent to deleting
+	 * <tt>oldP</tt> and inserting <tt>newP</tt>, but it takes a single descent from the root instead of three (search,
+	 * delete, insert), and the point is overwritten in place whenever that keeps the tree valid, which is the common
+	 * case for small moves. If <tt>oldP</tt> is stored more than once, only one copy is moved.</p>
+	 * @param oldP The current position of the point.
+	 * @param newP The new position of the point.
+	 * @return <tt>true</tt> if <tt>oldP</tt> was found and moved, <tt>false</tt> if it was not in the tree, in which case
+	 * the tree is left unchanged.
+	 * @see KDTreeNode#update(Relocation, int, int)
+	 */
+	public boolean update(KDPoint oldP, KDPoint newP){
+		if(root == null || (index != null && !index.containsKey(stored(oldP))))
+			return false;
+		Relocation r = new Relocation(oldP, newP, isLazyDeletion());
+		root = root.update(r, 0, dims);
+		if(!r.isFound())
+			return false;
+		if(r.isTombstoned())
+			root = root.compact(oldP, tombstoneThreshold, 0, dims);
+		if(index != null){
+			index.add(stored(oldP), -1);
+			index.add(stored(newP), 1);
 		}
+		version++;
+		return true;
 	}
 
 	@Override
 	public boolean search(KDPoint p){
+		if(index != null)
+			return index.containsKey(stored(p));
 		return (root != null) && root.search(p, 0, dims);
 	}
 
@@ -132,12 +321,57 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 		return pts;
 	}
 
+	/**
+	 * Performs a range query, sequentially or in parallel on the common {@link java.util.concurrent.ForkJoinPool}. A
+	 * parallel query forks at the top levels of the tree and collects points into per-task buffers, which it concatenates
+	 * at the end; it only pays off when the range covers a good part of a large tree.
+	 * @param p The query {@link KDPoint}.
+	 * @param range The maximum {@link KDPoint#distance(KDPoint) distance} from <tt>p</tt>, <b>INCLUSIVE</b>.
+	 * @param parallel If <tt>true</tt>, the query runs in parallel.
+	 * @return The {@link KDPoint}s within <tt>range</tt> of <tt>p</tt>, except for <tt>p</tt> itself, in the same order
+	 * either way.
+	 * @see KDTreeNode#parallelRange(KDPoint, double, int, int)
+	 */
+	public Collection<KDPoint> range(KDPoint p, double range, boolean parallel){
+		if(!parallel)
+			return range(p, range);
+		return (root == null) ? new LinkedList<KDPoint>() : root.parallelRange(p, range, 0, dims);
+	}
+
+	/**
+	 * Counts the {@link KDPoint}s that {@link #range(KDPoint, double)} would return, without allocating any of them.
+	 * @param p The &quot;anchor&quot; {@link KDPoint}.
+	 * @param range The <b>INCLUSIVE</b> range from <tt>p</tt>, in terms of {@link KDPoint#distance(KDPoint)}.
+	 * @return The number of {@link KDPoint}s within <tt>range</tt> of <tt>p</tt>, not counting copies of <tt>p</tt> itself.
+	 * @see #rangeCount(KDPoint, double, int)
+	 */
+	public int rangeCount(KDPoint p, double range){
+		return rangeCount(p, range, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Counts the {@link KDPoint}s that {@link #range(KDPoint, double)} would return, without allocating any of them,
+	 * and stops as soon as <tt>limit</tt> of them have been found. This is all that density-based algorithms such as
+	 * {@link projects.spatial.clustering.DBSCAN} need in order to tell dense regions apart.
+	 * @param p The &quot;anchor&quot; {@link KDPoint}.
+	 * @param range The <b>INCLUSIVE</b> range from <tt>p</tt>, in terms of {@link KDPoint#distance(KDPoint)}.
+	 * @param limit The count at which to stop counting.
+	 * @return The number of {@link KDPoint}s within <tt>range</tt> of <tt>p</tt>, not counting copies of <tt>p</tt> itself,
+	 * or <tt>limit</tt> if there are more.
+	 */
+	public int rangeCount(KDPoint p, double range, int limit){
+		return (root == null || limit <= 0) ? 0 : root.rangeCount(p, range, limit, 0, dims);
+	}
+
 	@Override
 	public KDPoint nearestNeighbor(KDPoint p){
-		NNData<KDPoint> n = new NNData<KDPoint>(null, INFTY);
-		if(root != null)
-			n = root.nearestNeighbor(p, 0, n, dims);
-		return n.bestGuess;
+		if(root == null)
+			return null;
+		NNContext<KDTreeNode> context = NNContext.forCurrentThread(); // Nothing is allocated but the returned copy.
+		root.nearestNeighbor(p, 0, context, dims);
+		KDTreeNode best = context.best();
+		context.reset();
+		return (best == null) ? null : best.getPoint();
 	}
 
 	@Override
@@ -149,6 +383,16 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 			root.kNearestNeighbors(k, p, queue, 0, dims);
 		return queue; // Might be empty; that's not a problem.
 	}
+	/**
+	 * Walks the tree once and reports its shape: nodes and leaves per depth, average leaf depth, tombstones and an estimate
+	 * of its memory footprint. A large {@link #height()} along with a small average leaf depth points at a few long paths,
+	 * which {@link #compact()} or a {@link #insertAll(Collection) bulk load} would flatten.
+	 * @return A {@link ShapeProfile} of the tree; it is empty if the tree is.
+	 */
+	public ShapeProfile profile(){
+		return KDTreeNode.profile(root);
+	}
+
 	@Override
 	public int height(){
 		return root == null ? -1 : root.height();
@@ -156,7 +400,7 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 
 	@Override
 	public boolean isEmpty(){
-		return height() == -1;
+		return count == 0;
 	}
 
 	@Override
@@ -164,13 +408,85 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 		return count;
 	}
 
+	/**
+	 * Returns the number of {@link KDPoint}s held by <tt>this</tt>, which is the same as {@link #count()}.
+	 * @return The number of points that queries can report.
+	 * @see #deadCount()
+	 */
+	public int liveCount(){
+		return count;
+	}
+
+	/**
+	 * Returns the number of tombstones that <tt>this</tt> currently holds, which is always 0 unless deletions are lazy.
+	 * @return The number of lazily deleted nodes that have not been compacted away yet.
+	 * @see #KDTree(int, boolean, double)
+	 */
+	public int deadCount(){
+		return root == null ? 0 : root.deadCount();
+	}
+
+	/**
+	 * Reports whether deletions mark nodes as tombstones instead of removing them.
+	 * @return <tt>true</tt> if <tt>this</tt> was created with a positive tombstone threshold, <tt>false</tt> otherwise.
+	 * @see #KDTree(int, boolean, double)
+	 */
+	public boolean isLazyDeletion(){
+		return tombstoneThreshold > 0;
+	}
+
+	/**
+	 * Reports whether <tt>this</tt> maintains an exact-match index of its points.
+	 * @return <tt>true</tt> if <tt>this</tt> was created with an exact-match index, <tt>false</tt> otherwise.
+	 * @see #KDTree(int, boolean, double, boolean)
+	 */
+	public boolean hasExactMatchIndex(){
+		return index != null;
+	}
+
+	/**
+	 * Returns the maximum fraction of tombstones that any subtree can hold before it is rebuilt.
+	 * @return The tombstone threshold, or 0 if deletions are eager.
+	 */
+	public double getTombstoneThreshold(){
+		return tombstoneThreshold;
+	}
+
+	/**
+	 * Rebuilds the whole tree into a perfectly balanced one, dropping all of its tombstones. This does not change the
+	 * points held, so the {@link #getVersion() version} stays the same.
+	 */
+	public void compact(){
+		if(root != null)
+			root = root.compactAll(0, dims);
+	}
+
 	/**
 	 * Returns the {@link KDPoint} located at the <b>root</b>of the <tt>KDTree</tt>.
-	 * Only non-interface method! Added primarily for debugging purposes.
+	 * Only non-interface method! Added primarily for debugging purposes. In lazy deletion mode, the root might be a
+	 * tombstone, whose point is not in the tree anymore.
 	 * @return The {@link KDPoint} located at the root of the tree, or <tt>null</tt>
 	 * if the tree is empty.
 	 */
 	public KDPoint getRoot(){
 		return root == null ? null : new KDPoint(root.getPoint());
 	}
+
+	/**
+	 * Reports whether <tt>this</tt> stores its coordinates in single precision.
+	 * @return <tt>true</tt> if coordinates are stored as <tt>float</tt>s, <tt>false</tt> otherwise.
+	 * @see #KDTree(int, boolean)
+	 */
+	public boolean isFloatStorage(){
+		return floatStorage;
+	}
+
+	/**
+	 * Returns the modification version of <tt>this</tt>, which is incremented by every successful insertion,
+	 * deletion or update. Two queries that observed the same version are guaranteed to have observed the same tree.
+	 * @return The current modification version.
+	 */
+	public long getVersion(){
+		return version;
+	}
 }
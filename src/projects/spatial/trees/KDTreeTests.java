@@ -0,0 +1,398 @@
+package projects.spatial.trees;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.knnutils.BoundedPriorityQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>KDTreeTests</tt> checks {@link KDTree} against a brute-force list of points, with eager and lazy deletions,
+ * and with and without an exact-match {@link PointIndex}, and checks that tombstones are never reported by queries, nor
+ * counted as points.</p>
+ *
+ * @see KDTree
+ */
+public class KDTreeTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int GRID = 30; // Points on a small grid, to have plenty of duplicates and ties.
+	private static final int MAX_ITER = 20000;
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	private KDPoint gridPoint(){
+		return new KDPoint(r.nextInt(GRID), r.nextInt(GRID));
+	}
+
+	private static List<String> sorted(Collection<KDPoint> points){
+		List<String> keys = new ArrayList<>();
+		for(KDPoint p : points)
+			keys.add(p.toString());
+		keys.sort(null);
+		return keys;
+	}
+
+	private static List<KDPoint> bruteForceRange(List<KDPoint> points, KDPoint anchor, double range){
+		List<KDPoint> result = new ArrayList<>();
+		for(KDPoint p : points)
+			if(p.distance(anchor) <= range && !p.equals(anchor))
+				result.add(p);
+		return result;
+	}
+
+	private static List<Double> bruteForceKNN(List<KDPoint> points, KDPoint anchor, int k){
+		List<Double> distances = new ArrayList<>();
+		for(KDPoint p : points)
+			if(!p.equals(anchor))
+				distances.add(p.distance(anchor));
+		distances.sort(null);
+		return distances.subList(0, Math.min(k, distances.size()));
+	}
+
+	private static List<Double> distances(BoundedPriorityQueue<KDPoint> queue, KDPoint anchor){
+		List<Double> distances = new ArrayList<>();
+		for(KDPoint p : queue)
+			distances.add(p.distance(anchor));
+		return distances;
+	}
+
+	private void checkQuery(KDTree tree, List<KDPoint> points, KDPoint anchor){
+		assertEquals(points.contains(anchor), tree.search(anchor));
+		double range = r.nextInt(20);
+		assertEquals(sorted(bruteForceRange(points, anchor, range)), sorted(tree.range(anchor, range)));
+		assertEquals(bruteForceRange(points, anchor, range).size(), tree.rangeCount(anchor, range));
+		KDPoint nn = tree.nearestNeighbor(anchor);
+		List<Double> expected = bruteForceKNN(points, anchor, 1);
+		if(expected.isEmpty())
+			assertNull(nn);
+		else
+			assertEquals(expected.get(0), nn.distance(anchor), 0.0);
+		int k = 1 + r.nextInt(6);
+		assertEquals(bruteForceKNN(points, anchor, k), distances(tree.kNearestNeighbors(k, anchor), anchor));
+	}
+
+	/*
+	 * Inserts, deletes and queries at random; deletions outnumber insertions in the second half, so that the tree
+	 * empties out and fills up again with plenty of tombstones on the way.
+	 */
+	private void checkAgainstBruteForce(KDTree tree){
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < MAX_ITER; i++){
+			KDPoint p = gridPoint();
+			int op = r.nextInt(10);
+			boolean shrinking = i > MAX_ITER / 2 && (i / 1000) % 2 == 0;
+			if(op < (shrinking ? 2 : 5)){
+				tree.insert(p);
+				points.add(p);
+			} else if(op < 8){
+				KDPoint victim = (points.isEmpty() || r.nextBoolean()) ? p : points.get(r.nextInt(points.size()));
+				tree.delete(victim);
+				points.remove(victim);
+			} else {
+				checkQuery(tree, points, p);
+			}
+			assertEquals(points.size(), tree.count());
+			assertEquals(points.isEmpty(), tree.isEmpty());
+			if(tree.isLazyDeletion())
+				assertTrue(tree.deadCount() <= tree.getTombstoneThreshold() * (tree.count() + tree.deadCount()));
+			else
+				assertEquals(0, tree.deadCount());
+		}
+	}
+
+	@Test
+	public void testAgainstBruteForce() {
+		checkAgainstBruteForce(new KDTree(2));
+	}
+
+	@Test
+	public void testLazyDeletionAgainstBruteForce() {
+		checkAgainstBruteForce(new KDTree(2, false, 0.25));
+	}
+
+	@Test
+	public void testLazyDeletionAgainstBruteForceWithFloatStorage() {
+		checkAgainstBruteForce(new KDTree(2, true, 0.5));
+	}
+
+	@Test
+	public void testQueriesSkipTombstones() {
+		KDTree tree = new KDTree(2, false, 1.0); // Subtrees are never rebuilt, so every deleted node stays a tombstone.
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < 500; i++){
+			KDPoint p = gridPoint();
+			tree.insert(p);
+			points.add(p);
+		}
+		for(int i = 0; i < 400; i++)
+			tree.delete(points.remove(r.nextInt(points.size())));
+		assertEquals(400, tree.deadCount());
+		assertEquals(100, tree.count());
+		for(int i = 0; i < 200; i++)
+			checkQuery(tree, points, gridPoint());
+		tree.compact();
+		assertEquals(0, tree.deadCount());
+		assertEquals(100, tree.count());
+		for(int i = 0; i < 200; i++)
+			checkQuery(tree, points, gridPoint());
+	}
+
+	@Test
+	public void testTombstoneAtRoot() {
+		KDTree tree = new KDTree(2, false, 1.0);
+		tree.insert(new KDPoint(5, 5));
+		tree.insert(new KDPoint(2, 2));
+		tree.delete(new KDPoint(5, 5));
+		assertEquals(new KDPoint(5, 5), tree.getRoot()); // Still guiding searches.
+		assertEquals(1, tree.count());
+		assertFalse(tree.isEmpty());
+		assertFalse(tree.search(new KDPoint(5, 5)));
+		assertEquals(new KDPoint(2, 2), tree.nearestNeighbor(new KDPoint(5, 4)));
+		tree.delete(new KDPoint(2, 2));
+		assertEquals(0, tree.count());
+		assertTrue(tree.isEmpty());
+		assertEquals(2, tree.deadCount());
+		assertNull(tree.nearestNeighbor(new KDPoint(0, 0)));
+		assertTrue(tree.range(new KDPoint(0, 0), 100).isEmpty());
+		assertEquals(0, tree.kNearestNeighbors(3, new KDPoint(0, 0)).size());
+		tree.insert(new KDPoint(5, 5)); // A fresh copy below the tombstone, rather than a resurrection.
+		assertEquals(1, tree.count());
+		assertTrue(tree.search(new KDPoint(5, 5)));
+		assertEquals(3, tree.deadCount() + tree.count());
+		tree.delete(new KDPoint(5, 5));
+		tree.compact();
+		assertEquals(0, tree.deadCount());
+		assertTrue(tree.isEmpty());
+		assertNull(tree.getRoot());
+		assertEquals(-1, tree.height());
+	}
+
+	@Test
+	public void testCompactionRebuildsOnceThresholdIsExceeded() {
+		KDTree tree = new KDTree(2, false, 0.5);
+		for(int i = 0; i < 4; i++)
+			tree.insert(new KDPoint(i, i));
+		tree.delete(new KDPoint(0, 0));
+		tree.delete(new KDPoint(1, 1));
+		assertEquals(2, tree.deadCount()); // Exactly half of the nodes.
+		tree.delete(new KDPoint(2, 2));
+		assertEquals(0, tree.deadCount()); // The whole tree was rebuilt.
+		assertEquals(1, tree.count());
+		assertEquals(new KDPoint(3, 3), tree.getRoot());
+		assertEquals(0, tree.height());
+	}
+
+	/*
+	 * Runs the same insertions, deletions and updates on a tree with an exact-match index and on one without, which
+	 * find out whether their targets exist in different ways, and checks both against a brute-force list.
+	 */
+	private void checkExactMatchIndex(boolean floatStorage, double tombstoneThreshold){
+		KDTree indexed = new KDTree(2, floatStorage, tombstoneThreshold, true);
+		KDTree plain = new KDTree(2, floatStorage, tombstoneThreshold, false);
+		assertTrue(indexed.hasExactMatchIndex());
+		assertFalse(plain.hasExactMatchIndex());
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < MAX_ITER; i++){
+			KDPoint p = gridPoint();
+			int op = r.nextInt(10);
+			if(op < 4){
+				indexed.insert(p);
+				plain.insert(p);
+				points.add(p);
+			} else if(op < 6){
+				indexed.delete(p);
+				plain.delete(p);
+				points.remove(p);
+			} else if(op < 8){
+				KDPoint to = gridPoint();
+				boolean moved = points.remove(p);
+				if(moved)
+					points.add(to);
+				assertEquals(moved, indexed.update(p, to));
+				assertEquals(moved, plain.update(p, to));
+			} else {
+				assertEquals(points.contains(p), indexed.search(p));
+				assertEquals(points.contains(p), plain.search(p));
+			}
+			assertEquals(points.size(), indexed.count());
+			assertEquals(points.size(), plain.count());
+		}
+		KDPoint anchor = new KDPoint(-1, -1);
+		assertEquals(sorted(points), sorted(indexed.range(anchor, Double.MAX_VALUE)));
+		assertEquals(sorted(points), sorted(plain.range(anchor, Double.MAX_VALUE)));
+	}
+
+	@Test
+	public void testExactMatchIndex() {
+		checkExactMatchIndex(false, 0);
+	}
+
+	@Test
+	public void testExactMatchIndexWithLazyDeletion() {
+		checkExactMatchIndex(false, 0.25);
+	}
+
+	@Test
+	public void testExactMatchIndexWithFloatStorage() {
+		checkExactMatchIndex(true, 0);
+	}
+
+	@Test
+	public void testExactMatchIndexRoundsLikeTheTree() {
+		KDTree tree = new KDTree(2, true, 0, true);
+		KDPoint p = new KDPoint(0.1, 0.2), rounded = new KDPoint((float)0.1, (float)0.2);
+		tree.insert(p);
+		assertTrue(tree.search(p));
+		assertTrue(tree.search(rounded)); // The same point, as far as a single-precision tree is concerned.
+		tree.delete(rounded);
+		assertTrue(tree.isEmpty());
+		assertFalse(tree.search(p));
+	}
+
+	/*
+	 * Trees well above the grain of parallel range queries, so that they fork at several levels before they go
+	 * sequential.
+	 */
+	private void checkParallelRange(KDTree tree){
+		for(int i = 0; i < 50000; i++)
+			tree.insert(new KDPoint(1000 * r.nextDouble(), 1000 * r.nextDouble()));
+		for(int i = 0; i < 100; i++){
+			KDPoint anchor = new KDPoint(1200 * r.nextDouble() - 100, 1200 * r.nextDouble() - 100);
+			double range = (i == 0) ? Double.MAX_VALUE : r.nextInt(500) * r.nextInt(500);
+			assertEquals(new ArrayList<>(tree.range(anchor, range)), new ArrayList<>(tree.range(anchor, range, true)));
+		}
+	}
+
+	@Test
+	public void testParallelRangeMatchesSequentialRange() {
+		checkParallelRange(new KDTree(2));
+	}
+
+	@Test
+	public void testParallelRangeMatchesSequentialRangeWithTombstones() {
+		KDTree tree = new KDTree(2, true, 1.0);
+		checkParallelRange(tree);
+		for(int i = 0; i < 20000; i++) // Mostly misses, but enough hits to leave tombstones all over the tree.
+			tree.delete(new KDPoint(1000 * r.nextDouble(), 1000 * r.nextDouble()));
+		for(KDPoint p : new ArrayList<>(tree.range(new KDPoint(500, 500), 100 * 100)))
+			tree.delete(p);
+		assertTrue(tree.deadCount() > 0);
+		checkParallelRange(tree);
+	}
+
+	/*
+	 * Grid points, with plenty of copies, and clusters of points that are closer to each other than single precision can
+	 * tell apart, so that they tie once rounded.
+	 */
+	private List<KDPoint> batch(int n){
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < n; i++)
+			points.add(r.nextInt(4) == 0 ? new KDPoint(1 + r.nextInt(GRID) + r.nextInt(3) * 1e-10, r.nextInt(GRID)) : gridPoint());
+		return points;
+	}
+
+	private void checkSameAnswers(KDTree expected, KDTree actual){
+		assertEquals(expected.count(), actual.count());
+		for(int i = 0; i < 300; i++){
+			KDPoint anchor = (i % 2 == 0) ? gridPoint() : new KDPoint(1 + r.nextInt(GRID) + r.nextInt(3) * 1e-10, r.nextInt(GRID));
+			assertEquals(expected.search(anchor), actual.search(anchor));
+			double range = r.nextInt(20);
+			assertEquals(sorted(expected.range(anchor, range)), sorted(actual.range(anchor, range)));
+			KDPoint nn = expected.nearestNeighbor(anchor);
+			assertEquals(nn == null ? -1 : nn.distance(anchor), actual.nearestNeighbor(anchor).distance(anchor), 0.0);
+			int k = 1 + r.nextInt(6);
+			assertEquals(distances(expected.kNearestNeighbors(k, anchor), anchor), distances(actual.kNearestNeighbors(k, anchor), anchor));
+		}
+	}
+
+	/*
+	 * Bulk loads a tree, then checks it against one built point by point, both before and after deleting every point of
+	 * the batch, which only works if every point can still be found along its search path.
+	 */
+	private void checkBulkLoad(KDTree bulk, KDTree incremental, boolean parallel, int n){
+		List<KDPoint> points = batch(n);
+		bulk.insertAll(points, parallel);
+		for(KDPoint p : points)
+			incremental.insert(p);
+		checkSameAnswers(incremental, bulk);
+		for(KDPoint p : points){
+			assertTrue(bulk.search(p));
+			bulk.delete(p);
+			incremental.delete(p);
+			assertEquals(incremental.count(), bulk.count());
+		}
+		assertTrue(bulk.isEmpty());
+	}
+
+	@Test
+	public void testBulkLoad() {
+		checkBulkLoad(new KDTree(2), new KDTree(2), false, 5000);
+		checkBulkLoad(new KDTree(2), new KDTree(2), true, 40000); // Above the grain of parallel builds.
+	}
+
+	@Test
+	public void testBulkLoadWithFloatStorage() {
+		KDTree tree = new KDTree(2, true);
+		KDPoint p = new KDPoint(1.0, 5);
+		tree.insertAll(List.of(p, new KDPoint(1 + 1e-10, 0), new KDPoint(1 + 2e-10, 0))); // All three tie on x as floats.
+		assertTrue(tree.search(p));
+		tree.delete(p);
+		assertEquals(2, tree.count());
+		assertFalse(tree.search(p));
+
+		checkBulkLoad(new KDTree(2, true), new KDTree(2, true), false, 5000);
+		checkBulkLoad(new KDTree(2, true), new KDTree(2, true), true, 40000);
+	}
+
+	@Test
+	public void testBulkLoadWithLazyDeletion() {
+		checkBulkLoad(new KDTree(2, false, 0.25), new KDTree(2, false, 0.25), false, 5000);
+		checkBulkLoad(new KDTree(2, true, 0.5), new KDTree(2, true, 0.5), true, 40000);
+	}
+
+	@Test
+	public void testBulkLoadWithExactMatchIndex() {
+		checkBulkLoad(new KDTree(2, false, 0, true), new KDTree(2, false, 0, true), false, 5000);
+		checkBulkLoad(new KDTree(2, true, 0.25, true), new KDTree(2, true, 0.25, true), true, 40000);
+	}
+
+	/*
+	 * A batch inserted into a tree that already holds points goes in point by point, in Hilbert order.
+	 */
+	private void checkBatchInsertion(KDTree batched, KDTree incremental, boolean parallel){
+		List<KDPoint> first = batch(500), second = batch(3000);
+		batched.insertAll(first, parallel);
+		for(KDPoint p : first)
+			incremental.insert(p);
+		batched.insertAll(second, parallel);
+		for(KDPoint p : second)
+			incremental.insert(p);
+		checkSameAnswers(incremental, batched);
+		batched.insertAll(new ArrayList<>(), parallel); // Nothing to do.
+		assertEquals(incremental.count(), batched.count());
+		for(KDPoint p : second){
+			batched.delete(p);
+			incremental.delete(p);
+		}
+		checkSameAnswers(incremental, batched);
+	}
+
+	@Test
+	public void testBatchInsertionIntoNonEmptyTree() {
+		checkBatchInsertion(new KDTree(2), new KDTree(2), false);
+		checkBatchInsertion(new KDTree(2, true), new KDTree(2, true), true);
+		checkBatchInsertion(new KDTree(2, false, 0.25), new KDTree(2, false, 0.25), false);
+		checkBatchInsertion(new KDTree(2, true, 0, true), new KDTree(2, true, 0, true), true);
+	}
+}
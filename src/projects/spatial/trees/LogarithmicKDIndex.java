@@ -0,0 +1,439 @@
+package projects.spatial.trees;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.knnutils.BoundedPriorityQueue;
+import projects.spatial.knnutils.NNData;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>{@link LogarithmicKDIndex} is a <b>write-optimized</b> spatial index, built with the <em>logarithmic method</em>
+ * of Bentley and Saxe, the way Bkd-trees do it. It trades a little query time for much cheaper insertions than
+ * {@link KDTree}, whose per-point insertions also degrade its balance over time.</p>
+ *
+ * <ul>
+ *     <li>New {@link KDPoint}s are appended to a small in-memory <b>buffer</b>, which is scanned linearly by queries.</li>
+ *     <li>When the buffer fills up, it is <b>flushed</b> into an immutable, perfectly balanced {@link KDSegment}.</li>
+ *     <li>Segments are organized in <b>levels</b> of geometrically increasing size: the segments of level <em>i</em>
+ *     hold up to <tt>bufferSize &#42; 2<sup>i</sup></tt> points. Whenever two segments share a level, they are
+ *     <b>merged</b> into one segment of the next level, so there are O(log n) segments at any given time and every point is
+ *     copied O(log n) times over its lifetime.</li>
+ *     <li>Merges run on a background thread of the index's own, during which the source segments keep answering
+ *     queries. If merges fall too far behind, writers perform them themselves. {@link #close()} stops the thread, after
+ *     which writers perform every merge.</li>
+ *     <li>Deletions are <b>tombstones</b>: a deleted point is only marked as dead in its segment, and it is physically
+ *     dropped by the next merge that involves it.</li>
+ * </ul>
+ *
+ * <p>Like {@link KDTree}, this index allows for duplicate {@link KDPoint}s, and {@link #delete(KDPoint)} removes one copy.
+ * All public methods are <tt>synchronized</tt>; only the expensive part of merging runs outside the lock.</p>
+ *
+ * @see KDSegment
+ * @see KDTree
+ * @see SpatialDictionary
+ * @see SpatialQuerySolver
+ */
+public class LogarithmicKDIndex implements SpatialDictionary, SpatialQuerySolver, AutoCloseable {
+
+	/**
+	 * The default number of {@link KDPoint}s buffered before a flush.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+	/**
+	 * If the background merger falls behind so much that this many segments pile up, writers
+	 * merge synchronously until it catches up.
+	 */
+	private static final int MAX_SEGMENTS = 64;
+
+	private final int dims;
+	private final int bufferSize;
+
+	private double[] buffer; // Packed coordinates, bufferSize * dims long.
+	private int buffered;
+
+	/**
+	 * All segments, smallest first. Replaced wholesale on every change, so that the merger
+	 * can hold on to the segments it is merging without further synchronization.
+	 */
+	private List<KDSegment> segments;
+
+	private int count;
+
+	private final ExecutorService merger; // null if merges are performed synchronously.
+	private KDSegment[] merging; // The pair being merged in the background, if any. Waiters are notified when it is done.
+	private boolean closed; // Once set, merges are performed synchronously.
+
+	/* ************************************************************************** */
+	/* ****************************** CONSTRUCTORS ****************************** */
+	/* ************************************************************************** */
+
+	/**
+	 * Creates a 2D index with the default buffer size and background merges.
+	 * @see #DEFAULT_BUFFER_SIZE
+	 */
+	public LogarithmicKDIndex(){
+		this(KDTree.DEFAULT_DIMS);
+	}
+
+	/**
+	 * Creates a <em>k</em>-dimensional index with the default buffer size and background merges.
+	 * @param k The dimensionality of the space.
+	 * @throws RuntimeException if <tt>k&lt;=0</tt>.
+	 */
+	public LogarithmicKDIndex(int k){
+		this(k, DEFAULT_BUFFER_SIZE, true);
+	}
+
+	/**
+	 * Full constructor.
+	 * @param k The dimensionality of the space.
+	 * @param bufferSize The number of {@link KDPoint}s buffered before they are flushed into a segment.
+	 * @param backgroundMerges If <tt>true</tt>, segments are merged on a background thread. Otherwise, merges are
+	 *                         performed by the writer that causes them, which makes the structure of the index deterministic.
+	 * @throws RuntimeException if <tt>k&lt;=0</tt> or <tt>bufferSize&lt;=0</tt>.
+	 */
+	public LogarithmicKDIndex(int k, int bufferSize, boolean backgroundMerges){
+		if(k <= 0)
+			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		if(bufferSize <= 0)
+			throw new RuntimeException("The buffer size provided, " + bufferSize + ", is invalid: Please provide a positive integer.");
+		dims = k;
+		this.bufferSize = bufferSize;
+		buffer = new double[bufferSize * dims];
+		buffered = 0;
+		segments = new ArrayList<>();
+		count = 0;
+		merger = backgroundMerges ? Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "LogarithmicKDIndex-merger");
+			t.setDaemon(true);
+			return t;
+		}) : null;
+		merging = null;
+		closed = false;
+	}
+
+	/* ************************************************************************** */
+	/* ************************** FLUSHING AND MERGING ************************** */
+	/* ************************************************************************** */
+
+	private int level(int size){
+		return (size <= bufferSize) ? 0 : 32 - Integer.numberOfLeadingZeros((size - 1) / bufferSize);
+	}
+
+	private void flush(){
+		if(buffered == 0)
+			return;
+		KDSegment flushed = new KDSegment(buffer, buffered, dims);
+		buffer = new double[bufferSize * dims]; // The old array now belongs to the segment.
+		buffered = 0;
+		List<KDSegment> updated = new ArrayList<>(segments);
+		updated.add(0, flushed);
+		segments = updated;
+		scheduleMerges();
+	}
+
+	/*
+	 * Finds the two smallest segments that share a level, or returns null if the levels are all distinct.
+	 * Segments that are being merged in the background are not eligible.
+	 */
+	private KDSegment[] findMergeCandidates(){
+		List<KDSegment> sorted = new ArrayList<>(segments);
+		if(merging != null){
+			sorted.remove(merging[0]);
+			sorted.remove(merging[1]);
+		}
+		sorted.sort((a, b) -> Integer.compare(a.liveCount(), b.liveCount()));
+		for(int i = 0; i + 1 < sorted.size(); i++)
+			if(level(sorted.get(i).liveCount()) == level(sorted.get(i + 1).liveCount()))
+				return new KDSegment[]{sorted.get(i), sorted.get(i + 1)};
+		return null;
+	}
+
+	private void scheduleMerges(){
+		KDSegment[] candidates;
+		if(merger == null || closed || segments.size() > MAX_SEGMENTS){
+			while((candidates = findMergeCandidates()) != null)
+				merge(candidates[0], candidates[1], false);
+		} else if(merging == null && (candidates = findMergeCandidates()) != null){
+			KDSegment a = candidates[0], b = candidates[1];
+			merging = candidates;
+			merger.submit(() -> merge(a, b, true));
+		}
+	}
+
+	/*
+	 * Merges two segments into one. The tombstones are snapshot under the lock and the new segment is built outside it
+	 * when running in the background. Points that die in the meantime are killed again in the merged segment.
+	 */
+	private void merge(KDSegment a, KDSegment b, boolean background){
+		BitSet deadA, deadB;
+		synchronized(this){
+			deadA = a.tombstones();
+			deadB = b.tombstones();
+		}
+		int live = (a.size() - deadA.cardinality()) + (b.size() - deadB.cardinality());
+		double[] packed = new double[live * dims];
+		int written = a.copyLive(deadA, packed, 0);
+		b.copyLive(deadB, packed, written);
+		KDSegment merged = new KDSegment(packed, live, dims);
+		synchronized(this){
+			reapplyTombstones(a, deadA, merged);
+			reapplyTombstones(b, deadB, merged);
+			List<KDSegment> updated = new ArrayList<>(segments.size() - 1);
+			for(KDSegment s : segments)
+				if(s != a && s != b)
+					updated.add(s);
+			if(merged.liveCount() > 0)
+				updated.add(merged);
+			updated.sort((x, y) -> Integer.compare(x.size(), y.size()));
+			segments = updated;
+			if(background){
+				merging = null;
+				notifyAll();
+				scheduleMerges();
+			}
+		}
+	}
+
+	/*
+	 * Waits for the background merge in flight, if any, to install its result. Returns false if the calling thread was
+	 * interrupted in the meantime, with its interrupt status set again.
+	 */
+	private boolean awaitMerge(){
+		while(merging != null){
+			try {
+				wait();
+			} catch (InterruptedException ie){
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void reapplyTombstones(KDSegment source, BitSet snapshot, KDSegment merged){
+		for(int i = snapshot.nextClearBit(0); i < source.size(); i = snapshot.nextClearBit(i + 1)){
+			if(source.isDead(i)){ // Died after the snapshot was taken, so the merged segment holds a live copy.
+				int copy = merged.indexOf(source.pointAt(i));
+				if(copy != -1)
+					merged.kill(copy);
+			}
+		}
+	}
+
+	/* ************************************************************************** */
+	/* ************************* BUFFER HELPERS ********************************* */
+	/* ************************************************************************** */
+
+	private boolean bufferMatches(int i, KDPoint p){
+		for(int d = 0; d < dims; d++)
+			if(buffer[i * dims + d] != p.coords[d])
+				return false;
+		return true;
+	}
+
+	private double bufferDistance(int i, KDPoint p){
+		double sum = 0.0;
+		for(int d = 0; d < dims; d++){
+			double diff = buffer[i * dims + d] - p.coords[d];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	private KDPoint bufferPoint(int i){
+		KDPoint p = new KDPoint(dims);
+		System.arraycopy(buffer, i * dims, p.coords, 0, dims);
+		return p;
+	}
+
+	private void checkDims(KDPoint p){
+		if(p.coords.length != dims)
+			throw new RuntimeException("This index holds " + dims + "-dimensional KDPoints; we were given a " + p.coords.length + "-dimensional one.");
+	}
+
+	/* ************************************************************************** */
+	/* ************************ PUBLIC (INTERFACE) METHODS ********************** */
+	/* ************************************************************************** */
+
+	@Override
+	public synchronized void insert(KDPoint p){
+		checkDims(p);
+		System.arraycopy(p.coords, 0, buffer, buffered * dims, dims);
+		buffered++;
+		count++;
+		if(buffered == bufferSize)
+			flush();
+	}
+
+	@Override
+	public synchronized void delete(KDPoint p){
+		checkDims(p);
+		for(int i = 0; i < buffered; i++){
+			if(bufferMatches(i, p)){ // Swap with the last buffered point.
+				System.arraycopy(buffer, (buffered - 1) * dims, buffer, i * dims, dims);
+				buffered--;
+				count--;
+				return;
+			}
+		}
+		for(KDSegment s : segments){
+			int i = s.indexOf(p);
+			if(i != -1){
+				s.kill(i);
+				count--;
+				return;
+			}
+		}
+	}
+
+	@Override
+	public synchronized boolean search(KDPoint p){
+		checkDims(p);
+		for(int i = 0; i < buffered; i++)
+			if(bufferMatches(i, p))
+				return true;
+		for(KDSegment s : segments)
+			if(s.indexOf(p) != -1)
+				return true;
+		return false;
+	}
+
+	@Override
+	public synchronized Collection<KDPoint> range(KDPoint p, double range){
+		checkDims(p);
+		LinkedList<KDPoint> pts = new LinkedList<>();
+		for(int i = 0; i < buffered; i++)
+			if(bufferDistance(i, p) <= range && !bufferMatches(i, p))
+				pts.add(bufferPoint(i));
+		for(KDSegment s : segments)
+			s.range(p, pts, range);
+		return pts;
+	}
+
+	@Override
+	public synchronized KDPoint nearestNeighbor(KDPoint p){
+		checkDims(p);
+		NNData<KDPoint> n = new NNData<>(null, KDTree.INFTY);
+		for(int i = 0; i < buffered; i++){
+			if(!bufferMatches(i, p)){
+				double dist = bufferDistance(i, p);
+				if(n.bestDist == KDTree.INFTY || dist < n.bestDist){
+					n.bestDist = dist;
+					n.bestGuess = bufferPoint(i);
+				}
+			}
+		}
+		for(KDSegment s : segments) // Each segment starts out bounded by the best guess of the previous ones.
+			s.nearestNeighbor(p, n);
+		return n.bestGuess;
+	}
+
+	@Override
+	public synchronized BoundedPriorityQueue<KDPoint> kNearestNeighbors(int k, KDPoint p){
+		if(k <= 0)
+			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		checkDims(p);
+		BoundedPriorityQueue<KDPoint> queue = new BoundedPriorityQueue<>(k);
+		for(int i = 0; i < buffered; i++){
+			if(!bufferMatches(i, p)){
+				double dist = bufferDistance(i, p);
+				if(queue.size() < k || dist < queue.lastPriority())
+					queue.enqueue(bufferPoint(i), dist);
+			}
+		}
+		for(KDSegment s : segments)
+			s.kNearestNeighbors(k, p, queue);
+		return queue;
+	}
+
+	/**
+	 * Returns the height of the tallest segment, or 0 if all points are still buffered. Since segments are
+	 * perfectly balanced, this is floor(log<sub>2</sub>n) for the largest segment of n points.
+	 * @return The height of the index, or -1 if the index is empty.
+	 */
+	@Override
+	public synchronized int height(){
+		int height = (buffered > 0) ? 0 : -1;
+		for(KDSegment s : segments)
+			height = Math.max(height, s.height());
+		return height;
+	}
+
+	@Override
+	public synchronized boolean isEmpty(){
+		return count == 0;
+	}
+
+	@Override
+	public synchronized int count(){
+		return count;
+	}
+
+	/**
+	 * Flushes the buffer and merges <b>all</b> segments into a single one, physically dropping every tombstone.
+	 * This is an O(n log n) operation, meant for quiet periods, or right before a read-only phase.
+	 *
+	 * <p>A background merge in flight installs its result first. If the calling thread is interrupted while waiting for
+	 * it, this method returns <b>without</b> compacting anything beyond the flush, with the interrupt status of the thread
+	 * set; the index remains consistent, and the call can simply be repeated.</p>
+	 */
+	public synchronized void compact(){
+		flush();
+		if(!awaitMerge())
+			return;
+		while(segments.size() > 1 || (segments.size() == 1 && segments.get(0).liveCount() < segments.get(0).size()))
+			merge(segments.get(0), segments.size() > 1 ? segments.get(1) : new KDSegment(new double[0], 0, dims), false);
+	}
+
+	/**
+	 * Stops the background merger of <tt>this</tt>, and waits for the merge in flight, if any, to install its result, so
+	 * that no other thread touches the index afterwards. The index remains fully usable: writers perform all later merges
+	 * themselves, as if <tt>this</tt> had been created without background merges. Closing an index more than once has
+	 * no further effect.
+	 *
+	 * <p>If the calling thread is interrupted while waiting, the merger is still stopped, but the merge in flight may
+	 * install its result after this method returns, with the interrupt status of the thread set.</p>
+	 */
+	@Override
+	public synchronized void close(){
+		closed = true;
+		if(merger != null)
+			merger.shutdown(); // The merge in flight, which sees that we are closed, is the last task of the merger.
+		awaitMerge();
+	}
+
+	/**
+	 * Returns the number of immutable segments that queries currently fan out to. Mostly useful for monitoring
+	 * and testing.
+	 * @return The number of segments.
+	 */
+	public synchronized int segmentCount(){
+		return segments.size();
+	}
+
+	/*
+	 * Whether a background merge is in flight, for tests that need modifications to land during one.
+	 */
+	synchronized boolean isMerging(){
+		return merging != null;
+	}
+
+	/**
+	 * Returns the number of deleted {@link KDPoint}s that have not yet been dropped by a merge.
+	 * @return The number of tombstones in the index.
+	 */
+	public synchronized int tombstoneCount(){
+		int dead = 0;
+		for(KDSegment s : segments)
+			dead += s.size() - s.liveCount();
+		return dead;
+	}
+}
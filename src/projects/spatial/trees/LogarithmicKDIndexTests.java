@@ -0,0 +1,266 @@
+package projects.spatial.trees;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.knnutils.BoundedPriorityQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>LogarithmicKDIndexTests</tt> checks {@link LogarithmicKDIndex} against a brute-force list of points, with
+ * synchronous and background merges, and checks that deletions that land in the middle of a background merge, as well
+ * as {@link LogarithmicKDIndex#compact()} calls, are not lost. It also checks that {@link LogarithmicKDIndex#close()}
+ * stops the merger thread, and that an interrupted {@link LogarithmicKDIndex#compact()} keeps the interrupt status.</p>
+ *
+ * @see LogarithmicKDIndex
+ */
+public class LogarithmicKDIndexTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int GRID = 40; // Points on a small grid, to have plenty of duplicates and ties.
+	private static final int MAX_ITER = 20000;
+	private static final int ATTEMPTS = 20; // A background merge can finish before we get to modify the index.
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	private KDPoint gridPoint(){
+		return new KDPoint(r.nextInt(GRID), r.nextInt(GRID));
+	}
+
+	/*
+	 * Points in a canonical order, so that multisets of points can be compared as lists.
+	 */
+	private static List<String> sorted(Collection<KDPoint> points){
+		List<String> keys = new ArrayList<>();
+		for(KDPoint p : points)
+			keys.add(p.coords[0] + "," + p.coords[1]);
+		keys.sort(null);
+		return keys;
+	}
+
+	private static List<KDPoint> bruteForceRange(List<KDPoint> points, KDPoint anchor, double range){
+		List<KDPoint> result = new ArrayList<>();
+		for(KDPoint p : points)
+			if(p.distance(anchor) <= range && !p.equals(anchor))
+				result.add(p);
+		return result;
+	}
+
+	private static List<Double> bruteForceKNN(List<KDPoint> points, KDPoint anchor, int k){
+		List<Double> distances = new ArrayList<>();
+		for(KDPoint p : points)
+			if(!p.equals(anchor))
+				distances.add(p.distance(anchor));
+		distances.sort(null);
+		return distances.subList(0, Math.min(k, distances.size()));
+	}
+
+	private void checkAgainstBruteForce(boolean backgroundMerges){
+		LogarithmicKDIndex index = new LogarithmicKDIndex(2, 16, backgroundMerges);
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < MAX_ITER; i++){
+			int op = r.nextInt(20);
+			KDPoint p = gridPoint();
+			if(op < 10){
+				index.insert(p);
+				points.add(p);
+			} else if(op < 15){
+				index.delete(p);
+				points.remove(p);
+			} else if(op < 17){
+				assertEquals(points.contains(p), index.search(p));
+			} else if(op < 18){
+				double range = r.nextInt(30);
+				assertEquals(sorted(bruteForceRange(points, p, range)), sorted(index.range(p, range)));
+			} else if(op < 19){
+				KDPoint nn = index.nearestNeighbor(p);
+				List<Double> expected = bruteForceKNN(points, p, 1);
+				if(expected.isEmpty())
+					assertNull(nn);
+				else
+					assertEquals(expected.get(0), nn.distance(p), 0.0);
+			} else {
+				int k = 1 + r.nextInt(8);
+				List<Double> actual = new ArrayList<>();
+				BoundedPriorityQueue<KDPoint> queue = index.kNearestNeighbors(k, p);
+				for(KDPoint neighbor : queue)
+					actual.add(neighbor.distance(p));
+				assertEquals(bruteForceKNN(points, p, k), actual);
+			}
+			assertEquals(points.size(), index.count());
+		}
+		index.compact();
+		assertEquals(0, index.tombstoneCount());
+		assertTrue(index.segmentCount() <= 1);
+		assertEquals(sorted(points), sorted(index.range(new KDPoint(-1, -1), Double.MAX_VALUE)));
+		index.close();
+	}
+
+	@Test
+	public void testAgainstBruteForceWithSynchronousMerges() {
+		checkAgainstBruteForce(false);
+	}
+
+	@Test
+	public void testAgainstBruteForceWithBackgroundMerges() {
+		checkAgainstBruteForce(true);
+	}
+
+	/*
+	 * Fills two buffers of distinct points, so that the second flush starts a background merge of both, whose segments
+	 * are large enough that the merge takes a while. Returns the points, or null if no merge was running afterwards.
+	 */
+	private List<KDPoint> startMerge(LogarithmicKDIndex index, int bufferSize){
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < 2 * bufferSize; i++){
+			KDPoint p = new KDPoint(r.nextDouble(), r.nextDouble());
+			points.add(p);
+			index.insert(p);
+		}
+		return index.isMerging() ? points : null;
+	}
+
+	@Test
+	public void testDeletionsDuringBackgroundMerge() throws InterruptedException {
+		int bufferSize = 1 << 16;
+		for(int attempt = 0; attempt < ATTEMPTS; attempt++){
+			try(LogarithmicKDIndex index = new LogarithmicKDIndex(2, bufferSize, true)){
+				List<KDPoint> points = startMerge(index, bufferSize);
+				if(points == null)
+					continue;
+				List<KDPoint> deleted = new ArrayList<>();
+				for(int i = 0; i < points.size(); i += 97){ // Points from both of the segments being merged.
+					index.delete(points.get(i));
+					deleted.add(points.get(i));
+				}
+				if(!index.isMerging())
+					continue; // The merge finished before all deletions landed; try again.
+				while(index.isMerging())
+					Thread.sleep(1);
+				assertEquals(1, index.segmentCount());
+				assertEquals(points.size() - deleted.size(), index.count());
+				for(KDPoint p : deleted)
+					assertFalse(index.search(p));
+				assertTrue(index.search(points.get(1)));
+				// Deletions that preceded the merge's snapshot were dropped by it; the later ones were killed again in the merged segment.
+				assertTrue(index.tombstoneCount() <= deleted.size());
+				index.compact();
+				assertEquals(0, index.tombstoneCount());
+				assertEquals(points.size() - deleted.size(), index.range(new KDPoint(-1, -1), Double.MAX_VALUE).size());
+				return;
+			}
+		}
+		fail("No background merge outlived " + ATTEMPTS + " rounds of deletions.");
+	}
+
+	@Test
+	public void testCompactWaitsForBackgroundMerge() {
+		int bufferSize = 1 << 16;
+		for(int attempt = 0; attempt < ATTEMPTS; attempt++){
+			try(LogarithmicKDIndex index = new LogarithmicKDIndex(2, bufferSize, true)){
+				List<KDPoint> points = startMerge(index, bufferSize);
+				if(points == null)
+					continue;
+				index.delete(points.get(0));
+				index.insert(new KDPoint(2, 2)); // Stays in the buffer, which compact() has to flush.
+				index.compact();
+				assertFalse(index.isMerging());
+				assertEquals(1, index.segmentCount());
+				assertEquals(0, index.tombstoneCount());
+				assertEquals(points.size(), index.count());
+				assertFalse(index.search(points.get(0)));
+				assertTrue(index.search(new KDPoint(2, 2)));
+				assertEquals(points.size(), index.range(new KDPoint(-1, -1), Double.MAX_VALUE).size());
+				return;
+			}
+		}
+		fail("No background merge was running when compact() was called, in " + ATTEMPTS + " attempts.");
+	}
+
+	private static Set<Thread> mergerThreads(){
+		Set<Thread> threads = new HashSet<>();
+		for(Thread t : Thread.getAllStackTraces().keySet())
+			if(t.getName().equals("LogarithmicKDIndex-merger"))
+				threads.add(t);
+		return threads;
+	}
+
+	@Test
+	public void testCloseStopsTheMerger() throws InterruptedException {
+		Set<Thread> before = mergerThreads();
+		LogarithmicKDIndex index = new LogarithmicKDIndex(2, 16, true);
+		List<KDPoint> points = new ArrayList<>();
+		for(int i = 0; i < 5000; i++){
+			KDPoint p = gridPoint();
+			index.insert(p);
+			points.add(p);
+		}
+		Set<Thread> started = mergerThreads();
+		started.removeAll(before);
+		assertEquals(1, started.size());
+		index.close();
+		assertFalse(index.isMerging());
+		for(Thread t : started){
+			t.join(10000);
+			assertFalse("The merger outlived close().", t.isAlive());
+		}
+		for(int i = 0; i < 5000; i++){ // Merges are now synchronous, so levels stay distinct without a merger.
+			KDPoint p = gridPoint();
+			index.insert(p);
+			points.add(p);
+		}
+		assertTrue(index.segmentCount() <= 11); // One per level at most, and 10000 points over buffers of 16 span 11 levels.
+		assertEquals(points.size(), index.count());
+		assertEquals(sorted(points), sorted(index.range(new KDPoint(-1, -1), Double.MAX_VALUE)));
+		index.close(); // A no-op.
+		index.compact();
+		assertEquals(1, index.segmentCount());
+	}
+
+	@Test
+	public void testInterruptedCompactKeepsInterruptStatus() {
+		int bufferSize = 1 << 16;
+		try(LogarithmicKDIndex index = new LogarithmicKDIndex(2, bufferSize, true)){
+			startMerge(index, bufferSize); // If the merge finished already, compact() has nothing to wait for.
+			Thread.currentThread().interrupt();
+			index.compact();
+			assertTrue(Thread.interrupted()); // Whether compact() waited or not, the interrupt is not swallowed.
+			assertEquals(2 * bufferSize, index.count());
+			assertEquals(0, index.tombstoneCount());
+			index.compact(); // Completes once the thread is not interrupted anymore.
+			assertFalse(index.isMerging());
+			assertEquals(1, index.segmentCount());
+			assertEquals(2 * bufferSize, index.count());
+		}
+	}
+
+	@Test
+	public void testTombstonesAreDroppedByMerges() {
+		LogarithmicKDIndex index = new LogarithmicKDIndex(2, 4, false);
+		for(int i = 0; i < 4; i++)
+			index.insert(new KDPoint(i, i));
+		assertEquals(1, index.segmentCount());
+		index.delete(new KDPoint(1, 1));
+		index.delete(new KDPoint(1, 1)); // Not stored anymore, so a no-op.
+		assertEquals(1, index.tombstoneCount());
+		assertEquals(3, index.count());
+		for(int i = 4; i < 8; i++) // The second flush merges both segments, dropping the tombstone.
+			index.insert(new KDPoint(i, i));
+		assertEquals(1, index.segmentCount());
+		assertEquals(0, index.tombstoneCount());
+		assertEquals(7, index.count());
+		assertFalse(index.search(new KDPoint(1, 1)));
+	}
+}
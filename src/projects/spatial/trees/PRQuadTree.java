@@ -1,8 +1,22 @@
 package projects.spatial.trees;
 
+import projects.spatial.kdpoint.HilbertCurve;
 import projects.spatial.kdpoint.KDPoint;
 import projects.spatial.nodes.PRQuadBlackNode;
 import projects.spatial.nodes.PRQuadNode;
+import projects.spatial.nodes.PRQuadSnapshot;
+import projects.spatial.nodes.Relocation;
+import projects.spatial.nodes.ShapeProfile;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * <p><tt>PRQuadTree</tt> implements Point-Region (P-R) QuadTrees. Those are trie-based
@@ -18,13 +32,15 @@ import projects.spatial.nodes.PRQuadNode;
  * subtrees per nodes. The course staff has come around some papers with applications of oct-trees, which are extensions of PR-QuadTrees) in 3 *
  * dimensions. Beyond 3, it seems that the idea of such exponential fanout trie-based quadtrees fades.</p>
  *
- * <p><b>YOU SHOULD ***NOT*** EDIT THIS CLASS!</b> If you do, you risk <b>not passing our tests!</b> All the functionality
- * of the P-R QuadTree will be implemented by the various {@link PRQuadNode}s.</p>
+ * <p>The recursive work on the structure of the tree is done by the various {@link PRQuadNode}s; the tree itself checks
+ * that points lie within its root, keeps the count of its points, and reads and writes snapshots.</p>
  *
  * @author <a href="mailto:jasonfil@cs.umd.edu">Jason Filippou</a>
  *
  */
-public class PRQuadTree implements SpatialDictionary {
+public class PRQuadTree implements SpatialDictionary, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
 
     /**
@@ -77,8 +93,19 @@ public class PRQuadTree implements SpatialDictionary {
     }
 
 
+    /*
+     * The root spans the square of side 2^k centered at the origin. Points outside of it could never
+     * be separated by splitting, so we refuse them upfront.
+     */
+    private void checkBounds(KDPoint p){
+        double half = Math.scalb(1.0, k - 1);
+        if(Math.abs(p.coords[0]) > half || Math.abs(p.coords[1]) > half)
+            throw new RuntimeException("KDPoint " + p + " lies outside of the space spanned by this PRQuadTree.");
+    }
+
     @Override
     public void insert(KDPoint p) {
+        checkBounds(p);
         if(root == null) {  // white nodes, first point stored
             root = new PRQuadBlackNode(new KDPoint(0, 0), k, bucketingParam, p); // Initial centroid assumed at (0, 0).
             count++;
@@ -91,6 +118,38 @@ public class PRQuadTree implements SpatialDictionary {
         }
     }
 
+    /**
+     * <p>Inserts a batch of {@link KDPoint}s, in the order of a {@link HilbertCurve} over the space spanned by the root.
+     * Since the grid of the curve is aligned with the quadrants of the tree, and the curve visits every quadrant in one
+     * go, the points of every quadrant are inserted consecutively, at every level. A P-R QuadTree has the same shape
+     * whatever the order of insertion, so this only changes the order in which nodes are allocated: the nodes of every
+     * quadrant end up close to each other in memory, and consecutive insertions descend through nodes that are already
+     * cached.</p>
+     *
+     * <p>As with {@link #insert(KDPoint)}, points that are already stored are ignored.</p>
+     * @param points The {@link KDPoint}s to insert. The collection is not modified.
+     * @param parallel If <tt>true</tt>, the batch is sorted in parallel on the common {@link java.util.concurrent.ForkJoinPool}.
+     * @throws RuntimeException if some point lies outside of the space spanned by the tree. The points before it in
+     * Hilbert order are inserted nonetheless.
+     */
+    public void insertAll(Collection<KDPoint> points, boolean parallel) {
+        KDPoint[] batch = points.toArray(new KDPoint[0]);
+        double half = Math.scalb(1.0, k - 1);
+        new HilbertCurve(new double[]{-half, -half}, new double[]{half, half}).sortAlong(batch, parallel);
+        for(KDPoint p : batch)
+            insert(p);
+    }
+
+    /**
+     * Inserts a batch of {@link KDPoint}s in Hilbert order, sorting them sequentially.
+     * @param points The {@link KDPoint}s to insert. The collection is not modified.
+     * @throws RuntimeException if some point lies outside of the space spanned by the tree.
+     * @see #insertAll(Collection, boolean)
+     */
+    public void insertAll(Collection<KDPoint> points) {
+        insertAll(points, false);
+    }
+
     @Override
     public void delete(KDPoint p) {
         if(root != null) {
@@ -101,6 +160,29 @@ public class PRQuadTree implements SpatialDictionary {
         }
     }
 
+    /**
+     * <p>Moves the {@link KDPoint} <tt>oldP</tt> to the position <tt>newP</tt>. This is equivalent to deleting
+     * <tt>oldP</tt> and inserting <tt>newP</tt>, but takes a single descent from the root: the point is overwritten in its
+     * bucket if it stays within the same black node, and otherwise deleted and re-inserted below the lowest node whose
+     * quadrant contains both positions. If <tt>newP</tt> is already stored, the two points merge and the tree holds
+     * one point less.</p>
+     * @param oldP The current position of the point.
+     * @param newP The new position of the point.
+     * @return <tt>true</tt> if <tt>oldP</tt> was found and moved, <tt>false</tt> if it was not in the tree, in which case
+     * the tree is left unchanged.
+     * @throws RuntimeException if <tt>newP</tt> lies outside of the space spanned by the tree.
+     */
+    public boolean update(KDPoint oldP, KDPoint newP) {
+        checkBounds(newP);
+        if(root == null)
+            return false;
+        Relocation r = new Relocation(oldP, newP);
+        root = root.update(r);
+        if(r.isCollided())
+            count--;
+        return r.isFound();
+    }
+
     @Override
     public boolean search(KDPoint p) {
         /* Short-circuiting makes the following line safe,
@@ -111,6 +193,49 @@ public class PRQuadTree implements SpatialDictionary {
         return (root != null) && root.search(p);
     }
 
+    /**
+     * Performs a range query. Returns all the {@link KDPoint}s whose {@link KDPoint#distance(KDPoint) distance} from
+     * <tt>p</tt> is at most <tt>range</tt>, <b>INCLUSIVE</b>, except for <tt>p</tt> itself, with the same semantics as
+     * {@link KDTree#range(KDPoint, double)}.
+     * @param p The query {@link KDPoint}.
+     * @param range The maximum {@link KDPoint#distance(KDPoint) distance} from <tt>p</tt>.
+     * @return Copies of the {@link KDPoint}s within <tt>range</tt> of <tt>p</tt>.
+     * @see #range(KDPoint, double, boolean)
+     */
+    public Collection<KDPoint> range(KDPoint p, double range) {
+        return range(p, range, false);
+    }
+
+    /**
+     * Performs a range query, sequentially or in parallel on the common {@link java.util.concurrent.ForkJoinPool}. A
+     * parallel query forks at the top levels of the tree, and only pays off when the range covers a good part of a large
+     * tree.
+     * @param p The query {@link KDPoint}.
+     * @param range The maximum {@link KDPoint#distance(KDPoint) distance} from <tt>p</tt>.
+     * @param parallel If <tt>true</tt>, the query runs in parallel.
+     * @return Copies of the {@link KDPoint}s within <tt>range</tt> of <tt>p</tt>, in the same order either way.
+     * @see PRQuadNode#parallelRange(KDPoint, double)
+     */
+    public Collection<KDPoint> range(KDPoint p, double range, boolean parallel) {
+        if(root == null)
+            return new ArrayList<>();
+        if(parallel)
+            return root.parallelRange(p, range);
+        ArrayList<KDPoint> pts = new ArrayList<>();
+        root.range(p, pts, range);
+        return pts;
+    }
+
+    /**
+     * Walks the tree once and reports its shape: gray and black nodes per depth, average depth of the black nodes,
+     * occupancy of the buckets, white quadrants and an estimate of the memory footprint. A tall tree with many almost
+     * empty buckets points at clusters of very close points, which a larger bucket size would absorb.
+     * @return A {@link ShapeProfile} of the tree; it is empty if the tree is.
+     */
+    public ShapeProfile profile() {
+        return PRQuadNode.profile(root, bucketingParam);
+    }
+
     @Override
     public int height() {
         return (root == null) ? -1 : root.height();
@@ -144,4 +269,60 @@ public class PRQuadTree implements SpatialDictionary {
     public int getBucketSize(){
         return bucketingParam;
     }
+
+    /**
+     * Writes a compact binary snapshot of <tt>this</tt> into <tt>channel</tt>, which is not closed. The snapshot is a
+     * pre-order encoding of the nodes, in which gray nodes take a single byte and black nodes their bucket size and the
+     * packed coordinates of their points, so it is several times smaller, and faster to produce, than Java serialization
+     * of the same tree.
+     * @param channel The channel to write to.
+     * @throws IOException if writing to the channel fails.
+     * @see PRQuadSnapshot
+     * @see #readSnapshot(ReadableByteChannel)
+     */
+    public void writeSnapshot(WritableByteChannel channel) throws IOException {
+        PRQuadSnapshot.write(root, k, bucketingParam, count, channel);
+    }
+
+    /**
+     * Writes a compact binary snapshot of <tt>this</tt> into a file, replacing its contents.
+     * @param file The file to write to.
+     * @throws IOException if writing to the file fails.
+     * @see #writeSnapshot(WritableByteChannel)
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            writeSnapshot(channel);
+        }
+    }
+
+    /**
+     * Restores a {@link PRQuadTree} from a snapshot that {@link #writeSnapshot(WritableByteChannel)} wrote. The nodes
+     * are allocated directly, in pre-order, with their final contents, so no point is routed from the root and no bucket
+     * is ever split.
+     * @param channel The channel to read from. It is not closed, and it might have been read past the end of the snapshot.
+     * @return A tree with the same parameters, nodes and points as the one that was saved.
+     * @throws IOException if reading from the channel fails, or if it does not hold a valid snapshot.
+     */
+    public static PRQuadTree readSnapshot(ReadableByteChannel channel) throws IOException {
+        PRQuadSnapshot snapshot = PRQuadSnapshot.read(channel);
+        PRQuadTree tree = new PRQuadTree(snapshot.getK(), snapshot.getBucketSize());
+        tree.root = snapshot.getRoot();
+        tree.count = snapshot.getCount();
+        return tree;
+    }
+
+    /**
+     * Restores a {@link PRQuadTree} from a snapshot file.
+     * @param file The file to read from.
+     * @return A tree with the same parameters, nodes and points as the one that was saved.
+     * @throws IOException if reading from the file fails, or if it does not hold a valid snapshot.
+     * @see #readSnapshot(ReadableByteChannel)
+     */
+    public static PRQuadTree readSnapshot(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            return readSnapshot(channel);
+        }
+    }
 }
@@ -0,0 +1,440 @@
+package projects.spatial.trees;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.nodes.PRQuadBlackNode;
+import projects.spatial.nodes.PRQuadNode;
+import projects.spatial.nodes.Relocation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>PRQuadTreeTests</tt> checks {@link PRQuadTree} against a brute-force set of points, including points that lie
+ * on the sides of quadrants, and checks that {@link PRQuadTree#update(KDPoint, KDPoint)} leaves the tree exactly as a
+ * deletion followed by an insertion would. Parallel range queries have to report the same points as sequential ones,
+ * in the same order, and batch insertions have to build the same tree as point-by-point ones. Snapshots have to restore
+ * trees exactly, and malformed ones have to be rejected.</p>
+ *
+ * @see PRQuadTree
+ */
+public class PRQuadTreeTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int K = 5; // The tree spans [-16, 16] x [-16, 16].
+	private static final int MAX_ITER = 20000;
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	/*
+	 * Points on the integer grid, many of which lie on the sides of quadrants, and a few that are much closer to each
+	 * other, so that some black nodes end up deep in the tree.
+	 */
+	private KDPoint randomPoint(){
+		if(r.nextInt(10) == 0)
+			return new KDPoint(1 + r.nextInt(4) / 64.0, 1 + r.nextInt(4) / 64.0);
+		return new KDPoint(r.nextInt(33) - 16, r.nextInt(33) - 16);
+	}
+
+	private static List<String> sorted(Collection<KDPoint> points){
+		List<String> keys = new ArrayList<>();
+		for(KDPoint p : points)
+			keys.add(p.toString());
+		keys.sort(null);
+		return keys;
+	}
+
+	private static List<KDPoint> bruteForceRange(Set<KDPoint> points, KDPoint anchor, double range){
+		List<KDPoint> result = new ArrayList<>();
+		for(KDPoint p : points)
+			if(p.distance(anchor) <= range && !p.equals(anchor))
+				result.add(p);
+		return result;
+	}
+
+	/*
+	 * A P-R QuadTree has the same shape whatever the order of insertion, so a tree that went through any sequence of
+	 * modifications has to be as tall as one built from scratch, and every point has to be found along its quadrants.
+	 */
+	private static void checkStructure(PRQuadTree tree, Set<KDPoint> points, int bucketSize){
+		PRQuadTree fresh = new PRQuadTree(K, bucketSize);
+		for(KDPoint p : points)
+			fresh.insert(p);
+		assertEquals(fresh.height(), tree.height());
+		assertEquals(points.size(), tree.count());
+		for(KDPoint p : points)
+			assertTrue(tree.search(p));
+	}
+
+	private void checkAgainstBruteForce(int bucketSize){
+		PRQuadTree tree = new PRQuadTree(K, bucketSize);
+		Set<KDPoint> points = new LinkedHashSet<>();
+		for(int i = 0; i < MAX_ITER; i++){
+			KDPoint p = randomPoint();
+			int op = r.nextInt(10);
+			if(op < 4){
+				tree.insert(p);
+				points.add(p);
+			} else if(op < 6){
+				tree.delete(p);
+				points.remove(p);
+			} else if(op < 8){
+				assertEquals(points.contains(p), tree.search(p));
+			} else {
+				double range = r.nextInt(40);
+				assertEquals(sorted(bruteForceRange(points, p, range)), sorted(tree.range(p, range)));
+			}
+			assertEquals(points.size(), tree.count());
+			assertEquals(points.isEmpty(), tree.isEmpty());
+		}
+		checkStructure(tree, points, bucketSize);
+	}
+
+	@Test
+	public void testAgainstBruteForce() {
+		checkAgainstBruteForce(1);
+	}
+
+	@Test
+	public void testAgainstBruteForceWithBuckets() {
+		checkAgainstBruteForce(4);
+	}
+
+	private void checkUpdateAgainstDeleteAndInsert(int bucketSize){
+		PRQuadTree tree = new PRQuadTree(K, bucketSize);
+		Set<KDPoint> points = new LinkedHashSet<>();
+		for(int i = 0; i < 200; i++){
+			KDPoint p = randomPoint();
+			tree.insert(p);
+			points.add(p);
+		}
+		for(int i = 0; i < MAX_ITER / 10; i++){
+			KDPoint from = randomPoint(), to = randomPoint();
+			boolean stored = points.contains(from);
+			assertEquals(stored, tree.update(from, to));
+			if(stored){
+				points.remove(from);
+				points.add(to); // If to was already stored, the two points merge.
+			}
+			checkStructure(tree, points, bucketSize);
+			if(i % 100 == 0){
+				KDPoint anchor = randomPoint();
+				assertEquals(sorted(bruteForceRange(points, anchor, 50)), sorted(tree.range(anchor, 50)));
+			}
+			if(points.size() < 50) // Collisions slowly shrink the tree.
+				for(int j = 0; j < 50; j++){
+					KDPoint p = randomPoint();
+					tree.insert(p);
+					points.add(p);
+				}
+		}
+	}
+
+	@Test
+	public void testUpdateAgainstDeleteAndInsert() {
+		checkUpdateAgainstDeleteAndInsert(1);
+	}
+
+	@Test
+	public void testUpdateAgainstDeleteAndInsertWithBuckets() {
+		checkUpdateAgainstDeleteAndInsert(4);
+	}
+
+	@Test
+	public void testUpdateCollision() {
+		PRQuadTree tree = new PRQuadTree(K, 2);
+		tree.insert(new KDPoint(1, 1));
+		tree.insert(new KDPoint(2, 2));
+		tree.insert(new KDPoint(-3, 5));
+		assertTrue(tree.update(new KDPoint(1, 1), new KDPoint(2, 2))); // Within the same bucket.
+		assertEquals(2, tree.count());
+		assertTrue(tree.update(new KDPoint(-3, 5), new KDPoint(2, 2))); // Across quadrants.
+		assertEquals(1, tree.count());
+		assertTrue(tree.search(new KDPoint(2, 2)));
+		assertFalse(tree.search(new KDPoint(-3, 5)));
+
+		PRQuadNode bucket = new PRQuadBlackNode(new KDPoint(0, 0), K, 2, new KDPoint(1, 1));
+		bucket = bucket.insert(new KDPoint(2, 2), K);
+		Relocation relocation = new Relocation(new KDPoint(1, 1), new KDPoint(2, 2));
+		bucket = bucket.update(relocation);
+		assertTrue(relocation.isFound() && relocation.isCollided());
+		assertEquals(1, bucket.count());
+		relocation = new Relocation(new KDPoint(2, 2), new KDPoint(2, 2));
+		bucket.update(relocation);
+		assertTrue(relocation.isFound());
+		assertFalse(relocation.isCollided()); // Staying put is not a collision.
+		assertEquals(1, bucket.count());
+	}
+
+	@Test
+	public void testUpdateOutOfBounds() {
+		PRQuadTree tree = new PRQuadTree(K, 1);
+		tree.insert(new KDPoint(1, 1));
+		tree.insert(new KDPoint(16, -16)); // Corners are within bounds.
+		try {
+			tree.update(new KDPoint(1, 1), new KDPoint(16.5, 0));
+			fail("Moved a point outside of the space spanned by the tree.");
+		} catch(RuntimeException ignored){
+			// Expected; the tree should not have changed.
+		}
+		assertEquals(2, tree.count());
+		assertTrue(tree.search(new KDPoint(1, 1)));
+		assertFalse(tree.search(new KDPoint(16.5, 0)));
+		assertTrue(tree.update(new KDPoint(1, 1), new KDPoint(-16, 16)));
+		assertTrue(tree.search(new KDPoint(-16, 16)));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInsertOutOfBounds() {
+		new PRQuadTree(K, 1).insert(new KDPoint(0, -17));
+	}
+
+	@Test
+	public void testUpdateOfMissingPoint() {
+		PRQuadTree tree = new PRQuadTree(K, 1);
+		assertFalse(tree.update(new KDPoint(1, 1), new KDPoint(2, 2)));
+		tree.insert(new KDPoint(1, 1));
+		assertFalse(tree.update(new KDPoint(3, 3), new KDPoint(2, 2)));
+		assertEquals(1, tree.count());
+		assertFalse(tree.search(new KDPoint(2, 2)));
+	}
+
+	private void checkInsertAll(int bucketSize, boolean parallel){
+		PRQuadTree batched = new PRQuadTree(K, bucketSize), incremental = new PRQuadTree(K, bucketSize);
+		Set<KDPoint> points = new LinkedHashSet<>();
+		for(int round = 0; round < 3; round++){ // Into an empty tree first, and then into non-empty ones.
+			List<KDPoint> batch = new ArrayList<>();
+			for(int i = 0; i < 1500; i++)
+				batch.add(randomPoint()); // Plenty of copies, which are ignored.
+			batched.insertAll(batch, parallel);
+			for(KDPoint p : batch)
+				incremental.insert(p);
+			points.addAll(batch);
+			checkStructure(batched, points, bucketSize);
+			for(int i = 0; i < 100; i++){
+				KDPoint anchor = randomPoint();
+				double range = r.nextInt(40);
+				assertEquals(sorted(incremental.range(anchor, range)), sorted(batched.range(anchor, range)));
+				assertEquals(incremental.search(anchor), batched.search(anchor));
+			}
+		}
+	}
+
+	@Test
+	public void testInsertAll() {
+		checkInsertAll(1, false);
+		checkInsertAll(4, true);
+	}
+
+	@Test
+	public void testInsertAllOutOfBounds() {
+		PRQuadTree tree = new PRQuadTree(K, 1);
+		tree.insertAll(new ArrayList<>());
+		assertTrue(tree.isEmpty());
+		try {
+			tree.insertAll(List.of(new KDPoint(-16, -16), new KDPoint(16, 17), new KDPoint(16, 16)));
+			fail("Inserted a point outside of the space spanned by the tree.");
+		} catch(RuntimeException ignored){
+			// Expected; the points before it along the curve are in.
+		}
+		assertTrue(tree.search(new KDPoint(-16, -16))); // The curve starts at the lower corner.
+		assertFalse(tree.search(new KDPoint(16, 17)));
+	}
+
+	/*
+	 * Trees well above the grain of parallel range queries, so that they fork at several levels before they go
+	 * sequential.
+	 */
+	private void checkParallelRange(int bucketSize){
+		PRQuadTree tree = new PRQuadTree(K, bucketSize);
+		for(int i = 0; i < 50000; i++)
+			tree.insert(new KDPoint(32 * r.nextDouble() - 16, 32 * r.nextDouble() - 16));
+		for(int i = 0; i < 100; i++){
+			KDPoint anchor = new KDPoint(40 * r.nextDouble() - 20, 40 * r.nextDouble() - 20);
+			double range = (i == 0) ? Double.MAX_VALUE : r.nextInt(20) * r.nextInt(20);
+			assertEquals(new ArrayList<>(tree.range(anchor, range)), new ArrayList<>(tree.range(anchor, range, true)));
+		}
+	}
+
+	@Test
+	public void testParallelRangeMatchesSequentialRange() {
+		checkParallelRange(1);
+	}
+
+	@Test
+	public void testParallelRangeMatchesSequentialRangeWithBuckets() {
+		checkParallelRange(8);
+	}
+
+	private static byte[] snapshotOf(PRQuadTree tree) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		tree.writeSnapshot(Channels.newChannel(bytes));
+		return bytes.toByteArray();
+	}
+
+	private static PRQuadTree restore(byte[] snapshot) throws IOException {
+		return PRQuadTree.readSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)));
+	}
+
+	private static void checkRoundTrip(PRQuadTree tree, Set<KDPoint> points) throws IOException {
+		PRQuadTree restored = restore(snapshotOf(tree));
+		assertEquals(tree.getK(), restored.getK());
+		assertEquals(tree.getBucketSize(), restored.getBucketSize());
+		assertEquals(tree.height(), restored.height());
+		checkStructure(restored, points, tree.getBucketSize());
+		KDPoint anchor = new KDPoint(-20, -20); // Outside of the tree, so that range() reports every point.
+		assertEquals(new ArrayList<>(tree.range(anchor, Double.MAX_VALUE)), new ArrayList<>(restored.range(anchor, Double.MAX_VALUE)));
+	}
+
+	@Test
+	public void testSnapshotRoundTrip() throws IOException {
+		for(int bucketSize : new int[]{1, 3}){
+			PRQuadTree tree = new PRQuadTree(K, bucketSize);
+			Set<KDPoint> points = new LinkedHashSet<>();
+			checkRoundTrip(tree, points);
+			for(int i = 0; i < 2000; i++){
+				KDPoint p = randomPoint();
+				tree.insert(p);
+				points.add(p);
+			}
+			tree.insert(new KDPoint(-16, 16)); // On the sides of the root.
+			tree.insert(new KDPoint(16, 16));
+			tree.insert(new KDPoint(3, 3));
+			tree.insert(new KDPoint(3, 3 + Math.scalb(1.0, -40))); // Far below k = 0.
+			points.addAll(List.of(new KDPoint(-16, 16), new KDPoint(16, 16), new KDPoint(3, 3), new KDPoint(3, 3 + Math.scalb(1.0, -40))));
+			checkRoundTrip(tree, points);
+
+			PRQuadTree restored = restore(snapshotOf(tree)); // Restored trees remain fully modifiable.
+			for(int i = 0; i < 2000; i++){
+				KDPoint p = randomPoint();
+				if(r.nextBoolean()){
+					restored.insert(p);
+					points.add(p);
+				} else {
+					restored.delete(p);
+					points.remove(p);
+				}
+			}
+			checkStructure(restored, points, bucketSize);
+		}
+	}
+
+	/*
+	 * A hand-written snapshot header for a tree of K, positioned where the first node goes.
+	 */
+	private static ByteBuffer header(int k, int bucketSize, int count){
+		return ByteBuffer.allocate(1 << 16).putInt(0x50525154).put((byte)1).putInt(k).putInt(bucketSize).putInt(count);
+	}
+
+	private static ByteBuffer black(ByteBuffer buffer, KDPoint... points){
+		buffer.put((byte)0x01).put((byte)points.length);
+		for(KDPoint p : points)
+			buffer.putDouble(p.coords[0]).putDouble(p.coords[1]);
+		return buffer;
+	}
+
+	private static ByteBuffer gray(ByteBuffer buffer, int quadrant){
+		return buffer.put((byte)(0x10 | (1 << quadrant)));
+	}
+
+	private static PRQuadTree restore(ByteBuffer buffer) throws IOException {
+		byte[] snapshot = new byte[buffer.position()];
+		buffer.flip().get(snapshot);
+		return restore(snapshot);
+	}
+
+	private static void checkMalformed(ByteBuffer buffer){
+		try {
+			restore(buffer);
+			fail("Restored a malformed snapshot.");
+		} catch(IOException ignored){
+			// Expected.
+		}
+	}
+
+	@Test
+	public void testSnapshotsWithPointsInTheirQuadrants() throws IOException {
+		assertTrue(restore(black(header(K, 2, 2), new KDPoint(16, -16), new KDPoint(-16, 16))).search(new KDPoint(16, -16)));
+		assertTrue(restore(black(gray(header(K, 1, 1), 1), new KDPoint(0, 0))).search(new KDPoint(0, 0)));
+		assertTrue(restore(black(gray(gray(header(K, 1, 1), 1), 1), new KDPoint(16, 16))).search(new KDPoint(16, 16)));
+	}
+
+	/*
+	 * Buckets larger than the tree are fine up to a point, and buckets of any size are fine as long as they are full.
+	 * Either way, restored buckets grow as points are inserted into them.
+	 */
+	@Test
+	public void testSnapshotsWithLargeBuckets() throws IOException {
+		PRQuadTree restored = restore(black(header(K, 4096, 1), new KDPoint(1, 1)));
+		assertEquals(4096, restored.getBucketSize());
+		Set<KDPoint> points = new LinkedHashSet<>(List.of(new KDPoint(1, 1)));
+		for(int i = 0; i < 5000; i++){
+			KDPoint p = randomPoint();
+			restored.insert(p);
+			points.add(p);
+		}
+		checkStructure(restored, points, 4096);
+
+		PRQuadTree tree = new PRQuadTree(K, 5000);
+		points.clear();
+		while(points.size() < 5000){
+			KDPoint p = new KDPoint(32 * r.nextDouble() - 16, 32 * r.nextDouble() - 16);
+			tree.insert(p);
+			points.add(p);
+		}
+		checkRoundTrip(tree, points); // A single bucket of 5000 points.
+		restored = restore(snapshotOf(tree));
+		assertEquals(0, restored.height());
+		restored.insert(new KDPoint(0, 0)); // Splits it.
+		points.add(new KDPoint(0, 0));
+		checkStructure(restored, points, 5000);
+	}
+
+	@Test
+	public void testSnapshotsWithPointsOutsideOfTheirQuadrants() {
+		checkMalformed(black(header(K, 1, 1), new KDPoint(16.5, 0))); // Outside of the root.
+		checkMalformed(black(gray(header(K, 1, 1), 1), new KDPoint(-1, 1))); // NW point in the NE quadrant.
+		checkMalformed(black(gray(header(K, 1, 1), 0), new KDPoint(0, 1))); // On the eastern side of NW, which is NE's.
+		checkMalformed(black(gray(header(K, 1, 1), 2), new KDPoint(-1, 0))); // On the northern side of SW, which is NW's.
+		checkMalformed(black(gray(gray(header(K, 1, 1), 1), 0), new KDPoint(16, 16))); // In NE, but not in its NW.
+		checkMalformed(black(header(K, 1, 1), new KDPoint(Double.NaN, 0)));
+	}
+
+	@Test
+	public void testMalformedSnapshots() {
+		checkMalformed(black(header(K, 2, 2), new KDPoint(1, 1), new KDPoint(1, 1))); // The same point twice.
+		checkMalformed(black(header(K, 1, 2), new KDPoint(1, 1), new KDPoint(2, 2))); // An overfull bucket.
+		checkMalformed(black(header(K, 1, 2), new KDPoint(1, 1))); // The wrong count.
+		checkMalformed(black(header(K, Integer.MAX_VALUE, 1), new KDPoint(1, 1))); // Buckets far larger than the tree.
+		checkMalformed(black(header(K, 4097, 1), new KDPoint(1, 1)));
+		ByteBuffer unbacked = header(K, Integer.MAX_VALUE, Integer.MAX_VALUE).put((byte)0x01); // A bucket that promises
+		unbacked.put(new byte[]{(byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07}); // far more points than it holds.
+		checkMalformed(unbacked.putDouble(1).putDouble(1));
+		checkMalformed(black(header(2000, 1, 1), new KDPoint(1, 1))); // A root too large for doubles.
+		checkMalformed(header(K, 1, 1).put((byte)0x10)); // A gray node without children.
+		ByteBuffer truncated = black(header(K, 1, 1), new KDPoint(1, 1));
+		truncated.position(truncated.position() - 4);
+		checkMalformed(truncated);
+
+		ByteBuffer deep = header(K, 1, 1); // Gray nodes well past the point where quadrants cannot be split anymore.
+		for(int i = 0; i < 5000; i++)
+			gray(deep, 3);
+		checkMalformed(black(deep, new KDPoint(0, 0)));
+	}
+}
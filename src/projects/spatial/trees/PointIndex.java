@@ -0,0 +1,222 @@
+package projects.spatial.trees;
+
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.Arrays;
+
+/**
+ * <p>{@link PointIndex} is an open-addressing hash map from {@link KDPoint}s to <tt>int</tt>s, with linear probing. It
+ * serves as an exact-match side index for spatial trees, which map every point to its multiplicity, so that membership
+ * tests take expected O(1) time instead of a descent from the root, and as a point-to-position map for algorithms such
+ * as {@link projects.spatial.clustering.DBSCAN}.</p>
+ *
+ * <p>Keys are compared through {@link KDPoint#equals(Object)} and hashed through {@link KDPoint#hashCode()}. Since
+ * {@link KDPoint}s are mutable, every key is copied when it enters the map. The table is kept at most half full, and
+ * removals shift the entries that follow them back, so that no tombstones ever accumulate.</p>
+ *
+ * @see KDTree#KDTree(int, boolean, double, boolean)
+ */
+public class PointIndex {
+
+	/* ************************************************************************** */
+	/* ************************* PRIVATE FIELDS AND METHODS ********************* */
+	/* ************************************************************************** */
+
+	private static final int MIN_CAPACITY = 16;
+
+	private KDPoint[] keys;
+	private int[] hashes;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	/*
+	 * Fibonacci hashing on top of KDPoint#hashCode(), whose low bits are poor for small integer coordinates.
+	 * Package-private, so that tests can find the home slot of a key.
+	 */
+	static int spread(int hash){
+		int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/*
+	 * Returns the slot of key, or the empty slot where it would go.
+	 */
+	private int slotOf(KDPoint key, int hash){
+		int slot = hash & mask;
+		while(keys[slot] != null && (hashes[slot] != hash || !keys[slot].equals(key)))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void allocate(int capacity){
+		keys = new KDPoint[capacity];
+		hashes = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	private void grow(){
+		KDPoint[] oldKeys = keys;
+		int[] oldHashes = hashes, oldValues = values;
+		allocate(keys.length * 2);
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] == null)
+				continue;
+			int slot = oldHashes[i] & mask;
+			while(keys[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			hashes[slot] = oldHashes[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	/*
+	 * Backward-shift deletion: every entry of the cluster after the freed slot that could have been placed at it or
+	 * before it is moved into it, and the process repeats from the slot that it vacated.
+	 */
+	private void removeAt(int slot){
+		int free = slot;
+		int next = (free + 1) & mask;
+		while(keys[next] != null){
+			int home = hashes[next] & mask;
+			if(((next - home) & mask) >= ((next - free) & mask)){
+				keys[free] = keys[next];
+				hashes[free] = hashes[next];
+				values[free] = values[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[free] = null;
+		size--;
+	}
+
+	/* ************************************************************************** */
+	/* ************************ PUBLIC (INTERFACE) METHODS ********************** */
+	/* ************************************************************************** */
+
+	/**
+	 * Creates an empty {@link PointIndex}.
+	 */
+	public PointIndex(){
+		this(0);
+	}
+
+	/**
+	 * Creates an empty {@link PointIndex} that can hold <tt>expectedSize</tt> keys without having to grow.
+	 * @param expectedSize The number of keys expected.
+	 * @throws RuntimeException if <tt>expectedSize</tt> is negative.
+	 */
+	public PointIndex(int expectedSize){
+		if(expectedSize < 0)
+			throw new RuntimeException("The expected size of a PointIndex cannot be negative; we were given " + expectedSize + ".");
+		int capacity = MIN_CAPACITY;
+		while(capacity < 2L * expectedSize)
+			capacity <<= 1;
+		allocate(capacity);
+		size = 0;
+	}
+
+	/**
+	 * Looks up the value associated with <tt>p</tt>.
+	 * @param p The {@link KDPoint} to look up.
+	 * @param defaultValue The value to return if <tt>p</tt> is not a key.
+	 * @return The value associated with <tt>p</tt>, or <tt>defaultValue</tt> if there is none.
+	 */
+	public int getOrDefault(KDPoint p, int defaultValue){
+		int hash = spread(p.hashCode());
+		int slot = slotOf(p, hash);
+		return (keys[slot] == null) ? defaultValue : values[slot];
+	}
+
+	/**
+	 * Reports whether <tt>p</tt> is a key of <tt>this</tt>.
+	 * @param p The {@link KDPoint} to look up.
+	 * @return <tt>true</tt> if some value is associated with <tt>p</tt>, <tt>false</tt> otherwise.
+	 */
+	public boolean containsKey(KDPoint p){
+		return keys[slotOf(p, spread(p.hashCode()))] != null;
+	}
+
+	/**
+	 * Associates <tt>value</tt> with <tt>p</tt>, replacing any previous value. A copy of <tt>p</tt> is stored.
+	 * @param p The key.
+	 * @param value The value.
+	 */
+	public void put(KDPoint p, int value){
+		int hash = spread(p.hashCode());
+		int slot = slotOf(p, hash);
+		if(keys[slot] == null){
+			if(2 * (size + 1) > keys.length){
+				grow();
+				slot = slotOf(p, hash);
+			}
+			keys[slot] = new KDPoint(p);
+			hashes[slot] = hash;
+			size++;
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Adds <tt>delta</tt> to the value associated with <tt>p</tt>, where a missing key counts as 0. If the sum is 0,
+	 * the key is removed. This makes {@link PointIndex} usable as a multiset, with values as multiplicities.
+	 * @param p The key.
+	 * @param delta The amount to add.
+	 * @return The new value associated with <tt>p</tt>.
+	 */
+	public int add(KDPoint p, int delta){
+		int hash = spread(p.hashCode());
+		int slot = slotOf(p, hash);
+		if(keys[slot] == null){
+			if(delta != 0)
+				put(p, delta);
+			return delta;
+		}
+		int value = values[slot] + delta;
+		if(value == 0)
+			removeAt(slot);
+		else
+			values[slot] = value;
+		return value;
+	}
+
+	/**
+	 * Removes <tt>p</tt> and its value from <tt>this</tt>.
+	 * @param p The key to remove.
+	 * @return <tt>true</tt> if <tt>p</tt> was a key, <tt>false</tt> otherwise.
+	 */
+	public boolean remove(KDPoint p){
+		int slot = slotOf(p, spread(p.hashCode()));
+		if(keys[slot] == null)
+			return false;
+		removeAt(slot);
+		return true;
+	}
+
+	/**
+	 * Returns the number of keys in <tt>this</tt>.
+	 * @return The number of distinct {@link KDPoint}s that have a value.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Reports whether <tt>this</tt> has no keys.
+	 * @return <tt>true</tt> if <tt>this</tt> is empty, <tt>false</tt> otherwise.
+	 */
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Removes all keys, keeping the current capacity.
+	 */
+	public void clear(){
+		Arrays.fill(keys, null);
+		size = 0;
+	}
+}
@@ -0,0 +1,210 @@
+package projects.spatial.trees;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>PointIndexTests</tt> checks {@link PointIndex} against a {@link HashMap}, with keys that share their hash code,
+ * so that long probe runs form, entries are removed from the middle of them, and runs wrap around the end of the
+ * table.</p>
+ *
+ * @see PointIndex
+ */
+public class PointIndexTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int MAX_ITER = 50000;
+	private static final int CAPACITY = 16; // The capacity of a fresh PointIndex, which holds up to 8 keys.
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+	}
+
+	/*
+	 * Double#hashCode() folds the two halves of a double onto each other, so the doubles whose bits are
+	 * ((high ^ i) << 32) | i all hash to high, and so do the points (x, 0) built from them.
+	 */
+	private static KDPoint[] collidingKeys(int high, int n){
+		KDPoint[] keys = new KDPoint[n];
+		for(int i = 0; i < n; i++)
+			keys[i] = new KDPoint(Double.longBitsToDouble(((long)(high ^ i) << 32) | i), 0);
+		return keys;
+	}
+
+	private static int homeSlot(KDPoint key, int capacity){
+		return PointIndex.spread(key.hashCode()) & (capacity - 1);
+	}
+
+	/*
+	 * A family of colliding keys whose home slot is the given one.
+	 */
+	private static KDPoint[] collidingKeysAt(int slot, int n){
+		for(int high = 0x3FF00000; ; high++){
+			KDPoint[] keys = collidingKeys(high, n);
+			if(homeSlot(keys[0], CAPACITY) == slot)
+				return keys;
+		}
+	}
+
+	private static void checkAgainst(Map<KDPoint, Integer> expected, PointIndex index, List<KDPoint> pool){
+		assertEquals(expected.size(), index.size());
+		assertEquals(expected.isEmpty(), index.isEmpty());
+		for(KDPoint p : pool){
+			assertEquals(expected.containsKey(p), index.containsKey(p));
+			assertEquals((int)expected.getOrDefault(p, -1), index.getOrDefault(p, -1));
+		}
+	}
+
+	@Test
+	public void testCollidingKeys() {
+		KDPoint[] keys = collidingKeys(0x3FF00000, 20);
+		for(int i = 1; i < keys.length; i++){
+			assertEquals(keys[0].hashCode(), keys[i].hashCode());
+			assertNotEquals(keys[0], keys[i]);
+		}
+		PointIndex index = new PointIndex();
+		for(int i = 0; i < keys.length; i++) // Grows twice, with every key in the same run.
+			index.put(keys[i], i);
+		for(int i = 0; i < keys.length; i++)
+			assertEquals(i, index.getOrDefault(keys[i], -1));
+		assertFalse(index.containsKey(collidingKeys(0x3FF00000, 21)[20]));
+	}
+
+	@Test
+	public void testRemovalInTheMiddleOfRun() {
+		KDPoint[] keys = collidingKeysAt(3, 5);
+		KDPoint other = null; // A key whose home slot lies inside the run, so it ends up right after it.
+		for(int i = 0; other == null; i++)
+			if(homeSlot(new KDPoint(i, i), CAPACITY) == 5)
+				other = new KDPoint(i, i);
+		PointIndex index = new PointIndex();
+		for(int i = 0; i < keys.length; i++)
+			index.put(keys[i], i);
+		index.put(other, 100); // Slots 3 to 7 hold the family, so other goes to slot 8.
+		assertTrue(index.remove(keys[2]));
+		assertFalse(index.containsKey(keys[2]));
+		for(int i : new int[]{0, 1, 3, 4})
+			assertEquals(i, index.getOrDefault(keys[i], -1));
+		assertEquals(100, index.getOrDefault(other, -1));
+		assertTrue(index.remove(keys[0]));
+		assertTrue(index.remove(keys[4]));
+		assertEquals(100, index.getOrDefault(other, -1));
+		assertEquals(1, index.getOrDefault(keys[1], -1));
+		assertEquals(3, index.getOrDefault(keys[3], -1));
+		assertEquals(3, index.size());
+		assertFalse(index.remove(keys[0]));
+	}
+
+	@Test
+	public void testWrapAround() {
+		KDPoint[] keys = collidingKeysAt(CAPACITY - 2, 5); // Slots 14, 15, 0, 1 and 2.
+		KDPoint other = null; // A key whose home slot is 0, which the run pushes to slot 3.
+		for(int i = 0; other == null; i++)
+			if(homeSlot(new KDPoint(i, -i), CAPACITY) == 0)
+				other = new KDPoint(i, -i);
+		PointIndex index = new PointIndex();
+		for(int i = 0; i < keys.length; i++)
+			index.put(keys[i], i);
+		index.put(other, 100);
+		for(int i = 0; i < keys.length; i++){
+			assertTrue(index.remove(keys[i])); // Every removal shifts the rest of the run back across the end.
+			for(int j = i + 1; j < keys.length; j++)
+				assertEquals(j, index.getOrDefault(keys[j], -1));
+			assertEquals(100, index.getOrDefault(other, -1));
+		}
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void testAddToZeroRemovesKey() {
+		PointIndex index = new PointIndex();
+		KDPoint p = new KDPoint(1, 2);
+		assertEquals(0, index.add(p, 0));
+		assertFalse(index.containsKey(p)); // A zero multiplicity is never stored.
+		assertEquals(2, index.add(p, 2));
+		assertEquals(1, index.add(p, -1));
+		assertTrue(index.containsKey(p));
+		assertEquals(0, index.add(p, -1));
+		assertFalse(index.containsKey(p));
+		assertEquals(0, index.size());
+		assertEquals(-3, index.add(p, -3)); // Negative values are allowed, like any others.
+		assertEquals(-3, index.getOrDefault(p, 0));
+	}
+
+	@Test
+	public void testSignedZeros() {
+		PointIndex index = new PointIndex();
+		index.put(new KDPoint(0.0, -0.0), 1);
+		assertTrue(index.containsKey(new KDPoint(-0.0, 0.0)));
+		index.add(new KDPoint(-0.0, -0.0), -1);
+		assertTrue(index.isEmpty());
+	}
+
+	@Test
+	public void testKeysAreCopied() {
+		PointIndex index = new PointIndex();
+		KDPoint p = new KDPoint(1, 1);
+		index.put(p, 1);
+		p.coords[0] = 2;
+		assertTrue(index.containsKey(new KDPoint(1, 1)));
+		assertFalse(index.containsKey(p));
+	}
+
+	@Test
+	public void testAgainstHashMap() {
+		List<KDPoint> pool = new ArrayList<>();
+		for(int high = 0; high < 4; high++)
+			for(KDPoint p : collidingKeys(0x40000000 + high, 12))
+				pool.add(p);
+		for(int i = 0; i < 40; i++)
+			pool.add(new KDPoint(r.nextInt(8), r.nextInt(8)));
+		PointIndex index = new PointIndex();
+		Map<KDPoint, Integer> expected = new HashMap<>();
+		for(int i = 0; i < MAX_ITER; i++){
+			KDPoint p = pool.get(r.nextInt(pool.size()));
+			switch(r.nextInt(5)){
+				case 0:
+					index.put(p, i);
+					expected.put(p, i);
+					break;
+				case 1:
+				case 2:
+					int delta = r.nextInt(5) - 2, value = expected.getOrDefault(p, 0) + delta;
+					assertEquals(value, index.add(p, delta));
+					if(value == 0)
+						expected.remove(p);
+					else
+						expected.put(p, value);
+					break;
+				case 3:
+					assertEquals(expected.remove(p) != null, index.remove(p));
+					break;
+				default:
+					assertEquals(expected.containsKey(p), index.containsKey(p));
+			}
+			if(i % 1000 == 0)
+				checkAgainst(expected, index, pool);
+			if(i % 10000 == 0 && r.nextBoolean()){
+				index.clear();
+				expected.clear();
+			}
+		}
+		checkAgainst(expected, index, pool);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNegativeExpectedSize() {
+		new PointIndex(-1);
+	}
+}
@@ -0,0 +1,288 @@
+package projects.spatial.trees;
+
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.knnutils.BoundedPriorityQueue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <p>{@link TimeWindowedSpatialIndex} holds the {@link KDPoint}s reported within a sliding window of time, and forgets
+ * older ones on its own. Time is cut into <b>slices</b> of fixed length, and every slice keeps its points in a
+ * <b>partition</b> of its own, such as a {@link KDTree} or a {@link PRQuadTree}, created on demand by a factory. The
+ * window spans the <tt>numSlices</tt> most recent slices, the current one included.</p>
+ *
+ * <p>Whenever the clock enters a new slice, the slices that fall out of the window are dropped whole, in O(1) time each,
+ * instead of deleting their points one at a time. Queries fan out across the live slices and merge their answers.
+ * Expiry is therefore slice-grained: a point stays visible for at least <tt>(numSlices - 1) &#42; sliceLength</tt> and
+ * less than <tt>numSlices &#42; sliceLength</tt> time units, and finer slices trade a tighter window for more partitions
+ * to query.</p>
+ *
+ * <p>Range and nearest neighbor queries require partitions that are {@link SpatialQuerySolver}s as well; they throw a
+ * {@link RuntimeException} otherwise. Like its partitions, this class is not thread-safe.</p>
+ *
+ * @see SpatialDictionary
+ * @see SpatialQuerySolver
+ */
+public class TimeWindowedSpatialIndex implements SpatialDictionary, SpatialQuerySolver {
+
+	/* ************************************************************************** */
+	/* ************************* PRIVATE FIELDS AND CLASSES ********************* */
+	/* ************************************************************************** */
+
+	private static final class Slice {
+		private final long number; // The start time of the slice, divided by the slice length.
+		private final SpatialDictionary partition;
+
+		Slice(long number, SpatialDictionary partition){
+			this.number = number;
+			this.partition = partition;
+		}
+	}
+
+	private final int numSlices;
+	private final long sliceLength;
+	private final Supplier<? extends SpatialDictionary> factory;
+	private final LongSupplier clock;
+
+	/**
+	 * Slice <em>s</em> lives at position <em>s</em> mod <tt>numSlices</tt>, so a slot whose slice has fallen out of the
+	 * window is reused by the slice that replaces it.
+	 */
+	private final Slice[] ring;
+	private long newest; // The number of the current slice.
+	private int count;
+
+	private long sliceOf(long time){
+		return Math.floorDiv(time, sliceLength);
+	}
+
+	private boolean isLive(Slice slice){
+		return slice != null && slice.number > newest - numSlices;
+	}
+
+	/*
+	 * Moves the window forward to the current time, dropping every slice that falls out of it.
+	 */
+	private void advance(){
+		long current = sliceOf(clock.getAsLong());
+		if(current <= newest)
+			return;
+		if(current - numSlices >= newest){ // The whole window expired.
+			Arrays.fill(ring, null);
+			count = 0;
+			newest = current;
+			return;
+		}
+		for(long s = newest - numSlices + 1; s <= current - numSlices; s++){
+			int slot = (int)Math.floorMod(s, (long)numSlices);
+			if(ring[slot] != null && ring[slot].number == s){
+				count -= ring[slot].partition.count();
+				ring[slot] = null;
+			}
+		}
+		newest = current;
+	}
+
+	private SpatialQuerySolver solverOf(Slice slice){
+		if(!(slice.partition instanceof SpatialQuerySolver))
+			throw new RuntimeException("The partitions of this index, of type " + slice.partition.getClass().getSimpleName() +
+					", cannot answer range or nearest neighbor queries.");
+		return (SpatialQuerySolver)slice.partition;
+	}
+
+	/* ************************************************************************** */
+	/* ************************ PUBLIC (INTERFACE) METHODS ********************** */
+	/* ************************************************************************** */
+
+	/**
+	 * Creates an index whose clock is {@link System#currentTimeMillis()}.
+	 * @param numSlices The number of slices that the window spans.
+	 * @param sliceLength The length of every slice, in milliseconds.
+	 * @param factory Creates an empty partition for every new slice, e.g. <tt>() -&gt; new KDTree(2)</tt>.
+	 * @throws RuntimeException if <tt>numSlices</tt> or <tt>sliceLength</tt> is not positive.
+	 */
+	public TimeWindowedSpatialIndex(int numSlices, long sliceLength, Supplier<? extends SpatialDictionary> factory){
+		this(numSlices, sliceLength, factory, System::currentTimeMillis);
+	}
+
+	/**
+	 * Full constructor.
+	 * @param numSlices The number of slices that the window spans.
+	 * @param sliceLength The length of every slice, in the time units of <tt>clock</tt>.
+	 * @param factory Creates an empty partition for every new slice, e.g. <tt>() -&gt; new KDTree(2)</tt>.
+	 * @param clock The source of the current time, which should never go backwards.
+	 * @throws RuntimeException if <tt>numSlices</tt> or <tt>sliceLength</tt> is not positive.
+	 */
+	public TimeWindowedSpatialIndex(int numSlices, long sliceLength, Supplier<? extends SpatialDictionary> factory,
+									LongSupplier clock){
+		if(numSlices <= 0)
+			throw new RuntimeException("The number of slices provided, " + numSlices + ", is invalid: Please provide a positive integer.");
+		if(sliceLength <= 0)
+			throw new RuntimeException("The slice length provided, " + sliceLength + ", is invalid: Please provide a positive integer.");
+		this.numSlices = numSlices;
+		this.sliceLength = sliceLength;
+		this.factory = factory;
+		this.clock = clock;
+		ring = new Slice[numSlices];
+		newest = sliceOf(clock.getAsLong());
+		count = 0;
+	}
+
+	/**
+	 * Inserts <tt>p</tt> with the current time as its timestamp.
+	 * @param p The {@link KDPoint} to insert.
+	 */
+	@Override
+	public void insert(KDPoint p){
+		insert(p, clock.getAsLong());
+	}
+
+	/**
+	 * Inserts <tt>p</tt> with an earlier timestamp, for points that are reported late. The point goes to the slice of its
+	 * timestamp, and expires along with it.
+	 * @param p The {@link KDPoint} to insert.
+	 * @param timestamp The time at which <tt>p</tt> was reported.
+	 * @return <tt>true</tt> if <tt>p</tt> was inserted, <tt>false</tt> if its slice has already expired.
+	 * @throws RuntimeException if <tt>timestamp</tt> lies in the future of the clock.
+	 */
+	public boolean insert(KDPoint p, long timestamp){
+		advance();
+		long s = sliceOf(timestamp);
+		if(s > newest)
+			throw new RuntimeException("The timestamp provided, " + timestamp + ", lies in the future.");
+		if(s <= newest - numSlices)
+			return false;
+		int slot = (int)Math.floorMod(s, (long)numSlices);
+		if(!isLive(ring[slot]) || ring[slot].number != s)
+			ring[slot] = new Slice(s, factory.get());
+		SpatialDictionary partition = ring[slot].partition;
+		int before = partition.count();
+		partition.insert(p);
+		count += partition.count() - before; // Some partitions, like PRQuadTree, ignore duplicates.
+		return true;
+	}
+
+	/**
+	 * Deletes one copy of <tt>p</tt> from the most recent slice that holds it.
+	 * @param p The {@link KDPoint} to delete.
+	 */
+	@Override
+	public void delete(KDPoint p){
+		advance();
+		for(long s = newest; s > newest - numSlices; s--){
+			Slice slice = ring[(int)Math.floorMod(s, (long)numSlices)];
+			if(slice != null && slice.number == s && slice.partition.search(p)){
+				int before = slice.partition.count();
+				slice.partition.delete(p);
+				count -= before - slice.partition.count();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public boolean search(KDPoint p){
+		advance();
+		for(Slice slice : ring)
+			if(isLive(slice) && slice.partition.search(p))
+				return true;
+		return false;
+	}
+
+	@Override
+	public Collection<KDPoint> range(KDPoint p, double range){
+		advance();
+		LinkedList<KDPoint> pts = new LinkedList<>();
+		for(Slice slice : ring)
+			if(isLive(slice))
+				pts.addAll(solverOf(slice).range(p, range));
+		return pts;
+	}
+
+	@Override
+	public KDPoint nearestNeighbor(KDPoint p){
+		advance();
+		KDPoint best = null;
+		double bestDist = KDTree.INFTY;
+		for(Slice slice : ring){
+			if(!isLive(slice))
+				continue;
+			KDPoint candidate = solverOf(slice).nearestNeighbor(p);
+			if(candidate != null && (bestDist == KDTree.INFTY || candidate.distance(p) < bestDist)){
+				best = candidate;
+				bestDist = candidate.distance(p);
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public BoundedPriorityQueue<KDPoint> kNearestNeighbors(int k, KDPoint p){
+		if(k <= 0)
+			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		advance();
+		BoundedPriorityQueue<KDPoint> queue = new BoundedPriorityQueue<>(k);
+		for(Slice slice : ring){
+			if(!isLive(slice))
+				continue;
+			for(KDPoint candidate : solverOf(slice).kNearestNeighbors(k, p)){
+				double dist = candidate.distance(p);
+				if(queue.size() < k || dist < queue.lastPriority())
+					queue.enqueue(candidate, dist);
+				else
+					break; // Candidates come in ascending order of distance.
+			}
+		}
+		return queue;
+	}
+
+	/**
+	 * Returns the height of the tallest live partition.
+	 * @return The maximum height over all live partitions, or -1 if there are none.
+	 */
+	@Override
+	public int height(){
+		advance();
+		int height = -1;
+		for(Slice slice : ring)
+			if(isLive(slice))
+				height = Math.max(height, slice.partition.height());
+		return height;
+	}
+
+	@Override
+	public boolean isEmpty(){
+		return count() == 0;
+	}
+
+	@Override
+	public int count(){
+		advance();
+		return count;
+	}
+
+	/**
+	 * Returns the number of slices that currently hold a partition. Mostly useful for monitoring and testing.
+	 * @return The number of live partitions, which is at most the number of slices of the window.
+	 */
+	public int liveSlices(){
+		advance();
+		int live = 0;
+		for(Slice slice : ring)
+			if(isLive(slice))
+				live++;
+		return live;
+	}
+
+	/**
+	 * Returns the length of the window.
+	 * @return The number of slices times the length of every slice, in the time units of the clock.
+	 */
+	public long getWindowLength(){
+		return numSlices * sliceLength;
+	}
+}
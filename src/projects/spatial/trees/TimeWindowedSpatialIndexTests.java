@@ -0,0 +1,300 @@
+package projects.spatial.trees;
+
+import org.junit.Before;
+import org.junit.Test;
+import projects.spatial.kdpoint.KDPoint;
+import projects.spatial.knnutils.BoundedPriorityQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p><tt>TimeWindowedSpatialIndexTests</tt> drives {@link TimeWindowedSpatialIndex} with a clock of its own, and checks it
+ * against a brute-force list of points and the slices of their timestamps: the clock moves forward by small steps, and
+ * sometimes past the whole window, points are reported late, and partitions that ignore duplicates are used as well as
+ * ones that keep them.</p>
+ *
+ * @see TimeWindowedSpatialIndex
+ */
+public class TimeWindowedSpatialIndexTests {
+
+	private Random r;
+	private static final int SEED = 47;
+	private static final int GRID = 20;
+	private static final int NUM_SLICES = 4;
+	private static final long SLICE_LENGTH = 10;
+	private static final int MAX_ITER = 20000;
+
+	private long now;
+
+	@Before
+	public void setUp() {
+		r = new Random(SEED);
+		now = 0;
+	}
+
+	private TimeWindowedSpatialIndex index(int numSlices, long sliceLength, boolean duplicates){
+		return new TimeWindowedSpatialIndex(numSlices, sliceLength, duplicates ? () -> new KDTree(2) : () -> new PRQuadTree(6, 2), () -> now);
+	}
+
+	private KDPoint gridPoint(){
+		return new KDPoint(r.nextInt(GRID), r.nextInt(GRID));
+	}
+
+	/*
+	 * A point and the slice of its timestamp.
+	 */
+	private static final class Entry {
+		private final KDPoint p;
+		private final long slice;
+
+		Entry(KDPoint p, long slice){
+			this.p = p;
+			this.slice = slice;
+		}
+	}
+
+	/*
+	 * The brute-force counterpart of the index: a list of entries, and the slices that have been given a partition.
+	 */
+	private final class BruteForce {
+		private final List<Entry> entries = new ArrayList<>();
+		private final Set<Long> slices = new HashSet<>();
+		private final boolean duplicates;
+
+		BruteForce(boolean duplicates){
+			this.duplicates = duplicates;
+		}
+
+		long current(){
+			return Math.floorDiv(now, SLICE_LENGTH);
+		}
+
+		boolean isLive(long slice){
+			return slice > current() - NUM_SLICES;
+		}
+
+		List<KDPoint> live(){
+			List<KDPoint> live = new ArrayList<>();
+			for(Entry e : entries)
+				if(isLive(e.slice))
+					live.add(e.p);
+			return live;
+		}
+
+		boolean insert(KDPoint p, long timestamp){
+			long slice = Math.floorDiv(timestamp, SLICE_LENGTH);
+			if(!isLive(slice))
+				return false;
+			slices.add(slice);
+			for(Entry e : entries)
+				if(!duplicates && e.slice == slice && e.p.equals(p))
+					return true;
+			entries.add(new Entry(p, slice));
+			return true;
+		}
+
+		void delete(KDPoint p){
+			Entry newest = null;
+			for(Entry e : entries)
+				if(isLive(e.slice) && e.p.equals(p) && (newest == null || e.slice > newest.slice))
+					newest = e;
+			if(newest != null)
+				entries.remove(newest);
+		}
+
+		int liveSlices(){
+			int live = 0;
+			for(long slice : slices)
+				if(isLive(slice))
+					live++;
+			return live;
+		}
+	}
+
+	private static List<String> sorted(Collection<KDPoint> points){
+		List<String> keys = new ArrayList<>();
+		for(KDPoint p : points)
+			keys.add(p.toString());
+		keys.sort(null);
+		return keys;
+	}
+
+	private static List<Double> distances(Iterable<KDPoint> points, KDPoint anchor){
+		List<Double> distances = new ArrayList<>();
+		for(KDPoint p : points)
+			distances.add(p.distance(anchor));
+		return distances;
+	}
+
+	private void checkQueries(TimeWindowedSpatialIndex index, BruteForce expected, KDPoint anchor){
+		List<KDPoint> live = expected.live();
+		List<KDPoint> inRange = new ArrayList<>(), others = new ArrayList<>();
+		double range = r.nextInt(30);
+		for(KDPoint p : live){
+			if(p.equals(anchor))
+				continue;
+			others.add(p);
+			if(p.distance(anchor) <= range)
+				inRange.add(p);
+		}
+		assertEquals(sorted(inRange), sorted(index.range(anchor, range)));
+		List<Double> nearest = distances(others, anchor);
+		nearest.sort(null);
+		KDPoint nn = index.nearestNeighbor(anchor);
+		if(nearest.isEmpty())
+			assertNull(nn);
+		else
+			assertEquals(nearest.get(0), nn.distance(anchor), 0.0);
+		int k = 1 + r.nextInt(8);
+		BoundedPriorityQueue<KDPoint> knn = index.kNearestNeighbors(k, anchor);
+		assertEquals(nearest.subList(0, Math.min(k, nearest.size())), distances(knn, anchor));
+	}
+
+	/*
+	 * The clock mostly moves by a few time units, so that slices expire one at a time, and sometimes jumps past the whole
+	 * window. Late points carry timestamps up to a window and a half in the past, so that some of them are dropped.
+	 */
+	private void checkAgainstBruteForce(boolean duplicates, long start){
+		now = start;
+		TimeWindowedSpatialIndex index = index(NUM_SLICES, SLICE_LENGTH, duplicates);
+		BruteForce expected = new BruteForce(duplicates);
+		for(int i = 0; i < MAX_ITER; i++){
+			now += (r.nextInt(500) == 0) ? NUM_SLICES * SLICE_LENGTH + r.nextInt(100) : r.nextInt(3);
+			KDPoint p = gridPoint();
+			int op = r.nextInt(10);
+			if(op < 3){
+				index.insert(p);
+				expected.insert(p, now);
+			} else if(op < 5){
+				long timestamp = now - r.nextInt((int)(1.5 * NUM_SLICES * SLICE_LENGTH));
+				assertEquals(expected.insert(p, timestamp), index.insert(p, timestamp));
+			} else if(op < 7){
+				index.delete(p);
+				expected.delete(p);
+			} else if(op < 8){
+				assertEquals(expected.live().contains(p), index.search(p));
+			} else if(duplicates){
+				checkQueries(index, expected, p);
+			}
+			assertEquals(expected.live().size(), index.count());
+			assertEquals(expected.live().isEmpty(), index.isEmpty());
+			assertEquals(expected.liveSlices(), index.liveSlices());
+		}
+	}
+
+	@Test
+	public void testAgainstBruteForce() {
+		checkAgainstBruteForce(true, 0);
+	}
+
+	@Test
+	public void testAgainstBruteForceAtNegativeTimes() {
+		checkAgainstBruteForce(true, -MAX_ITER); // Slices of negative times, whose positions in the ring wrap around 0.
+	}
+
+	@Test
+	public void testAgainstBruteForceWithPartitionsThatIgnoreDuplicates() {
+		checkAgainstBruteForce(false, 0);
+	}
+
+	@Test
+	public void testSliceBoundaries() {
+		TimeWindowedSpatialIndex index = index(3, 10, true);
+		now = 9;
+		index.insert(new KDPoint(1, 1)); // Slice 0, visible for slices 0 to 2.
+		now = 10;
+		index.insert(new KDPoint(2, 2)); // Slice 1.
+		now = 29;
+		assertEquals(2, index.count());
+		assertEquals(2, index.liveSlices());
+		now = 30; // Slice 3: slice 0 falls out of the window.
+		assertEquals(1, index.count());
+		assertFalse(index.search(new KDPoint(1, 1)));
+		assertTrue(index.search(new KDPoint(2, 2)));
+		assertEquals(1, index.liveSlices());
+		assertFalse(index.insert(new KDPoint(3, 3), 5)); // Into slice 0, which is gone.
+		assertTrue(index.insert(new KDPoint(3, 3), 25)); // Into slice 2, late.
+		assertEquals(2, index.liveSlices());
+		now = 40; // Slice 1 goes.
+		assertEquals(1, index.count());
+		assertTrue(index.search(new KDPoint(3, 3)));
+		index.insert(new KDPoint(4, 4)); // Slice 4, in the slot of slice 1.
+		assertEquals(2, index.count());
+		now = 1000; // Everything goes at once.
+		assertTrue(index.isEmpty());
+		assertEquals(0, index.liveSlices());
+		assertEquals(-1, index.height());
+		assertNull(index.nearestNeighbor(new KDPoint(0, 0)));
+		assertEquals(30, index.getWindowLength());
+	}
+
+	@Test
+	public void testDeleteTakesNewestCopy() {
+		TimeWindowedSpatialIndex index = index(3, 10, true);
+		KDPoint p = new KDPoint(5, 5);
+		index.insert(p); // Slice 0.
+		now = 10;
+		index.insert(p); // Slice 1.
+		index.delete(p);
+		now = 29; // Slice 0 is still live, and it still has its copy.
+		assertTrue(index.search(p));
+		now = 30;
+		assertFalse(index.search(p));
+		assertEquals(0, index.count());
+		index.delete(p); // Nothing to delete.
+		assertEquals(0, index.count());
+	}
+
+	@Test
+	public void testKNearestNeighborsAcrossSlices() {
+		TimeWindowedSpatialIndex index = index(3, 10, true);
+		for(int d : new int[]{1, 2, 3, 7})
+			index.insert(new KDPoint(d, 0));
+		now = 10;
+		for(int d : new int[]{5, 6}) // Farther than all of the first slice but one.
+			index.insert(new KDPoint(-d, 0));
+		now = 20;
+		index.insert(new KDPoint(0, 4));
+		BoundedPriorityQueue<KDPoint> knn = index.kNearestNeighbors(5, new KDPoint(0, 0));
+		assertEquals(List.of(1.0, 4.0, 9.0, 16.0, 25.0), distances(knn, new KDPoint(0, 0)));
+	}
+
+	@Test
+	public void testDuplicatesInPartitionsThatIgnoreThem() {
+		TimeWindowedSpatialIndex index = index(3, 10, false);
+		KDPoint p = new KDPoint(1, 1);
+		index.insert(p);
+		index.insert(p); // Ignored by the PRQuadTree of slice 0.
+		assertEquals(1, index.count());
+		now = 10;
+		index.insert(p); // A copy in slice 1, which does count.
+		assertEquals(2, index.count());
+		index.delete(p);
+		assertEquals(1, index.count());
+		now = 30;
+		assertEquals(0, index.count());
+		try {
+			index.range(p, 1);
+			fail("PRQuadTree partitions cannot solve range queries through SpatialQuerySolver.");
+		} catch(RuntimeException ignored){
+			// Expected.
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testFutureTimestamp() {
+		index(3, 10, true).insert(new KDPoint(0, 0), 10);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInvalidSliceLength() {
+		index(3, 0, true);
+	}
+}